@@ -22,6 +22,8 @@
 
     testCompileOnly(rootProject.libs.lombok)
     testAnnotationProcessor(rootProject.libs.lombok)
+    testImplementation(rootProject.libs.junit.jupiter)
+    testRuntimeOnly(rootProject.libs.junit.platform.launcher)
 
     compileOnly(rootProject.libs.adventure.minimessage)
     compileOnly(rootProject.libs.adventure.serializer)
@@ -64,6 +66,10 @@
       options.encoding = "UTF-8"
     }
 
+    test {
+      useJUnitPlatform()
+    }
+
     jar {
       manifest {
         val indra = rootProject.extensions.getByType(IndraGitExtension::class.java)
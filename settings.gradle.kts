@@ -1,6 +1,6 @@
 rootProject.name = "Sonar"
 
-sequenceOf("api", "captcha", "common", "bukkit", "bungee", "velocity").forEach {
+sequenceOf("api", "captcha", "common", "bukkit", "bungee", "velocity", "tools", "benchmark", "replay").forEach {
   val path = "sonar-$it"
   val project = ":$it"
 
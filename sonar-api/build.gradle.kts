@@ -7,6 +7,12 @@
     exclude(group = "org.yaml")
   }
   compileOnly(rootProject.libs.annotations)
+
+  testCompileOnly(rootProject.libs.annotations)
+  testImplementation(rootProject.libs.ormlite)
+  testImplementation(rootProject.libs.h2)
+  // The database types reference the drivers that are downloaded at runtime
+  testImplementation(rootProject.libs.libby.core)
 }
 
 java.sourceCompatibility = JavaVersion.VERSION_11
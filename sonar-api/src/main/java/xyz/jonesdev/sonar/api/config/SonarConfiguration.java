@@ -30,6 +30,8 @@
 import xyz.jonesdev.sonar.api.database.ormlite.H2DatabaseTypeAdapter;
 import xyz.jonesdev.sonar.api.database.ormlite.MariaDbDatabaseTypeAdapter;
 import xyz.jonesdev.sonar.api.database.ormlite.MysqlDatabaseTypeAdapter;
+import xyz.jonesdev.sonar.api.filter.HostnameTrie;
+import xyz.jonesdev.sonar.api.tracker.EscalationLevel;
 import xyz.jonesdev.sonar.api.webhook.DiscordWebhook;
 
 import java.io.File;
@@ -146,10 +148,54 @@ public void loadValues() {
     minAttackDuration = clamp(generalConfig.getInt("attack-tracker.min-attack-duration"), 1000, 900000);
     minAttackThreshold = clamp(generalConfig.getInt("attack-tracker.min-attack-threshold"), 0, 20);
     attackCooldownDelay = clamp(generalConfig.getInt("attack-tracker.attack-cooldown-delay"), 100, 30000);
+    adaptiveDetection.enabled = generalConfig.getBoolean("attack-tracker.adaptive-detection.enabled");
+    adaptiveDetection.halfLife = clamp(generalConfig.getInt("attack-tracker.adaptive-detection.half-life"), 10, 86400);
+    adaptiveDetection.elevatedScore = clamp(generalConfig.getInt("attack-tracker.adaptive-detection.elevated-score"), 1, 100);
+    adaptiveDetection.highScore = clamp(generalConfig.getInt("attack-tracker.adaptive-detection.high-score"),
+      adaptiveDetection.elevatedScore, 100);
+    adaptiveDetection.criticalScore = clamp(generalConfig.getInt("attack-tracker.adaptive-detection.critical-score"),
+      adaptiveDetection.highScore, 100);
+    adaptiveDetection.failureRatioMinAttempts = clamp(generalConfig.getInt(
+      "attack-tracker.adaptive-detection.failure-ratio-min-attempts"), 1, 10000);
+    for (final EscalationLevel level : EscalationLevel.values()) {
+      if (level == EscalationLevel.NORMAL) continue;
+      final String path = "attack-tracker.escalation." + level.name().toLowerCase() + ".";
+      adaptiveDetection.adjustments.put(level, new AdaptiveDetection.Adjustments(
+        clamp(generalConfig.getInt(path + "read-timeout"), 10, 100),
+        clamp(generalConfig.getInt(path + "captcha-duration"), 10, 100),
+        clamp(generalConfig.getInt(path + "queue-polls"), 1, 100)));
+    }
 
     // Database
     database.type = Database.Type.valueOf(generalConfig.getString("database.type").toUpperCase());
     database.maximumAge = clamp(generalConfig.getInt("database.maximum-age"), 1, 365);
+    database.cacheSize = clamp(generalConfig.getInt("database.cache-size"), 1000, 100000000);
+    database.syncInterval = clamp(generalConfig.getInt("database.sync-interval"), 0, 3600);
+
+    // Firewall
+    firewall.enabled = generalConfig.getBoolean("firewall.enabled");
+    firewall.type = Firewall.Type.valueOf(generalConfig.getString("firewall.type").toUpperCase());
+    firewall.table = generalConfig.getString("firewall.table");
+    firewall.ipv4Set = generalConfig.getString("firewall.ipv4-set");
+    firewall.ipv6Set = generalConfig.getString("firewall.ipv6-set");
+    firewall.outputFile = generalConfig.getString("firewall.output-file");
+    firewall.command = generalConfig.getString("firewall.command");
+    firewall.flushDelay = clamp(generalConfig.getInt("firewall.flush-delay"), 100, 60000);
+    firewall.maxBatchSize = clamp(generalConfig.getInt("firewall.max-batch-size"), 1, 65536);
+
+    // Metrics
+    metrics.enabled = generalConfig.getBoolean("metrics.enabled");
+    metrics.address = generalConfig.getString("metrics.address");
+    metrics.port = clamp(generalConfig.getInt("metrics.port"), 1, 65535);
+
+    // Traffic capture
+    capture.enabled = generalConfig.getBoolean("capture.enabled");
+    capture.sampleRate = clamp(generalConfig.getInt("capture.sample-rate"), 1, 100);
+    capture.maxSize = clamp(generalConfig.getInt("capture.max-size"), 2, 4096);
+
+    // Hostname allowlist
+    hostnameAllowlist.enabled = generalConfig.getBoolean("hostname-allowlist.enabled");
+    hostnameAllowlist.trie = HostnameTrie.compile(generalConfig.getStringList("hostname-allowlist.entries"));
 
     // Queue
     queue.maxQueuePolls = clamp(generalConfig.getInt("queue.max-polls"), 1, 1000);
@@ -194,6 +240,13 @@ public void loadValues() {
     verification.brand.validRegex = Pattern.compile(generalConfig.getString("verification.checks.client-brand.valid-regex"));
     verification.brand.maxLength = generalConfig.getInt("verification.checks.client-brand.max-length");
 
+    verification.usernamePatterns.enabled = generalConfig.getBoolean("verification.checks.username-patterns.enabled");
+    verification.usernamePatterns.action = Verification.UsernamePatterns.Action.valueOf(
+      generalConfig.getString("verification.checks.username-patterns.action").toUpperCase());
+    verification.usernamePatterns.window = clamp(generalConfig.getInt("verification.checks.username-patterns.window"), 1000, 600000);
+    verification.usernamePatterns.threshold = clamp(generalConfig.getInt("verification.checks.username-patterns.threshold"), 2, 100000);
+    verification.usernamePatterns.minPercentage = clamp(generalConfig.getInt("verification.checks.username-patterns.min-percentage"), 0, 100);
+
     verification.gamemode = Verification.Gamemode.valueOf(generalConfig.getString("verification.gamemode"));
     verification.validNameRegex = Pattern.compile(generalConfig.getString("verification.checks.valid-name-regex"));
     verification.validLocaleRegex = Pattern.compile(generalConfig.getString("verification.checks.valid-locale-regex"));
@@ -202,6 +255,8 @@ public void loadValues() {
     verification.checkGeyser = generalConfig.getBoolean("verification.check-geyser-players");
     verification.logConnections = generalConfig.getBoolean("verification.log-connections");
     verification.logDuringAttack = generalConfig.getBoolean("verification.log-during-attack");
+    verification.logAggregationThreshold = clamp(generalConfig.getInt("verification.log-aggregation-threshold"), 0, 10000);
+    verification.logAggregationInterval = clamp(generalConfig.getInt("verification.log-aggregation-interval"), 1, 60);
     verification.debugXYZPositions = generalConfig.getBoolean("verification.debug-xyz-positions");
     verification.readTimeout = clamp(generalConfig.getInt("verification.read-timeout"), 1000, 30000);
     verification.writeTimeout = clamp(generalConfig.getInt("verification.write-timeout"), 1000, 30000);
@@ -309,6 +364,16 @@ private static int clamp(final int v, final int max, final int min) {
   @Getter
   private final Database database = new Database();
   @Getter
+  private final Firewall firewall = new Firewall();
+  @Getter
+  private final Metrics metrics = new Metrics();
+  @Getter
+  private final Capture capture = new Capture();
+  @Getter
+  private final AdaptiveDetection adaptiveDetection = new AdaptiveDetection();
+  @Getter
+  private final HostnameAllowlist hostnameAllowlist = new HostnameAllowlist();
+  @Getter
   private final Webhook webhook = new Webhook();
 
   @Getter
@@ -337,7 +402,9 @@ private static int clamp(final int v, final int max, final int min) {
   @Getter
   @NoArgsConstructor(access = AccessLevel.PRIVATE)
   public static final class Queue {
-    private int maxQueuePolls;
+    // Can be changed at runtime using JMX, so it has to be visible to all threads right away
+    @Setter
+    private volatile int maxQueuePolls;
   }
 
   @Getter
@@ -359,6 +426,7 @@ public enum Timing {
     private final Gravity gravity = new Gravity();
     private final Vehicle vehicle = new Vehicle();
     private final Brand brand = new Brand();
+    private final UsernamePatterns usernamePatterns = new UsernamePatterns();
 
     @Getter
     public static final class Map {
@@ -391,6 +459,20 @@ public static final class Brand {
       private Pattern validRegex;
     }
 
+    @Getter
+    public static final class UsernamePatterns {
+      private boolean enabled;
+      private Action action;
+      private int window;
+      private int threshold;
+      private int minPercentage;
+
+      public enum Action {
+        LOG,
+        THROTTLE
+      }
+    }
+
     private Gamemode gamemode;
 
     @Getter
@@ -411,6 +493,8 @@ public boolean isSurvivalOrAdventure() {
     private boolean checkGeyser;
     private boolean logConnections;
     private boolean logDuringAttack;
+    private int logAggregationThreshold;
+    private int logAggregationInterval;
     private boolean debugXYZPositions;
     private Pattern validNameRegex;
     private Pattern validLocaleRegex;
@@ -418,7 +502,9 @@ public boolean isSurvivalOrAdventure() {
     private int maxLoginPackets;
     private int readTimeout;
     private int writeTimeout;
-    private int reconnectDelay;
+    // Can be changed at runtime using JMX, so it has to be visible to all threads right away
+    @Setter
+    private volatile int reconnectDelay;
     private int rememberTime;
     private int blacklistTime;
     private int blacklistThreshold;
@@ -442,14 +528,14 @@ public static final class Database {
     @Getter
     @RequiredArgsConstructor
     public enum Type {
-      MYSQL("MySQL", "jdbc:mysql://%s:%d/%s", new MysqlDatabaseTypeAdapter(),
+      MYSQL("MySQL", "jdbc:mysql://%s:%d/%s?cachePrepStmts=true&prepStmtCacheSize=64&useServerPrepStmts=true", new MysqlDatabaseTypeAdapter(),
         Library.builder()
           .groupId("com{}mysql")
           .artifactId("mysql-connector-j")
           .version("9.0.0")
           .relocate("com{}mysql", "xyz{}jonesdev{}sonar{}libs{}mysql")
           .build()),
-      MARIADB("MariaDB", "jdbc:mariadb://%s:%d/%s", new MariaDbDatabaseTypeAdapter(),
+      MARIADB("MariaDB", "jdbc:mariadb://%s:%d/%s?cachePrepStmts=true&prepStmtCacheSize=64&useServerPrepStmts=true", new MariaDbDatabaseTypeAdapter(),
         Library.builder()
           .groupId("org{}mariadb{}jdbc")
           .artifactId("mariadb-java-client")
@@ -463,6 +549,8 @@ public enum Type {
           .version("2.2.220")
           .relocate("org{}h2", "xyz{}jonesdev{}sonar{}libs{}h2")
           .build()),
+      // Append-only file that doesn't require any driver
+      FILE("File", null, null, null),
       NONE("None", null, null, null);
 
       private final String displayName;
@@ -475,6 +563,76 @@ public enum Type {
 
     private Type type;
     private int maximumAge;
+    private int cacheSize;
+    private int syncInterval;
+  }
+
+  @Getter
+  @NoArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Firewall {
+    private boolean enabled;
+    private Type type;
+    private String table;
+    private String ipv4Set;
+    private String ipv6Set;
+    private String outputFile;
+    private String command;
+    private int flushDelay;
+    private int maxBatchSize;
+
+    public enum Type {
+      NFTABLES,
+      IPSET
+    }
+  }
+
+  @Getter
+  @NoArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Metrics {
+    private boolean enabled;
+    private String address;
+    private int port;
+  }
+
+  @Getter
+  @NoArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Capture {
+    private boolean enabled;
+    private int sampleRate;
+    // Size of the capture file in MiB
+    private int maxSize;
+  }
+
+  @Getter
+  @NoArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class AdaptiveDetection {
+    private boolean enabled;
+    private int halfLife;
+    private int elevatedScore, highScore, criticalScore;
+    private int failureRatioMinAttempts;
+    private final EnumMap<EscalationLevel, Adjustments> adjustments = new EnumMap<>(EscalationLevel.class);
+
+    public @NotNull Adjustments getAdjustments(final @NotNull EscalationLevel level) {
+      return adjustments.getOrDefault(level, Adjustments.NONE);
+    }
+
+    // All values are percentages of the configured values
+    @Getter
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Adjustments {
+      private static final Adjustments NONE = new Adjustments(100, 100, 100);
+
+      private final int readTimeout;
+      private final int captchaDuration;
+      private final int queuePolls;
+    }
+  }
+
+  @Getter
+  @NoArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class HostnameAllowlist {
+    private boolean enabled;
+    private HostnameTrie trie;
   }
 
   @Getter
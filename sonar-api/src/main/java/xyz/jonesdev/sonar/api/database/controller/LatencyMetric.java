@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of samples, average and maximum duration of a database operation
+ */
+public final class LatencyMetric {
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maximumNanos = new AtomicLong();
+
+  /**
+   * @param startNanos Value of {@link System#nanoTime()} when the operation started
+   */
+  public void record(final long startNanos) {
+    final long elapsed = System.nanoTime() - startNanos;
+    count.increment();
+    totalNanos.add(elapsed);
+    maximumNanos.accumulateAndGet(elapsed, Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public double getAverageMillis() {
+    final long count = this.count.sum();
+    return count == 0L ? 0D : totalNanos.sum() / (double) count / 1_000_000D;
+  }
+
+  public double getMaximumMillis() {
+    return maximumNanos.get() / 1_000_000D;
+  }
+}
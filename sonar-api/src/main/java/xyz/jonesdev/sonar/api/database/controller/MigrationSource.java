@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.support.ConnectionSource;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entries of another database that are migrated one page at a time,
+ * so the migration doesn't block the database update thread
+ */
+interface MigrationSource extends AutoCloseable {
+  /**
+   * @param limit Maximum number of entries
+   * @return Next entries, or fewer entries than the limit once all entries have been read
+   */
+  @NotNull List<VerifiedPlayer> nextPage(final int limit) throws IOException, SQLException;
+
+  /**
+   * Reads the entries of a database page by page
+   *
+   * @param connectionSource Connection source of the database, which is closed together with this source
+   */
+  static @NotNull MigrationSource of(final @NotNull ConnectionSource connectionSource) throws SQLException {
+    final Dao<VerifiedPlayer, Integer> dao = DaoManager.createDao(connectionSource, VerifiedPlayer.class);
+    return new MigrationSource() {
+      private int lastId;
+
+      @Override
+      public @NotNull List<VerifiedPlayer> nextPage(final int limit) throws SQLException {
+        // Continue after the last ID of the previous page, so every page is a range scan
+        final List<VerifiedPlayer> page = dao.queryBuilder()
+          .orderBy("id", true)
+          .limit((long) limit)
+          .where()
+          .gt("id", lastId)
+          .query();
+        if (!page.isEmpty()) {
+          lastId = page.get(page.size() - 1).getId();
+        }
+        return page;
+      }
+
+      @Override
+      public void close() throws Exception {
+        connectionSource.close();
+      }
+    };
+  }
+
+  /**
+   * Reads the entries of a file page by page.
+   * The file has to be replayed entirely to know which entries have been removed,
+   * but only the latest timestamp of every entry is kept in memory.
+   *
+   * @param fileStore File that is closed right after it has been replayed
+   */
+  static @NotNull MigrationSource of(final @NotNull VerifiedPlayerFileStore fileStore) throws IOException {
+    final VerifiedPlayerFileStore.Timestamps timestamps;
+    try {
+      timestamps = fileStore.readTimestamps();
+    } finally {
+      fileStore.close();
+    }
+    return new MigrationSource() {
+      private int slot;
+
+      @Override
+      public @NotNull List<VerifiedPlayer> nextPage(final int limit) throws IOException {
+        final List<VerifiedPlayer> page = new ArrayList<>(Math.min(limit, timestamps.size()));
+        if (slot == -1) {
+          return page;
+        }
+        final IOException[] failure = new IOException[1];
+        slot = timestamps.forEach(slot, limit, (address, uuid, timestamp) -> {
+          try {
+            page.add(new VerifiedPlayer(InetAddress.getByAddress(address), uuid, timestamp));
+          } catch (IOException exception) {
+            failure[0] = exception;
+          }
+        });
+        if (failure[0] != null) {
+          throw failure[0];
+        }
+        return page;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+}
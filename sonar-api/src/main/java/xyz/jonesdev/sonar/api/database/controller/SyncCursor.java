@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Position of the sync task in a table with auto-incremented IDs.
+ * IDs are assigned when a row is inserted, but rows only become visible once their
+ * transaction commits, so a row with a lower ID can show up after a row with a higher ID.
+ * Skipped IDs are read again until they show up or their transaction must have been rolled back.
+ */
+final class SyncCursor {
+  // No transaction stays open for this long, so skipped IDs that still don't exist will never exist
+  static final long GAP_TIMEOUT = TimeUnit.MINUTES.toNanos(1L);
+  // Upserts can use up IDs without inserting a row, so we don't want to remember too many skipped IDs
+  static final int MAXIMUM_GAPS = 10000;
+
+  @Getter
+  private long lastId;
+  // Skipped IDs and the time they have been skipped at, oldest first
+  private final LinkedHashMap<Long, Long> gaps = new LinkedHashMap<>();
+
+  /**
+   * Starts after the given ID and forgets all skipped IDs
+   *
+   * @param lastId Highest ID that has already been read
+   */
+  void reset(final long lastId) {
+    this.lastId = lastId;
+    gaps.clear();
+  }
+
+  /**
+   * Moves the cursor to the next row read after the last ID
+   *
+   * @param id  ID of the row
+   * @param now Current value of {@link System#nanoTime()}
+   */
+  void advance(final long id, final long now) {
+    if (id <= lastId) {
+      return;
+    }
+    // Only the most recently skipped IDs are remembered if there are too many of them
+    for (long gap = Math.max(lastId + 1L, id - MAXIMUM_GAPS); gap < id; gap++) {
+      gaps.put(gap, now);
+    }
+    lastId = id;
+    final Iterator<Long> iterator = gaps.keySet().iterator();
+    while (gaps.size() > MAXIMUM_GAPS) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * @param id ID of a row that has been read
+   * @return Whether the row has been committed after a row with a higher ID
+   */
+  boolean fill(final long id) {
+    return gaps.remove(id) != null;
+  }
+
+  /**
+   * @return Skipped IDs that have to be read again, oldest first
+   */
+  @NotNull List<Long> getGaps() {
+    return new ArrayList<>(gaps.keySet());
+  }
+
+  /**
+   * Forgets all skipped IDs whose transaction must have been rolled back
+   *
+   * @param now Current value of {@link System#nanoTime()}
+   */
+  void expire(final long now) {
+    final Iterator<Map.Entry<Long, Long>> iterator = gaps.entrySet().iterator();
+    while (iterator.hasNext()) {
+      // The IDs are ordered by the time they have been skipped at
+      if (now - iterator.next().getValue() < GAP_TIMEOUT) {
+        return;
+      }
+      iterator.remove();
+    }
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free set of 64-bit fingerprints of IP addresses and usernames
+ * that are known to be verified.
+ * <br>
+ * This allows us to check if a player is verified without computing
+ * the offline UUID (MD5) or allocating anything. Since usernames are not stored
+ * in the database, fingerprints are only added once a player has been verified
+ * or found in the cache.
+ * <br>
+ * The upper 24 bits of every fingerprint are a tag of the IP address, and the position
+ * of the fingerprint is derived from that tag. All fingerprints of an IP address
+ * are therefore stored next to each other and can be removed without knowing
+ * the usernames (or UUIDs) of the players.
+ * <br>
+ * Every removal increments the epoch of this set. Fingerprints are only added if the epoch
+ * hasn't changed since the caller has checked the cache, so a fingerprint can never
+ * be added again after its IP address has been removed concurrently.
+ */
+final class VerifiedFingerprintSet {
+  private static final int INITIAL_CAPACITY = 1 << 12;
+  private static final int MAXIMUM_CAPACITY = 1 << 22;
+  private static final int MAXIMUM_PROBES = 16;
+  private static final int TAG_SHIFT = 40;
+  private static final long FINGERPRINT_MASK = (1L << TAG_SHIFT) - 1L;
+  // Removed fingerprints are replaced by tombstones, so probe sequences stay intact
+  private static final long TOMBSTONE = -1L;
+  private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+  // Random seed, so nobody can generate usernames with colliding fingerprints
+  private static final long SEED = new SecureRandom().nextLong();
+
+  private volatile AtomicLongArray slots = new AtomicLongArray(INITIAL_CAPACITY);
+  // Number of fingerprints in this set
+  private final AtomicInteger size = new AtomicInteger();
+  // Number of slots that are not empty (fingerprints and tombstones)
+  private final AtomicInteger used = new AtomicInteger();
+  private volatile long epoch;
+
+  boolean contains(final @NotNull InetAddress inetAddress, final @NotNull String username) {
+    final long fingerprint = fingerprint(inetAddress, username);
+    final AtomicLongArray slots = this.slots;
+    final int mask = slots.length() - 1;
+    for (int i = 0, index = home(fingerprint, mask); i < MAXIMUM_PROBES; i++, index = (index + 1) & mask) {
+      final long slot = slots.get(index);
+      if (slot == fingerprint) {
+        return true;
+      }
+      if (slot == 0L) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return Current epoch; has to be read before checking if the player is verified
+   */
+  long epoch() {
+    return epoch;
+  }
+
+  /**
+   * Adds the fingerprint of the IP address and username unless something
+   * has been removed since the given epoch has been read.
+   */
+  void add(final @NotNull InetAddress inetAddress, final @NotNull String username, final long expectedEpoch) {
+    final long fingerprint = fingerprint(inetAddress, username);
+    for (int attempt = 0; attempt < 2 && epoch == expectedEpoch; attempt++) {
+      final AtomicLongArray slots = this.slots;
+      final int index = insert(slots, fingerprint);
+      if (index == -1) {
+        // Too many collisions; make some room for the fingerprint and try again
+        replace(slots);
+        continue;
+      }
+      // A removal might have missed our fingerprint, so we have to undo it
+      if (index >= 0 && epoch != expectedEpoch) {
+        discard(fingerprint);
+      }
+      return;
+    }
+  }
+
+  /**
+   * Removes a single fingerprint. This is synchronized with {@link #replace(AtomicLongArray)},
+   * so the fingerprint is removed even if it has been copied to a new array in the meantime.
+   */
+  private synchronized void discard(final long fingerprint) {
+    final AtomicLongArray slots = this.slots;
+    final int mask = slots.length() - 1;
+    for (int i = 0, index = home(fingerprint, mask); i < MAXIMUM_PROBES; i++, index = (index + 1) & mask) {
+      final long slot = slots.get(index);
+      if (slot == 0L) {
+        return;
+      }
+      if (slot == fingerprint && slots.compareAndSet(index, slot, TOMBSTONE)) {
+        size.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * @return Slot of the added fingerprint, -1 if there was no free slot,
+   * or -2 if the fingerprint has already been added before
+   */
+  private int insert(final @NotNull AtomicLongArray slots, final long fingerprint) {
+    final int mask = slots.length() - 1;
+    retry:
+    while (true) {
+      int free = -1;
+      long expected = 0L;
+      for (int i = 0, index = home(fingerprint, mask); i < MAXIMUM_PROBES; i++, index = (index + 1) & mask) {
+        final long slot = slots.get(index);
+        if (slot == fingerprint) {
+          return -2;
+        }
+        if (slot == TOMBSTONE && free == -1) {
+          free = index;
+          expected = TOMBSTONE;
+        } else if (slot == 0L) {
+          if (free == -1) {
+            free = index;
+          }
+          break;
+        }
+      }
+      if (free == -1) {
+        return -1;
+      }
+      if (!slots.compareAndSet(free, expected, fingerprint)) {
+        // Another thread has taken the slot in the meantime
+        continue retry;
+      }
+      size.incrementAndGet();
+      // Keep the load factor low, so probe sequences rarely exceed the maximum
+      if (expected == 0L && used.incrementAndGet() > slots.length() / 2) {
+        replace(slots);
+      }
+      return free;
+    }
+  }
+
+  /**
+   * Removes the fingerprints of all usernames of the IP address
+   */
+  void remove(final @NotNull String hostAddress) {
+    final long[] key = VerifiedPlayerIndex.parse(hostAddress);
+    if (key != null) {
+      remove(tag(key[0], key[1]));
+    }
+  }
+
+  private synchronized void remove(final long tag) {
+    // Increment the epoch first, so concurrent additions notice the removal
+    epoch++;
+    final AtomicLongArray slots = this.slots;
+    final int mask = slots.length() - 1;
+    for (int i = 0, index = (int) tag & mask; i < MAXIMUM_PROBES; i++, index = (index + 1) & mask) {
+      final long slot = slots.get(index);
+      if (slot == 0L) {
+        return;
+      }
+      if (slot != TOMBSTONE && slot >>> TAG_SHIFT == tag && slots.compareAndSet(index, slot, TOMBSTONE)) {
+        size.decrementAndGet();
+      }
+    }
+  }
+
+  synchronized void clear() {
+    epoch++;
+    // Avoid allocating a new array if the set is already empty
+    if (used.get() == 0 && slots.length() == INITIAL_CAPACITY) {
+      return;
+    }
+    slots = new AtomicLongArray(INITIAL_CAPACITY);
+    size.set(0);
+    used.set(0);
+  }
+
+  /**
+   * Copies all fingerprints to a new (usually larger) array without the tombstones,
+   * or starts over if the maximum capacity has been reached. Fingerprints added by other
+   * threads while copying might get lost, but they will simply be added again during
+   * the next login. This is synchronized with removals, so nothing removed can be copied.
+   */
+  private synchronized void replace(final @NotNull AtomicLongArray previous) {
+    // Another thread might have already replaced the slots
+    if (slots != previous) {
+      return;
+    }
+    // Don't grow the array if most of the used slots are tombstones
+    final int length = size.get() > previous.length() / 4
+      ? Math.min(previous.length() << 1, MAXIMUM_CAPACITY) : previous.length();
+    final AtomicLongArray replacement = new AtomicLongArray(length);
+    int copied = 0;
+    if (size.get() <= length / 2) {
+      final int mask = length - 1;
+      for (int i = 0; i < previous.length(); i++) {
+        final long fingerprint = previous.get(i);
+        if (fingerprint == 0L || fingerprint == TOMBSTONE) continue;
+        int index = home(fingerprint, mask);
+        // Fingerprints outside the probe window could never be removed
+        for (int probes = 0; probes < MAXIMUM_PROBES; probes++, index = (index + 1) & mask) {
+          if (replacement.get(index) == 0L) {
+            replacement.set(index, fingerprint);
+            copied++;
+            break;
+          }
+        }
+      }
+    }
+    slots = replacement;
+    size.set(copied);
+    used.set(copied);
+  }
+
+  int size() {
+    return size.get();
+  }
+
+  long getMemoryUsage() {
+    return (long) slots.length() * Long.BYTES;
+  }
+
+  private static int home(final long fingerprint, final int mask) {
+    return (int) (fingerprint >>> TAG_SHIFT) & mask;
+  }
+
+  private static long fingerprint(final @NotNull InetAddress inetAddress, final @NotNull String username) {
+    final long hi, lo;
+    if (inetAddress instanceof Inet4Address) {
+      // The hash code of an IPv4 address is the address itself
+      hi = 0L;
+      lo = IPV4_MAPPED_PREFIX | (inetAddress.hashCode() & 0xFFFFFFFFL);
+    } else {
+      final byte[] address = inetAddress.getAddress();
+      long high = 0L, low = 0L;
+      for (int i = 0; i < 8; i++) {
+        high = high << 8 | (address[i] & 0xFFL);
+        low = low << 8 | (address[i + 8] & 0xFFL);
+      }
+      hi = high;
+      lo = low;
+    }
+    long hash = mix(mix(SEED ^ hi) ^ lo);
+    // Usernames are case-sensitive, just like the offline UUID
+    for (int i = 0; i < username.length(); i++) {
+      hash = mix(hash ^ (username.charAt(i) | (long) (i + 1) << 16));
+    }
+    hash = mix(hash ^ username.length()) & FINGERPRINT_MASK;
+    // 0 is used to mark empty slots, and all bits set would be a tombstone
+    if (hash == 0L) {
+      hash = 1L;
+    } else if (hash == FINGERPRINT_MASK) {
+      hash = FINGERPRINT_MASK - 1L;
+    }
+    return tag(hi, lo) << TAG_SHIFT | hash;
+  }
+
+  /**
+   * @return 24-bit tag of the IP address (in the same format as the keys of the index)
+   */
+  private static long tag(final long hi, final long lo) {
+    return mix(mix(~SEED ^ hi) ^ lo) >>> TAG_SHIFT;
+  }
+
+  private static long mix(final long value) {
+    // https://github.com/aappleby/smhasher/wiki/MurmurHash3 (fmix64)
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -20,148 +20,444 @@
 import com.alessiodp.libby.LibraryManager;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.db.DatabaseType;
 import com.j256.ormlite.jdbc.JdbcConnectionSource;
-import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
 import com.j256.ormlite.table.TableUtils;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.annotations.Range;
 import org.jetbrains.annotations.Unmodifiable;
 import xyz.jonesdev.sonar.api.Sonar;
 import xyz.jonesdev.sonar.api.config.SonarConfiguration;
 import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayerRemoval;
+import xyz.jonesdev.sonar.api.filter.InetAddressFilter;
+import xyz.jonesdev.sonar.api.logger.LoggerWrapper;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
 import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public final class VerifiedPlayerController {
-  private static final ExecutorService DB_UPDATE_SERVICE = Executors.newSingleThreadExecutor();
-
-  private final Map<String, Collection<UUID>> cache = new ConcurrentHashMap<>(128);
-  private @Nullable ConnectionSource connectionSource;
-  private Dao<VerifiedPlayer, Integer> dao;
-  private QueryBuilder<VerifiedPlayer, Integer> queryBuilder;
+  // Pending writes are flushed every second or as soon as there are enough of them
+  private static final long FLUSH_INTERVAL = 1000L;
+  private static final int FLUSH_THRESHOLD = 256;
+  // Outdated entries are removed every 10 minutes
+  private static final long EXPIRY_INTERVAL = 10L;
+  // Entries of another database are migrated in batches of 1000 entries
+  private static final int MIGRATION_PAGE_SIZE = 1000;
+  // Entries are exported in batches of 10000 entries
+  private static final long EXPORT_PAGE_SIZE = 10000L;
+
+  // Every controller has its own threads, so closing the controller also stops its tasks
+  // All writes are done in the same thread to make sure they are executed in order
+  final ScheduledThreadPoolExecutor updateService = new ScheduledThreadPoolExecutor(1,
+    createThreadFactory("sonar-database-update-thread"));
+  // Compact index of all verified players that is safe to read from any thread
+  @Getter
+  private final VerifiedPlayerIndex index = new VerifiedPlayerIndex();
+  // Filter used to skip the cache lookup for IP addresses that have never been verified
+  @Getter
+  private final InetAddressFilter filter = new InetAddressFilter(1024);
+  private final AtomicBoolean filterRebuildScheduled = new AtomicBoolean();
+  // Fingerprints of IP addresses and usernames that are known to be verified
+  private final VerifiedFingerprintSet fingerprints = new VerifiedFingerprintSet();
+  final int maximumCacheSize;
+  private @Nullable VerifiedPlayerWriteBuffer writeBuffer;
+  // Only used if the database type is FILE
+  @Nullable VerifiedPlayerFileStore fileStore;
+  private @Nullable ScheduledFuture<?> flushTask, expiryTask, syncTask;
+  private final int maximumAge;
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  @Nullable ConnectionSource connectionSource;
+  Dao<VerifiedPlayer, Integer> dao;
+  Dao<VerifiedPlayerRemoval, Integer> removalDao;
+  // The warm-up, lookups, expiry and sync are split into their own classes,
+  // but they all share the cache and database of this controller
+  final VerifiedPlayerLookup lookup = new VerifiedPlayerLookup(this);
+  private final VerifiedPlayerExpiry expiry = new VerifiedPlayerExpiry(this);
+  private final VerifiedPlayerSync sync = new VerifiedPlayerSync(this);
+  @Getter
+  private final Metrics metrics = new Metrics();
   @Getter
   private final @NotNull SonarConfiguration.Database.Type cachedDatabaseType;
+  private final @Nullable LibraryManager libraryManager;
+  final @NotNull LoggerWrapper logger;
 
-  public VerifiedPlayerController(final @NotNull LibraryManager libraryManager) {
+  public VerifiedPlayerController(final @Nullable LibraryManager libraryManager) {
     final SonarConfiguration.Database database = Sonar.get().getConfig().getDatabase();
+    this.libraryManager = libraryManager;
+    this.logger = Sonar.get().getLogger();
     cachedDatabaseType = database.getType();
+    // The file store always keeps every entry in memory
+    maximumCacheSize = cachedDatabaseType == SonarConfiguration.Database.Type.FILE
+      ? Integer.MAX_VALUE : database.getCacheSize();
+    maximumAge = database.getMaximumAge();
 
     if (cachedDatabaseType == SonarConfiguration.Database.Type.NONE) {
-      Sonar.get().getLogger().warn("Configure a database to save verified players.");
+      logger.warn("Configure a database to save verified players.");
       return;
     }
 
-    // Make sure to only load the driver once per database type
-    if (!cachedDatabaseType.isLoaded()) {
-      Sonar.get().getLogger().info("Loading {} driver version {}",
-        cachedDatabaseType.getDatabaseType().getDatabaseName(),
-        cachedDatabaseType.getDatabaseDriver().getVersion());
-      libraryManager.loadLibrary(cachedDatabaseType.getDatabaseDriver());
-      cachedDatabaseType.setLoaded(true);
+    if (cachedDatabaseType == SonarConfiguration.Database.Type.FILE) {
+      setUpFileStore();
+      return;
     }
 
     try {
-      final String jdbcURL;
-
-      // H2 has a different JDBC URL layout
-      // https://www.codejava.net/java-se/jdbc/connect-to-h2-database-examples
-      if (cachedDatabaseType == SonarConfiguration.Database.Type.H2) {
-        final File file = new File(Sonar.get().getConfig().getPluginFolder(),
-          Sonar.get().getConfig().getGeneralConfig().getString("database.filename"));
-        jdbcURL = String.format(cachedDatabaseType.getConnectionString(), file.getAbsolutePath());
-      } else {
-        // Normal JDBC URL layout for MySQL/MariaDB/...
-        jdbcURL = String.format(cachedDatabaseType.getConnectionString(),
-          Sonar.get().getConfig().getGeneralConfig().getString("database.host"),
-          Sonar.get().getConfig().getGeneralConfig().getInt("database.port"),
-          Sonar.get().getConfig().getGeneralConfig().getString("database.name"));
-      }
-
-      connectionSource = new JdbcConnectionSource(jdbcURL,
+      final TimedConnectionSource pooledConnectionSource = new TimedConnectionSource(getJdbcURL(cachedDatabaseType),
         Sonar.get().getConfig().getGeneralConfig().getString("database.username"),
         Sonar.get().getConfig().getGeneralConfig().getString("database.password"),
-        cachedDatabaseType.getDatabaseType());
+        cachedDatabaseType.getDatabaseType(), metrics.connectionWait);
+      // Make sure to keep a connection for every thread that accesses the database
+      pooledConnectionSource.setMaxConnectionsFree(VerifiedPlayerLookup.DB_LOOKUP_WORKERS + 1);
+      // Make sure broken connections (e.g. after a database restart) are replaced
+      pooledConnectionSource.setTestBeforeGet(true);
+      pooledConnectionSource.setCheckConnectionsEveryMillis(TimeUnit.SECONDS.toMillis(30L));
+      pooledConnectionSource.setMaxConnectionAgeMillis(TimeUnit.MINUTES.toMillis(30L));
+      setUpDatabase(pooledConnectionSource, database.getSyncInterval());
+    } catch (SQLException exception) {
+      logger.error("Error setting up database: {}", exception);
+    }
+  }
 
-      // Create database table
-      try {
-        TableUtils.createTableIfNotExists(connectionSource, VerifiedPlayer.class);
-      } catch (SQLException ignored) {
-        /*
-         * This is caused by a duplicate index;
-         * I know this isn't the best method of handling it,
-         * but I don't know how else I could address this issue.
-         */
-      }
+  /**
+   * Creates a controller for an existing connection source without reading the configuration.
+   * This allows multiple controllers to share the same database (e.g. in tests).
+   *
+   * @param connectionSource Connection source of the database
+   * @param type             Type of the database
+   * @param maximumCacheSize Maximum number of IP addresses in the cache
+   * @param maximumAge       Maximum age of the entries in days
+   * @param syncInterval     Interval of the sync task in seconds (0 to disable it)
+   * @param logger           Logger used for errors and progress
+   */
+  VerifiedPlayerController(final @NotNull ConnectionSource connectionSource,
+                           final @NotNull SonarConfiguration.Database.Type type,
+                           final int maximumCacheSize,
+                           final int maximumAge,
+                           final int syncInterval,
+                           final @NotNull LoggerWrapper logger) throws SQLException {
+    this.libraryManager = null;
+    this.logger = logger;
+    this.cachedDatabaseType = type;
+    this.maximumCacheSize = maximumCacheSize;
+    this.maximumAge = maximumAge;
+    setUpDatabase(connectionSource, syncInterval);
+  }
 
-      dao = DaoManager.createDao(connectionSource, VerifiedPlayer.class);
-      queryBuilder = dao.queryBuilder();
+  static @NotNull ThreadFactory createThreadFactory(final @NotNull String threadName) {
+    return runnable -> {
+      final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+      thread.setName(threadName);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
 
-      // Make sure to run the clean task and the caching task in the same thread
-      // https://github.com/jonesdevelopment/sonar/issues/150
-      DB_UPDATE_SERVICE.execute(() -> {
-        try {
-          // Make sure to clear all outdated entries first
-          clearOld(database.getMaximumAge());
-          // Add all entries from the database to the cache
-          dao.queryForAll().forEach(this::_add);
-        } catch (SQLException exception) {
-          Sonar.get().getLogger().error("Error initializing database: {}", exception);
-        }
-      });
-    } catch (SQLException exception) {
-      Sonar.get().getLogger().error("Error setting up database: {}", exception);
+  /**
+   * Creates the tables, starts the periodic tasks and loads the most recent entries into the cache
+   */
+  private void setUpDatabase(final @NotNull ConnectionSource connectionSource,
+                             final int syncInterval) throws SQLException {
+    this.connectionSource = connectionSource;
+
+    // Create database table
+    try {
+      TableUtils.createTableIfNotExists(connectionSource, VerifiedPlayer.class);
+    } catch (SQLException ignored) {
+      /*
+       * This is caused by a duplicate index;
+       * I know this isn't the best method of handling it,
+       * but I don't know how else I could address this issue.
+       */
+    }
+
+    dao = DaoManager.createDao(connectionSource, VerifiedPlayer.class);
+    TableUtils.createTableIfNotExists(connectionSource, VerifiedPlayerRemoval.class);
+    removalDao = DaoManager.createDao(connectionSource, VerifiedPlayerRemoval.class);
+
+    // Make sure outdated entries can be found without scanning the entire table
+    try {
+      dao.executeRaw("CREATE INDEX "
+        + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "sonar_verified_players_timestamp_idx")
+        + " ON " + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "sonar_verified_players")
+        + " (" + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "timestamp") + ")");
+    } catch (SQLException ignored) {
+      // The index already exists
+    }
+
+    writeBuffer = new VerifiedPlayerWriteBuffer(connectionSource, dao, cachedDatabaseType);
+    flushTask = updateService.scheduleWithFixedDelay(this::flushWrites,
+      FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+
+    // Make sure to run the clean task and the caching task in the same thread,
+    // and to clear all outdated entries first
+    // https://github.com/jonesdevelopment/sonar/issues/150
+    updateService.execute(() -> expiry.expire(maximumAge, 0L, null));
+    // Everything written after this point will be picked up by the sync task
+    updateService.execute(sync::start);
+    // Add the most recent entries from the database to the cache
+    lookup.warmUp(connectionSource);
+    // Make sure to also remove entries that become outdated while the server is running
+    expiryTask = updateService.scheduleWithFixedDelay(() -> expiry.expire(maximumAge, 0L, null),
+      EXPIRY_INTERVAL, EXPIRY_INTERVAL, TimeUnit.MINUTES);
+    // Pick up players that have been verified or removed by other servers
+    if (syncInterval > 0) {
+      syncTask = updateService.scheduleWithFixedDelay(sync::sync,
+        syncInterval, syncInterval, TimeUnit.SECONDS);
     }
   }
 
+  /**
+   * Loads the driver of the database type if it hasn't been loaded yet
+   * and builds the JDBC URL from the configuration
+   */
+  private @NotNull String getJdbcURL(final @NotNull SonarConfiguration.Database.Type type) {
+    // Make sure to only load the driver once per database type
+    if (!type.isLoaded() && libraryManager != null) {
+      logger.info("Loading {} driver version {}",
+        type.getDatabaseType().getDatabaseName(), type.getDatabaseDriver().getVersion());
+      libraryManager.loadLibrary(type.getDatabaseDriver());
+      type.setLoaded(true);
+    }
+
+    // H2 has a different JDBC URL layout
+    // https://www.codejava.net/java-se/jdbc/connect-to-h2-database-examples
+    if (type == SonarConfiguration.Database.Type.H2) {
+      return String.format(type.getConnectionString(), getDatabaseFile("").getAbsolutePath());
+    }
+    // Normal JDBC URL layout for MySQL/MariaDB/...
+    return String.format(type.getConnectionString(),
+      Sonar.get().getConfig().getGeneralConfig().getString("database.host"),
+      Sonar.get().getConfig().getGeneralConfig().getInt("database.port"),
+      Sonar.get().getConfig().getGeneralConfig().getString("database.name"));
+  }
+
+  private static @NotNull File getDatabaseFile(final @NotNull String extension) {
+    return new File(Sonar.get().getConfig().getPluginFolder(),
+      Sonar.get().getConfig().getGeneralConfig().getString("database.filename") + extension);
+  }
+
+  /**
+   * Opens the append-only file and replays it into the cache in the background
+   */
+  private void setUpFileStore() {
+    final VerifiedPlayerFileStore fileStore;
+    try {
+      fileStore = new VerifiedPlayerFileStore(getDatabaseFile(".dat"), logger);
+    } catch (IOException exception) {
+      logger.error("Error setting up database: {}", exception);
+      return;
+    }
+    this.fileStore = fileStore;
+
+    lookup.warmUp(fileStore);
+    // Make sure to clear all outdated entries once the file has been loaded
+    updateService.execute(() -> expiry.expire(maximumAge, 0L, null));
+
+    flushTask = updateService.scheduleWithFixedDelay(this::flushWrites,
+      FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    expiryTask = updateService.scheduleWithFixedDelay(() -> expiry.expire(maximumAge, 0L, null),
+      EXPIRY_INTERVAL, EXPIRY_INTERVAL, TimeUnit.MINUTES);
+  }
+
   /**
    * Closes the connection if instantiated
    */
   public void close() {
-    // The connection source will always be null if the database type is NONE.
-    if (connectionSource != null) {
-      try {
+    // The connection source and file store will always be null if the database type is NONE.
+    if (connectionSource == null && fileStore == null) {
+      updateService.shutdown();
+      lookup.shutdown();
+      return;
+    }
+    if (flushTask != null) {
+      flushTask.cancel(false);
+    }
+    if (expiryTask != null) {
+      expiryTask.cancel(false);
+    }
+    if (syncTask != null) {
+      syncTask.cancel(false);
+    }
+    // Make sure to write all pending changes before closing the connection
+    try {
+      updateService.submit(() -> flushWrites(true)).get(10L, TimeUnit.SECONDS);
+    } catch (Exception exception) {
+      logger.error("Error writing pending entries: {}", exception);
+    }
+    updateService.shutdown();
+    lookup.shutdown();
+    try {
+      if (connectionSource != null) {
         connectionSource.close();
-      } catch (Exception exception) {
-        Sonar.get().getLogger().error("Error closing database: {}", exception);
       }
+      if (fileStore != null) {
+        fileStore.close();
+      }
+    } catch (Exception exception) {
+      logger.error("Error closing database: {}", exception);
     }
   }
 
   /**
-   * Clear all old entries using the given timestamp.
+   * Writes all pending inserts and deletes to the database
    */
-  private void clearOld(final @Range(from = 1, to = 365) int maximumAge) throws SQLException {
-    final long timestamp = Instant.now()
-      .minus(maximumAge, ChronoUnit.DAYS)
-      .getEpochSecond() * 1000L; // convert to ms
-
-    final List<VerifiedPlayer> oldEntries = queryBuilder.where()
-      .lt("timestamp", new Timestamp(timestamp))
-      .query();
+  private void flushWrites() {
+    flushWrites(false);
+  }
 
-    if (oldEntries != null && !oldEntries.isEmpty()) {
-      for (final VerifiedPlayer player : oldEntries) {
-        dao.delete(player);
+  /**
+   * Writes all pending inserts and deletes to the database
+   *
+   * @param force Whether to write even if the last write failed recently
+   * @return false if the pending changes couldn't be written
+   */
+  boolean flushWrites(final boolean force) {
+    flushScheduled.set(false);
+    if (getPendingWrites() == 0) {
+      return true;
+    }
+    final long start = System.nanoTime();
+    try {
+      if (fileStore != null) {
+        fileStore.flush();
+      } else if (writeBuffer != null) {
+        writeBuffer.flush(force);
       }
-      Sonar.get().getLogger().info("Removed {} database entries older than {} days.",
-        oldEntries.size(), maximumAge);
+      return true;
+    } catch (IOException | SQLException exception) {
+      // The write buffer keeps the entries and tries to write them again later
+      logger.error("Error trying to write entries: {}", exception);
+      return false;
+    } finally {
+      metrics.write.record(start);
+    }
+  }
+
+  /**
+   * Writes all pending changes once all previously queued changes have been processed
+   *
+   * @return Future completed once all pending changes have been written
+   */
+  public @NotNull CompletableFuture<Void> flush() {
+    return CompletableFuture.runAsync(() -> flushWrites(true), updateService);
+  }
+
+  /**
+   * Flushes the pending writes early if enough of them have been collected
+   */
+  private void flushIfNecessary(final @NotNull VerifiedPlayerWriteBuffer writeBuffer) {
+    if (writeBuffer.getBacklog() >= FLUSH_THRESHOLD && flushScheduled.compareAndSet(false, true)) {
+      updateService.execute(this::flushWrites);
+    }
+  }
+
+  /**
+   * @return Number of inserts and deletes that haven't been written to the database yet
+   */
+  public int getPendingWrites() {
+    if (fileStore != null) {
+      return fileStore.getBufferedRecords();
+    }
+    return writeBuffer == null ? 0 : writeBuffer.getBacklog();
+  }
+
+  /**
+   * @return Number of database updates waiting to be executed
+   * @apiNote This includes the periodic flush, expiry and sync tasks
+   */
+  public int getQueuedUpdates() {
+    return updateService.getQueue().size();
+  }
+
+  /**
+   * @return Number of database lookups waiting for a free worker
+   */
+  public int getQueuedLookups() {
+    return lookup.getQueuedLookups();
+  }
+
+  /**
+   * @return Whether all entries from the database have been loaded into the cache
+   */
+  public boolean isWarmedUp() {
+    return lookup.isWarmedUp();
+  }
+
+  /**
+   * @return Whether every entry from the database is also in the cache
+   */
+  public boolean isFullyCached() {
+    return lookup.isFullyCached();
+  }
+
+  /**
+   * Checks whether the player has to be looked up in the database,
+   * because the IP address might be in the database, but not in the cache.
+   * Only IP addresses that have been evicted from (or didn't fit into) the cache
+   * have to be looked up once the cache has been warmed up.
+   *
+   * @param inetAddress IP address
+   * @return false if the IP address is definitely in the cache or not in the database
+   */
+  public boolean mightBeUncached(final @NotNull InetAddress inetAddress) {
+    return lookup.mightBeUncached(inetAddress);
+  }
+
+  /**
+   * Looks up a player that is not in the cache in the database and,
+   * if the player has been found, adds the player to the cache again.
+   *
+   * @param inetAddress IP address
+   * @param uuid        UUID associated to the IP
+   * @return Future completed with whether the database contains the IP and UUID
+   */
+  public @NotNull CompletableFuture<Boolean> lookup(final @NotNull InetAddress inetAddress,
+                                                    final @NotNull UUID uuid) {
+    return lookup.lookup(inetAddress, uuid);
+  }
+
+  /**
+   * Removes all entries that are older than the given number of days
+   * from the database and the cache in the background.
+   *
+   * @param days Minimum age of the removed entries in days
+   * @return Future completed with the number of removed entries
+   */
+  public @NotNull CompletableFuture<Long> prune(final int days) {
+    final CompletableFuture<Long> future = new CompletableFuture<>();
+    // The cache doesn't know when a player has been verified
+    if (cachedDatabaseType == SonarConfiguration.Database.Type.NONE) {
+      future.complete(0L);
+      return future;
     }
+    updateService.execute(() -> expiry.expire(days, 0L, future));
+    return future;
+  }
+
+  /**
+   * Reads the changes made by other servers once all previously queued tasks have been processed
+   *
+   * @return Future completed once the changes have been applied to the cache
+   */
+  @NotNull CompletableFuture<Void> requestSync() {
+    return CompletableFuture.runAsync(sync::sync, updateService);
   }
 
   /**
    * First, remove the player from the local cache and then,
-   * secondly, asynchronously add the player to the database.
+   * secondly, queue the removal from the database.
    *
    * @param inetAddress InetAddress of the VerifiedPlayer model
    */
@@ -173,27 +469,24 @@ public void remove(final @NotNull String inetAddress) {
       return;
     }
 
-    DB_UPDATE_SERVICE.execute(() -> {
-      // We cannot throw a NullPointerException within the executor service
-      // because we want to handle the error instead of simply throwing an exception
-      if (connectionSource == null) {
-        return;
-      }
-
-      try {
-        final List<VerifiedPlayer> verifiedPlayer = queryBuilder.where()
-          .eq("ip_address", inetAddress)
-          .query();
-
-        if (verifiedPlayer != null) {
-          for (final VerifiedPlayer player : verifiedPlayer) {
-            dao.delete(player);
-          }
+    final VerifiedPlayerFileStore fileStore = this.fileStore;
+    if (fileStore != null) {
+      updateService.execute(() -> {
+        try {
+          fileStore.removeAddress(InetAddress.getByName(inetAddress));
+        } catch (IOException exception) {
+          logger.error("Error trying to remove entry: {}", exception);
         }
-      } catch (SQLException exception) {
-        Sonar.get().getLogger().error("Error trying to remove entry: {}", exception);
-      }
-    });
+      });
+      return;
+    }
+
+    // The write buffer will be null if the database could not be set up
+    final VerifiedPlayerWriteBuffer writeBuffer = this.writeBuffer;
+    if (writeBuffer != null) {
+      writeBuffer.delete(inetAddress);
+      flushIfNecessary(writeBuffer);
+    }
   }
 
   /**
@@ -201,13 +494,47 @@ public void remove(final @NotNull String inetAddress) {
    *
    * @param inetAddress IP address of the player
    */
-  private void _remove(final @NotNull String inetAddress) {
-    cache.remove(inetAddress);
+  void _remove(final @NotNull String inetAddress) {
+    if (index.remove(inetAddress)) {
+      filter.remove();
+      rebuildFilterIfNecessary();
+    }
+    // Fingerprints have to be removed after the index, so they can't be remembered again
+    fingerprints.remove(inetAddress);
+  }
+
+  /**
+   * Locally remove a single UUID of the IP address from the cache
+   *
+   * @param inetAddress IP address of the player
+   * @param uuid        UUID of the player
+   */
+  void _remove(final @NotNull String inetAddress, final @NotNull UUID uuid) {
+    if (index.remove(inetAddress, uuid)) {
+      filter.remove();
+      rebuildFilterIfNecessary();
+    }
+    // We don't know which fingerprint belongs to the UUID, so remove all of the IP address
+    fingerprints.remove(inetAddress);
+  }
+
+  /**
+   * Rebuilds the filter in the background if it has grown too large
+   * or if too many entries have been removed from the cache
+   */
+  private void rebuildFilterIfNecessary() {
+    if (filter.shouldRebuild() && filterRebuildScheduled.compareAndSet(false, true)) {
+      updateService.execute(() -> {
+        filterRebuildScheduled.set(false);
+        // Never pass a snapshot of the index, since that would miss concurrently added entries
+        filter.rebuild(index.size(), index::forEachHostAddress);
+      });
+    }
   }
 
   /**
    * First, cache the player locally and then,
-   * secondly, asynchronously add the player to the database.
+   * secondly, queue the player to be written to the database.
    *
    * @param player VerifiedPlayer model
    */
@@ -219,19 +546,163 @@ public void add(final @NotNull VerifiedPlayer player) {
       return;
     }
 
-    DB_UPDATE_SERVICE.execute(() -> {
-      // We cannot throw a NullPointerException within the executor service
-      // because we want to handle the error instead of simply throwing an exception
-      if (connectionSource == null) {
-        return;
+    // Make sure we don't write to the file on the calling thread
+    if (fileStore != null) {
+      updateService.execute(() -> store(player));
+      return;
+    }
+
+    // The write buffer will be null if the database could not be set up
+    final VerifiedPlayerWriteBuffer writeBuffer = this.writeBuffer;
+    if (writeBuffer != null) {
+      writeBuffer.insert(player);
+      flushIfNecessary(writeBuffer);
+    }
+  }
+
+  /**
+   * Writes the player to the database or file, but not to the local cache.
+   * This must only be called from the database update thread.
+   *
+   * @param player VerifiedPlayer model
+   */
+  private void store(final @NotNull VerifiedPlayer player) {
+    if (fileStore != null) {
+      try {
+        // Only IP addresses are stored, so this will never perform a lookup
+        fileStore.add(InetAddress.getByName(player.getInetAddress()),
+          player.getPlayerUuid(), player.getTimestamp().getTime());
+      } catch (IOException exception) {
+        logger.error("Error trying to write entry: {}", exception);
       }
+    } else if (writeBuffer != null) {
+      writeBuffer.insert(player);
+      // We're already on the update thread, so we can flush directly
+      if (writeBuffer.getBacklog() >= FLUSH_THRESHOLD) {
+        flushWrites();
+      }
+    }
+  }
 
+  /**
+   * Copies all entries from another database into the configured database.
+   * Entries that already exist are only updated.
+   *
+   * @param source Database type to copy the entries from
+   * @return Future completed with the number of copied entries
+   */
+  public @NotNull CompletableFuture<Long> migrate(final @NotNull SonarConfiguration.Database.Type source) {
+    final CompletableFuture<Long> future = new CompletableFuture<>();
+    // Make sure the migration is executed in order with all other writes
+    updateService.execute(() -> {
+      final MigrationSource migrationSource;
       try {
-        dao.createIfNotExists(player);
-      } catch (SQLException exception) {
-        Sonar.get().getLogger().error("Error trying to add entry: {}", exception);
+        if (source == SonarConfiguration.Database.Type.FILE) {
+          final File file = getDatabaseFile(".dat");
+          if (!file.exists()) {
+            throw new IOException("File does not exist: " + file);
+          }
+          migrationSource = MigrationSource.of(new VerifiedPlayerFileStore(file, logger));
+        } else {
+          migrationSource = MigrationSource.of(new JdbcConnectionSource(getJdbcURL(source),
+            Sonar.get().getConfig().getGeneralConfig().getString("database.username"),
+            Sonar.get().getConfig().getGeneralConfig().getString("database.password"),
+            source.getDatabaseType()));
+        }
+      } catch (Exception exception) {
+        logger.error("Error migrating entries from {}: {}", source.getDisplayName(), exception);
+        future.completeExceptionally(exception);
+        return;
       }
+      migrate(source, migrationSource, 0L, future);
     });
+    return future;
+  }
+
+  /**
+   * Copies one page of entries into the configured database.
+   * The next page is copied in a separate task, so other tasks don't have to wait.
+   *
+   * @param source          Database type to copy the entries from
+   * @param migrationSource Entries that haven't been copied yet
+   * @param migrated        Number of entries copied by the previous pages
+   * @param future          Future completed with the total number of copied entries
+   */
+  private void migrate(final @NotNull SonarConfiguration.Database.Type source,
+                       final @NotNull MigrationSource migrationSource,
+                       final long migrated,
+                       final @NotNull CompletableFuture<Long> future) {
+    try {
+      final List<VerifiedPlayer> page = migrationSource.nextPage(MIGRATION_PAGE_SIZE);
+      for (final VerifiedPlayer player : page) {
+        _add(player);
+        store(player);
+      }
+
+      final long total = migrated + page.size();
+      if (page.size() == MIGRATION_PAGE_SIZE) {
+        updateService.execute(() -> migrate(source, migrationSource, total, future));
+        return;
+      }
+      migrationSource.close();
+      flushWrites(true);
+      future.complete(total);
+    } catch (Exception exception) {
+      logger.error("Error migrating entries from {}: {}", source.getDisplayName(), exception);
+      try {
+        migrationSource.close();
+      } catch (Exception closeException) {
+        logger.error("Error closing database: {}", closeException);
+      }
+      future.completeExceptionally(exception);
+    }
+  }
+
+  /**
+   * Calls the consumer for every entry of the configured database.
+   * This blocks until all entries have been read, so it must not be called
+   * from the database update thread or any other time-sensitive thread.
+   * Entries are read page by page, so the consumer may block without holding a connection.
+   *
+   * @param consumer Consumer that is called for every entry
+   */
+  public void export(final @NotNull Consumer<VerifiedPlayer> consumer) throws IOException, SQLException {
+    // Make sure pending writes are also exported
+    flush().join();
+
+    if (fileStore != null) {
+      fileStore.forEach(index.entries(), index::contains, consumer);
+      return;
+    }
+
+    // The cache is the only source of entries if the database type is NONE
+    if (connectionSource == null) {
+      final long timestamp = System.currentTimeMillis();
+      for (final String hostAddress : index.getHostAddresses()) {
+        for (final UUID uuid : index.getUUIDs(hostAddress)) {
+          consumer.accept(new VerifiedPlayer(hostAddress, uuid, timestamp));
+        }
+      }
+      return;
+    }
+
+    // Continue after the last ID of the previous page, so every page is a range scan
+    int lastId = 0;
+    while (true) {
+      final List<VerifiedPlayer> page = dao.queryBuilder()
+        .orderBy("id", true)
+        .limit(EXPORT_PAGE_SIZE)
+        .where()
+        .gt("id", lastId)
+        .query();
+      for (final VerifiedPlayer player : page) {
+        consumer.accept(player);
+      }
+      if (page.size() < EXPORT_PAGE_SIZE) {
+        return;
+      }
+      lastId = page.get(page.size() - 1).getId();
+    }
   }
 
   /**
@@ -239,9 +710,45 @@ public void add(final @NotNull VerifiedPlayer player) {
    *
    * @param player VerifiedPlayer model
    */
-  private void _add(final @NotNull VerifiedPlayer player) {
-    cache.computeIfAbsent(player.getInetAddress(), v -> new ArrayList<>())
-      .add(player.getPlayerUuid());
+  void _add(final @NotNull VerifiedPlayer player) {
+    _add(player.getInetAddress(), player.getPlayerUuid());
+  }
+
+  /**
+   * Locally cache the IP address and UUID
+   *
+   * @param inetAddress IP address of the player
+   * @param uuid        UUID of the player
+   */
+  void _add(final @NotNull String inetAddress, final @NotNull UUID uuid) {
+    if (index.add(inetAddress, uuid)) {
+      filter.add(inetAddress);
+      // Make sure the cache doesn't grow past the configured size
+      if (index.size() > maximumCacheSize) {
+        final int count = index.evict(Math.max(1, maximumCacheSize / 100), hostAddress -> {
+          fingerprints.remove(hostAddress);
+          // Evicted players have to be looked up in the database again
+          lookup.addUncached(hostAddress);
+        });
+        for (int i = 0; i < count; i++) {
+          filter.remove();
+        }
+      }
+      rebuildFilterIfNecessary();
+    }
+  }
+
+  /**
+   * Locally cache the IP address and UUID without converting the IP address to a string
+   *
+   * @param inetAddress IP address of the player
+   * @param uuid        UUID of the player
+   */
+  void _add(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) {
+    if (index.add(inetAddress, uuid)) {
+      filter.add(inetAddress);
+      rebuildFilterIfNecessary();
+    }
   }
 
   /**
@@ -250,7 +757,7 @@ private void _add(final @NotNull VerifiedPlayer player) {
    * @return Estimated size of the local cache
    */
   public int estimatedSize() {
-    return cache.size();
+    return index.size();
   }
 
   /**
@@ -259,48 +766,126 @@ public int estimatedSize() {
    *
    * @return Exact size of all total verified players
    */
-  @Deprecated
-  public synchronized int exactSize() {
-    return cache.values().stream()
-      .mapToInt(Collection::size)
-      .sum();
+  public int exactSize() {
+    return index.entries();
   }
 
   /**
    * @return {@link java.util.Collection} of UUIDs associated with an IP address
    */
   public @Unmodifiable Collection<UUID> getUUIDs(final @NotNull String inetAddress) {
-    return cache.getOrDefault(inetAddress, Collections.emptyList());
+    return index.getUUIDs(inetAddress);
   }
 
   /**
    * Clear the local cache, and, if the database type is set,
-   * remove the table from the database.
+   * remove the table from the database in the background.
    */
-  public synchronized void clearAll() {
-    cache.clear();
+  public void clearAll() {
+    clearCache();
+
+    final VerifiedPlayerFileStore fileStore = this.fileStore;
+    if (fileStore != null) {
+      // Make sure all previously queued writes are discarded as well
+      updateService.execute(() -> {
+        try {
+          fileStore.clear();
+        } catch (IOException exception) {
+          logger.error("Error trying to clear entries: {}", exception);
+        }
+      });
+      return;
+    }
 
     // Delete the entire table from the database, if necessary
-    if (cachedDatabaseType != SonarConfiguration.Database.Type.NONE) {
-      try {
-        dao.deleteBuilder().delete();
-      } catch (SQLException exception) {
-        Sonar.get().getLogger().error("Error trying to clear entries: {}", exception);
+    if (dao != null) {
+      if (writeBuffer != null) {
+        writeBuffer.clear();
       }
+      // Deleting a large table can take a while, so we don't want to block the caller
+      updateService.execute(() -> {
+        try {
+          TransactionManager.callInTransaction(connectionSource, () -> {
+            dao.deleteBuilder().delete();
+            // Make sure other servers also clear their cache
+            removalDao.create(new VerifiedPlayerRemoval("", null, System.currentTimeMillis()));
+            return null;
+          });
+        } catch (SQLException exception) {
+          logger.error("Error trying to clear entries: {}", exception);
+        }
+      });
     }
   }
 
+  /**
+   * Locally clear the cache without touching the database
+   */
+  void clearCache() {
+    index.clear();
+    fingerprints.clear();
+    filter.rebuild(Collections.emptyList());
+    lookup.clearUncached();
+  }
+
   /**
    * @param inetAddress IP address
    * @param uuid        UUID associated to the IP
    * @return Whether the local cache contains the IP and UUID
    */
   public boolean has(final @NotNull String inetAddress, final @NotNull UUID uuid) {
-    final Collection<UUID> got = cache.get(inetAddress);
-    if (got != null) {
-      return got.contains(uuid);
+    return index.contains(inetAddress, uuid);
+  }
+
+  /**
+   * @param inetAddress IP address
+   * @param uuid        UUID associated to the IP
+   * @return Whether the local cache contains the IP and UUID
+   */
+  public boolean has(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) {
+    // Most IP addresses have never been verified, so we can skip the lookup
+    if (!filter.mightContain(inetAddress)) {
+      return false;
     }
-    return false;
+    return index.contains(inetAddress, uuid);
+  }
+
+  /**
+   * Checks whether the player is verified without computing the offline UUID.
+   * This only works for players who have been remembered since the last removal,
+   * so {@link #has(InetAddress, UUID)} still has to be checked if this returns false.
+   *
+   * @param inetAddress IP address
+   * @param username    Username of the player
+   * @return Whether the IP address and username are known to be verified
+   */
+  public boolean has(final @NotNull InetAddress inetAddress, final @NotNull String username) {
+    return fingerprints.contains(inetAddress, username);
+  }
+
+  /**
+   * Returns the current epoch of the remembered players, which changes whenever
+   * a player is removed. This has to be read <i>before</i> checking whether the player
+   * is verified, and then passed to {@link #remember(InetAddress, String, long)}.
+   *
+   * @return Current epoch of the remembered players
+   */
+  public long getEpoch() {
+    return fingerprints.epoch();
+  }
+
+  /**
+   * Remembers that the IP address and username are verified,
+   * so the next login of the player doesn't have to compute the offline UUID.
+   * Nothing is remembered if a player has been removed since the epoch was read,
+   * since the player might have been removed after they have been checked.
+   *
+   * @param inetAddress IP address
+   * @param username    Username of the player
+   * @param epoch       Epoch read before checking whether the player is verified
+   */
+  public void remember(final @NotNull InetAddress inetAddress, final @NotNull String username, final long epoch) {
+    fingerprints.add(inetAddress, username, epoch);
   }
 
   /**
@@ -308,6 +893,42 @@ public boolean has(final @NotNull String inetAddress, final @NotNull UUID uuid)
    * @return Whether the local cache contains the IP
    */
   public boolean has(final @NotNull String inetAddress) {
-    return cache.containsKey(inetAddress);
+    return index.contains(inetAddress);
+  }
+
+  @Getter
+  public static final class Metrics {
+    // Time spent waiting for a connection from the pool
+    private final LatencyMetric connectionWait = new LatencyMetric();
+    private final LatencyMetric lookup = new LatencyMetric();
+    private final LatencyMetric write = new LatencyMetric();
+    private final LatencyMetric expiry = new LatencyMetric();
+    private final LatencyMetric sync = new LatencyMetric();
+  }
+
+  /**
+   * Connection pool that keeps track of how long it takes to get a connection
+   */
+  private static final class TimedConnectionSource extends JdbcPooledConnectionSource {
+    private final LatencyMetric connectionWait;
+
+    TimedConnectionSource(final @NotNull String url,
+                          final @NotNull String username,
+                          final @NotNull String password,
+                          final @NotNull DatabaseType databaseType,
+                          final @NotNull LatencyMetric connectionWait) throws SQLException {
+      super(url, username, password, databaseType);
+      this.connectionWait = connectionWait;
+    }
+
+    @Override
+    public DatabaseConnection getReadWriteConnection(final String tableName) throws SQLException {
+      final long start = System.nanoTime();
+      try {
+        return super.getReadWriteConnection(tableName);
+      } finally {
+        connectionWait.record(start);
+      }
+    }
   }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.support.ConnectionSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayerRemoval;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Removes outdated entries from the database or file and the cache of a controller.
+ * All methods must only be called from the database update thread.
+ */
+final class VerifiedPlayerExpiry {
+  // Outdated entries are removed in batches of 1000 entries
+  private static final int EXPIRY_BATCH_SIZE = 1000;
+  // Tombstones only have to be kept until all other servers have read them
+  private static final long REMOVAL_RETENTION = 1L;
+
+  private final @NotNull VerifiedPlayerController controller;
+
+  VerifiedPlayerExpiry(final @NotNull VerifiedPlayerController controller) {
+    this.controller = controller;
+  }
+
+  /**
+   * Removes one batch of outdated entries from the database and the cache.
+   * The next batch is removed in a separate task, so other tasks don't have to wait.
+   *
+   * @param days    Minimum age of the removed entries in days
+   * @param removed Number of entries removed by the previous batches
+   * @param future  Future completed with the total number of removed entries, if any
+   */
+  void expire(final int days, final long removed, final @Nullable CompletableFuture<Long> future) {
+    if (controller.fileStore != null) {
+      final long compacted = compact(days);
+      if (future != null) {
+        future.complete(compacted);
+      }
+      return;
+    }
+
+    // We cannot throw a NullPointerException within the executor service
+    // because we want to handle the error instead of simply throwing an exception
+    final ConnectionSource connectionSource = controller.connectionSource;
+    if (connectionSource == null) {
+      if (future != null) {
+        future.complete(0L);
+      }
+      return;
+    }
+
+    // Make sure we don't remove players whose timestamp has just been updated
+    controller.flushWrites(true);
+
+    final long start = System.nanoTime();
+    try {
+      final Timestamp timestamp = new Timestamp(Instant.now()
+        .minus(days, ChronoUnit.DAYS)
+        .toEpochMilli());
+
+      // The timestamp index allows us to find outdated entries without a table scan
+      final List<VerifiedPlayer> oldEntries = controller.dao.queryBuilder()
+        .selectColumns("id", "ip_address", "player_uuid")
+        .orderBy("timestamp", true)
+        .limit((long) EXPIRY_BATCH_SIZE)
+        .where()
+        .lt("timestamp", timestamp)
+        .query();
+
+      final List<VerifiedPlayer> deleted = oldEntries.isEmpty() ? Collections.emptyList()
+        : TransactionManager.callInTransaction(connectionSource, () -> delete(oldEntries, timestamp));
+      // Only remove the players from the cache once they have actually been removed from the database
+      for (final VerifiedPlayer player : deleted) {
+        controller._remove(player.getInetAddress(), player.getPlayerUuid());
+      }
+
+      final long total = removed + deleted.size();
+      if (oldEntries.size() == EXPIRY_BATCH_SIZE) {
+        controller.updateService.execute(() -> expire(days, total, future));
+        return;
+      }
+      if (total > 0L) {
+        controller.logger.info("Removed {} database entries older than {} days.", total, days);
+      }
+      if (future != null) {
+        future.complete(total);
+      }
+
+      // All other servers have read the tombstones by now
+      final DeleteBuilder<VerifiedPlayerRemoval, Integer> removalDeleteBuilder = controller.removalDao.deleteBuilder();
+      removalDeleteBuilder.where().lt("timestamp", new Timestamp(Instant.now()
+        .minus(REMOVAL_RETENTION, ChronoUnit.DAYS)
+        .toEpochMilli()));
+      removalDeleteBuilder.delete();
+    } catch (SQLException exception) {
+      controller.logger.error("Error trying to remove outdated entries: {}", exception);
+      if (future != null) {
+        future.completeExceptionally(exception);
+      }
+    } finally {
+      controller.getMetrics().getExpiry().record(start);
+    }
+  }
+
+  /**
+   * Deletes outdated entries from the database and creates their tombstones.
+   * This must be called within a transaction.
+   *
+   * @param entries   Entries that were outdated when they have been read
+   * @param timestamp Entries verified before this timestamp are outdated
+   * @return Entries that have actually been deleted
+   */
+  private @NotNull List<VerifiedPlayer> delete(final @NotNull List<VerifiedPlayer> entries,
+                                               final @NotNull Timestamp timestamp) throws SQLException {
+    final List<Integer> ids = new ArrayList<>(entries.size());
+    for (final VerifiedPlayer player : entries) {
+      ids.add(player.getId());
+    }
+    // Players might have been verified again (e.g. by another server) since they have been read
+    final DeleteBuilder<VerifiedPlayer, Integer> deleteBuilder = controller.dao.deleteBuilder();
+    deleteBuilder.where().in("id", ids).and().lt("timestamp", timestamp);
+    final int count = deleteBuilder.delete();
+
+    List<VerifiedPlayer> deleted = entries;
+    if (count < entries.size()) {
+      // Look up which players have been verified again, so they are neither removed nor tombstoned
+      final Set<Integer> remaining = new HashSet<>();
+      for (final VerifiedPlayer player : controller.dao.queryBuilder()
+        .selectColumns("id")
+        .where()
+        .in("id", ids)
+        .query()) {
+        remaining.add(player.getId());
+      }
+      deleted = new ArrayList<>(count);
+      for (final VerifiedPlayer player : entries) {
+        if (!remaining.contains(player.getId())) {
+          deleted.add(player);
+        }
+      }
+    }
+
+    // Make sure other servers also remove the players from their cache
+    final List<VerifiedPlayerRemoval> removals = new ArrayList<>(deleted.size());
+    final long now = System.currentTimeMillis();
+    for (final VerifiedPlayer player : deleted) {
+      removals.add(new VerifiedPlayerRemoval(player.getInetAddress(), player.getPlayerUuid(), now));
+    }
+    if (!removals.isEmpty()) {
+      controller.removalDao.create(removals);
+    }
+    return deleted;
+  }
+
+  /**
+   * Rewrites the file without outdated or removed entries if necessary
+   *
+   * @param days Minimum age of the removed entries in days
+   * @return Number of removed outdated entries
+   */
+  private long compact(final int days) {
+    final VerifiedPlayerFileStore fileStore = controller.fileStore;
+    if (fileStore == null) {
+      return 0L;
+    }
+
+    final VerifiedPlayerIndex index = controller.getIndex();
+    final long start = System.nanoTime();
+    try {
+      final long expiryTimestamp = Instant.now().minus(days, ChronoUnit.DAYS).toEpochMilli();
+      final long removed = fileStore.compactIfNecessary(index.entries(), expiryTimestamp, index::contains,
+        (inetAddress, uuid) -> controller._remove(inetAddress.getHostAddress(), uuid));
+      if (removed > 0L) {
+        controller.logger.info("Removed {} database entries older than {} days.", removed, days);
+      }
+      return removed;
+    } catch (IOException exception) {
+      controller.logger.error("Error trying to remove outdated entries: {}", exception);
+      return 0L;
+    } finally {
+      controller.getMetrics().getExpiry().record(start);
+    }
+  }
+}
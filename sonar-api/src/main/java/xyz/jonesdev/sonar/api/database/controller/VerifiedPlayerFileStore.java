@@ -0,0 +1,532 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+import xyz.jonesdev.sonar.api.logger.LoggerWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of verified players, used by the FILE database type.
+ * <br>
+ * Every change is appended as a small binary record protected by a CRC32 checksum.
+ * On startup, the file is memory-mapped and replayed from start to end.
+ * Records after a torn or corrupted write are discarded.
+ * The log is rewritten (compacted) in the background once it contains
+ * too many removed or outdated entries. Since the cache always contains every entry,
+ * it is used to tell which entries of the log have been removed.
+ * <br>
+ * Record layout: type (1 byte), address length (1 byte), address (4 or 16 bytes),
+ * UUID (16 bytes, not for address removals), timestamp (8 bytes, only for additions), CRC32 (4 bytes)
+ */
+final class VerifiedPlayerFileStore {
+  private static final int MAGIC = 0x534F4E52; // SONR
+  private static final byte VERSION = 1;
+  private static final int HEADER_SIZE = 5;
+  private static final byte ADD = 1, REMOVE = 2, REMOVE_ADDRESS = 3;
+  private static final int MAXIMUM_RECORD_SIZE = 2 + 16 + 16 + 8 + 4;
+
+  private final File file;
+  private final LoggerWrapper logger;
+  private final ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+  private final CRC32 checksum = new CRC32();
+  private FileChannel channel;
+  // Used to decide when the log should be compacted
+  private long records;
+  private long oldestTimestamp = Long.MAX_VALUE;
+  private int bufferedRecords;
+
+  VerifiedPlayerFileStore(final @NotNull File file, final @NotNull LoggerWrapper logger) throws IOException {
+    this.file = file;
+    this.logger = logger;
+    this.channel = open(file);
+  }
+
+  private static @NotNull FileChannel open(final @NotNull File file) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(),
+      StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (channel.size() < HEADER_SIZE) {
+      // Make sure to start new files with a valid header
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION);
+      header.flip();
+      channel.truncate(0L);
+      channel.write(header, 0L);
+    }
+    channel.position(channel.size());
+    return channel;
+  }
+
+  interface Replay {
+    void add(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid, final long timestamp);
+
+    void remove(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid);
+
+    void removeAddress(final @NotNull InetAddress inetAddress);
+  }
+
+  /**
+   * Replays all valid records of the log
+   *
+   * @return Number of valid records
+   */
+  synchronized long load(final @NotNull Replay replay) throws IOException {
+    flush();
+    final long size = channel.size();
+    final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+    if (mapped.getInt() != MAGIC || mapped.get() != VERSION) {
+      throw new IOException("Unsupported file format: " + file);
+    }
+
+    long count = 0L;
+    final byte[] ipv4 = new byte[4], ipv6 = new byte[16];
+    while (mapped.remaining() >= 2) {
+      final int start = mapped.position();
+      final byte type = mapped.get();
+      final int addressLength = mapped.get();
+      if (type < ADD || type > REMOVE_ADDRESS || (addressLength != 4 && addressLength != 16)) {
+        mapped.position(start);
+        break;
+      }
+      final int length = 2 + addressLength + (type == REMOVE_ADDRESS ? 0 : 16) + (type == ADD ? 8 : 0);
+      if (mapped.remaining() < length - 2 + 4) {
+        mapped.position(start);
+        break;
+      }
+
+      // Make sure the record hasn't been corrupted
+      checksum.reset();
+      checksum.update(mapped.duplicate().position(start).limit(start + length));
+      if ((int) checksum.getValue() != mapped.getInt(start + length)) {
+        mapped.position(start);
+        break;
+      }
+
+      final byte[] address = addressLength == 4 ? ipv4 : ipv6;
+      mapped.get(address);
+      final InetAddress inetAddress = InetAddress.getByAddress(address);
+      if (type == REMOVE_ADDRESS) {
+        replay.removeAddress(inetAddress);
+      } else {
+        final UUID uuid = new UUID(mapped.getLong(), mapped.getLong());
+        if (type == ADD) {
+          final long timestamp = mapped.getLong();
+          oldestTimestamp = Math.min(oldestTimestamp, timestamp);
+          replay.add(inetAddress, uuid, timestamp);
+        } else {
+          replay.remove(inetAddress, uuid);
+        }
+      }
+      mapped.position(start + length + 4);
+      count++;
+    }
+
+    // Discard everything after the last valid record
+    if (mapped.position() < size) {
+      logger.warn("Discarding {} bytes of corrupted data in {}",
+        size - mapped.position(), file.getName());
+      channel.truncate(mapped.position());
+      channel.position(mapped.position());
+    }
+    records = count;
+    return count;
+  }
+
+  synchronized void add(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid,
+                        final long timestamp) throws IOException {
+    oldestTimestamp = Math.min(oldestTimestamp, timestamp);
+    append(ADD, inetAddress.getAddress(), uuid, timestamp);
+  }
+
+  synchronized void remove(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) throws IOException {
+    append(REMOVE, inetAddress.getAddress(), uuid, 0L);
+  }
+
+  synchronized void removeAddress(final @NotNull InetAddress inetAddress) throws IOException {
+    append(REMOVE_ADDRESS, inetAddress.getAddress(), null, 0L);
+  }
+
+  private void append(final byte type, final byte[] address, final UUID uuid, final long timestamp) throws IOException {
+    if (writeBuffer.remaining() < MAXIMUM_RECORD_SIZE) {
+      flush();
+    }
+    final int start = writeBuffer.position();
+    writeBuffer.put(type).put((byte) address.length).put(address);
+    if (uuid != null) {
+      writeBuffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+    }
+    if (type == ADD) {
+      writeBuffer.putLong(timestamp);
+    }
+    checksum.reset();
+    checksum.update(writeBuffer.array(), start, writeBuffer.position() - start);
+    writeBuffer.putInt((int) checksum.getValue());
+    records++;
+    bufferedRecords++;
+  }
+
+  /**
+   * Writes all buffered records to the file
+   */
+  synchronized void flush() throws IOException {
+    writeBuffer.flip();
+    while (writeBuffer.hasRemaining()) {
+      channel.write(writeBuffer);
+    }
+    writeBuffer.clear();
+    bufferedRecords = 0;
+  }
+
+  /**
+   * @return Number of records that haven't been written to the file yet
+   */
+  synchronized int getBufferedRecords() {
+    return bufferedRecords;
+  }
+
+  /**
+   * Rewrites the log if it contains too many removed or outdated entries.
+   * Only the latest timestamp of every entry that is still in the cache is kept in memory,
+   * so the log itself never has to be loaded into memory.
+   *
+   * @param entries         Number of entries currently in the cache
+   * @param expiryTimestamp Entries older than this timestamp will be removed
+   * @param cached          Whether the entry is currently in the cache
+   * @param expired         Called for every removed outdated entry
+   * @return Number of outdated entries that have been removed
+   */
+  synchronized long compactIfNecessary(final int entries, final long expiryTimestamp,
+                                       final @NotNull BiPredicate<InetAddress, UUID> cached,
+                                       final @NotNull BiConsumer<InetAddress, UUID> expired) throws IOException {
+    if (records <= entries * 2L + 1024L && oldestTimestamp >= expiryTimestamp) {
+      return 0L;
+    }
+
+    final Timestamps timestamps = latestTimestamps(entries, cached);
+    final File compacted = new File(file.getPath() + ".tmp");
+    // Make sure we don't append to the leftovers of an interrupted compaction
+    Files.deleteIfExists(compacted.toPath());
+    final long[] removed = new long[1];
+    try (final FileChannel target = open(compacted)) {
+      final VerifiedPlayerFileStore writer = new VerifiedPlayerFileStore(compacted, logger, target);
+      final long[] oldest = {Long.MAX_VALUE};
+      final IOException[] failure = new IOException[1];
+      timestamps.forEach((address, uuid, timestamp) -> {
+        if (failure[0] != null) {
+          return;
+        }
+        try {
+          if (timestamp < expiryTimestamp) {
+            expired.accept(InetAddress.getByAddress(address), uuid);
+            removed[0]++;
+            return;
+          }
+          oldest[0] = Math.min(oldest[0], timestamp);
+          writer.append(ADD, address, uuid, timestamp);
+        } catch (IOException exception) {
+          failure[0] = exception;
+        }
+      });
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+      writer.flush();
+      target.force(true);
+      records = writer.records;
+      oldestTimestamp = oldest[0];
+    }
+
+    channel.close();
+    Files.move(compacted.toPath(), file.toPath(),
+      StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    channel = open(file);
+    return removed[0];
+  }
+
+  private VerifiedPlayerFileStore(final @NotNull File file, final @NotNull LoggerWrapper logger,
+                                  final @NotNull FileChannel channel) {
+    this.file = file;
+    this.logger = logger;
+    this.channel = channel;
+  }
+
+  /**
+   * Streams the log and collects the latest timestamp of every entry that is still in the cache.
+   * Removed entries and older duplicates are skipped without being kept in memory.
+   */
+  private @NotNull Timestamps latestTimestamps(final int entries,
+                                               final @NotNull BiPredicate<InetAddress, UUID> cached) throws IOException {
+    final Timestamps timestamps = new Timestamps(entries);
+    final long previousOldestTimestamp = oldestTimestamp;
+    load(new Replay() {
+      @Override
+      public void add(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid, final long timestamp) {
+        if (cached.test(inetAddress, uuid)) {
+          timestamps.put(inetAddress.getAddress(), uuid, timestamp);
+        }
+      }
+
+      @Override
+      public void remove(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) {
+        // The cache already knows whether the entry has been removed
+      }
+
+      @Override
+      public void removeAddress(final @NotNull InetAddress inetAddress) {
+        // The cache already knows whether the entry has been removed
+      }
+    });
+    oldestTimestamp = previousOldestTimestamp;
+    return timestamps;
+  }
+
+  /**
+   * Calls the consumer for every entry that is currently in the log and in the cache.
+   * The consumer is called without holding the lock, so it may block without delaying appends.
+   */
+  void forEach(final int entries, final @NotNull BiPredicate<InetAddress, UUID> cached,
+               final @NotNull Consumer<VerifiedPlayer> consumer) throws IOException {
+    final Timestamps timestamps;
+    synchronized (this) {
+      flush();
+      timestamps = latestTimestamps(entries, cached);
+    }
+    final IOException[] failure = new IOException[1];
+    timestamps.forEach((address, uuid, timestamp) -> {
+      try {
+        consumer.accept(new VerifiedPlayer(InetAddress.getByAddress(address), uuid, timestamp));
+      } catch (IOException exception) {
+        failure[0] = exception;
+      }
+    });
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+  }
+
+  /**
+   * Calls the consumer for every entry that is currently in the log.
+   * This is used for files that aren't cached, so the entries are first replayed into a temporary index.
+   */
+  void forEach(final @NotNull Consumer<VerifiedPlayer> consumer) throws IOException {
+    final IOException[] failure = new IOException[1];
+    readTimestamps().forEach((address, uuid, timestamp) -> {
+      try {
+        consumer.accept(new VerifiedPlayer(InetAddress.getByAddress(address), uuid, timestamp));
+      } catch (IOException exception) {
+        failure[0] = exception;
+      }
+    });
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+  }
+
+  /**
+   * Collects the latest timestamp of every entry that is currently in the log.
+   * This is used for files that aren't cached (e.g. when migrating),
+   * so the entries are first replayed into a temporary index.
+   */
+  synchronized @NotNull Timestamps readTimestamps() throws IOException {
+    flush();
+    final VerifiedPlayerIndex index = new VerifiedPlayerIndex();
+    load(new Replay() {
+      @Override
+      public void add(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid, final long timestamp) {
+        index.add(inetAddress, uuid);
+      }
+
+      @Override
+      public void remove(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) {
+        index.remove(inetAddress.getHostAddress(), uuid);
+      }
+
+      @Override
+      public void removeAddress(final @NotNull InetAddress inetAddress) {
+        index.remove(inetAddress.getHostAddress());
+      }
+    });
+    return latestTimestamps(index.entries(), index::contains);
+  }
+
+  /**
+   * Open-addressing table of the latest timestamp of every IP address and UUID.
+   * Every entry is stored in 5 longs (IP address, UUID, timestamp) instead of separate objects.
+   */
+  static final class Timestamps {
+    // IP address (2 longs), UUID (2 longs), timestamp
+    private static final int STRIDE = 5;
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+    private long[] slots;
+    private int size;
+
+    Timestamps(final int expectedSize) {
+      int capacity = 16;
+      while (capacity < expectedSize * 2L && capacity < 1 << 30) {
+        capacity <<= 1;
+      }
+      slots = new long[capacity * STRIDE];
+    }
+
+    void put(final byte[] address, final @NotNull UUID uuid, final long timestamp) {
+      long hi = 0L, lo = 0L;
+      if (address.length == 4) {
+        // IPv4 addresses are mapped into IPv6, just like in the index
+        for (final byte b : address) {
+          lo = lo << 8 | (b & 0xFFL);
+        }
+        lo |= IPV4_MAPPED_PREFIX;
+      } else {
+        for (int i = 0; i < 8; i++) {
+          hi = hi << 8 | (address[i] & 0xFFL);
+          lo = lo << 8 | (address[i + 8] & 0xFFL);
+        }
+      }
+      // The unspecified address (::) is used to mark empty slots
+      if (hi == 0L && lo == 0L) {
+        return;
+      }
+      if ((size + 1) * 2L > slots.length / STRIDE) {
+        resize();
+      }
+      insert(hi, lo, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), timestamp);
+    }
+
+    private void insert(final long hi, final long lo, final long msb, final long lsb, final long timestamp) {
+      final int mask = slots.length / STRIDE - 1;
+      for (int index = hash(hi, lo, msb, lsb) & mask; ; index = (index + 1) & mask) {
+        final int offset = index * STRIDE;
+        if (slots[offset] == 0L && slots[offset + 1] == 0L) {
+          slots[offset] = hi;
+          slots[offset + 1] = lo;
+          slots[offset + 2] = msb;
+          slots[offset + 3] = lsb;
+          slots[offset + 4] = timestamp;
+          size++;
+          return;
+        }
+        if (slots[offset] == hi && slots[offset + 1] == lo
+          && slots[offset + 2] == msb && slots[offset + 3] == lsb) {
+          // Later records always replace earlier ones
+          slots[offset + 4] = timestamp;
+          return;
+        }
+      }
+    }
+
+    private void resize() {
+      final long[] previous = slots;
+      slots = new long[previous.length * 2];
+      size = 0;
+      for (int offset = 0; offset < previous.length; offset += STRIDE) {
+        if (previous[offset] != 0L || previous[offset + 1] != 0L) {
+          insert(previous[offset], previous[offset + 1], previous[offset + 2],
+            previous[offset + 3], previous[offset + 4]);
+        }
+      }
+    }
+
+    int size() {
+      return size;
+    }
+
+    void forEach(final @NotNull Visitor visitor) {
+      forEach(0, Integer.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Visits a limited number of entries, so the entries can be visited in multiple steps
+     *
+     * @param start Slot to start at (0 for the first step)
+     * @param limit Maximum number of visited entries
+     * @return Slot to start the next step at, or -1 if all entries have been visited
+     */
+    int forEach(final int start, final int limit, final @NotNull Visitor visitor) {
+      int visited = 0;
+      for (int offset = start * STRIDE; offset < slots.length; offset += STRIDE) {
+        final long hi = slots[offset], lo = slots[offset + 1];
+        if (hi == 0L && lo == 0L) continue;
+        if (visited++ == limit) {
+          return offset / STRIDE;
+        }
+        final byte[] address;
+        if (hi == 0L && (lo >>> 32) == 0xFFFFL) {
+          address = new byte[]{(byte) (lo >>> 24), (byte) (lo >>> 16), (byte) (lo >>> 8), (byte) lo};
+        } else {
+          address = new byte[16];
+          for (int i = 0; i < 8; i++) {
+            address[i] = (byte) (hi >>> (56 - i * 8));
+            address[i + 8] = (byte) (lo >>> (56 - i * 8));
+          }
+        }
+        visitor.visit(address, new UUID(slots[offset + 2], slots[offset + 3]), slots[offset + 4]);
+      }
+      return -1;
+    }
+
+    private static int hash(final long hi, final long lo, final long msb, final long lsb) {
+      // https://github.com/aappleby/smhasher/wiki/MurmurHash3 (fmix64)
+      long h = hi * 31L + lo;
+      h = h * 31L + msb;
+      h = h * 31L + lsb;
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      h *= 0xC4CEB9FE1A85EC53L;
+      h ^= h >>> 33;
+      return (int) h;
+    }
+
+    interface Visitor {
+      void visit(final byte[] address, final @NotNull UUID uuid, final long timestamp);
+    }
+  }
+
+  /**
+   * Removes all entries from the log
+   */
+  synchronized void clear() throws IOException {
+    writeBuffer.clear();
+    bufferedRecords = 0;
+    records = 0L;
+    oldestTimestamp = Long.MAX_VALUE;
+    channel.truncate(HEADER_SIZE);
+    channel.position(HEADER_SIZE);
+  }
+
+  synchronized void close() throws IOException {
+    flush();
+    channel.force(true);
+    channel.close();
+  }
+}
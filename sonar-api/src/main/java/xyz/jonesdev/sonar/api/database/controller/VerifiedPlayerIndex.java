@@ -0,0 +1,620 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Compact in-memory index of verified players.
+ * <br>
+ * IP addresses are stored as 128-bit keys (IPv4 addresses are mapped into IPv6)
+ * in open-addressing tables, next to the first UUID of the IP address.
+ * Every additional UUID is stored in a small long array belonging to that slot.
+ * This avoids allocating Strings, UUIDs, lists and map entries for every verified player.
+ * <br>
+ * The index is split into segments that are each guarded by a {@link StampedLock},
+ * so writes only block a small part of the index, and reads are usually optimistic
+ * and therefore never block the event loops.
+ */
+public final class VerifiedPlayerIndex {
+  private static final int SEGMENT_BITS = 6;
+  private static final int INITIAL_SEGMENT_CAPACITY = 16;
+  // hi, lo, most significant bits of the UUID, least significant bits of the UUID
+  private static final int STRIDE = 4;
+  private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+  private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+  private int evictionCursor;
+
+  public VerifiedPlayerIndex() {
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  /**
+   * @return true if the IP address was not in the index before
+   */
+  public boolean add(final @NotNull String hostAddress, final @NotNull UUID uuid) {
+    final long[] key = parse(hostAddress);
+    if (key == null) {
+      return false;
+    }
+    return segmentFor(key[0], key[1]).add(key[0], key[1],
+      uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+  }
+
+  /**
+   * @return true if the IP address was not in the index before
+   */
+  public boolean add(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) {
+    final long hi, lo;
+    if (inetAddress instanceof Inet4Address) {
+      hi = 0L;
+      lo = IPV4_MAPPED_PREFIX | (inetAddress.hashCode() & 0xFFFFFFFFL);
+    } else {
+      final byte[] address = inetAddress.getAddress();
+      hi = toLong(address, 0);
+      lo = toLong(address, 8);
+      // The unspecified address (::) is used to mark empty slots
+      if (hi == 0L && lo == 0L) {
+        return false;
+      }
+    }
+    return segmentFor(hi, lo).add(hi, lo, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+  }
+
+  /**
+   * @return true if the IP address was in the index
+   */
+  public boolean remove(final @NotNull String hostAddress) {
+    final long[] key = parse(hostAddress);
+    return key != null && segmentFor(key[0], key[1]).remove(key[0], key[1]);
+  }
+
+  /**
+   * Removes a single UUID from the IP address
+   *
+   * @return true if this was the last UUID, and the IP address has been removed
+   */
+  public boolean remove(final @NotNull String hostAddress, final @NotNull UUID uuid) {
+    final long[] key = parse(hostAddress);
+    return key != null && segmentFor(key[0], key[1]).remove(key[0], key[1],
+      uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+  }
+
+  public boolean contains(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) {
+    final long hi, lo;
+    if (inetAddress instanceof Inet4Address) {
+      // The hash code of an IPv4 address is the address itself
+      hi = 0L;
+      lo = IPV4_MAPPED_PREFIX | (inetAddress.hashCode() & 0xFFFFFFFFL);
+    } else {
+      final byte[] address = inetAddress.getAddress();
+      hi = toLong(address, 0);
+      lo = toLong(address, 8);
+      // The unspecified address (::) is used to mark empty slots
+      if (hi == 0L && lo == 0L) {
+        return false;
+      }
+    }
+    return segmentFor(hi, lo).contains(hi, lo,
+      uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), true);
+  }
+
+  public boolean contains(final @NotNull String hostAddress, final @NotNull UUID uuid) {
+    final long[] key = parse(hostAddress);
+    return key != null && segmentFor(key[0], key[1]).contains(key[0], key[1],
+      uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), true);
+  }
+
+  public boolean contains(final @NotNull String hostAddress) {
+    final long[] key = parse(hostAddress);
+    return key != null && segmentFor(key[0], key[1]).contains(key[0], key[1], 0L, 0L, false);
+  }
+
+  public @NotNull List<UUID> getUUIDs(final @NotNull String hostAddress) {
+    final long[] key = parse(hostAddress);
+    if (key == null) {
+      return Collections.emptyList();
+    }
+    return segmentFor(key[0], key[1]).getUUIDs(key[0], key[1]);
+  }
+
+  /**
+   * @return Snapshot of all IP addresses in this index
+   */
+  public @NotNull List<String> getHostAddresses() {
+    final List<String> hostAddresses = new ArrayList<>(size());
+    for (final Segment segment : segments) {
+      segment.collectHostAddresses(hostAddresses);
+    }
+    return hostAddresses;
+  }
+
+  /**
+   * Passes every IP address in this index to the given consumer, one segment at a time.
+   * Unlike {@link #getHostAddresses()}, this is weakly consistent: IP addresses added
+   * to segments that have not been visited yet will be passed to the consumer as well.
+   */
+  public void forEachHostAddress(final @NotNull Consumer<String> consumer) {
+    final List<String> hostAddresses = new ArrayList<>();
+    for (final Segment segment : segments) {
+      segment.collectHostAddresses(hostAddresses);
+      // Don't call the consumer while holding the lock of the segment
+      hostAddresses.forEach(consumer);
+      hostAddresses.clear();
+    }
+  }
+
+  public void clear() {
+    for (final Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  /**
+   * Removes IP addresses (and all of their UUIDs) from the index.
+   * Entries are evicted in hash order, which is effectively random,
+   * so frequently used entries are likely to be looked up and cached again.
+   *
+   * @param count   Maximum number of IP addresses to remove
+   * @param evicted Receives every IP address that has been removed
+   * @return Number of IP addresses that have been removed
+   */
+  public synchronized int evict(final int count, final @NotNull Consumer<String> evicted) {
+    final int perSegment = Math.max(1, count / segments.length + 1);
+    final List<String> hostAddresses = new ArrayList<>(count);
+    for (int i = 0; i < segments.length && hostAddresses.size() < count; i++) {
+      evictionCursor = (evictionCursor + 1) & (segments.length - 1);
+      segments[evictionCursor].evict(Math.min(perSegment, count - hostAddresses.size()), hostAddresses);
+    }
+    // Don't call the consumer while holding the lock of a segment
+    hostAddresses.forEach(evicted);
+    return hostAddresses.size();
+  }
+
+  /**
+   * @return Number of IP addresses in this index
+   */
+  public int size() {
+    int size = 0;
+    for (final Segment segment : segments) {
+      size += segment.size;
+    }
+    return size;
+  }
+
+  /**
+   * @return Number of IP address and UUID pairs in this index
+   */
+  public int entries() {
+    int entries = 0;
+    for (final Segment segment : segments) {
+      entries += segment.entries;
+    }
+    return entries;
+  }
+
+  /**
+   * @return Estimated number of bytes used by this index
+   */
+  public long getMemoryUsage() {
+    long memory = 16L + segments.length * 4L;
+    for (final Segment segment : segments) {
+      memory += segment.getMemoryUsage();
+    }
+    return memory;
+  }
+
+  private @NotNull Segment segmentFor(final long hi, final long lo) {
+    return segments[(int) (hash(hi, lo) >>> (64 - SEGMENT_BITS))];
+  }
+
+  private static long hash(final long hi, final long lo) {
+    // https://github.com/aappleby/smhasher/wiki/MurmurHash3 (fmix64)
+    long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static long toLong(final byte[] bytes, final int offset) {
+    long value = 0L;
+    for (int i = offset; i < offset + 8; i++) {
+      value = value << 8 | (bytes[i] & 0xFFL);
+    }
+    return value;
+  }
+
+  /**
+   * @return 128-bit key of the IP address or null if the IP address is invalid
+   */
+  static long[] parse(final @NotNull String hostAddress) {
+    // Parse IPv4 addresses manually to avoid any lookups
+    if (hostAddress.indexOf(':') == -1) {
+      long address = 0L, octet = 0L;
+      int dots = 0, digits = 0;
+      for (int i = 0; i < hostAddress.length(); i++) {
+        final char c = hostAddress.charAt(i);
+        if (c == '.') {
+          if (digits == 0 || ++dots > 3) return null;
+          address = (address << 8) | octet;
+          octet = digits = 0;
+        } else if (c >= '0' && c <= '9' && digits < 3) {
+          octet = octet * 10 + (c - '0');
+          if (octet > 255) return null;
+          digits++;
+        } else {
+          return null;
+        }
+      }
+      if (dots != 3 || digits == 0) return null;
+      return new long[]{0L, IPV4_MAPPED_PREFIX | (address << 8) | octet};
+    }
+    try {
+      // IPv6 literals are parsed directly and never resolved
+      final InetAddress inetAddress = InetAddress.getByName(hostAddress);
+      if (inetAddress instanceof Inet4Address) {
+        return new long[]{0L, IPV4_MAPPED_PREFIX | (inetAddress.hashCode() & 0xFFFFFFFFL)};
+      }
+      final byte[] address = inetAddress.getAddress();
+      final long hi = toLong(address, 0), lo = toLong(address, 8);
+      // The unspecified address (::) is used to mark empty slots
+      return hi == 0L && lo == 0L ? null : new long[]{hi, lo};
+    } catch (UnknownHostException exception) {
+      return null;
+    }
+  }
+
+  private static @NotNull String format(final long hi, final long lo) {
+    if (hi == 0L && (lo >>> 32) == 0xFFFFL) {
+      return ((lo >>> 24) & 0xFF) + "." + ((lo >>> 16) & 0xFF) + "." + ((lo >>> 8) & 0xFF) + "." + (lo & 0xFF);
+    }
+    final byte[] address = new byte[16];
+    for (int i = 0; i < 8; i++) {
+      address[i] = (byte) (hi >>> (56 - i * 8));
+      address[i + 8] = (byte) (lo >>> (56 - i * 8));
+    }
+    try {
+      return InetAddress.getByAddress(address).getHostAddress();
+    } catch (UnknownHostException exception) {
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  private static final class Segment {
+    private final StampedLock lock = new StampedLock();
+    // A key of 0 (::) marks an empty slot, since it is never used by clients
+    private long[] slots = new long[INITIAL_SEGMENT_CAPACITY * STRIDE];
+    // Additional UUIDs (most and least significant bits) of each slot
+    private long[][] overflow = new long[INITIAL_SEGMENT_CAPACITY][];
+    private volatile int size, entries;
+    private long overflowMemory;
+    private int cursor;
+
+    boolean contains(final long hi, final long lo, final long msb, final long lsb, final boolean checkUUID) {
+      // Try an optimistic read first, so readers never block each other
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0L) {
+        final boolean result = find(hi, lo, msb, lsb, checkUUID);
+        if (lock.validate(stamp)) {
+          return result;
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        return find(hi, lo, msb, lsb, checkUUID);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    private boolean find(final long hi, final long lo, final long msb, final long lsb, final boolean checkUUID) {
+      // Make sure to only read both arrays once, since they might be replaced concurrently
+      final long[] slots = this.slots;
+      final long[][] overflow = this.overflow;
+      final int slot = indexOf(slots, hi, lo);
+      if (slot == -1) {
+        return false;
+      }
+      if (!checkUUID) {
+        return true;
+      }
+      final int offset = slot * STRIDE;
+      if (slots[offset + 2] == msb && slots[offset + 3] == lsb) {
+        return true;
+      }
+      final long[] extra = slot < overflow.length ? overflow[slot] : null;
+      if (extra != null) {
+        for (int i = 0; i + 1 < extra.length; i += 2) {
+          if (extra[i] == msb && extra[i + 1] == lsb) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    boolean add(final long hi, final long lo, final long msb, final long lsb) {
+      final long stamp = lock.writeLock();
+      try {
+        int slot = indexOf(slots, hi, lo);
+        if (slot != -1) {
+          if (find(hi, lo, msb, lsb, true)) {
+            return false;
+          }
+          // Append the UUID to the additional UUIDs of this IP address
+          final long[] extra = overflow[slot];
+          final long[] grown = extra == null ? new long[2] : Arrays.copyOf(extra, extra.length + 2);
+          grown[grown.length - 2] = msb;
+          grown[grown.length - 1] = lsb;
+          overflowMemory += 16L + grown.length * 8L - (extra == null ? 0L : 16L + extra.length * 8L);
+          overflow[slot] = grown;
+          entries++;
+          return false;
+        }
+        // Make sure to keep the load factor below 0.75
+        if ((size + 1) * 4 > capacity() * 3) {
+          resize(capacity() * 2);
+        }
+        slot = freeSlot(slots, hi, lo);
+        final int offset = slot * STRIDE;
+        slots[offset + 2] = msb;
+        slots[offset + 3] = lsb;
+        slots[offset] = hi;
+        slots[offset + 1] = lo;
+        size++;
+        entries++;
+        return true;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    boolean remove(final long hi, final long lo) {
+      final long stamp = lock.writeLock();
+      try {
+        final int slot = indexOf(slots, hi, lo);
+        if (slot == -1) {
+          return false;
+        }
+        removeAt(slot);
+        return true;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    boolean remove(final long hi, final long lo, final long msb, final long lsb) {
+      final long stamp = lock.writeLock();
+      try {
+        final int slot = indexOf(slots, hi, lo);
+        if (slot == -1) {
+          return false;
+        }
+        final int offset = slot * STRIDE;
+        final long[] extra = overflow[slot];
+        int position = -1;
+        if (extra != null) {
+          for (int i = 0; i + 1 < extra.length; i += 2) {
+            if (extra[i] == msb && extra[i + 1] == lsb) {
+              position = i;
+              break;
+            }
+          }
+        }
+        if (slots[offset + 2] == msb && slots[offset + 3] == lsb) {
+          // Remove the entire IP address if this is its only UUID
+          if (extra == null) {
+            removeAt(slot);
+            return true;
+          }
+          // Otherwise, replace the first UUID with the last additional UUID
+          position = extra.length - 2;
+          slots[offset + 2] = extra[position];
+          slots[offset + 3] = extra[position + 1];
+        } else if (position == -1) {
+          return false;
+        }
+        // Remove the UUID from the additional UUIDs
+        final long[] shrunk = extra.length == 2 ? null : new long[extra.length - 2];
+        if (shrunk != null) {
+          System.arraycopy(extra, 0, shrunk, 0, position);
+          System.arraycopy(extra, position + 2, shrunk, position, extra.length - position - 2);
+        }
+        overflowMemory -= 16L + extra.length * 8L - (shrunk == null ? 0L : 16L + shrunk.length * 8L);
+        overflow[slot] = shrunk;
+        entries--;
+        return false;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    void evict(final int count, final @NotNull List<String> hostAddresses) {
+      final long stamp = lock.writeLock();
+      try {
+        final int mask = capacity() - 1;
+        int evicted = 0;
+        for (int probes = 0; probes <= mask && evicted < count && size > 0; probes++) {
+          cursor = (cursor + 1) & mask;
+          // Entries might be shifted into the free slot, so check the same slot again
+          while (evicted < count && (slots[cursor * STRIDE] != 0L || slots[cursor * STRIDE + 1] != 0L)) {
+            hostAddresses.add(format(slots[cursor * STRIDE], slots[cursor * STRIDE + 1]));
+            removeAt(cursor);
+            evicted++;
+          }
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /**
+     * Removes the entry in the given slot and shifts all following entries
+     * back to keep the probe sequences intact (no tombstones needed)
+     */
+    private void removeAt(final int index) {
+      int slot = index;
+      final long[] extra = overflow[slot];
+      if (extra != null) {
+        overflowMemory -= 16L + extra.length * 8L;
+        entries -= extra.length / 2;
+      }
+      entries--;
+      size--;
+
+      final int mask = capacity() - 1;
+      int next = slot;
+      while (true) {
+        next = (next + 1) & mask;
+        final int offset = next * STRIDE;
+        if (slots[offset] == 0L && slots[offset + 1] == 0L) {
+          break;
+        }
+        final int home = home(slots[offset], slots[offset + 1], mask);
+        // Only move the entry if its home slot is not between the free slot and itself
+        if (slot <= next ? (home <= slot || home > next) : (home <= slot && home > next)) {
+          System.arraycopy(slots, offset, slots, slot * STRIDE, STRIDE);
+          overflow[slot] = overflow[next];
+          slot = next;
+        }
+      }
+      Arrays.fill(slots, slot * STRIDE, slot * STRIDE + STRIDE, 0L);
+      overflow[slot] = null;
+    }
+
+    @NotNull List<UUID> getUUIDs(final long hi, final long lo) {
+      final long stamp = lock.readLock();
+      try {
+        final int slot = indexOf(slots, hi, lo);
+        if (slot == -1) {
+          return Collections.emptyList();
+        }
+        final int offset = slot * STRIDE;
+        final long[] extra = overflow[slot];
+        final List<UUID> uuids = new ArrayList<>(extra == null ? 1 : 1 + extra.length / 2);
+        uuids.add(new UUID(slots[offset + 2], slots[offset + 3]));
+        if (extra != null) {
+          for (int i = 0; i + 1 < extra.length; i += 2) {
+            uuids.add(new UUID(extra[i], extra[i + 1]));
+          }
+        }
+        return uuids;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    void collectHostAddresses(final @NotNull List<String> hostAddresses) {
+      final long stamp = lock.readLock();
+      try {
+        for (int offset = 0; offset < slots.length; offset += STRIDE) {
+          if (slots[offset] != 0L || slots[offset + 1] != 0L) {
+            hostAddresses.add(format(slots[offset], slots[offset + 1]));
+          }
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    void clear() {
+      final long stamp = lock.writeLock();
+      try {
+        slots = new long[INITIAL_SEGMENT_CAPACITY * STRIDE];
+        overflow = new long[INITIAL_SEGMENT_CAPACITY][];
+        overflowMemory = 0L;
+        size = entries = 0;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    long getMemoryUsage() {
+      final long stamp = lock.readLock();
+      try {
+        // Object headers, both arrays and all additional UUIDs
+        return 64L + 16L + slots.length * 8L + 16L + overflow.length * 4L + overflowMemory;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    private int capacity() {
+      return slots.length / STRIDE;
+    }
+
+    private void resize(final int capacity) {
+      final long[] resized = new long[capacity * STRIDE];
+      final long[][] resizedOverflow = new long[capacity][];
+      for (int slot = 0; slot < capacity(); slot++) {
+        final int offset = slot * STRIDE;
+        if (slots[offset] == 0L && slots[offset + 1] == 0L) continue;
+        final int target = freeSlot(resized, slots[offset], slots[offset + 1]);
+        System.arraycopy(slots, offset, resized, target * STRIDE, STRIDE);
+        resizedOverflow[target] = overflow[slot];
+      }
+      slots = resized;
+      overflow = resizedOverflow;
+    }
+
+    private static int home(final long hi, final long lo, final int mask) {
+      return (int) hash(hi, lo) & mask;
+    }
+
+    private static int indexOf(final long[] slots, final long hi, final long lo) {
+      final int capacity = slots.length / STRIDE;
+      final int mask = capacity - 1;
+      int slot = home(hi, lo, mask);
+      // Never probe more slots than there are, even if we see an inconsistent state
+      for (int probes = 0; probes < capacity; probes++) {
+        final int offset = slot * STRIDE;
+        final long slotHi = slots[offset], slotLo = slots[offset + 1];
+        if (slotHi == hi && slotLo == lo) {
+          return slot;
+        }
+        if (slotHi == 0L && slotLo == 0L) {
+          return -1;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
+    }
+
+    private static int freeSlot(final long[] slots, final long hi, final long lo) {
+      final int mask = slots.length / STRIDE - 1;
+      int slot = home(hi, lo, mask);
+      while (slots[slot * STRIDE] != 0L || slots[slot * STRIDE + 1] != 0L) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+  }
+}
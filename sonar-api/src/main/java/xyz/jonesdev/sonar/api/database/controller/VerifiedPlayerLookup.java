@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.Where;
+import com.j256.ormlite.support.ConnectionSource;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+import xyz.jonesdev.sonar.api.filter.InetAddressFilter;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads the entries of the database or file into the cache of a controller
+ * and looks up the players that are in the database, but not in the cache.
+ */
+final class VerifiedPlayerLookup {
+  static final int DB_LOOKUP_WORKERS = 3;
+  private static final long WARM_UP_PAGE_SIZE = 10000L;
+  // Players should never have to wait longer than 5 seconds for the database
+  private static final long LOOKUP_TIMEOUT = 5L;
+
+  private final @NotNull VerifiedPlayerController controller;
+  // Lookups are independent of each other, so they can be done in parallel
+  private final ThreadPoolExecutor lookupService = new ThreadPoolExecutor(
+    DB_LOOKUP_WORKERS, DB_LOOKUP_WORKERS, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024),
+    VerifiedPlayerController.createThreadFactory("sonar-database-lookup-thread"));
+  // Whether all entries from the database have been loaded into the index
+  @Getter
+  private volatile boolean warmedUp = true;
+  // Only used if the database type is FILE
+  private final CompletableFuture<Void> fileLoaded = new CompletableFuture<>();
+  // IP addresses that might be in the database, but not in the cache (e.g. after being evicted)
+  private final InetAddressFilter uncached = new InetAddressFilter(1024);
+  private final AtomicBoolean uncachedRebuildScheduled = new AtomicBoolean();
+  private String lookupQuery;
+
+  VerifiedPlayerLookup(final @NotNull VerifiedPlayerController controller) {
+    this.controller = controller;
+  }
+
+  /**
+   * Adds the most recent entries from the database to the cache in the background.
+   * Players have to be looked up in the database until the warm-up is complete.
+   */
+  void warmUp(final @NotNull ConnectionSource connectionSource) {
+    lookupQuery = "SELECT COUNT(*) FROM "
+      + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "sonar_verified_players")
+      + " WHERE " + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "ip_address") + " = ?"
+      + " AND " + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "player_uuid") + " = ?";
+    warmedUp = false;
+    controller.updateService.execute(() -> warmUp(null, 0, 0L, System.currentTimeMillis()));
+  }
+
+  /**
+   * Loads one page of entries into the cache, starting with the most recent entries.
+   * Every page is loaded in its own task, so lookups don't have to wait for the entire warm-up.
+   */
+  private void warmUp(final @Nullable Timestamp lastTimestamp, final int lastId,
+                      final long loaded, final long startTime) {
+    // We cannot throw a NullPointerException within the executor service
+    // because we want to handle the error instead of simply throwing an exception
+    if (controller.connectionSource == null) {
+      return;
+    }
+
+    final VerifiedPlayerIndex index = controller.getIndex();
+    try {
+      final QueryBuilder<VerifiedPlayer, Integer> pageBuilder = controller.dao.queryBuilder()
+        .orderBy("timestamp", false)
+        .orderBy("id", false)
+        .limit(WARM_UP_PAGE_SIZE);
+      // Continue after the last entry of the previous page
+      if (lastTimestamp != null) {
+        final Where<VerifiedPlayer, Integer> where = pageBuilder.where();
+        where.or(where.lt("timestamp", lastTimestamp),
+          where.and(where.eq("timestamp", lastTimestamp), where.lt("id", lastId)));
+      }
+
+      final List<VerifiedPlayer> page = pageBuilder.query();
+      for (final VerifiedPlayer player : page) {
+        // Once the cache is full, only remember which IP addresses have to be looked up when needed
+        if (index.size() >= controller.maximumCacheSize) {
+          uncached.add(player.getInetAddress());
+        } else {
+          controller._add(player);
+        }
+      }
+      rebuildUncachedIfNecessary();
+
+      final long total = loaded + page.size();
+      if (page.size() < WARM_UP_PAGE_SIZE) {
+        warmedUp = true;
+        controller.logger.info("Cached {} verified players in {}ms.",
+          index.entries(), System.currentTimeMillis() - startTime);
+        if (uncached.size() > 0L) {
+          controller.logger.info("{} older verified players will be loaded when needed.",
+            total - index.entries());
+        }
+        return;
+      }
+      if (total % (WARM_UP_PAGE_SIZE * 10L) == 0L) {
+        controller.logger.info("Caching verified players... ({} loaded)", total);
+      }
+
+      final VerifiedPlayer last = page.get(page.size() - 1);
+      controller.updateService.execute(() -> warmUp(last.getTimestamp(), last.getId(), total, startTime));
+    } catch (SQLException exception) {
+      controller.logger.error("Error caching verified players: {}", exception);
+    }
+  }
+
+  /**
+   * Replays the append-only file into the cache in the background.
+   * Players have to be looked up until the file has been loaded.
+   */
+  void warmUp(final @NotNull VerifiedPlayerFileStore fileStore) {
+    warmedUp = false;
+    controller.updateService.execute(() -> {
+      final long startTime = System.currentTimeMillis();
+      try {
+        fileStore.load(new VerifiedPlayerFileStore.Replay() {
+          @Override
+          public void add(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid, final long timestamp) {
+            controller._add(inetAddress, uuid);
+          }
+
+          @Override
+          public void remove(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) {
+            controller._remove(inetAddress.getHostAddress(), uuid);
+          }
+
+          @Override
+          public void removeAddress(final @NotNull InetAddress inetAddress) {
+            controller._remove(inetAddress.getHostAddress());
+          }
+        });
+        warmedUp = true;
+        controller.logger.info("Cached {} verified players in {}ms.",
+          controller.getIndex().entries(), System.currentTimeMillis() - startTime);
+      } catch (IOException exception) {
+        controller.logger.error("Error caching verified players: {}", exception);
+      } finally {
+        fileLoaded.complete(null);
+      }
+    });
+  }
+
+  /**
+   * @return Whether every entry from the database is also in the cache
+   */
+  boolean isFullyCached() {
+    return warmedUp && uncached.size() == 0L;
+  }
+
+  /**
+   * Checks whether the player has to be looked up in the database,
+   * because the IP address might be in the database, but not in the cache.
+   *
+   * @param inetAddress IP address
+   * @return false if the IP address is definitely in the cache or not in the database
+   */
+  boolean mightBeUncached(final @NotNull InetAddress inetAddress) {
+    return !warmedUp || uncached.mightContain(inetAddress);
+  }
+
+  /**
+   * Remembers that the IP address has to be looked up in the database when needed
+   *
+   * @param inetAddress IP address that might be in the database, but not in the cache
+   */
+  void addUncached(final @NotNull String inetAddress) {
+    uncached.add(inetAddress);
+    rebuildUncachedIfNecessary();
+  }
+
+  /**
+   * Forgets all IP addresses that are not in the cache (e.g. after clearing the database)
+   */
+  void clearUncached() {
+    uncached.rebuild(Collections.emptyList());
+  }
+
+  /**
+   * Rebuilds the filter of uncached IP addresses in the background once it has grown too large.
+   * This reads every IP address from the database page by page, so it only happens
+   * whenever the number of uncached IP addresses has doubled.
+   */
+  private void rebuildUncachedIfNecessary() {
+    if (uncached.shouldRebuild() && uncachedRebuildScheduled.compareAndSet(false, true)) {
+      controller.updateService.execute(this::rebuildUncached);
+    }
+  }
+
+  private void rebuildUncached() {
+    // We cannot throw a NullPointerException within the executor service
+    // because we want to handle the error instead of simply throwing an exception
+    if (controller.connectionSource == null) {
+      uncachedRebuildScheduled.set(false);
+      return;
+    }
+    rebuildUncached(uncached.startRebuild((int) uncached.size()), 0);
+  }
+
+  /**
+   * Reads one page of IP addresses that are not in the cache into the rebuilt filter.
+   * The next page is read in a separate task, so other tasks don't have to wait.
+   *
+   * @param rebuild Rebuild of the filter of uncached IP addresses
+   * @param lastId  Last ID of the previous page
+   */
+  private void rebuildUncached(final @NotNull InetAddressFilter.Rebuild rebuild, final int lastId) {
+    try {
+      // Continue after the last ID of the previous page, so every page is a range scan
+      final List<VerifiedPlayer> page = controller.dao.queryBuilder()
+        .selectColumns("id", "ip_address")
+        .orderBy("id", true)
+        .limit(WARM_UP_PAGE_SIZE)
+        .where()
+        .gt("id", lastId)
+        .query();
+      for (final VerifiedPlayer player : page) {
+        if (!controller.getIndex().contains(player.getInetAddress())) {
+          rebuild.add(player.getInetAddress());
+        }
+      }
+      if (page.size() < WARM_UP_PAGE_SIZE) {
+        rebuild.complete();
+        uncachedRebuildScheduled.set(false);
+        return;
+      }
+      final int nextId = page.get(page.size() - 1).getId();
+      controller.updateService.execute(() -> rebuildUncached(rebuild, nextId));
+    } catch (SQLException exception) {
+      controller.logger.error("Error trying to read uncached entries: {}", exception);
+      rebuild.cancel();
+      uncachedRebuildScheduled.set(false);
+    }
+  }
+
+  /**
+   * Looks up a player that is not in the cache in the database and,
+   * if the player has been found, adds the player to the cache again.
+   *
+   * @param inetAddress IP address
+   * @param uuid        UUID associated to the IP
+   * @return Future completed with whether the database contains the IP and UUID
+   */
+  @NotNull CompletableFuture<Boolean> lookup(final @NotNull InetAddress inetAddress,
+                                             final @NotNull UUID uuid) {
+    final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+    // Don't try to look up the player if the database type is NONE
+    if (controller.getCachedDatabaseType() == SonarConfiguration.Database.Type.NONE) {
+      future.complete(false);
+      return future;
+    }
+
+    // The file store keeps every entry in memory, so we only have to wait for it to be loaded
+    if (controller.getCachedDatabaseType() == SonarConfiguration.Database.Type.FILE) {
+      // The file will never be loaded if it couldn't be opened
+      if (controller.fileStore == null) {
+        future.complete(false);
+        return future;
+      }
+      return fileLoaded.thenApply(ignored -> controller.has(inetAddress, uuid))
+        .orTimeout(LOOKUP_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    try {
+      lookupService.execute(() -> {
+        final long start = System.nanoTime();
+        boolean found = false;
+        try {
+          // We cannot throw a NullPointerException within the executor service
+          // because we want to handle the error instead of simply throwing an exception
+          if (controller.connectionSource != null) {
+            final String hostAddress = inetAddress.getHostAddress();
+            // The query is always the same, so the driver can reuse the prepared statement
+            found = controller.dao.queryRawValue(lookupQuery, hostAddress, uuid.toString()) > 0L;
+            if (found) {
+              controller._add(hostAddress, uuid);
+            }
+          }
+        } catch (Throwable throwable) {
+          controller.logger.error("Error trying to look up entry: {}", throwable);
+        } finally {
+          // Always complete the future, so the player is never stuck waiting
+          future.complete(found);
+          controller.getMetrics().getLookup().record(start);
+        }
+      });
+    } catch (RejectedExecutionException exception) {
+      // Too many lookups are queued; the player will simply have to verify again
+      future.complete(false);
+    }
+    // The future is completed exceptionally if the database doesn't respond in time
+    return future.orTimeout(LOOKUP_TIMEOUT, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @return Number of database lookups waiting for a free worker
+   */
+  int getQueuedLookups() {
+    return lookupService.getQueue().size();
+  }
+
+  void shutdown() {
+    lookupService.shutdown();
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.ConnectionSource;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayerRemoval;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Applies the players verified or removed by other servers to the cache of a controller.
+ * All methods must only be called from the database update thread.
+ */
+final class VerifiedPlayerSync {
+  // Changes made by other servers are read in batches of 1000 entries
+  private static final int SYNC_BATCH_SIZE = 1000;
+
+  private final @NotNull VerifiedPlayerController controller;
+  // Positions of the sync task in both tables
+  private final SyncCursor playerCursor = new SyncCursor(), removalCursor = new SyncCursor();
+
+  VerifiedPlayerSync(final @NotNull VerifiedPlayerController controller) {
+    this.controller = controller;
+  }
+
+  /**
+   * Skips all entries that already exist, so only changes made after this point are read
+   */
+  void start() {
+    final ConnectionSource connectionSource = controller.connectionSource;
+    // We cannot throw a NullPointerException within the executor service
+    // because we want to handle the error instead of simply throwing an exception
+    if (connectionSource == null) {
+      return;
+    }
+
+    try {
+      playerCursor.reset(controller.dao.queryRawValue("SELECT MAX("
+        + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "id") + ") FROM "
+        + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "sonar_verified_players")));
+      removalCursor.reset(controller.removalDao.queryRawValue("SELECT MAX("
+        + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "id") + ") FROM "
+        + VerifiedPlayerWriteBuffer.escape(connectionSource.getDatabaseType(), "sonar_verified_player_removals")));
+    } catch (SQLException exception) {
+      controller.logger.error("Error trying to read the latest entry: {}", exception);
+    }
+  }
+
+  /**
+   * Reads all players that have been verified or removed by other servers
+   * since the last sync and applies the changes to the local cache.
+   * Both queries are range scans on the primary key, and IDs that have been skipped
+   * because their transaction wasn't committed yet are looked up again by their primary key.
+   */
+  void sync() {
+    // We cannot throw a NullPointerException within the executor service
+    // because we want to handle the error instead of simply throwing an exception
+    if (controller.connectionSource == null) {
+      return;
+    }
+
+    // Make sure our own pending removals can't be undone by reading the entries again
+    if (!controller.flushWrites(true)) {
+      return;
+    }
+
+    final long start = System.nanoTime();
+    try {
+      // Removals have to be applied first, so a player who has been removed
+      // and verified again within the same interval stays verified
+      for (final VerifiedPlayerRemoval removal : readSkipped(controller.removalDao, removalCursor)) {
+        applyRemoval(removal);
+        // The removal might be older than a verification that has already been applied,
+        // so the database has to decide whether the player is still verified
+        if (!removal.getInetAddress().isEmpty()) {
+          controller.lookup.addUncached(removal.getInetAddress());
+        }
+      }
+      final List<VerifiedPlayerRemoval> removals = controller.removalDao.queryBuilder()
+        .orderBy("id", true)
+        .limit((long) SYNC_BATCH_SIZE)
+        .where()
+        .gt("id", removalCursor.getLastId())
+        .query();
+      for (final VerifiedPlayerRemoval removal : removals) {
+        removalCursor.advance(removal.getId(), start);
+        applyRemoval(removal);
+      }
+
+      for (final VerifiedPlayer player : readSkipped(controller.dao, playerCursor)) {
+        controller._add(player);
+      }
+      final List<VerifiedPlayer> players = controller.dao.queryBuilder()
+        .orderBy("id", true)
+        .limit((long) SYNC_BATCH_SIZE)
+        .where()
+        .gt("id", playerCursor.getLastId())
+        .query();
+      for (final VerifiedPlayer player : players) {
+        playerCursor.advance(player.getId(), start);
+        controller._add(player);
+      }
+
+      // Skipped IDs that still don't exist have been rolled back
+      removalCursor.expire(start);
+      playerCursor.expire(start);
+
+      // Continue right away if there are more changes
+      if (removals.size() == SYNC_BATCH_SIZE || players.size() == SYNC_BATCH_SIZE) {
+        controller.updateService.execute(this::sync);
+      }
+    } catch (SQLException exception) {
+      controller.logger.error("Error trying to sync entries: {}", exception);
+    } finally {
+      controller.getMetrics().getSync().record(start);
+    }
+  }
+
+  /**
+   * Reads the rows of IDs that have been skipped by the sync task, if they have been committed by now
+   *
+   * @param dao    DAO of the table
+   * @param cursor Position of the sync task in the table
+   * @return Rows that have been committed since the last sync
+   */
+  private static <T> @NotNull List<T> readSkipped(final @NotNull Dao<T, Integer> dao,
+                                                  final @NotNull SyncCursor cursor) throws SQLException {
+    final List<Long> gaps = cursor.getGaps();
+    if (gaps.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<T> entries = new ArrayList<>();
+    for (int i = 0; i < gaps.size(); i += SYNC_BATCH_SIZE) {
+      for (final T entry : dao.queryBuilder()
+        .where()
+        .in("id", gaps.subList(i, Math.min(i + SYNC_BATCH_SIZE, gaps.size())))
+        .query()) {
+        if (cursor.fill(dao.extractId(entry))) {
+          entries.add(entry);
+        }
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Applies a removal read by the sync task to the local cache
+   */
+  private void applyRemoval(final @NotNull VerifiedPlayerRemoval removal) {
+    if (removal.getInetAddress().isEmpty()) {
+      controller.clearCache();
+    } else if (removal.getPlayerUuid() == null) {
+      controller._remove(removal.getInetAddress());
+    } else {
+      controller._remove(removal.getInetAddress(), removal.getPlayerUuid());
+    }
+  }
+}
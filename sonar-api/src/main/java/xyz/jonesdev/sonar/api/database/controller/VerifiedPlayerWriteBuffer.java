@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.support.ConnectionSource;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for the verified player table.
+ * <br>
+ * Inserts and deletes are coalesced in memory and written in batches
+ * using multi-row upserts and set-based deletes inside a single transaction,
+ * instead of one round-trip (and existence check) per player.
+ * Every delete also leaves a tombstone, so other servers can remove the player from their cache.
+ * <br>
+ * If a batch cannot be written, it is merged back into the buffer (without overwriting
+ * anything that has been queued in the meantime) and retried with an exponential backoff.
+ */
+final class VerifiedPlayerWriteBuffer {
+  // Make sure to stay well below the parameter limits of all database drivers
+  private static final int MAX_ROWS_PER_STATEMENT = 500;
+  // Failed batches are retried after 1 second, 2 seconds, ... but at least once every minute
+  private static final long MIN_RETRY_DELAY = TimeUnit.SECONDS.toNanos(1L);
+  private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toNanos(1L);
+
+  private final ConnectionSource connectionSource;
+  private final Dao<VerifiedPlayer, Integer> dao;
+  private final String insertPrefix, insertSuffix, deletePrefix, removalPrefix;
+  // Keyed by the IP address and UUID, so the same player is only written once
+  private final Map<String, VerifiedPlayer> inserts = new LinkedHashMap<>();
+  private final Set<String> deletes = new LinkedHashSet<>();
+  // Incremented whenever the buffer is cleared, so failed batches aren't merged back afterwards
+  private long generation;
+  private long retryDelay, retryAt;
+
+  VerifiedPlayerWriteBuffer(final @NotNull ConnectionSource connectionSource,
+                            final @NotNull Dao<VerifiedPlayer, Integer> dao,
+                            final @NotNull SonarConfiguration.Database.Type type) {
+    this.connectionSource = connectionSource;
+    this.dao = dao;
+
+    final DatabaseType databaseType = connectionSource.getDatabaseType();
+    final String table = escape(databaseType, "sonar_verified_players");
+    final String ipAddress = escape(databaseType, "ip_address");
+    final String playerUuid = escape(databaseType, "player_uuid");
+    final String timestamp = escape(databaseType, "timestamp");
+
+    // H2 doesn't support ON DUPLICATE KEY, but it supports MERGE with a custom key
+    if (type == SonarConfiguration.Database.Type.H2) {
+      insertPrefix = "MERGE INTO " + table + " (" + ipAddress + ", " + playerUuid + ", " + timestamp + ")"
+        + " KEY (" + ipAddress + ", " + playerUuid + ") VALUES ";
+      insertSuffix = "";
+    } else {
+      insertPrefix = "INSERT INTO " + table + " (" + ipAddress + ", " + playerUuid + ", " + timestamp + ") VALUES ";
+      insertSuffix = " ON DUPLICATE KEY UPDATE " + timestamp + " = VALUES(" + timestamp + ")";
+    }
+    deletePrefix = "DELETE FROM " + table + " WHERE " + ipAddress + " IN (";
+    removalPrefix = "INSERT INTO " + escape(databaseType, "sonar_verified_player_removals")
+      + " (" + ipAddress + ", " + timestamp + ") VALUES ";
+  }
+
+  static @NotNull String escape(final @NotNull DatabaseType databaseType, final @NotNull String name) {
+    final StringBuilder builder = new StringBuilder(name.length() + 2);
+    databaseType.appendEscapedEntityName(builder, name);
+    return builder.toString();
+  }
+
+  synchronized void insert(final @NotNull VerifiedPlayer player) {
+    inserts.put(player.getInetAddress() + "/" + player.getPlayerUuid(), player);
+  }
+
+  synchronized void delete(final @NotNull String inetAddress) {
+    // Pending inserts for this IP address would be deleted anyway
+    inserts.values().removeIf(player -> player.getInetAddress().equals(inetAddress));
+    deletes.add(inetAddress);
+  }
+
+  synchronized void clear() {
+    inserts.clear();
+    deletes.clear();
+    generation++;
+  }
+
+  /**
+   * @return Number of inserts and deletes that haven't been written yet
+   */
+  synchronized int getBacklog() {
+    return inserts.size() + deletes.size();
+  }
+
+  /**
+   * Writes all pending changes to the database. Deletes are always written before
+   * inserts, since a delete can never be queued after an insert for the same IP address.
+   *
+   * @param force Whether to write the changes even if the last batch failed recently
+   */
+  void flush(final boolean force) throws SQLException {
+    final List<VerifiedPlayer> insertBatch;
+    final List<String> deleteBatch;
+    final long generation;
+    synchronized (this) {
+      if (inserts.isEmpty() && deletes.isEmpty()) {
+        return;
+      }
+      // Don't hammer the database while it is unavailable
+      if (!force && retryDelay > 0L && System.nanoTime() - retryAt < 0L) {
+        return;
+      }
+      insertBatch = new ArrayList<>(inserts.values());
+      deleteBatch = new ArrayList<>(deletes);
+      inserts.clear();
+      deletes.clear();
+      generation = this.generation;
+    }
+
+    try {
+      write(insertBatch, deleteBatch);
+    } catch (SQLException | RuntimeException exception) {
+      restore(insertBatch, deleteBatch, generation);
+      throw exception;
+    }
+    synchronized (this) {
+      retryDelay = 0L;
+    }
+  }
+
+  /**
+   * Merges a batch that couldn't be written back into the buffer.
+   * Changes queued after the batch has been taken always take precedence.
+   */
+  private synchronized void restore(final @NotNull List<VerifiedPlayer> insertBatch,
+                                    final @NotNull List<String> deleteBatch,
+                                    final long generation) {
+    retryDelay = Math.min(MAX_RETRY_DELAY, Math.max(MIN_RETRY_DELAY, retryDelay * 2L));
+    retryAt = System.nanoTime() + retryDelay;
+    // The buffer has been cleared in the meantime, so the batch is outdated
+    if (generation != this.generation) {
+      return;
+    }
+    for (final VerifiedPlayer player : insertBatch) {
+      // The player has been removed after the batch has been taken
+      if (deletes.contains(player.getInetAddress())) {
+        continue;
+      }
+      inserts.putIfAbsent(player.getInetAddress() + "/" + player.getPlayerUuid(), player);
+    }
+    // Deletes are always written before inserts, so newer inserts still win
+    deletes.addAll(deleteBatch);
+  }
+
+  private void write(final @NotNull List<VerifiedPlayer> insertBatch,
+                     final @NotNull List<String> deleteBatch) throws SQLException {
+    TransactionManager.callInTransaction(connectionSource, () -> {
+      for (int i = 0; i < deleteBatch.size(); i += MAX_ROWS_PER_STATEMENT) {
+        final List<String> rows = deleteBatch.subList(i, Math.min(deleteBatch.size(), i + MAX_ROWS_PER_STATEMENT));
+        final StringBuilder statement = new StringBuilder(deletePrefix);
+        for (int j = 0; j < rows.size(); j++) {
+          statement.append(j == 0 ? "?" : ", ?");
+        }
+        dao.executeRaw(statement.append(')').toString(), rows.toArray(new String[0]));
+
+        final StringBuilder removals = new StringBuilder(removalPrefix);
+        final String[] arguments = new String[rows.size() * 2];
+        final String timestamp = new Timestamp(System.currentTimeMillis()).toString();
+        for (int j = 0; j < rows.size(); j++) {
+          removals.append(j == 0 ? "(?, ?)" : ", (?, ?)");
+          arguments[j * 2] = rows.get(j);
+          arguments[j * 2 + 1] = timestamp;
+        }
+        dao.executeRaw(removals.toString(), arguments);
+      }
+
+      for (int i = 0; i < insertBatch.size(); i += MAX_ROWS_PER_STATEMENT) {
+        final List<VerifiedPlayer> rows = insertBatch.subList(i, Math.min(insertBatch.size(), i + MAX_ROWS_PER_STATEMENT));
+        final StringBuilder statement = new StringBuilder(insertPrefix);
+        final String[] arguments = new String[rows.size() * 3];
+        for (int j = 0; j < rows.size(); j++) {
+          final VerifiedPlayer player = rows.get(j);
+          statement.append(j == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+          arguments[j * 3] = player.getInetAddress();
+          arguments[j * 3 + 1] = player.getPlayerUuid().toString();
+          arguments[j * 3 + 2] = player.getTimestamp().toString();
+        }
+        dao.executeRaw(statement.append(insertSuffix).toString(), arguments);
+      }
+      return null;
+    });
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.model;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+/**
+ * Tombstone for verified players that have been removed from the database.
+ * Other servers using the same database read these to update their cache.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@DatabaseTable(tableName = "sonar_verified_player_removals")
+public final class VerifiedPlayerRemoval {
+  @SuppressWarnings("unused")
+  @DatabaseField(generatedId = true)
+  private int id;
+
+  // An empty IP address means that all verified players have been removed
+  @DatabaseField(
+    columnName = "ip_address",
+    canBeNull = false,
+    width = 45
+  )
+  private String inetAddress;
+
+  // No UUID means that all UUIDs of the IP address have been removed
+  @DatabaseField(
+    columnName = "player_uuid",
+    width = 36
+  )
+  private UUID playerUuid;
+
+  @DatabaseField(
+    columnName = "timestamp",
+    canBeNull = false
+  )
+  private Timestamp timestamp;
+
+  public VerifiedPlayerRemoval(final @NotNull String inetAddress,
+                               final @Nullable UUID playerUuid,
+                               final long timestamp) {
+    this.inetAddress = inetAddress;
+    this.playerUuid = playerUuid;
+    this.timestamp = new Timestamp(timestamp);
+  }
+}
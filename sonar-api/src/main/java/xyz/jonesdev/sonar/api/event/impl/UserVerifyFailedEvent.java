@@ -18,16 +18,37 @@
 package xyz.jonesdev.sonar.api.event.impl;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import org.jetbrains.annotations.NotNull;
 import xyz.jonesdev.sonar.api.event.SonarEvent;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
 import xyz.jonesdev.sonar.api.fallback.FallbackUser;
 
-@Getter
 @ToString
-@RequiredArgsConstructor
 public final class UserVerifyFailedEvent implements SonarEvent {
+  @Getter
   private final @NotNull FallbackUser user;
-  private final @NotNull String reason;
+  @Getter
+  private final @NotNull FailureReason code;
+  private final Object @NotNull [] arguments;
+  private String reason;
+
+  public UserVerifyFailedEvent(final @NotNull FallbackUser user,
+                               final @NotNull FailureReason code,
+                               final Object @NotNull ... arguments) {
+    this.user = user;
+    this.code = code;
+    this.arguments = arguments;
+  }
+
+  /**
+   * @return Message describing why the player failed the verification
+   * @apiNote The message is only formatted once it has been requested
+   */
+  public @NotNull String getReason() {
+    if (reason == null) {
+      reason = code.format(arguments);
+    }
+    return reason;
+  }
 }
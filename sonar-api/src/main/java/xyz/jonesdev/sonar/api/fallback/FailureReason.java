@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.fallback;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reasons for failing the verification
+ * <br>
+ * Every reason has a message pattern, in which {} is replaced by the arguments of the failure.
+ * The message is only formatted when it is actually needed (e.g. for logging),
+ * so failing a player never has to build a string.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum FailureReason {
+  // Login and configuration
+  KEEP_ALIVE_ID("expected K ID {} but got {}"),
+  DUPLICATE_LOGIN_ACK("sent duplicate login ack"),
+  UNUSED_SKIN_BIT("sent unused bit flag"),
+  DUPLICATE_PLUGIN_MESSAGE("sent duplicate plugin message"),
+  INVALID_BRAND_CHANNEL("invalid brand channel"),
+  BRAND_TOO_SHORT("client brand is too short"),
+  BRAND_TOO_LONG("client brand contains too much data: {}"),
+  ILLEGAL_BRAND("illegal client brand: {}"),
+  BRAND_PATTERN("client brand does not match pattern: {}"),
+  LOCALE_PATTERN("client locale does not match pattern: {}"),
+  // Gravity
+  NO_CLIENT_SETTINGS("didn't send client settings"),
+  NO_PLUGIN_MESSAGE("didn't send plugin message"),
+  DUPLICATE_TELEPORT_CONFIRM("duplicate teleport confirm"),
+  TELEPORT_CONFIRM_ID("expected TP ID {}, but got {}"),
+  MOVED_TOO_FAR_X("moved too far (x)"),
+  MOVED_TOO_FAR_Z("moved too far (z)"),
+  FELL_THROUGH_BLOCKS("fell through blocks; y: {} deltaY: {} tick: {}"),
+  INCORRECT_GRAVITY("incorrect gravity; predicted: {} deltaY: {} y: {}"),
+  ILLEGAL_COLLISION_TICK("illegal collision tick; tick: {}"),
+  ILLEGAL_COLLISION("illegal collision; offset: {} tick: {} y: {}"),
+  // Protocol
+  UNEXPECTED_TRANSACTION("unexpected transaction"),
+  TRANSACTION_NOT_ACCEPTED("didn't accept transaction"),
+  TRANSACTION_ID("expected T ID {}, but got {}"),
+  SLOT_OUT_OF_RANGE("slot out of range: {}"),
+  INVALID_SLOT("invalid slot: {}"),
+  // Vehicle
+  INVALID_Y_POSITION("invalid y position"),
+  ILLEGAL_SPEED_FORWARD("illegal speed (f): {}"),
+  ILLEGAL_SPEED_SIDEWAYS("illegal speed (s): {}"),
+  ROTATION_ORDER("illegal packet order; r/i {}/{}"),
+  PADDLE_ORDER("illegal packet order; i/p {}/{}"),
+  // CAPTCHA
+  CAPTCHA_TIMEOUT("took too long to enter CAPTCHA"),
+  CAPTCHA_TRIES("failed CAPTCHA too often"),
+  // Used by other plugins that fail players with a custom message
+  CUSTOM("{}");
+
+  private final String pattern;
+
+  /**
+   * @param arguments Arguments of the failure, in the same order as in the pattern
+   * @return Message of this reason with all arguments filled in
+   */
+  public @NotNull String format(final Object @NotNull ... arguments) {
+    if (arguments.length == 0) {
+      return pattern;
+    }
+    final StringBuilder builder = new StringBuilder(pattern.length() + arguments.length * 8);
+    int argument = 0, last = 0, index;
+    while ((index = pattern.indexOf("{}", last)) != -1 && argument < arguments.length) {
+      builder.append(pattern, last, index).append(arguments[argument++]);
+      last = index + 2;
+    }
+    return builder.append(pattern, last, pattern.length()).toString();
+  }
+}
@@ -27,6 +27,7 @@
 import xyz.jonesdev.sonar.api.config.SonarConfiguration;
 import xyz.jonesdev.sonar.api.fallback.captcha.CaptchaGenerator;
 import xyz.jonesdev.sonar.api.fallback.ratelimit.Ratelimiter;
+import xyz.jonesdev.sonar.api.filter.InetAddressFilter;
 
 import java.net.InetAddress;
 import java.util.concurrent.ConcurrentHashMap;
@@ -44,6 +45,8 @@ public final class Fallback {
   // Cache of all blacklisted IP addresses to ensure each entry can expire after the given time
   @Setter
   private Cache<String, Integer> blacklist;
+  // Filter used to skip the blacklist lookup for IP addresses that were never blacklisted
+  private final InetAddressFilter blacklistFilter = new InetAddressFilter(1024);
   @Setter
   private long blacklistTime;
   @Setter
@@ -28,4 +28,5 @@ public interface FallbackPipelines {
   String FALLBACK_PACKET_DECODER = "sonar-packet-decoder";
   String FALLBACK_TAIL_EXCEPTIONS = "sonar-exception-tail";
   String FALLBACK_BANDWIDTH = "sonar-bandwidth-counter";
+  String FALLBACK_CAPTURE = "sonar-traffic-capture";
 }
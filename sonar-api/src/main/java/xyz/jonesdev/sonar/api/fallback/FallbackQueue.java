@@ -20,6 +20,7 @@
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import xyz.jonesdev.sonar.api.Sonar;
 
 import java.net.InetAddress;
@@ -39,9 +40,16 @@ public final class FallbackQueue {
 
   private final ConcurrentMap<InetAddress, Runnable> players = new ConcurrentHashMap<>(
     128, 0.75f, Runtime.getRuntime().availableProcessors());
+  // Players stay in the queue while it is paused
+  @Setter
+  private volatile boolean paused;
 
   public void poll() {
-    final int maxQueuePolls = Sonar.get().getConfig().getQueue().getMaxQueuePolls();
+    if (paused) {
+      return;
+    }
+    final int maxQueuePolls = Math.max(1, Sonar.get().getConfig().getQueue().getMaxQueuePolls()
+      * Sonar.get().getAttackTracker().getAdjustments().getQueuePolls() / 100);
     int index = 0;
 
     // Iterate through the map and process up to maxQueuePolls entries
@@ -21,11 +21,13 @@
 import io.netty.channel.ChannelPipeline;
 import io.netty.util.ReferenceCountUtil;
 import net.kyori.adventure.text.Component;
+import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion;
 import xyz.jonesdev.sonar.api.timer.SystemTimer;
 
 import java.net.InetAddress;
+import java.util.Random;
 import java.util.UUID;
 
 public interface FallbackUser {
@@ -47,6 +49,13 @@ public interface FallbackUser {
   @NotNull
   UUID getOfflineUuid();
 
+  /**
+   * @return Source of all random values of this verification, so the verification can be replayed
+   */
+  @NotNull
+  @ApiStatus.Internal
+  Random getRandom();
+
   boolean isReceivedClientSettings();
 
   void setReceivedClientSettings(final boolean receivedClientSettings);
@@ -57,6 +66,24 @@ public interface FallbackUser {
 
   boolean isGeyser();
 
+  @NotNull
+  FallbackStage getStage();
+
+  /**
+   * Moves the player to the next verification stage
+   *
+   * @param stage Verification stage the player is now in
+   */
+  @ApiStatus.Internal
+  void setStage(final @NotNull FallbackStage stage);
+
+  /**
+   * Records the time spent in the current stage
+   * once the player has passed the last stage
+   */
+  @ApiStatus.Internal
+  void completeStage();
+
   /**
    * Disconnect the player during/after verification
    * using our custom Disconnect packet.
@@ -104,9 +131,17 @@ default void delayedWrite(final @NotNull Object msg) {
    * If the player fails the verification twice,
    * the player will be temporarily denied from verifying.
    *
+   * @param reason    Reason for failing the verification
+   * @param arguments Arguments of the reason, only used to format the message if necessary
+   */
+  void fail(final @NotNull FailureReason reason, final Object @NotNull ... arguments);
+
+  /**
+   * Same as {@link #fail(FailureReason, Object...)} but with a custom message
+   *
    * @param reason Reason for failing the verification
-   * @apiNote The {@link xyz.jonesdev.sonar.api.event.impl.UserVerifyFailedEvent}
-   * will not be thrown if no reason is given
    */
-  void fail(final @NotNull String reason);
+  default void fail(final @NotNull String reason) {
+    fail(FailureReason.CUSTOM, reason);
+  }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.filter;
+
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Split-block Bloom filter operating on 64-bit hashes.
+ * <br>
+ * Every key is mapped to a single block of 8 longs (64 bytes, one cache line)
+ * and sets exactly one bit in each of the 8 longs. Checking a key therefore only
+ * touches one block and never allocates.
+ * <br>
+ * Bits can only be set and never cleared, so removals have to be handled
+ * by rebuilding the filter (see {@link InetAddressFilter}).
+ *
+ * @see <a href="https://github.com/apache/parquet-format/blob/master/BloomFilter.md">Split block Bloom filters</a>
+ */
+public final class BlockedBloomFilter {
+  private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+  private static final int WORDS_PER_BLOCK = 8;
+  // 16 bits per entry result in a false positive rate of roughly 0.05%
+  private static final int BITS_PER_ENTRY = 16;
+
+  private final long[] words;
+  private final int blocks;
+  @Getter
+  private final int capacity;
+
+  public BlockedBloomFilter(final int capacity) {
+    this.capacity = Math.max(capacity, 1);
+    this.blocks = Math.max(16, (int) (((long) this.capacity * BITS_PER_ENTRY + 511L) >>> 9));
+    this.words = new long[blocks * WORDS_PER_BLOCK];
+  }
+
+  /**
+   * @param hash 64-bit hash of the key
+   */
+  public void put(final long hash) {
+    final int offset = blockOffset(hash);
+    final long mask = mix(hash);
+    for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+      final long bit = 1L << (mask >>> (i * 6));
+      // Skip the atomic operation if the bit has already been set
+      if (((long) WORDS.getAcquire(words, offset + i) & bit) == 0L) {
+        WORDS.getAndBitwiseOr(words, offset + i, bit);
+      }
+    }
+  }
+
+  /**
+   * @param hash 64-bit hash of the key
+   * @return false if the key was definitely never added, true if it might have been
+   */
+  public boolean mightContain(final long hash) {
+    final int offset = blockOffset(hash);
+    final long mask = mix(hash);
+    for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+      final long bit = 1L << (mask >>> (i * 6));
+      if (((long) WORDS.getAcquire(words, offset + i) & bit) == 0L) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return Estimated false positive rate based on how many bits are set
+   */
+  public double estimateFalsePositiveRate() {
+    long set = 0L;
+    for (int i = 0; i < words.length; i++) {
+      set += Long.bitCount((long) WORDS.getAcquire(words, i));
+    }
+    // A false positive requires one set bit in each of the 8 words of a block
+    return Math.pow((double) set / (words.length * 64L), WORDS_PER_BLOCK);
+  }
+
+  /**
+   * @return Memory (in bytes) used by the bits of this filter
+   */
+  public long getMemoryUsage() {
+    return words.length * 8L;
+  }
+
+  private int blockOffset(final long hash) {
+    // Map the upper 32 bits onto the number of blocks without using a modulo
+    return (int) (((hash >>> 32) * blocks) >>> 32) * WORDS_PER_BLOCK;
+  }
+
+  private static long mix(final long hash) {
+    // Use a second, independent mix of the hash for the bit positions
+    long h = hash * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 29;
+    return h * 0xBF58476D1CE4E5B9L;
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.filter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Precompiled trie of allowed hostnames (server addresses).
+ * <br>
+ * Supported entries:
+ * <ul>
+ *   <li>{@code play.example.com} - exact match</li>
+ *   <li>{@code *.example.com} - exactly one subdomain of example.com</li>
+ *   <li>{@code .example.com} - example.com and all of its subdomains</li>
+ * </ul>
+ * Entries are stored in reverse, so the hostname is walked from its last
+ * character to its first one, one byte at a time, without allocating anything.
+ * Forge (FML) markers and BungeeCord IP forwarding data are ignored, since
+ * both are appended to the hostname after a null byte.
+ */
+public final class HostnameTrie {
+  // Characters allowed in hostnames: a-z, 0-9, '-', '.' and '_'
+  private static final int ALPHABET_SIZE = 39;
+  private static final byte[] SYMBOLS = new byte[128];
+
+  static {
+    Arrays.fill(SYMBOLS, (byte) -1);
+    for (char c = 'a'; c <= 'z'; c++) {
+      SYMBOLS[c] = (byte) (c - 'a');
+      SYMBOLS[Character.toUpperCase(c)] = (byte) (c - 'a');
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      SYMBOLS[c] = (byte) (26 + c - '0');
+    }
+    SYMBOLS['-'] = 36;
+    SYMBOLS['.'] = 37;
+    SYMBOLS['_'] = 38;
+  }
+
+  private static final byte EXACT = 1, SUFFIX = 2, WILDCARD = 4;
+
+  private int[] transitions = new int[ALPHABET_SIZE * 16];
+  private byte[] flags = new byte[16];
+  private int nodes = 1;
+
+  private HostnameTrie() {
+  }
+
+  /**
+   * @param entries Exact, wildcard (*.example.com) and suffix (.example.com) entries
+   * @return Compiled trie containing all valid entries
+   */
+  public static @NotNull HostnameTrie compile(final @NotNull Collection<String> entries) {
+    final HostnameTrie trie = new HostnameTrie();
+    for (final String raw : entries) {
+      String entry = raw.trim().toLowerCase(Locale.ROOT);
+      byte flag = EXACT;
+      if (entry.startsWith("*.")) {
+        flag = WILDCARD;
+        entry = entry.substring(2);
+      } else if (entry.startsWith(".")) {
+        flag = SUFFIX;
+        entry = entry.substring(1);
+      }
+      if (entry.endsWith(".")) {
+        entry = entry.substring(0, entry.length() - 1);
+      }
+      if (!entry.isEmpty()) {
+        trie.insert(entry, flag);
+      }
+    }
+    return trie;
+  }
+
+  private void insert(final @NotNull String entry, final byte flag) {
+    int node = 0;
+    for (int i = entry.length() - 1; i >= 0; i--) {
+      final int symbol = symbol(entry.charAt(i));
+      // Entries with invalid characters can never match
+      if (symbol == -1) return;
+      final int index = node * ALPHABET_SIZE + symbol;
+      if (transitions[index] == 0) {
+        if (nodes == flags.length) {
+          flags = Arrays.copyOf(flags, nodes * 2);
+          transitions = Arrays.copyOf(transitions, nodes * 2 * ALPHABET_SIZE);
+        }
+        transitions[index] = nodes++;
+      }
+      node = transitions[index];
+    }
+    flags[node] |= flag;
+  }
+
+  /**
+   * @param hostname Hostname sent by the client in the handshake
+   * @return Whether the hostname matches any entry
+   */
+  public boolean matches(final @NotNull String hostname) {
+    final int end = hostnameLength(hostname);
+    if (end == 0) return false;
+
+    int node = 0;
+    for (int i = end - 1; i >= 0; i--) {
+      final char c = hostname.charAt(i);
+      if (c == '.') {
+        final byte flag = flags[node];
+        if ((flag & SUFFIX) != 0) return true;
+        if ((flag & WILDCARD) != 0 && isSingleLabel(hostname, i)) return true;
+      }
+      final int symbol = symbol(c);
+      if (symbol == -1) return false;
+      node = transitions[node * ALPHABET_SIZE + symbol];
+      if (node == 0) return false;
+    }
+    return (flags[node] & (EXACT | SUFFIX)) != 0;
+  }
+
+  /**
+   * @param hostname Hostname sent by the client in the handshake
+   * @return Length of the actual hostname without FML markers, forwarding data or trailing dot
+   */
+  public static int hostnameLength(final @NotNull String hostname) {
+    // Ignore Forge markers and BungeeCord forwarding data (separated by a null byte)
+    int length = hostname.indexOf('\0');
+    if (length == -1) length = hostname.length();
+    // Ignore the trailing dot of fully qualified domain names
+    if (length > 0 && hostname.charAt(length - 1) == '.') length--;
+    return length;
+  }
+
+  /**
+   * @return Whether the hostname has a non-empty label without dots before the given index
+   */
+  private static boolean isSingleLabel(final @NotNull String hostname, final int end) {
+    if (end == 0) return false;
+    for (int i = 0; i < end; i++) {
+      if (hostname.charAt(i) == '.') return false;
+    }
+    return true;
+  }
+
+  private static int symbol(final char c) {
+    return c < 128 ? SYMBOLS[c] : -1;
+  }
+
+  /**
+   * @return Number of nodes in this trie
+   */
+  public int size() {
+    return nodes;
+  }
+}
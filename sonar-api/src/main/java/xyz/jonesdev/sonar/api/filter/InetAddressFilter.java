@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.filter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Negative lookup filter for IP addresses placed in front of larger structures
+ * (like the blacklist or the verified player cache).
+ * <br>
+ * A definite miss is answered without any allocation or hash map lookup.
+ * Since Bloom filters cannot remove entries, removals are only counted,
+ * and the filter is rebuilt from the backing structure once too many
+ * entries have been removed or the filter has grown past its capacity.
+ * <br>
+ * Callers must always add an entry to the backing structure <i>before</i> adding
+ * it to the filter. Otherwise, a rebuild could read the backing structure
+ * right before the entry is added to it, and the entry would be lost.
+ */
+public final class InetAddressFilter {
+  private final int minimumCapacity;
+  private volatile BlockedBloomFilter current;
+  // Only set while the filter is being rebuilt
+  private volatile @Nullable BlockedBloomFilter next;
+  private final AtomicLong size = new AtomicLong();
+  private final AtomicLong removed = new AtomicLong();
+
+  public InetAddressFilter(final int minimumCapacity) {
+    this.minimumCapacity = minimumCapacity;
+    this.current = new BlockedBloomFilter(minimumCapacity);
+  }
+
+  public void add(final @NotNull InetAddress inetAddress) {
+    add(hash(inetAddress));
+  }
+
+  public void add(final @NotNull String hostAddress) {
+    final long hash = hash(hostAddress);
+    // Invalid IP addresses will never be looked up, so we don't need to add them
+    if (hash != 0L) {
+      add(hash);
+    }
+  }
+
+  private void add(final long hash) {
+    // Make sure to read the next filter first, so we never miss a concurrent rebuild
+    final BlockedBloomFilter next = this.next;
+    current.put(hash);
+    if (next != null) {
+      next.put(hash);
+    }
+    size.incrementAndGet();
+  }
+
+  /**
+   * Called whenever an entry has been removed from the backing structure
+   */
+  public void remove() {
+    removed.incrementAndGet();
+  }
+
+  /**
+   * @return false if the IP address is definitely not in the backing structure
+   */
+  public boolean mightContain(final @NotNull InetAddress inetAddress) {
+    return current.mightContain(hash(inetAddress));
+  }
+
+  /**
+   * @return Number of entries added since the last rebuild
+   */
+  public long size() {
+    return size.get();
+  }
+
+  /**
+   * @return Whether the filter should be rebuilt to remove stale entries or to grow
+   */
+  public boolean shouldRebuild() {
+    final long size = this.size.get();
+    return size > current.getCapacity() || removed.get() > Math.max(64L, size / 4L);
+  }
+
+  /**
+   * Rebuilds the filter from the keys of the backing structure.
+   * The collection must be a live (weakly consistent) view of the backing structure
+   * and not a snapshot, since a snapshot taken before this method is called
+   * would miss every entry that is added in the meantime.
+   */
+  public void rebuild(final @NotNull Collection<String> hostAddresses) {
+    rebuild(hostAddresses.size(), hostAddresses::forEach);
+  }
+
+  /**
+   * Rebuilds the filter from the keys of the backing structure.
+   * <br>
+   * The new filter is published before the source is read, so every entry that
+   * is added while the backing structure is being read ends up in the new filter.
+   *
+   * @param expectedSize Expected number of keys in the backing structure
+   * @param source       Passes every key of the backing structure to the given consumer
+   */
+  public synchronized void rebuild(final int expectedSize,
+                                   final @NotNull Consumer<Consumer<String>> source) {
+    final Rebuild rebuild = startRebuild(expectedSize);
+    try {
+      source.accept(rebuild::add);
+    } catch (Throwable throwable) {
+      rebuild.cancel();
+      throw throwable;
+    }
+    rebuild.complete();
+  }
+
+  /**
+   * Starts rebuilding the filter from the keys of the backing structure,
+   * so the backing structure can be read in multiple steps (e.g. page by page).
+   * <br>
+   * The new filter is published right away, so every entry that is added
+   * until the rebuild is complete also ends up in the new filter.
+   * If another rebuild is started in the meantime, this rebuild is discarded.
+   *
+   * @param expectedSize Expected number of keys in the backing structure
+   * @return Rebuild that has to be completed or cancelled
+   */
+  public synchronized @NotNull Rebuild startRebuild(final int expectedSize) {
+    final Rebuild rebuild = new Rebuild(new BlockedBloomFilter(Math.max(minimumCapacity, expectedSize * 2)));
+    next = rebuild.filter;
+    return rebuild;
+  }
+
+  public final class Rebuild {
+    private final BlockedBloomFilter filter;
+    private long count;
+
+    private Rebuild(final @NotNull BlockedBloomFilter filter) {
+      this.filter = filter;
+    }
+
+    public void add(final @NotNull String hostAddress) {
+      final long hash = hash(hostAddress);
+      if (hash != 0L) {
+        filter.put(hash);
+        count++;
+      }
+    }
+
+    /**
+     * Replaces the current filter with the rebuilt filter
+     */
+    public void complete() {
+      synchronized (InetAddressFilter.this) {
+        // Another rebuild has been started in the meantime
+        if (next != filter) {
+          return;
+        }
+        current = filter;
+        next = null;
+        size.set(count);
+        removed.set(0L);
+      }
+    }
+
+    /**
+     * Keeps using the current filter; it still contains every entry
+     */
+    public void cancel() {
+      synchronized (InetAddressFilter.this) {
+        if (next == filter) {
+          next = null;
+        }
+      }
+    }
+  }
+
+  public double estimateFalsePositiveRate() {
+    return current.estimateFalsePositiveRate();
+  }
+
+  public long getMemoryUsage() {
+    return current.getMemoryUsage();
+  }
+
+  private static long hash(final @NotNull InetAddress inetAddress) {
+    // The hash code of an IPv4 address is the address itself, and
+    // the hash code of an IPv6 address is computed without allocating
+    return mix(inetAddress.hashCode());
+  }
+
+  private static long hash(final @NotNull String hostAddress) {
+    // Parse IPv4 addresses manually to avoid any lookups or allocations
+    if (hostAddress.indexOf(':') == -1) {
+      int address = 0, octet = 0, dots = 0, digits = 0;
+      for (int i = 0; i < hostAddress.length(); i++) {
+        final char c = hostAddress.charAt(i);
+        if (c == '.') {
+          if (digits == 0 || ++dots > 3) return 0L;
+          address = (address << 8) | octet;
+          octet = digits = 0;
+        } else if (c >= '0' && c <= '9' && digits < 3) {
+          octet = octet * 10 + (c - '0');
+          if (octet > 255) return 0L;
+          digits++;
+        } else {
+          return 0L;
+        }
+      }
+      if (dots != 3 || digits == 0) return 0L;
+      return mix((address << 8) | octet);
+    }
+    try {
+      // IPv6 literals are parsed directly and never resolved
+      return hash(InetAddress.getByName(hostAddress));
+    } catch (UnknownHostException exception) {
+      return 0L;
+    }
+  }
+
+  private static long mix(final int value) {
+    // https://github.com/aappleby/smhasher/wiki/MurmurHash3 (fmix64)
+    long h = value & 0xFFFFFFFFL;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h | 1L; // 0 is reserved for invalid addresses
+  }
+}
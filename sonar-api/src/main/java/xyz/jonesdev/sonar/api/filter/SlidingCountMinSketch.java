@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.filter;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch over a sliding time window.
+ * <br>
+ * The window is split into a fixed number of slots, each of which has its own
+ * sketch. Estimates are summed over all slots, and the oldest slot is cleared
+ * as soon as the window moves forward. The memory footprint is fixed and does
+ * not depend on the number of unique keys.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Count%E2%80%93min_sketch">Count-min sketch</a>
+ */
+public final class SlidingCountMinSketch {
+  private static final int DEPTH = 4;
+  private static final long[] SEEDS = {
+    0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+  };
+
+  private final int slots, width, mask;
+  private final long slotDuration;
+  private final AtomicIntegerArray counters;
+  private final AtomicLongArray totals;
+  private volatile long currentEpoch;
+
+  /**
+   * @param window Duration of the sliding window in milliseconds
+   * @param slots  Number of slots the window is split into
+   * @param width  Number of counters per row (rounded up to a power of 2)
+   */
+  public SlidingCountMinSketch(final long window, final int slots, final int width) {
+    this.slots = slots;
+    this.width = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+    this.mask = this.width - 1;
+    this.slotDuration = Math.max(1L, window / slots);
+    this.counters = new AtomicIntegerArray(slots * DEPTH * this.width);
+    this.totals = new AtomicLongArray(slots);
+    this.currentEpoch = System.currentTimeMillis() / slotDuration;
+  }
+
+  /**
+   * Counts the given key and returns its estimated frequency within the window
+   *
+   * @param hash 64-bit hash of the key
+   * @return Estimated number of occurrences including this one
+   */
+  public int addAndEstimate(final long hash) {
+    return addAndEstimate(hash, System.currentTimeMillis());
+  }
+
+  int addAndEstimate(final long hash, final long now) {
+    final int slot = advance(now);
+    int estimate = Integer.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      final int column = index(hash, row);
+      counters.incrementAndGet((slot * DEPTH + row) * width + column);
+      // Sum up the counters of all slots in the window
+      int sum = 0;
+      for (int i = 0; i < slots; i++) {
+        sum += counters.get((i * DEPTH + row) * width + column);
+      }
+      estimate = Math.min(estimate, sum);
+    }
+    return estimate;
+  }
+
+  /**
+   * Counts a key without a specific pattern (used for the total number of keys)
+   */
+  public void count() {
+    count(System.currentTimeMillis());
+  }
+
+  void count(final long now) {
+    totals.incrementAndGet(advance(now));
+  }
+
+  /**
+   * @return Total number of counted keys within the window
+   */
+  public long getTotal() {
+    return getTotal(System.currentTimeMillis());
+  }
+
+  long getTotal(final long now) {
+    advance(now);
+    long total = 0L;
+    for (int i = 0; i < slots; i++) {
+      total += totals.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * @return Memory (in bytes) used by the counters of this sketch
+   */
+  public long getMemoryUsage() {
+    return counters.length() * 4L + totals.length() * 8L;
+  }
+
+  private int index(final long hash, final int row) {
+    long h = (hash ^ SEEDS[row]) * 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 32;
+    return (int) h & mask;
+  }
+
+  /**
+   * Moves the window forward if necessary
+   *
+   * @param now Current time in milliseconds
+   * @return Slot of the current epoch
+   */
+  private int advance(final long now) {
+    final long epoch = now / slotDuration;
+    long current = currentEpoch;
+    if (epoch > current) {
+      synchronized (this) {
+        current = currentEpoch;
+        if (epoch > current) {
+          // Clear all slots that have moved out of the window
+          final long expired = Math.min(slots, epoch - current);
+          for (long e = epoch - expired + 1; e <= epoch; e++) {
+            clear((int) (e % slots));
+          }
+          currentEpoch = current = epoch;
+        }
+      }
+    }
+    // The window never moves backwards (e.g. if the system clock has been changed),
+    // so late keys are counted in the current slot
+    return (int) (current % slots);
+  }
+
+  private void clear(final int slot) {
+    final int offset = slot * DEPTH * width;
+    for (int i = 0; i < DEPTH * width; i++) {
+      counters.set(offset + i, 0);
+    }
+    totals.set(slot, 0L);
+  }
+}
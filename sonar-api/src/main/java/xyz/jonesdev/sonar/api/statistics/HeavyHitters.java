@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.statistics;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Top-k tracker based on the Space-Saving algorithm.
+ * <br>
+ * Each stripe keeps a fixed number of counters; when a new key arrives and
+ * all counters are taken, the smallest counter is handed over to the new key.
+ * Keys are plain longs, so counting a key never allocates. Stripes are chosen
+ * per thread to avoid contention between event loops and merged when queried.
+ *
+ * @see <a href="https://www.cs.ucsb.edu/sites/default/files/documents/2005-23.pdf">Efficient Computation of Frequent and Top-k Elements in Data Streams</a>
+ */
+public final class HeavyHitters {
+  private static final int STRIPES = Math.min(16,
+    Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private final Formatter formatter;
+
+  /**
+   * @param capacity  Number of counters per stripe
+   * @param formatter Converts keys into human-readable names
+   */
+  public HeavyHitters(final int capacity, final @NotNull Formatter formatter) {
+    this.formatter = formatter;
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new Stripe(capacity);
+    }
+  }
+
+  /**
+   * @param key   Key that should be counted
+   * @param label Optional object that is passed to the formatter
+   */
+  public void offer(final long key, final @Nullable Object label) {
+    stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)].offer(key, label);
+  }
+
+  public void reset() {
+    for (final Stripe stripe : stripes) {
+      stripe.reset();
+    }
+  }
+
+  /**
+   * @param limit Maximum number of entries
+   * @return Most frequent keys sorted by their (estimated) count
+   */
+  public @NotNull List<Entry> getTop(final int limit) {
+    final Map<Long, long[]> merged = new HashMap<>();
+    final Map<Long, Object> labels = new HashMap<>();
+    for (final Stripe stripe : stripes) {
+      synchronized (stripe) {
+        for (int i = 0; i < stripe.size; i++) {
+          final long[] counts = merged.computeIfAbsent(stripe.keys[i], k -> new long[2]);
+          counts[0] += stripe.counts[i];
+          counts[1] += stripe.errors[i];
+          labels.putIfAbsent(stripe.keys[i], stripe.labels[i]);
+        }
+      }
+    }
+    final List<Entry> entries = new ArrayList<>(merged.size());
+    for (final Map.Entry<Long, long[]> entry : merged.entrySet()) {
+      entries.add(new Entry(formatter.format(entry.getKey(), labels.get(entry.getKey())),
+        entry.getValue()[0], entry.getValue()[1]));
+    }
+    entries.sort(Comparator.comparingLong(Entry::getCount).reversed());
+    return entries.size() > limit ? entries.subList(0, limit) : entries;
+  }
+
+  /**
+   * @return Entries formatted as a human-readable list
+   */
+  public static @NotNull String format(final @NotNull List<Entry> entries, final @NotNull String delimiter) {
+    final StringJoiner joiner = new StringJoiner(delimiter);
+    for (final Entry entry : entries) {
+      joiner.add(entry.getName() + " (" + entry.getCount() + ")");
+    }
+    return joiner.length() == 0 ? "-" : joiner.toString();
+  }
+
+  @FunctionalInterface
+  public interface Formatter {
+    @NotNull String format(final long key, final @Nullable Object label);
+  }
+
+  @Getter
+  @ToString
+  @RequiredArgsConstructor
+  public static final class Entry {
+    private final String name;
+    // Estimated number of occurrences
+    private final long count;
+    // Maximum overestimation of the count
+    private final long error;
+  }
+
+  private static final class Stripe {
+    private final long[] keys, counts, errors;
+    private final Object[] labels;
+    private int size;
+
+    Stripe(final int capacity) {
+      this.keys = new long[capacity];
+      this.counts = new long[capacity];
+      this.errors = new long[capacity];
+      this.labels = new Object[capacity];
+    }
+
+    synchronized void offer(final long key, final @Nullable Object label) {
+      int minimum = 0;
+      for (int i = 0; i < size; i++) {
+        if (keys[i] == key) {
+          counts[i]++;
+          return;
+        }
+        if (counts[i] < counts[minimum]) {
+          minimum = i;
+        }
+      }
+      if (size < keys.length) {
+        keys[size] = key;
+        counts[size] = 1L;
+        errors[size] = 0L;
+        labels[size++] = label;
+        return;
+      }
+      // Replace the smallest counter with the new key
+      errors[minimum] = counts[minimum];
+      counts[minimum]++;
+      keys[minimum] = key;
+      labels[minimum] = label;
+    }
+
+    synchronized void reset() {
+      Arrays.fill(labels, null);
+      size = 0;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear latency histogram in microseconds.
+ * <br>
+ * Every power of two is split into 16 linear sub-buckets, so a recorded value is
+ * never off by more than 6.25%, similar to HdrHistogram with one significant digit.
+ * Recording only computes the bucket index and performs atomic adds on a
+ * preallocated array, so it never allocates and never blocks.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values above 2^36 microseconds (about 19 hours) are recorded in the last bucket
+  private static final int MAX_SHIFT = 32;
+  private static final int BUCKETS = (MAX_SHIFT + 1) * SUB_BUCKETS + SUB_BUCKETS;
+  // The count, sum and maximum are stored right after the buckets
+  private static final int COUNT = BUCKETS;
+  private static final int SUM = BUCKETS + 1;
+  private static final int MAXIMUM = BUCKETS + 2;
+
+  private final AtomicLongArray slots = new AtomicLongArray(BUCKETS + 3);
+
+  /**
+   * @param nanos Duration in nanoseconds
+   */
+  public void record(final long nanos) {
+    final long micros = Math.max(0L, nanos / 1000L);
+    slots.getAndIncrement(index(micros));
+    slots.getAndIncrement(COUNT);
+    slots.getAndAdd(SUM, micros);
+    long maximum;
+    while ((maximum = slots.get(MAXIMUM)) < micros) {
+      if (slots.compareAndSet(MAXIMUM, maximum, micros)) break;
+    }
+  }
+
+  static int index(final long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+    if (shift > MAX_SHIFT) {
+      return BUCKETS - 1;
+    }
+    // The top bits are always in [SUB_BUCKETS, 2 * SUB_BUCKETS), so indices are contiguous
+    return (shift << SUB_BUCKET_BITS) + (int) (micros >>> shift);
+  }
+
+  static long highestValue(final int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    final long top = (index & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+    return ((top + 1) << shift) - 1;
+  }
+
+  public long getCount() {
+    return slots.get(COUNT);
+  }
+
+  public double getAverageMillis() {
+    final long count = slots.get(COUNT);
+    return count == 0L ? 0D : slots.get(SUM) / (double) count / 1000D;
+  }
+
+  public double getMaximumMillis() {
+    return slots.get(MAXIMUM) / 1000D;
+  }
+
+  /**
+   * @param percentile Percentile between 0 and 1, e.g. 0.99
+   * @return Upper bound of the bucket that contains the percentile in milliseconds
+   */
+  public double getPercentileMillis(final double percentile) {
+    final long[] snapshot = new long[BUCKETS];
+    long count = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = slots.get(i);
+      count += snapshot[i];
+    }
+    if (count == 0L) {
+      return 0D;
+    }
+    final long target = Math.max(1L, (long) Math.ceil(count * Math.min(1D, Math.max(0D, percentile))));
+    long seen = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        // The bucket bound can be larger than the largest value that has actually been recorded
+        return Math.min(highestValue(i), slots.get(MAXIMUM)) / 1000D;
+      }
+    }
+    return getMaximumMillis();
+  }
+
+  public void reset() {
+    for (int i = 0; i < slots.length(); i++) {
+      slots.set(i, 0L);
+    }
+  }
+}
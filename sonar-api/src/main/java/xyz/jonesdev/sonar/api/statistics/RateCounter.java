@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.statistics;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sliding-window event counter with exact totals.
+ * <br>
+ * Events are counted in a ring of one-second buckets per stripe. Stripes are chosen
+ * per thread, so event loops don't contend on the same memory, and an increment is
+ * a single atomic add that never retries. Rates are computed by summing the completed
+ * buckets of all stripes when queried. The ring is advanced once per second by
+ * {@link #tickAll()}, which clears the next bucket before it becomes the current one.
+ */
+public final class RateCounter {
+  private static final int STRIPES = Math.min(16,
+    Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+  // Enough buckets for a 60-second window, plus the current bucket
+  private static final int BUCKETS = 64;
+  public static final int MAX_WINDOW = BUCKETS - 1;
+  // Every stripe has its own total right after its buckets, followed by padding,
+  // so the hot slots of different stripes never share a cache line
+  private static final int TOTAL = BUCKETS;
+  private static final int STRIDE = BUCKETS + 8;
+
+  private static final List<RateCounter> COUNTERS = new CopyOnWriteArrayList<>();
+
+  private final AtomicLongArray slots = new AtomicLongArray(STRIPES * STRIDE);
+  private volatile int current;
+
+  public RateCounter() {
+    COUNTERS.add(this);
+  }
+
+  public void increment() {
+    add(1L);
+  }
+
+  public void add(final long amount) {
+    final int offset = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE;
+    slots.getAndAdd(offset + current, amount);
+    slots.getAndAdd(offset + TOTAL, amount);
+  }
+
+  /**
+   * @return Exact number of events since the counter has been created
+   */
+  public long getTotal() {
+    long total = 0L;
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      total += slots.get(stripe * STRIDE + TOTAL);
+    }
+    return total;
+  }
+
+  /**
+   * @return Number of events during the last completed second
+   */
+  public long getLastSecond() {
+    return getSum(1);
+  }
+
+  /**
+   * @param seconds Size of the window in seconds (at most {@link #MAX_WINDOW})
+   * @return Number of events during the last completed seconds
+   */
+  public long getSum(final int seconds) {
+    final int window = Math.max(1, Math.min(MAX_WINDOW, seconds));
+    final int current = this.current;
+    long sum = 0L;
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      final int offset = stripe * STRIDE;
+      for (int i = 1; i <= window; i++) {
+        sum += slots.get(offset + ((current - i) & (BUCKETS - 1)));
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * @param seconds Size of the window in seconds (at most {@link #MAX_WINDOW})
+   * @return Average number of events per second during the last completed seconds
+   */
+  public double getAverage(final int seconds) {
+    final int window = Math.max(1, Math.min(MAX_WINDOW, seconds));
+    return getSum(window) / (double) window;
+  }
+
+  private void tick() {
+    final int next = (current + 1) & (BUCKETS - 1);
+    // Make sure the bucket is empty before events are counted in it again
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      slots.set(stripe * STRIDE + next, 0L);
+    }
+    current = next;
+  }
+
+  /**
+   * Advances all counters by one second. This must be called exactly once per second.
+   */
+  @ApiStatus.Internal
+  public static void tickAll() {
+    for (final RateCounter counter : COUNTERS) {
+      counter.tick();
+    }
+  }
+}
@@ -18,6 +18,13 @@
 package xyz.jonesdev.sonar.api.statistics;
 
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
+import xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion;
+
+import java.util.List;
+import java.util.Map;
 
 @SuppressWarnings("unused")
 public interface SonarStatistics {
@@ -32,6 +39,18 @@ public interface SonarStatistics {
    */
   long getLoginsPerSecond();
 
+  /**
+   * @param seconds Size of the window in seconds (at most 63)
+   * @return Average number of connection establishments per second during the window
+   */
+  double getAverageConnectionsPerSecond(final int seconds);
+
+  /**
+   * @param seconds Size of the window in seconds (at most 63)
+   * @return Average number of logins per second during the window
+   */
+  double getAverageLoginsPerSecond(final int seconds);
+
   /**
    * @return Currently incoming bytes per second
    */
@@ -113,6 +132,70 @@ public interface SonarStatistics {
    */
   long getTotalBlacklistSize();
 
+  /**
+   * @return Total number of connections rejected because of their hostname
+   */
+  long getTotalHostnameRejections();
+
+  /**
+   * @return Most frequent subnets (/24 for IPv4, /48 for IPv6) of players who logged in
+   * @apiNote The heavy hitters are reset every time a new attack is detected
+   */
+  List<HeavyHitters.Entry> getTopSubnets(final int limit);
+
+  /**
+   * @return Most frequent protocol versions sent in handshakes
+   * @apiNote The heavy hitters are reset every time a new attack is detected
+   */
+  List<HeavyHitters.Entry> getTopProtocols(final int limit);
+
+  /**
+   * @return Most frequent hostnames (server addresses) sent in handshakes
+   * @apiNote The heavy hitters are reset every time a new attack is detected
+   */
+  List<HeavyHitters.Entry> getTopHostnames(final int limit);
+
+  /**
+   * @return Traffic of all finished verifications per protocol version
+   * @apiNote Only contains protocol versions that have been used by at least one player
+   */
+  Map<ProtocolVersion, VerificationTraffic> getVerificationTraffic();
+
+  /**
+   * @return Traffic of all finished verifications of all protocol versions combined
+   */
+  VerificationTraffic getTotalVerificationTraffic();
+
+  /**
+   * @return Number of connections that have reached the given verification stage
+   */
+  long getReachedStage(final @NotNull FallbackStage stage);
+
+  /**
+   * @return Time spent in the given verification stage by all players who have passed it
+   */
+  LatencyHistogram getStageLatency(final @NotNull FallbackStage stage);
+
+  /**
+   * @return Number of failed verifications with the given failure reason
+   */
+  long getFailures(final @NotNull FailureReason reason);
+
+  /**
+   * @return Number of players who tried verifying during the last second
+   */
+  long getAttemptedVerificationsPerSecond();
+
+  /**
+   * @return Number of players who failed the verification during the last second
+   */
+  long getFailedVerificationsPerSecond();
+
+  /**
+   * @return Highest delay (in milliseconds) of tasks submitted to the event loops
+   */
+  long getEventLoopLag();
+
   @ApiStatus.Internal
-  void cleanUpCache();
+  void resetHeavyHitters();
 }
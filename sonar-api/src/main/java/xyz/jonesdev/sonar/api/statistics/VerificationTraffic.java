@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.statistics;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
+
+/**
+ * Snapshot of the traffic caused by verifying players
+ * <br>
+ * The bytes per verification are kept in a histogram with power-of-two buckets:
+ * bucket {@code i} counts verifications that used less than {@code 2^i} bytes in total.
+ */
+public final class VerificationTraffic {
+  public static final int HISTOGRAM_BUCKETS = 32;
+
+  // Number of verifications
+  @Getter
+  private final long connections;
+  private final long[] reached, incoming, outgoing, histogram;
+
+  public VerificationTraffic(final long connections,
+                             final long @NotNull [] reached,
+                             final long @NotNull [] incoming,
+                             final long @NotNull [] outgoing,
+                             final long @NotNull [] histogram) {
+    this.connections = connections;
+    this.reached = reached;
+    this.incoming = incoming;
+    this.outgoing = outgoing;
+    this.histogram = histogram;
+  }
+
+  /**
+   * @return Number of verifications that have reached the stage
+   */
+  public long getReached(final @NotNull FallbackStage stage) {
+    return reached[stage.ordinal()];
+  }
+
+  /**
+   * @return Total number of bytes received from players during the stage
+   */
+  public long getIncomingBytes(final @NotNull FallbackStage stage) {
+    return incoming[stage.ordinal()];
+  }
+
+  /**
+   * @return Total number of bytes sent to players during the stage
+   */
+  public long getOutgoingBytes(final @NotNull FallbackStage stage) {
+    return outgoing[stage.ordinal()];
+  }
+
+  /**
+   * @return Total number of bytes sent and received during all stages
+   */
+  public long getTotalBytes() {
+    long total = 0L;
+    for (int i = 0; i < incoming.length; i++) {
+      total += incoming[i] + outgoing[i];
+    }
+    return total;
+  }
+
+  /**
+   * @return Average number of bytes sent and received per verification
+   */
+  public long getAverageBytes() {
+    return connections == 0L ? 0L : getTotalBytes() / connections;
+  }
+
+  /**
+   * @param percentile Percentile between 0 and 100
+   * @return Upper bound of the number of bytes of the given percentile of verifications
+   */
+  public long getBytesPercentile(final double percentile) {
+    long count = 0L;
+    for (final long bucket : histogram) {
+      count += bucket;
+    }
+    if (count == 0L) {
+      return 0L;
+    }
+    final long target = (long) Math.ceil(count * Math.max(0D, Math.min(100D, percentile)) / 100D);
+    long seen = 0L;
+    for (int i = 0; i < histogram.length; i++) {
+      seen += histogram[i];
+      if (seen >= Math.max(1L, target)) {
+        return 1L << i;
+      }
+    }
+    return 1L << (histogram.length - 1);
+  }
+
+  /**
+   * @return Merged snapshot of both snapshots
+   */
+  public @NotNull VerificationTraffic merge(final @NotNull VerificationTraffic other) {
+    return new VerificationTraffic(connections + other.connections,
+      sum(reached, other.reached), sum(incoming, other.incoming),
+      sum(outgoing, other.outgoing), sum(histogram, other.histogram));
+  }
+
+  private static long @NotNull [] sum(final long @NotNull [] a, final long @NotNull [] b) {
+    final long[] sum = new long[a.length];
+    for (int i = 0; i < sum.length; i++) {
+      sum[i] = a[i] + b[i];
+    }
+    return sum;
+  }
+
+  public static @NotNull VerificationTraffic empty() {
+    final int stages = FallbackStage.values().length;
+    return new VerificationTraffic(0L, new long[stages], new long[stages], new long[stages],
+      new long[HISTOGRAM_BUCKETS]);
+  }
+}
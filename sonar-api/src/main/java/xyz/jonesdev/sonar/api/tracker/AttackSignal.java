@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.tracker;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Signals the attack tracker learns the usual values of
+ */
+@Getter
+@RequiredArgsConstructor
+public enum AttackSignal {
+  CONNECTIONS(5D, false),
+  LOGINS(5D, false),
+  // Lower confidence bound of the failed verifications per attempted verification
+  FAILURE_RATIO(0.1D, true),
+  // Incoming bytes per second
+  BANDWIDTH(64D * 1024D, false),
+  // Highest delay of the event loops in milliseconds
+  EVENT_LOOP_LAG(10D, false);
+
+  /**
+   * Lower bound of the standard deviation, so small changes of quiet signals aren't unusual
+   */
+  private final double minimumDeviation;
+  /**
+   * Whether unusual values indicate bots, instead of just more traffic than usual
+   */
+  private final boolean suspicious;
+}
@@ -18,13 +18,18 @@
 package xyz.jonesdev.sonar.api.tracker;
 
 import lombok.*;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import xyz.jonesdev.sonar.api.Sonar;
 import xyz.jonesdev.sonar.api.config.SonarConfiguration;
 import xyz.jonesdev.sonar.api.event.impl.AttackDetectedEvent;
 import xyz.jonesdev.sonar.api.event.impl.AttackMitigatedEvent;
+import xyz.jonesdev.sonar.api.event.impl.EscalationLevelChangedEvent;
+import xyz.jonesdev.sonar.api.statistics.HeavyHitters;
 import xyz.jonesdev.sonar.api.timer.SystemTimer;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
 
 import static xyz.jonesdev.sonar.api.profiler.SimpleProcessProfiler.*;
@@ -34,8 +39,37 @@
 public final class AttackTracker {
   public static final AttackTracker INSTANCE = new AttackTracker();
 
+  // Number of seconds the baselines have to learn before they are used
+  private static final int WARM_UP_SAMPLES = 300;
+  // Unusual traffic is learned 10 times slower, so a permanent increase
+  // in traffic (e.g. a growing server) eventually becomes the new usual traffic
+  private static final double UNUSUAL_LEARNING_RATE = 0.1D;
+  // Number of seconds after which the baselines also learn from traffic
+  // during an attack, so they can never be frozen forever
+  private static final int MAXIMUM_FROZEN_SAMPLES = 3600;
+  // Quantile of the normal distribution for the 95% confidence bound of the failure ratio
+  private static final double FAILURE_RATIO_CONFIDENCE = 1.96D;
+
   private @Nullable AttackStatistics currentAttack;
   private int attackThreshold;
+  private volatile EscalationLevel level = EscalationLevel.NORMAL;
+  private final Map<AttackSignal, Baseline> baselines = new EnumMap<>(AttackSignal.class);
+  private final Map<AttackSignal, Double> scores = new EnumMap<>(AttackSignal.class);
+  @Getter(AccessLevel.NONE)
+  private final SystemTimer sampleTimer = new SystemTimer();
+  // Time since the escalation level has been lowered or confirmed
+  @Getter(AccessLevel.NONE)
+  private final SystemTimer levelTimer = new SystemTimer();
+  // Number of seconds the baselines haven't learned anything
+  @Getter(AccessLevel.NONE)
+  private int frozenSamples;
+
+  {
+    for (final AttackSignal signal : AttackSignal.values()) {
+      baselines.put(signal, new Baseline(signal.getMinimumDeviation()));
+      scores.put(signal, 0D);
+    }
+  }
 
   @Getter
   @ToString
@@ -51,15 +85,24 @@ public static final class AttackStatistics {
     private int successfulVerifications, failedVerifications;
   }
 
+  /**
+   * @return Adjustments of the current escalation level
+   */
+  public SonarConfiguration.AdaptiveDetection.@NotNull Adjustments getAdjustments() {
+    return Sonar.get().getConfig().getAdaptiveDetection().getAdjustments(level);
+  }
+
   public void checkIfUnderAttack() {
     final long joinsPerSecond = Sonar.get().getStatistics().getLoginsPerSecond();
     final int verifyingPlayers = Sonar.get().getFallback().getConnected().size();
     final int queuedPlayers = Sonar.get().getFallback().getQueue().getPlayers().size();
     final int minPlayers = Sonar.get().getConfig().getMinPlayersForAttack();
 
-    if (joinsPerSecond > minPlayers // Check the number of bots/joins per second.
+    updateEscalationLevel(joinsPerSecond > minPlayers // Check the number of bots/joins per second.
       || verifyingPlayers > minPlayers // Check the number of verifying players.
-      || queuedPlayers > minPlayers) { // Check the number of queued players.
+      || queuedPlayers > minPlayers); // Check the number of queued players.
+
+    if (level.isAttack()) {
       // Increment attack threshold
       ++attackThreshold;
 
@@ -68,6 +111,8 @@ public void checkIfUnderAttack() {
         currentAttack = new AttackStatistics();
         currentAttack.successfulVerifications = Sonar.get().getVerifiedPlayerController().estimatedSize();
         currentAttack.failedVerifications = Sonar.get().getStatistics().getTotalFailedVerifications();
+        // Only track the heavy hitters of the current attack
+        Sonar.get().getStatistics().resetHeavyHitters();
         Sonar.get().getEventManager().publish(new AttackDetectedEvent());
         Sonar.get().getChatNotificationHandler().handleNotification();
       } else {
@@ -122,6 +167,10 @@ public void checkIfUnderAttack() {
               final long verified = Math.max(totalVerified - currentAttack.successfulVerifications, 0);
               final long totalFailed = Sonar.get().getStatistics().getTotalFailedVerifications();
               final long failed = Math.max(totalFailed - currentAttack.failedVerifications, 0);
+              // Collect the heavy hitters of the attack
+              final String topSubnets = HeavyHitters.format(Sonar.get().getStatistics().getTopSubnets(5), ", ");
+              final String topProtocols = HeavyHitters.format(Sonar.get().getStatistics().getTopProtocols(5), ", ");
+              final String topHostnames = HeavyHitters.format(Sonar.get().getStatistics().getTopHostnames(5), ", ");
 
               webhook.post(() -> {
                 final SonarConfiguration.Webhook.Embed config = Sonar.get().getConfig().getWebhook().getEmbed();
@@ -135,7 +184,10 @@ public void checkIfUnderAttack() {
                   .replace("<peak-cps>", peakCPS)
                   .replace("<total-blacklisted>", Sonar.DECIMAL_FORMAT.format(blacklisted))
                   .replace("<total-failed>", Sonar.DECIMAL_FORMAT.format(failed))
-                  .replace("<total-success>", Sonar.DECIMAL_FORMAT.format(verified));
+                  .replace("<total-success>", Sonar.DECIMAL_FORMAT.format(verified))
+                  .replace("<top-subnets>", topSubnets)
+                  .replace("<top-protocols>", topProtocols)
+                  .replace("<top-hostnames>", topHostnames);
                 return new SonarConfiguration.Webhook.Embed(
                   config.getTitle(), config.getTitleUrl(), description, config.getR(), config.getG(), config.getB());
               });
@@ -150,4 +202,140 @@ public void checkIfUnderAttack() {
       attackThreshold = 0;
     }
   }
+
+  private void updateEscalationLevel(final boolean thresholdExceeded) {
+    final SonarConfiguration.AdaptiveDetection config = Sonar.get().getConfig().getAdaptiveDetection();
+    EscalationLevel target = thresholdExceeded ? EscalationLevel.HIGH : EscalationLevel.NORMAL;
+
+    if (config.isEnabled()) {
+      final Map<AttackSignal, Double> samples = sample(config);
+      double volumeScore = 0D, suspicionScore = 0D;
+      for (final Map.Entry<AttackSignal, Double> entry : samples.entrySet()) {
+        final double score = baselines.get(entry.getKey()).score(entry.getValue());
+        scores.put(entry.getKey(), score);
+        if (entry.getKey().isSuspicious()) {
+          suspicionScore = Math.max(suspicionScore, score);
+        } else {
+          volumeScore = Math.max(volumeScore, score);
+        }
+      }
+
+      // The baselines are only used once they have learned enough about the usual traffic
+      if (baselines.get(AttackSignal.CONNECTIONS).getSamples() >= WARM_UP_SAMPLES) {
+        target = selectLevel(config.getElevatedScore(), config.getHighScore(), config.getCriticalScore(),
+          volumeScore, suspicionScore, thresholdExceeded);
+      }
+
+      // Learn the usual traffic once per second, but learn slower from unusual traffic
+      // and don't learn from attacks unless the baselines have been frozen for too long
+      if (sampleTimer.elapsed(1000L)) {
+        sampleTimer.reset();
+        double alpha = 1D - Math.pow(0.5D, 1D / config.getHalfLife());
+        if (target == EscalationLevel.ELEVATED) {
+          alpha *= UNUSUAL_LEARNING_RATE;
+        } else if (target != EscalationLevel.NORMAL) {
+          alpha = ++frozenSamples > MAXIMUM_FROZEN_SAMPLES ? alpha * UNUSUAL_LEARNING_RATE : 0D;
+        }
+        if (target.compareTo(EscalationLevel.HIGH) < 0) {
+          frozenSamples = 0;
+        }
+        if (alpha > 0D) {
+          final double rate = alpha;
+          samples.forEach((signal, value) -> baselines.get(signal).update(value, rate));
+        }
+      }
+    }
+
+    if (target.compareTo(level) >= 0) {
+      // Escalate immediately
+      levelTimer.reset();
+      setLevel(target);
+    } else if (levelTimer.elapsed(Sonar.get().getConfig().getAttackCooldownDelay())) {
+      // Only lower the level one step at a time after the cooldown
+      levelTimer.reset();
+      setLevel(EscalationLevel.values()[level.ordinal() - 1]);
+    }
+  }
+
+  private void setLevel(final @NotNull EscalationLevel newLevel) {
+    if (newLevel != level) {
+      final EscalationLevel previousLevel = level;
+      level = newLevel;
+      Sonar.get().getEventManager().publish(new EscalationLevelChangedEvent(
+        previousLevel, newLevel, new EnumMap<>(scores)));
+    }
+  }
+
+  private static @NotNull Map<AttackSignal, Double> sample(final SonarConfiguration.@NotNull AdaptiveDetection config) {
+    final Map<AttackSignal, Double> samples = new EnumMap<>(AttackSignal.class);
+    samples.put(AttackSignal.CONNECTIONS, (double) Sonar.get().getStatistics().getConnectionsPerSecond());
+    samples.put(AttackSignal.LOGINS, (double) Sonar.get().getStatistics().getLoginsPerSecond());
+    samples.put(AttackSignal.FAILURE_RATIO, failureRatio(Sonar.get().getStatistics().getFailedVerificationsPerSecond(),
+      Sonar.get().getStatistics().getAttemptedVerificationsPerSecond(), config.getFailureRatioMinAttempts()));
+    samples.put(AttackSignal.BANDWIDTH, (double) Sonar.get().getStatistics().getCurrentIncomingBandwidth());
+    samples.put(AttackSignal.EVENT_LOOP_LAG, (double) Sonar.get().getStatistics().getEventLoopLag());
+    return samples;
+  }
+
+  /**
+   * @return Lower bound of the Wilson score interval of the failure ratio,
+   * or 0 if there are too few verifications for the ratio to mean anything
+   */
+  static double failureRatio(final long failed, final long attempted, final int minimumAttempts) {
+    if (attempted < Math.max(minimumAttempts, 1)) {
+      return 0D;
+    }
+    final double ratio = Math.min(1D, failed / (double) attempted);
+    final double z2 = FAILURE_RATIO_CONFIDENCE * FAILURE_RATIO_CONFIDENCE;
+    final double center = ratio + z2 / (2D * attempted);
+    final double margin = FAILURE_RATIO_CONFIDENCE
+      * Math.sqrt(ratio * (1D - ratio) / attempted + z2 / (4D * attempted * attempted));
+    return Math.max(0D, (center - margin) / (1D + z2 / attempted));
+  }
+
+  static @NotNull EscalationLevel selectLevel(final int elevatedScore, final int highScore, final int criticalScore,
+                                              final double volumeScore, final double suspicionScore,
+                                              final boolean thresholdExceeded) {
+    // A lot of traffic alone could also be players rejoining after a restart,
+    // so it's only considered an attack if it is extremely unusual
+    EscalationLevel volumeLevel = levelOf(elevatedScore, highScore, criticalScore, volumeScore);
+    if (volumeLevel == EscalationLevel.HIGH) {
+      volumeLevel = EscalationLevel.ELEVATED;
+    } else if (volumeLevel == EscalationLevel.CRITICAL) {
+      volumeLevel = EscalationLevel.HIGH;
+    }
+    EscalationLevel target = max(volumeLevel, levelOf(elevatedScore, highScore, criticalScore, suspicionScore));
+    // Unusual traffic that is also suspicious escalates faster
+    if (volumeLevel != EscalationLevel.NORMAL
+      && suspicionScore >= elevatedScore
+      && target != EscalationLevel.CRITICAL) {
+      target = EscalationLevel.values()[target.ordinal() + 1];
+    }
+    // The static threshold always has to be able to detect an attack
+    if (thresholdExceeded) {
+      target = max(target, EscalationLevel.HIGH);
+    }
+    return target;
+  }
+
+  private static @NotNull EscalationLevel levelOf(final int elevatedScore, final int highScore,
+                                                  final int criticalScore, final double score) {
+    if (score >= criticalScore) return EscalationLevel.CRITICAL;
+    if (score >= highScore) return EscalationLevel.HIGH;
+    if (score >= elevatedScore) return EscalationLevel.ELEVATED;
+    return EscalationLevel.NORMAL;
+  }
+
+  private static @NotNull EscalationLevel max(final @NotNull EscalationLevel first,
+                                              final @NotNull EscalationLevel second) {
+    return first.compareTo(second) >= 0 ? first : second;
+  }
+
+  /**
+   * Forgets the learned traffic, e.g. after the server has been moved to a different network
+   */
+  public void resetBaselines() {
+    baselines.values().forEach(Baseline::reset);
+    frozenSamples = 0;
+  }
 }
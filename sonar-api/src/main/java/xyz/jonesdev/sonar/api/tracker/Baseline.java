@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.tracker;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exponentially weighted moving average and variance of a signal
+ */
+@RequiredArgsConstructor
+public final class Baseline {
+  private final double minimumDeviation;
+  @Getter
+  private double mean, variance;
+  @Getter
+  private long samples;
+
+  /**
+   * @param value Current value of the signal
+   * @param alpha Weight of the current value
+   */
+  public void update(final double value, final double alpha) {
+    if (samples++ == 0L) {
+      mean = value;
+      return;
+    }
+    final double difference = value - mean;
+    final double increment = alpha * difference;
+    mean += increment;
+    variance = (1D - alpha) * (variance + difference * increment);
+  }
+
+  public double getDeviation() {
+    return Math.max(Math.sqrt(variance), minimumDeviation);
+  }
+
+  /**
+   * @return Number of standard deviations the value is above the mean
+   */
+  public double score(final double value) {
+    return (value - mean) / getDeviation();
+  }
+
+  public void reset() {
+    mean = variance = 0D;
+    samples = 0L;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncCursorTest {
+
+  @Test
+  void remembersSkippedIds() {
+    final SyncCursor cursor = new SyncCursor();
+    cursor.reset(10L);
+    cursor.advance(11L, 0L);
+    cursor.advance(14L, 0L);
+    cursor.advance(16L, 0L);
+    assertEquals(16L, cursor.getLastId());
+    assertEquals(Arrays.asList(12L, 13L, 15L), cursor.getGaps());
+  }
+
+  @Test
+  void fillsSkippedIdsOnce() {
+    final SyncCursor cursor = new SyncCursor();
+    cursor.advance(3L, 0L);
+    assertTrue(cursor.fill(2L));
+    assertFalse(cursor.fill(2L));
+    // IDs that have already been read aren't gaps
+    assertFalse(cursor.fill(3L));
+    assertEquals(Collections.singletonList(1L), cursor.getGaps());
+  }
+
+  @Test
+  void neverMovesBackwards() {
+    final SyncCursor cursor = new SyncCursor();
+    cursor.advance(5L, 0L);
+    cursor.advance(3L, 0L);
+    assertEquals(5L, cursor.getLastId());
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L), cursor.getGaps());
+  }
+
+  @Test
+  void forgetsRolledBackIds() {
+    final SyncCursor cursor = new SyncCursor();
+    cursor.advance(2L, 0L);
+    cursor.advance(4L, 100L);
+    cursor.expire(SyncCursor.GAP_TIMEOUT - 1L);
+    assertEquals(Arrays.asList(1L, 3L), cursor.getGaps());
+    cursor.expire(SyncCursor.GAP_TIMEOUT);
+    assertEquals(Collections.singletonList(3L), cursor.getGaps());
+    cursor.expire(SyncCursor.GAP_TIMEOUT + 100L);
+    assertTrue(cursor.getGaps().isEmpty());
+  }
+
+  @Test
+  void limitsSkippedIds() {
+    final SyncCursor cursor = new SyncCursor();
+    cursor.advance(SyncCursor.MAXIMUM_GAPS * 2L, 0L);
+    assertEquals(SyncCursor.MAXIMUM_GAPS, cursor.getGaps().size());
+    // Only the most recently skipped IDs are remembered
+    assertEquals(SyncCursor.MAXIMUM_GAPS + 0L, cursor.getGaps().get(0));
+    cursor.advance(SyncCursor.MAXIMUM_GAPS * 2L + 2L, 0L);
+    assertEquals(SyncCursor.MAXIMUM_GAPS, cursor.getGaps().size());
+    assertTrue(cursor.fill(SyncCursor.MAXIMUM_GAPS * 2L + 1L));
+  }
+
+  @Test
+  void forgetsSkippedIdsOnReset() {
+    final SyncCursor cursor = new SyncCursor();
+    cursor.advance(5L, 0L);
+    cursor.reset(2L);
+    assertEquals(2L, cursor.getLastId());
+    assertTrue(cursor.getGaps().isEmpty());
+  }
+}
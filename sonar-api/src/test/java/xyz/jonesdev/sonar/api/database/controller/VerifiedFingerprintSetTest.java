@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedFingerprintSetTest {
+  @Test
+  void remembersUsernamesPerAddress() throws Exception {
+    final VerifiedFingerprintSet fingerprints = new VerifiedFingerprintSet();
+    final InetAddress inetAddress = InetAddress.getByName("127.0.0.1");
+    fingerprints.add(inetAddress, "Notch", fingerprints.epoch());
+
+    assertTrue(fingerprints.contains(inetAddress, "Notch"));
+    // Usernames are case-sensitive, just like the offline UUID
+    assertFalse(fingerprints.contains(inetAddress, "notch"));
+    assertFalse(fingerprints.contains(InetAddress.getByName("127.0.0.2"), "Notch"));
+    assertEquals(1, fingerprints.size());
+  }
+
+  @Test
+  void removesOnlyFingerprintsOfTheAddress() throws Exception {
+    final VerifiedFingerprintSet fingerprints = new VerifiedFingerprintSet();
+    final InetAddress first = InetAddress.getByName("10.0.0.1");
+    final InetAddress second = InetAddress.getByName("2001:db8::1");
+    fingerprints.add(first, "Alice", fingerprints.epoch());
+    fingerprints.add(first, "Bob", fingerprints.epoch());
+    fingerprints.add(second, "Alice", fingerprints.epoch());
+
+    fingerprints.remove("10.0.0.1");
+    assertFalse(fingerprints.contains(first, "Alice"));
+    assertFalse(fingerprints.contains(first, "Bob"));
+    assertTrue(fingerprints.contains(second, "Alice"));
+
+    // IPv6 addresses have to be matched regardless of their notation
+    fingerprints.remove("2001:db8:0:0:0:0:0:1");
+    assertFalse(fingerprints.contains(second, "Alice"));
+    assertEquals(0, fingerprints.size());
+  }
+
+  @Test
+  void dropsFingerprintsAddedWithStaleEpoch() throws Exception {
+    final VerifiedFingerprintSet fingerprints = new VerifiedFingerprintSet();
+    final InetAddress inetAddress = InetAddress.getByName("192.168.1.1");
+    final long epoch = fingerprints.epoch();
+    // The player is removed after they have been checked, but before they are remembered
+    fingerprints.remove("192.168.1.1");
+    fingerprints.add(inetAddress, "Steve", epoch);
+    assertFalse(fingerprints.contains(inetAddress, "Steve"));
+
+    fingerprints.add(inetAddress, "Steve", fingerprints.epoch());
+    assertTrue(fingerprints.contains(inetAddress, "Steve"));
+    fingerprints.clear();
+    assertFalse(fingerprints.contains(inetAddress, "Steve"));
+  }
+
+  @Test
+  void keepsFingerprintsWhileGrowingAndReusingTombstones() throws Exception {
+    final VerifiedFingerprintSet fingerprints = new VerifiedFingerprintSet();
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 20_000; i++) {
+        fingerprints.add(address(i), "Player" + round, fingerprints.epoch());
+      }
+      for (int i = 0; i < 20_000; i++) {
+        assertTrue(fingerprints.contains(address(i), "Player" + round));
+      }
+      for (int i = 0; i < 20_000; i++) {
+        fingerprints.remove(address(i).getHostAddress());
+      }
+      assertEquals(0, fingerprints.size());
+    }
+  }
+
+  private static InetAddress address(final int i) throws Exception {
+    return InetAddress.getByAddress(new byte[]{10, (byte) (i >>> 16), (byte) (i >>> 8), (byte) i});
+  }
+}
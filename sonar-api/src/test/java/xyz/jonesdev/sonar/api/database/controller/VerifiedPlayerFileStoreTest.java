@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.jonesdev.sonar.api.logger.LoggerWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedPlayerFileStoreTest {
+  private static final UUID FIRST = new UUID(1L, 2L);
+  private static final UUID SECOND = new UUID(3L, 4L);
+
+  @TempDir
+  Path directory;
+  private final List<String> warnings = new ArrayList<>();
+  private final LoggerWrapper logger = new LoggerWrapper() {
+    @Override
+    public void info(final String message, final Object... args) {
+    }
+
+    @Override
+    public void warn(final String message, final Object... args) {
+      warnings.add(buildFullMessage(message, args));
+    }
+
+    @Override
+    public void error(final String message, final Object... args) {
+    }
+  };
+
+  @Test
+  void replaysRecordsAfterReopening() throws Exception {
+    final File file = directory.resolve("players.dat").toFile();
+    final VerifiedPlayerFileStore store = new VerifiedPlayerFileStore(file, logger);
+    store.add(InetAddress.getByName("127.0.0.1"), FIRST, 1000L);
+    store.add(InetAddress.getByName("2001:db8::1"), SECOND, 2000L);
+    store.remove(InetAddress.getByName("127.0.0.1"), FIRST);
+    store.removeAddress(InetAddress.getByName("2001:db8::1"));
+    assertEquals(4, store.getBufferedRecords());
+    store.close();
+
+    final List<String> replayed = new ArrayList<>();
+    final VerifiedPlayerFileStore reopened = new VerifiedPlayerFileStore(file, logger);
+    assertEquals(4L, reopened.load(recorder(replayed)));
+    assertEquals(Arrays.asList(
+      "add 127.0.0.1 " + FIRST + " 1000",
+      "add 2001:db8:0:0:0:0:0:1 " + SECOND + " 2000",
+      "remove 127.0.0.1 " + FIRST,
+      "removeAddress 2001:db8:0:0:0:0:0:1"), replayed);
+    assertTrue(warnings.isEmpty());
+    reopened.close();
+  }
+
+  @Test
+  void discardsTornWrites() throws Exception {
+    final File file = directory.resolve("players.dat").toFile();
+    final VerifiedPlayerFileStore store = new VerifiedPlayerFileStore(file, logger);
+    store.add(InetAddress.getByName("10.0.0.1"), FIRST, 1000L);
+    store.add(InetAddress.getByName("10.0.0.2"), SECOND, 2000L);
+    store.close();
+
+    // Simulate a crash in the middle of writing the last record
+    final long validLength = file.length();
+    try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(validLength - 3L);
+    }
+
+    final List<String> replayed = new ArrayList<>();
+    final VerifiedPlayerFileStore recovered = new VerifiedPlayerFileStore(file, logger);
+    assertEquals(1L, recovered.load(recorder(replayed)));
+    assertEquals(Collections.singletonList("add 10.0.0.1 " + FIRST + " 1000"), replayed);
+    assertEquals(1, warnings.size());
+
+    // New records have to be appended right after the last valid record
+    recovered.add(InetAddress.getByName("10.0.0.3"), SECOND, 3000L);
+    recovered.close();
+    replayed.clear();
+    final VerifiedPlayerFileStore reopened = new VerifiedPlayerFileStore(file, logger);
+    assertEquals(2L, reopened.load(recorder(replayed)));
+    assertEquals("add 10.0.0.3 " + SECOND + " 3000", replayed.get(1));
+    reopened.close();
+  }
+
+  @Test
+  void discardsEverythingAfterCorruptedRecord() throws Exception {
+    final File file = directory.resolve("players.dat").toFile();
+    final VerifiedPlayerFileStore store = new VerifiedPlayerFileStore(file, logger);
+    store.add(InetAddress.getByName("10.0.0.1"), FIRST, 1000L);
+    final long firstRecordEnd = file.length() + 2 + 4 + 16 + 8 + 4;
+    store.add(InetAddress.getByName("10.0.0.2"), FIRST, 2000L);
+    store.add(InetAddress.getByName("10.0.0.3"), FIRST, 3000L);
+    store.close();
+
+    // Flip a bit in the timestamp of the second record
+    try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(firstRecordEnd + 2 + 4 + 16);
+      raf.write(raf.read() ^ 1);
+    }
+
+    final List<String> replayed = new ArrayList<>();
+    final VerifiedPlayerFileStore recovered = new VerifiedPlayerFileStore(file, logger);
+    assertEquals(1L, recovered.load(recorder(replayed)));
+    assertEquals(firstRecordEnd, file.length());
+    recovered.close();
+  }
+
+  @Test
+  void rejectsUnknownFormat() throws Exception {
+    final File file = directory.resolve("players.dat").toFile();
+    Files.write(file.toPath(), new byte[]{'N', 'O', 'P', 'E', 1, 0, 0});
+    final VerifiedPlayerFileStore store = new VerifiedPlayerFileStore(file, logger);
+    assertThrows(IOException.class, () -> store.load(recorder(new ArrayList<>())));
+    store.close();
+  }
+
+  @Test
+  void compactsToLatestCachedEntries() throws Exception {
+    final File file = directory.resolve("players.dat").toFile();
+    final VerifiedPlayerFileStore store = new VerifiedPlayerFileStore(file, logger);
+    final Set<String> cached = new HashSet<>();
+    for (int i = 0; i < 2000; i++) {
+      final InetAddress inetAddress = InetAddress.getByName("10.0." + (i >>> 8) + "." + (i & 0xFF));
+      store.add(inetAddress, FIRST, 1000L + i);
+      if (i % 2 == 0) {
+        // Verified again later, so only the newer timestamp has to be kept
+        store.add(inetAddress, FIRST, 100_000L + i);
+        cached.add(inetAddress.getHostAddress());
+      } else {
+        store.remove(inetAddress, FIRST);
+      }
+    }
+    store.flush();
+
+    final List<String> expired = new ArrayList<>();
+    final long removed = store.compactIfNecessary(cached.size(), 100_500L,
+      (inetAddress, uuid) -> cached.contains(inetAddress.getHostAddress()) && uuid.equals(FIRST),
+      (inetAddress, uuid) -> expired.add(inetAddress.getHostAddress()));
+    // Entries 0, 2, ..., 498 have been verified before the expiry timestamp
+    assertEquals(250L, removed);
+    assertEquals(250, expired.size());
+    store.close();
+
+    final Map<String, Long> replayed = new HashMap<>();
+    final VerifiedPlayerFileStore reopened = new VerifiedPlayerFileStore(file, logger);
+    assertEquals(750L, reopened.load(new VerifiedPlayerFileStore.Replay() {
+      @Override
+      public void add(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid, final long timestamp) {
+        assertNull(replayed.put(inetAddress.getHostAddress(), timestamp));
+      }
+
+      @Override
+      public void remove(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) {
+        fail("Compacted logs don't contain removals");
+      }
+
+      @Override
+      public void removeAddress(final @NotNull InetAddress inetAddress) {
+        fail("Compacted logs don't contain removals");
+      }
+    }));
+    for (int i = 500; i < 2000; i += 2) {
+      assertEquals(100_000L + i, replayed.get("10.0." + (i >>> 8) + "." + (i & 0xFF)));
+    }
+    reopened.close();
+  }
+
+  @Test
+  void skipsCompactionWithoutEnoughGarbage() throws Exception {
+    final File file = directory.resolve("players.dat").toFile();
+    final VerifiedPlayerFileStore store = new VerifiedPlayerFileStore(file, logger);
+    store.add(InetAddress.getByName("10.0.0.1"), FIRST, 1000L);
+    store.flush();
+    final long length = file.length();
+    assertEquals(0L, store.compactIfNecessary(1, 0L, (inetAddress, uuid) -> false,
+      (inetAddress, uuid) -> fail("Nothing should expire")));
+    assertEquals(length, file.length());
+    store.close();
+  }
+
+  @Test
+  void exportsLatestTimestamps() throws Exception {
+    final File file = directory.resolve("players.dat").toFile();
+    final VerifiedPlayerFileStore store = new VerifiedPlayerFileStore(file, logger);
+    store.add(InetAddress.getByName("10.0.0.1"), FIRST, 1000L);
+    store.add(InetAddress.getByName("10.0.0.1"), SECOND, 1500L);
+    store.add(InetAddress.getByName("10.0.0.1"), FIRST, 2000L);
+    store.add(InetAddress.getByName("10.0.0.2"), FIRST, 3000L);
+
+    final Map<String, Long> exported = new HashMap<>();
+    store.forEach(2, (inetAddress, uuid) -> !inetAddress.getHostAddress().equals("10.0.0.2"),
+      player -> exported.put(player.getInetAddress() + "/" + player.getPlayerUuid(),
+        player.getTimestamp().getTime()));
+    assertEquals(2, exported.size());
+    assertEquals(2000L, exported.get("10.0.0.1/" + FIRST));
+    assertEquals(1500L, exported.get("10.0.0.1/" + SECOND));
+    store.close();
+  }
+
+  @Test
+  void exportsUncachedFile() throws Exception {
+    final File file = directory.resolve("players.dat").toFile();
+    final VerifiedPlayerFileStore store = new VerifiedPlayerFileStore(file, logger);
+    store.add(InetAddress.getByName("10.0.0.1"), FIRST, 1000L);
+    store.add(InetAddress.getByName("10.0.0.1"), SECOND, 1500L);
+    store.remove(InetAddress.getByName("10.0.0.1"), SECOND);
+    store.add(InetAddress.getByName("10.0.0.2"), FIRST, 2000L);
+    store.removeAddress(InetAddress.getByName("10.0.0.2"));
+
+    final List<String> exported = new ArrayList<>();
+    store.forEach(player -> exported.add(player.getInetAddress() + "/" + player.getPlayerUuid()));
+    assertEquals(Collections.singletonList("10.0.0.1/" + FIRST), exported);
+    store.close();
+  }
+
+  @Test
+  void keepsLatestTimestampPerEntry() {
+    final VerifiedPlayerFileStore.Timestamps timestamps = new VerifiedPlayerFileStore.Timestamps(0);
+    for (int i = 0; i < 10_000; i++) {
+      timestamps.put(new byte[]{10, 0, (byte) (i >>> 8), (byte) i}, FIRST, i);
+      timestamps.put(new byte[]{10, 0, (byte) (i >>> 8), (byte) i}, FIRST, i + 1L);
+    }
+    assertEquals(10_000, timestamps.size());
+    final long[] sum = new long[1];
+    timestamps.forEach((address, uuid, timestamp) -> {
+      assertEquals(4, address.length);
+      assertEquals(((address[2] & 0xFF) << 8 | (address[3] & 0xFF)) + 1L, timestamp);
+      sum[0]++;
+    });
+    assertEquals(10_000L, sum[0]);
+  }
+
+  @Test
+  void visitsTimestampsInSteps() {
+    final VerifiedPlayerFileStore.Timestamps timestamps = new VerifiedPlayerFileStore.Timestamps(0);
+    for (int i = 0; i < 10_000; i++) {
+      timestamps.put(new byte[]{10, 0, (byte) (i >>> 8), (byte) i}, FIRST, i);
+    }
+    final Set<Long> visited = new HashSet<>();
+    int slot = 0, steps = 0;
+    while (slot != -1) {
+      slot = timestamps.forEach(slot, 3000, (address, uuid, timestamp) -> assertTrue(visited.add(timestamp)));
+      steps++;
+    }
+    assertEquals(4, steps);
+    assertEquals(10_000, visited.size());
+  }
+
+  private static VerifiedPlayerFileStore.@NotNull Replay recorder(final @NotNull List<String> replayed) {
+    return new VerifiedPlayerFileStore.Replay() {
+      @Override
+      public void add(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid, final long timestamp) {
+        replayed.add("add " + inetAddress.getHostAddress() + " " + uuid + " " + timestamp);
+      }
+
+      @Override
+      public void remove(final @NotNull InetAddress inetAddress, final @NotNull UUID uuid) {
+        replayed.add("remove " + inetAddress.getHostAddress() + " " + uuid);
+      }
+
+      @Override
+      public void removeAddress(final @NotNull InetAddress inetAddress) {
+        replayed.add("removeAddress " + inetAddress.getHostAddress());
+      }
+    };
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedPlayerIndexTest {
+  private static final UUID FIRST = new UUID(1L, 2L);
+  private static final UUID SECOND = new UUID(3L, 4L);
+
+  @Test
+  void storesMultipleUUIDsPerAddress() {
+    final VerifiedPlayerIndex index = new VerifiedPlayerIndex();
+    assertTrue(index.add("127.0.0.1", FIRST));
+    assertFalse(index.add("127.0.0.1", SECOND));
+    assertFalse(index.add("127.0.0.1", SECOND));
+
+    assertEquals(1, index.size());
+    assertEquals(2, index.entries());
+    assertEquals(new HashSet<>(Arrays.asList(FIRST, SECOND)), new HashSet<>(index.getUUIDs("127.0.0.1")));
+    assertTrue(index.contains("127.0.0.1", SECOND));
+    assertFalse(index.contains("127.0.0.1", new UUID(5L, 6L)));
+
+    assertFalse(index.remove("127.0.0.1", FIRST));
+    assertTrue(index.contains("127.0.0.1"));
+    assertTrue(index.remove("127.0.0.1", SECOND));
+    assertFalse(index.contains("127.0.0.1"));
+    assertEquals(0, index.entries());
+  }
+
+  @Test
+  void matchesStringAndInetAddressKeys() throws Exception {
+    final VerifiedPlayerIndex index = new VerifiedPlayerIndex();
+    index.add("10.1.2.3", FIRST);
+    index.add(InetAddress.getByName("2001:db8::1"), SECOND);
+
+    assertTrue(index.contains(InetAddress.getByName("10.1.2.3"), FIRST));
+    assertTrue(index.contains("2001:db8:0:0:0:0:0:1", SECOND));
+    assertFalse(index.contains(InetAddress.getByName("10.1.2.4"), FIRST));
+    assertEquals(new HashSet<>(Arrays.asList("10.1.2.3", "2001:db8:0:0:0:0:0:1")),
+      new HashSet<>(index.getHostAddresses()));
+  }
+
+  @Test
+  void rejectsInvalidAddresses() {
+    final VerifiedPlayerIndex index = new VerifiedPlayerIndex();
+    for (final String invalid : Arrays.asList("", "1.2.3", "256.1.1.1", "::", "not an address")) {
+      assertFalse(index.add(invalid, FIRST), invalid);
+    }
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  void growsAndRemovesWithoutLosingEntries() {
+    final VerifiedPlayerIndex index = new VerifiedPlayerIndex();
+    for (int i = 0; i < 50_000; i++) {
+      assertTrue(index.add(address(i), new UUID(i, i)));
+    }
+    assertEquals(50_000, index.size());
+    // Remove every other entry to exercise the backward-shift deletion
+    for (int i = 0; i < 50_000; i += 2) {
+      assertTrue(index.remove(address(i)));
+    }
+    for (int i = 0; i < 50_000; i++) {
+      assertEquals(i % 2 != 0, index.contains(address(i), new UUID(i, i)), address(i));
+    }
+
+    final Set<String> visited = new HashSet<>();
+    index.forEachHostAddress(visited::add);
+    assertEquals(25_000, visited.size());
+    assertEquals(new HashSet<>(index.getHostAddresses()), visited);
+  }
+
+  @Test
+  void evictsRequestedNumberOfAddresses() {
+    final VerifiedPlayerIndex index = new VerifiedPlayerIndex();
+    for (int i = 0; i < 10_000; i++) {
+      index.add(address(i), FIRST);
+      index.add(address(i), SECOND);
+    }
+    final Set<String> evicted = new HashSet<>();
+    assertEquals(100, index.evict(100, evicted::add));
+    assertEquals(100, evicted.size());
+    assertEquals(9_900, index.size());
+    assertEquals(19_800, index.entries());
+
+    int remaining = 0;
+    for (int i = 0; i < 10_000; i++) {
+      if (index.contains(address(i))) {
+        remaining++;
+      } else {
+        assertTrue(evicted.contains(address(i)), address(i));
+      }
+    }
+    assertEquals(9_900, remaining);
+
+    index.clear();
+    assertEquals(0, index.size());
+    assertTrue(index.getHostAddresses().isEmpty());
+  }
+
+  private static String address(final int i) {
+    return "10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.database.controller;
+
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.jdbc.db.H2DatabaseType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+import xyz.jonesdev.sonar.api.logger.LoggerWrapper;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedPlayerSyncTest {
+  private static final UUID FIRST = new UUID(1L, 2L);
+  private static final UUID SECOND = new UUID(3L, 4L);
+
+  @TempDir
+  Path directory;
+  private final List<String> errors = new ArrayList<>();
+  private final LoggerWrapper logger = new LoggerWrapper() {
+    @Override
+    public void info(final String message, final Object... args) {
+    }
+
+    @Override
+    public void warn(final String message, final Object... args) {
+    }
+
+    @Override
+    public void error(final String message, final Object... args) {
+      errors.add(buildFullMessage(message, args));
+    }
+  };
+  // Both controllers use the same database file, just like two servers sharing one database
+  private VerifiedPlayerController first, second;
+  private String url;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    url = "jdbc:h2:file:" + directory.resolve("sonar").toAbsolutePath();
+    first = new VerifiedPlayerController(new JdbcPooledConnectionSource(url, new H2DatabaseType()),
+      SonarConfiguration.Database.Type.H2, 1000, 30, 0, logger);
+    second = new VerifiedPlayerController(new JdbcPooledConnectionSource(url, new H2DatabaseType()),
+      SonarConfiguration.Database.Type.H2, 1000, 30, 0, logger);
+    // Wait for both controllers to be warmed up
+    first.flush().get(10L, TimeUnit.SECONDS);
+    second.flush().get(10L, TimeUnit.SECONDS);
+    assertTrue(first.isWarmedUp());
+    assertTrue(second.isWarmedUp());
+  }
+
+  @AfterEach
+  void tearDown() {
+    first.close();
+    second.close();
+  }
+
+  @Test
+  void appliesVerificationsOfOtherServers() throws Exception {
+    first.add(new VerifiedPlayer("10.0.0.1", FIRST, System.currentTimeMillis()));
+    first.add(new VerifiedPlayer("2001:db8:0:0:0:0:0:1", SECOND, System.currentTimeMillis()));
+    first.flush().get(10L, TimeUnit.SECONDS);
+    assertFalse(second.has("10.0.0.1", FIRST));
+
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+    assertTrue(second.has("10.0.0.1", FIRST));
+    assertTrue(second.has("2001:db8:0:0:0:0:0:1", SECOND));
+    assertTrue(errors.isEmpty(), errors::toString);
+  }
+
+  @Test
+  void appliesRemovalsOfOtherServers() throws Exception {
+    first.add(new VerifiedPlayer("10.0.0.1", FIRST, System.currentTimeMillis()));
+    first.add(new VerifiedPlayer("10.0.0.2", SECOND, System.currentTimeMillis()));
+    first.flush().get(10L, TimeUnit.SECONDS);
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+    assertTrue(second.has("10.0.0.1", FIRST));
+
+    first.remove("10.0.0.1");
+    first.flush().get(10L, TimeUnit.SECONDS);
+    // The tombstone has to be applied, even though the entry itself is simply gone
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+    assertFalse(second.has("10.0.0.1"));
+    assertTrue(second.has("10.0.0.2", SECOND));
+    assertTrue(errors.isEmpty(), errors::toString);
+  }
+
+  @Test
+  void appliesClearsOfOtherServers() throws Exception {
+    first.add(new VerifiedPlayer("10.0.0.1", FIRST, System.currentTimeMillis()));
+    first.flush().get(10L, TimeUnit.SECONDS);
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+    assertEquals(1, second.estimatedSize());
+
+    first.clearAll();
+    first.flush().get(10L, TimeUnit.SECONDS);
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+    assertEquals(0, second.estimatedSize());
+    assertTrue(errors.isEmpty(), errors::toString);
+  }
+
+  @Test
+  void keepsPlayersVerifiedAgainAfterRemoval() throws Exception {
+    first.add(new VerifiedPlayer("10.0.0.1", FIRST, System.currentTimeMillis()));
+    first.flush().get(10L, TimeUnit.SECONDS);
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+
+    // Removals are applied before additions, so the player stays verified
+    first.remove("10.0.0.1");
+    first.flush().get(10L, TimeUnit.SECONDS);
+    first.add(new VerifiedPlayer("10.0.0.1", FIRST, System.currentTimeMillis()));
+    first.flush().get(10L, TimeUnit.SECONDS);
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+    assertTrue(second.has("10.0.0.1", FIRST));
+    assertTrue(errors.isEmpty(), errors::toString);
+  }
+
+  /**
+   * Inserts a row in a transaction that is only committed once the returned connection is closed.
+   * The row gets its ID right away, so rows inserted in the meantime get higher IDs.
+   */
+  private @NotNull Connection insertUncommitted(final @NotNull String table,
+                                                final @NotNull String inetAddress,
+                                                final @Nullable UUID uuid) throws Exception {
+    final H2DatabaseType databaseType = new H2DatabaseType();
+    final Connection connection = DriverManager.getConnection(url);
+    connection.setAutoCommit(false);
+    try (final PreparedStatement statement = connection.prepareStatement("INSERT INTO "
+      + VerifiedPlayerWriteBuffer.escape(databaseType, table) + " ("
+      + VerifiedPlayerWriteBuffer.escape(databaseType, "ip_address") + ", "
+      + VerifiedPlayerWriteBuffer.escape(databaseType, "player_uuid") + ", "
+      + VerifiedPlayerWriteBuffer.escape(databaseType, "timestamp") + ") VALUES (?, ?, ?)")) {
+      statement.setString(1, inetAddress);
+      statement.setString(2, uuid == null ? null : uuid.toString());
+      statement.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+      statement.executeUpdate();
+    }
+    return connection;
+  }
+
+  @Test
+  void appliesVerificationsCommittedOutOfOrder() throws Exception {
+    try (final Connection transaction = insertUncommitted("sonar_verified_players", "10.0.0.1", FIRST)) {
+      // The second entry has a higher ID, but is committed first
+      first.add(new VerifiedPlayer("10.0.0.2", SECOND, System.currentTimeMillis()));
+      first.flush().get(10L, TimeUnit.SECONDS);
+      second.requestSync().get(10L, TimeUnit.SECONDS);
+      assertTrue(second.has("10.0.0.2", SECOND));
+      assertFalse(second.has("10.0.0.1", FIRST));
+      transaction.commit();
+    }
+
+    // The skipped ID has to be read again, even though a higher ID has already been read
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+    assertTrue(second.has("10.0.0.1", FIRST));
+    assertTrue(second.has("10.0.0.2", SECOND));
+    assertTrue(errors.isEmpty(), errors::toString);
+  }
+
+  @Test
+  void appliesRemovalsCommittedOutOfOrder() throws Exception {
+    first.add(new VerifiedPlayer("10.0.0.1", FIRST, System.currentTimeMillis()));
+    first.add(new VerifiedPlayer("10.0.0.2", SECOND, System.currentTimeMillis()));
+    first.flush().get(10L, TimeUnit.SECONDS);
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+    assertTrue(second.has("10.0.0.1", FIRST));
+    assertTrue(second.has("10.0.0.2", SECOND));
+
+    try (final Connection transaction = insertUncommitted("sonar_verified_player_removals", "10.0.0.1", null)) {
+      // The second tombstone has a higher ID, but is committed first
+      first.remove("10.0.0.2");
+      first.flush().get(10L, TimeUnit.SECONDS);
+      second.requestSync().get(10L, TimeUnit.SECONDS);
+      assertFalse(second.has("10.0.0.2"));
+      assertTrue(second.has("10.0.0.1", FIRST));
+      transaction.commit();
+    }
+
+    second.requestSync().get(10L, TimeUnit.SECONDS);
+    assertFalse(second.has("10.0.0.1"));
+    assertTrue(errors.isEmpty(), errors::toString);
+  }
+}
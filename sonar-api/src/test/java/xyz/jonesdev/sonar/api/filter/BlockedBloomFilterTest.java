@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockedBloomFilterTest {
+  @Test
+  void neverReturnsFalseNegatives() {
+    final BlockedBloomFilter filter = new BlockedBloomFilter(10_000);
+    final SplittableRandom random = new SplittableRandom(1L);
+    final long[] hashes = new long[10_000];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = random.nextLong();
+      filter.put(hashes[i]);
+    }
+    for (final long hash : hashes) {
+      assertTrue(filter.mightContain(hash));
+    }
+  }
+
+  @Test
+  void keepsFalsePositiveRateLowAtCapacity() {
+    final BlockedBloomFilter filter = new BlockedBloomFilter(10_000);
+    final SplittableRandom random = new SplittableRandom(2L);
+    for (int i = 0; i < 10_000; i++) {
+      filter.put(random.nextLong());
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (filter.mightContain(random.nextLong())) {
+        falsePositives++;
+      }
+    }
+    // 16 bits per entry should result in roughly 0.05%, so 0.5% leaves plenty of room
+    assertTrue(falsePositives < 500, "Too many false positives: " + falsePositives);
+    assertTrue(filter.estimateFalsePositiveRate() < 0.005D);
+  }
+
+  @Test
+  void emptyFilterContainsNothing() {
+    final BlockedBloomFilter filter = new BlockedBloomFilter(0);
+    assertEquals(1, filter.getCapacity());
+    assertFalse(filter.mightContain(0x1234_5678_9ABC_DEF0L));
+    assertEquals(0D, filter.estimateFalsePositiveRate());
+  }
+}
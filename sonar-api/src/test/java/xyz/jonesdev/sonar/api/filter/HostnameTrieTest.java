@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostnameTrieTest {
+  @Test
+  void matchesExactEntries() {
+    final HostnameTrie trie = HostnameTrie.compile(Collections.singletonList("play.example.com"));
+    assertTrue(trie.matches("play.example.com"));
+    assertFalse(trie.matches("example.com"));
+    assertFalse(trie.matches("a.play.example.com"));
+    assertFalse(trie.matches("xplay.example.com"));
+    assertFalse(trie.matches("play.example.co"));
+    assertFalse(trie.matches(""));
+  }
+
+  @Test
+  void matchesExactlyOneLabelForWildcards() {
+    final HostnameTrie trie = HostnameTrie.compile(Collections.singletonList("*.example.com"));
+    assertTrue(trie.matches("play.example.com"));
+    assertTrue(trie.matches("mc-1.example.com"));
+    assertFalse(trie.matches("example.com"));
+    assertFalse(trie.matches(".example.com"));
+    assertFalse(trie.matches("a.play.example.com"));
+    assertFalse(trie.matches("playexample.com"));
+  }
+
+  @Test
+  void matchesDomainAndSubdomainsForSuffixes() {
+    final HostnameTrie trie = HostnameTrie.compile(Collections.singletonList(".example.com"));
+    assertTrue(trie.matches("example.com"));
+    assertTrue(trie.matches("play.example.com"));
+    assertTrue(trie.matches("a.play.example.com"));
+    assertFalse(trie.matches("badexample.com"));
+    assertFalse(trie.matches("example.com.evil.net"));
+  }
+
+  @Test
+  void ignoresTrailingDot() {
+    final HostnameTrie trie = HostnameTrie.compile(Arrays.asList("play.example.com.", "*.example.net"));
+    assertTrue(trie.matches("play.example.com"));
+    assertTrue(trie.matches("play.example.com."));
+    assertTrue(trie.matches("play.example.net."));
+    assertFalse(trie.matches("play.example.com.."));
+    assertFalse(trie.matches("."));
+  }
+
+  @Test
+  void ignoresForgeMarker() {
+    final HostnameTrie trie = HostnameTrie.compile(Arrays.asList("play.example.com", "*.example.net"));
+    assertTrue(trie.matches("play.example.com\0FML2\0"));
+    assertTrue(trie.matches("play.example.com\0FML\0"));
+    assertTrue(trie.matches("play.example.com.\0FML2\0"));
+    assertTrue(trie.matches("play.example.net\0FML2\0"));
+    assertFalse(trie.matches("example.net\0FML2\0"));
+    assertFalse(trie.matches("\0FML2\0"));
+  }
+
+  @Test
+  void ignoresForwardingData() {
+    final HostnameTrie trie = HostnameTrie.compile(Collections.singletonList(".example.com"));
+    assertTrue(trie.matches("play.example.com\u0000127.0.0.1\u0000069a79f444e94726a5befca90e38aaf5\u0000[]"));
+    assertFalse(trie.matches("evil.net\u0000play.example.com"));
+    assertEquals("play.example.com".length(),
+      HostnameTrie.hostnameLength("play.example.com\u0000127.0.0.1\u0000069a79f444e94726a5befca90e38aaf5"));
+  }
+
+  @Test
+  void ignoresCase() {
+    final HostnameTrie trie = HostnameTrie.compile(Arrays.asList("Play.Example.COM", "*.EXAMPLE.net"));
+    assertTrue(trie.matches("play.example.com"));
+    assertTrue(trie.matches("PLAY.EXAMPLE.COM"));
+    assertTrue(trie.matches("Lobby.Example.Net"));
+  }
+
+  @Test
+  void rejectsNonAsciiHostnames() {
+    final HostnameTrie trie = HostnameTrie.compile(Arrays.asList("play.example.com", ".example.net",
+      "b\u00fccher.example.org"));
+    // Cyrillic 'a' instead of a Latin 'a'
+    assertFalse(trie.matches("pl\u0430y.example.com"));
+    assertFalse(trie.matches("b\u00fccher.example.org"));
+    assertFalse(trie.matches("play.ex\u00e4mple.net"));
+    // Everything before the suffix isn't read, so it may contain any character
+    assertTrue(trie.matches("b\u00fccher.example.net"));
+    // Entries with invalid characters can never match, not even partially
+    assertFalse(trie.matches("cher.example.org"));
+  }
+}
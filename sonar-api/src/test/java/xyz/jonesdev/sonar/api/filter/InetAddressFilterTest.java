@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.filter;
+
+import org.junit.jupiter.api.Test;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerIndex;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InetAddressFilterTest {
+  @Test
+  void matchesStringAndInetAddressKeys() throws Exception {
+    final InetAddressFilter filter = new InetAddressFilter(64);
+    filter.add("127.0.0.1");
+    filter.add("2001:db8::1");
+    assertTrue(filter.mightContain(InetAddress.getByName("127.0.0.1")));
+    assertTrue(filter.mightContain(InetAddress.getByName("2001:db8:0:0:0:0:0:1")));
+    assertFalse(filter.mightContain(InetAddress.getByName("127.0.0.2")));
+  }
+
+  @Test
+  void ignoresInvalidAddresses() {
+    final InetAddressFilter filter = new InetAddressFilter(64);
+    for (int i = 0; i < 20; i++) {
+      for (final String invalid : Arrays.asList("", "1.2.3", "1.2.3.4.5", "256.0.0.1", "1..2.3", "localhost")) {
+        filter.add(invalid);
+      }
+    }
+    // Invalid addresses must not count towards the size of the filter
+    assertFalse(filter.shouldRebuild());
+  }
+
+  @Test
+  void rebuildsAfterRemovalsAndGrowth() throws Exception {
+    final InetAddressFilter filter = new InetAddressFilter(64);
+    for (int i = 0; i < 100; i++) {
+      filter.add("10.0.0." + i);
+    }
+    assertTrue(filter.shouldRebuild());
+    filter.rebuild(Collections.singletonList("10.0.0.1"));
+    assertFalse(filter.shouldRebuild());
+    assertTrue(filter.mightContain(InetAddress.getByName("10.0.0.1")));
+
+    for (int i = 0; i < 65; i++) {
+      filter.remove();
+    }
+    assertTrue(filter.shouldRebuild());
+    filter.rebuild(Collections.emptyList());
+    assertFalse(filter.mightContain(InetAddress.getByName("10.0.0.1")));
+  }
+
+  @Test
+  void rebuildKeepsConcurrentlyAddedEntries() throws Exception {
+    final VerifiedPlayerIndex index = new VerifiedPlayerIndex();
+    final InetAddressFilter filter = new InetAddressFilter(64);
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final CountDownLatch started = new CountDownLatch(1);
+    final Thread rebuilder = new Thread(() -> {
+      started.countDown();
+      while (running.get()) {
+        filter.rebuild(index.size(), index::forEachHostAddress);
+      }
+    });
+    rebuilder.start();
+    started.await();
+
+    final Thread[] writers = new Thread[4];
+    for (int t = 0; t < writers.length; t++) {
+      final int offset = t;
+      writers[t] = new Thread(() -> {
+        for (int i = offset; i < 40_000; i += writers.length) {
+          final String hostAddress = "10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+          // Always add to the backing structure before adding to the filter
+          index.add(hostAddress, new UUID(0L, i));
+          filter.add(hostAddress);
+        }
+      });
+      writers[t].start();
+    }
+    for (final Thread writer : writers) {
+      writer.join();
+    }
+    running.set(false);
+    rebuilder.join();
+
+    for (int i = 0; i < 40_000; i++) {
+      final String hostAddress = "10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+      assertTrue(filter.mightContain(InetAddress.getByName(hostAddress)), hostAddress);
+    }
+  }
+
+  @Test
+  void failedRebuildKeepsCurrentFilter() throws Exception {
+    final InetAddressFilter filter = new InetAddressFilter(64);
+    filter.add("192.168.0.1");
+    assertThrows(IllegalStateException.class, () -> filter.rebuild(1, consumer -> {
+      throw new IllegalStateException();
+    }));
+    assertTrue(filter.mightContain(InetAddress.getByName("192.168.0.1")));
+  }
+
+  @Test
+  void rebuildsInSteps() throws Exception {
+    final InetAddressFilter filter = new InetAddressFilter(64);
+    filter.add("10.0.0.1");
+    filter.add("10.0.0.2");
+    final InetAddressFilter.Rebuild rebuild = filter.startRebuild(2);
+    rebuild.add("10.0.0.1");
+    // Entries added during the rebuild end up in both filters
+    filter.add("10.0.0.3");
+    assertTrue(filter.mightContain(InetAddress.getByName("10.0.0.2")));
+    rebuild.complete();
+    assertTrue(filter.mightContain(InetAddress.getByName("10.0.0.1")));
+    assertTrue(filter.mightContain(InetAddress.getByName("10.0.0.3")));
+    assertFalse(filter.mightContain(InetAddress.getByName("10.0.0.2")));
+    assertEquals(1L, filter.size());
+  }
+
+  @Test
+  void discardsReplacedRebuild() throws Exception {
+    final InetAddressFilter filter = new InetAddressFilter(64);
+    final InetAddressFilter.Rebuild rebuild = filter.startRebuild(1);
+    rebuild.add("10.0.0.1");
+    // The filter is cleared while the first rebuild is still reading
+    filter.rebuild(Collections.emptyList());
+    filter.add("10.0.0.2");
+    rebuild.complete();
+    assertFalse(filter.mightContain(InetAddress.getByName("10.0.0.1")));
+    assertTrue(filter.mightContain(InetAddress.getByName("10.0.0.2")));
+  }
+
+  @Test
+  void cancelledRebuildKeepsCurrentFilter() throws Exception {
+    final InetAddressFilter filter = new InetAddressFilter(64);
+    filter.add("10.0.0.1");
+    final InetAddressFilter.Rebuild rebuild = filter.startRebuild(1);
+    rebuild.cancel();
+    rebuild.complete();
+    assertTrue(filter.mightContain(InetAddress.getByName("10.0.0.1")));
+  }
+}
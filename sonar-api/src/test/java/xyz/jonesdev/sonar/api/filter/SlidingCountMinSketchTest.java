@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.filter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingCountMinSketchTest {
+  private static final long HASH = 0x123456789ABCDEFL;
+
+  // Ten slots of one second each
+  private final SlidingCountMinSketch sketch = new SlidingCountMinSketch(10000L, 10, 1024);
+  // Start of the current slot, so the tests don't depend on the current time
+  private final long start = System.currentTimeMillis() / 1000L * 1000L;
+
+  @Test
+  void countsKeysWithinWindow() {
+    assertEquals(1, sketch.addAndEstimate(HASH, start));
+    assertEquals(2, sketch.addAndEstimate(HASH, start + 999L));
+    assertEquals(3, sketch.addAndEstimate(HASH, start + 9999L));
+    assertEquals(1, sketch.addAndEstimate(~HASH, start + 9999L));
+  }
+
+  @Test
+  void forgetsSlotsOutsideWindow() {
+    sketch.addAndEstimate(HASH, start);
+    sketch.addAndEstimate(HASH, start + 5000L);
+    // The first slot has moved out of the window
+    assertEquals(2, sketch.addAndEstimate(HASH, start + 10000L));
+    // Every slot has moved out of the window
+    assertEquals(1, sketch.addAndEstimate(HASH, start + 60000L));
+  }
+
+  @Test
+  void countsTotalWithinWindow() {
+    sketch.count(start);
+    sketch.count(start + 5000L);
+    assertEquals(2L, sketch.getTotal(start + 9999L));
+    assertEquals(1L, sketch.getTotal(start + 10000L));
+    assertEquals(0L, sketch.getTotal(start + 15000L));
+  }
+
+  @Test
+  void neverMovesWindowBackwards() {
+    sketch.addAndEstimate(HASH, start + 5000L);
+    sketch.addAndEstimate(HASH, start + 5000L);
+    // A stale timestamp (or a clock that went backwards) is counted in the current slot
+    assertEquals(3, sketch.addAndEstimate(HASH, start));
+    assertEquals(4, sketch.addAndEstimate(HASH, start + 5000L));
+    sketch.count(start + 5000L);
+    sketch.count(start);
+    assertEquals(2L, sketch.getTotal(start + 5000L));
+    // Both keys are forgotten together with the current slot
+    assertEquals(0L, sketch.getTotal(start + 15000L));
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.statistics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHittersTest {
+  private static final HeavyHitters.Formatter FORMATTER = (key, label) -> label == null ? String.valueOf(key) : label.toString();
+
+  @Test
+  void countsExactlyWithinCapacity() {
+    final HeavyHitters hitters = new HeavyHitters(8, FORMATTER);
+    for (int i = 0; i < 3; i++) {
+      hitters.offer(1L, "one");
+    }
+    hitters.offer(2L, null);
+    for (int i = 0; i < 2; i++) {
+      hitters.offer(3L, "three");
+    }
+
+    final List<HeavyHitters.Entry> top = hitters.getTop(10);
+    assertEquals(3, top.size());
+    assertEquals("one", top.get(0).getName());
+    assertEquals(3L, top.get(0).getCount());
+    assertEquals("three", top.get(1).getName());
+    assertEquals("2", top.get(2).getName());
+    for (final HeavyHitters.Entry entry : top) {
+      assertEquals(0L, entry.getError());
+    }
+    assertEquals(2, hitters.getTop(2).size());
+    assertEquals("one (3), three (2)", HeavyHitters.format(hitters.getTop(2), ", "));
+  }
+
+  @Test
+  void keepsFrequentKeysOnceFull() {
+    final HeavyHitters hitters = new HeavyHitters(4, FORMATTER);
+    // Every key that occurs more often than 1/capacity of the stream is guaranteed to be kept
+    for (int i = 0; i < 2000; i++) {
+      hitters.offer(100_000L + i, null);
+      if (i % 2 == 0) {
+        hitters.offer(42L, null);
+      }
+    }
+
+    final HeavyHitters.Entry top = hitters.getTop(1).get(0);
+    assertEquals("42", top.getName());
+    // The count is never underestimated and overestimated by at most the error
+    assertTrue(top.getCount() >= 1000L);
+    assertTrue(top.getCount() - top.getError() <= 1000L);
+  }
+
+  @Test
+  void mergesCountsOfAllThreads() throws Exception {
+    final HeavyHitters hitters = new HeavyHitters(16, FORMATTER);
+    final Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          hitters.offer(7L, null);
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    final List<HeavyHitters.Entry> top = hitters.getTop(10);
+    assertEquals(1, top.size());
+    assertEquals(80_000L, top.get(0).getCount());
+  }
+
+  @Test
+  void resetsAllCounters() {
+    final HeavyHitters hitters = new HeavyHitters(4, FORMATTER);
+    hitters.offer(1L, null);
+    hitters.reset();
+    assertEquals(Collections.emptyList(), hitters.getTop(10));
+    assertEquals("-", HeavyHitters.format(hitters.getTop(10), ", "));
+  }
+}
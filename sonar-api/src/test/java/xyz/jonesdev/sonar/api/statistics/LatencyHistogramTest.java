@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.statistics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+  @Test
+  void bucketsContainTheirValues() {
+    final Random random = new Random(0L);
+    for (int i = 0; i < 100_000; i++) {
+      final long micros = i < 10_000 ? i : random.nextLong() >>> (28 + random.nextInt(36));
+      final int index = LatencyHistogram.index(micros);
+      assertTrue(LatencyHistogram.highestValue(index) >= micros, "upper bound of " + micros);
+      assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < micros, "lower bound of " + micros);
+      // Every bucket is at most 1/16 of its values wide
+      assertTrue(LatencyHistogram.highestValue(index) - micros <= micros / 16, "precision of " + micros);
+    }
+  }
+
+  @Test
+  void indicesAreContiguous() {
+    int previous = LatencyHistogram.index(0L);
+    for (long micros = 1L; micros < 1L << 20; micros++) {
+      final int index = LatencyHistogram.index(micros);
+      assertTrue(index == previous || index == previous + 1, "index of " + micros);
+      previous = index;
+    }
+  }
+
+  @Test
+  void recordsHugeValuesInLastBucket() {
+    final int last = LatencyHistogram.index(Long.MAX_VALUE);
+    assertEquals(last, LatencyHistogram.index(1L << 40));
+    assertTrue(LatencyHistogram.index((1L << 36) - 1L) < last);
+  }
+
+  @Test
+  void computesPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0D, histogram.getPercentileMillis(0.99));
+    for (long micros = 1L; micros <= 1000L; micros++) {
+      histogram.record(micros * 1000L);
+    }
+    assertEquals(1000L, histogram.getCount());
+    assertEquals(0.5005D, histogram.getAverageMillis(), 1e-9);
+    assertEquals(1D, histogram.getMaximumMillis());
+    assertEquals(0.5D, histogram.getPercentileMillis(0.5), 0.5D / 16D);
+    assertEquals(0.99D, histogram.getPercentileMillis(0.99), 0.99D / 16D);
+    // The percentile never exceeds the largest recorded value
+    assertEquals(1D, histogram.getPercentileMillis(1D));
+    assertEquals(1D, histogram.getPercentileMillis(2D));
+    assertEquals(0.001D, histogram.getPercentileMillis(-1D));
+  }
+
+  @Test
+  void clampsPercentileToMaximum() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(32_000L);
+    assertEquals(33L, LatencyHistogram.highestValue(LatencyHistogram.index(32L)));
+    assertEquals(0.032D, histogram.getPercentileMillis(0.5));
+  }
+
+  @Test
+  void resetsAllValues() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(5_000_000L);
+    histogram.record(-1L);
+    histogram.reset();
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0D, histogram.getAverageMillis());
+    assertEquals(0D, histogram.getMaximumMillis());
+    assertEquals(0D, histogram.getPercentileMillis(0.5));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.statistics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateCounterTest {
+
+  @Test
+  void onlyCountsCompletedSeconds() {
+    final RateCounter counter = new RateCounter();
+    counter.add(5L);
+    assertEquals(0L, counter.getLastSecond());
+    assertEquals(5L, counter.getTotal());
+
+    RateCounter.tickAll();
+    assertEquals(5L, counter.getLastSecond());
+    counter.add(3L);
+    RateCounter.tickAll();
+    assertEquals(3L, counter.getLastSecond());
+    assertEquals(8L, counter.getSum(2));
+    assertEquals(4D, counter.getAverage(2));
+    assertEquals(8L, counter.getTotal());
+  }
+
+  @Test
+  void clampsWindow() {
+    final RateCounter counter = new RateCounter();
+    for (int i = 0; i < RateCounter.MAX_WINDOW + 5; i++) {
+      counter.increment();
+      RateCounter.tickAll();
+    }
+    assertEquals(RateCounter.MAX_WINDOW, counter.getSum(Integer.MAX_VALUE));
+    assertEquals(1L, counter.getSum(0));
+    assertEquals(1D, counter.getAverage(-1));
+  }
+
+  @Test
+  void clearsBucketsAfterWrapping() {
+    final RateCounter counter = new RateCounter();
+    counter.add(100L);
+    // The bucket is reused once the ring has wrapped around
+    for (int i = 0; i <= RateCounter.MAX_WINDOW; i++) {
+      RateCounter.tickAll();
+    }
+    assertEquals(0L, counter.getSum(RateCounter.MAX_WINDOW));
+    assertEquals(100L, counter.getTotal());
+  }
+
+  @Test
+  void countsEveryEventFromMultipleThreads() throws Exception {
+    final RateCounter counter = new RateCounter();
+    final Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 100_000; i++) {
+          counter.increment();
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(800_000L, counter.getTotal());
+    RateCounter.tickAll();
+    assertEquals(800_000L, counter.getLastSecond());
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.tracker;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttackTrackerTest {
+
+  private static EscalationLevel select(final double volumeScore, final double suspicionScore,
+                                        final boolean thresholdExceeded) {
+    return AttackTracker.selectLevel(4, 8, 16, volumeScore, suspicionScore, thresholdExceeded);
+  }
+
+  @Test
+  void ignoresFailureRatioOfFewVerifications() {
+    assertEquals(0D, AttackTracker.failureRatio(1L, 1L, 10));
+    assertEquals(0D, AttackTracker.failureRatio(9L, 9L, 10));
+    assertEquals(0D, AttackTracker.failureRatio(0L, 0L, 0));
+    assertTrue(AttackTracker.failureRatio(10L, 10L, 10) > 0D);
+  }
+
+  @Test
+  void scoresLowerBoundOfFailureRatio() {
+    assertEquals(0D, AttackTracker.failureRatio(0L, 100L, 10), 1e-9);
+    // The lower bound approaches the ratio with more verifications
+    final double few = AttackTracker.failureRatio(10L, 10L, 10);
+    final double many = AttackTracker.failureRatio(1000L, 1000L, 10);
+    assertEquals(0.722D, few, 0.001D);
+    assertTrue(many > few);
+    assertTrue(many < 1D);
+    assertEquals(0.5D, AttackTracker.failureRatio(5000L, 10000L, 10), 0.01D);
+    // More failures than verifications are clamped
+    assertEquals(many, AttackTracker.failureRatio(2000L, 1000L, 10), 1e-9);
+  }
+
+  @Test
+  void staysNormalWithUsualTraffic() {
+    assertEquals(EscalationLevel.NORMAL, select(0D, 0D, false));
+    assertEquals(EscalationLevel.NORMAL, select(3.9D, 3.9D, false));
+  }
+
+  @Test
+  void lowersLevelOfUnusualVolume() {
+    assertEquals(EscalationLevel.ELEVATED, select(4D, 0D, false));
+    assertEquals(EscalationLevel.ELEVATED, select(8D, 0D, false));
+    assertEquals(EscalationLevel.HIGH, select(16D, 0D, false));
+  }
+
+  @Test
+  void usesLevelOfSuspiciousTraffic() {
+    assertEquals(EscalationLevel.ELEVATED, select(0D, 4D, false));
+    assertEquals(EscalationLevel.HIGH, select(0D, 8D, false));
+    assertEquals(EscalationLevel.CRITICAL, select(0D, 16D, false));
+  }
+
+  @Test
+  void escalatesUnusualAndSuspiciousTrafficFaster() {
+    assertEquals(EscalationLevel.HIGH, select(4D, 4D, false));
+    assertEquals(EscalationLevel.CRITICAL, select(4D, 8D, false));
+    assertEquals(EscalationLevel.CRITICAL, select(16D, 16D, false));
+  }
+
+  @Test
+  void alwaysDetectsExceededThreshold() {
+    assertEquals(EscalationLevel.HIGH, select(0D, 0D, true));
+    assertEquals(EscalationLevel.CRITICAL, select(0D, 16D, true));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.api.tracker;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BaselineTest {
+
+  @Test
+  void startsAtFirstValue() {
+    final Baseline baseline = new Baseline(1D);
+    baseline.update(10D, 0.5D);
+    assertEquals(10D, baseline.getMean());
+    assertEquals(0D, baseline.getVariance());
+    assertEquals(1L, baseline.getSamples());
+  }
+
+  @Test
+  void learnsMeanAndVariance() {
+    final Baseline baseline = new Baseline(0D);
+    baseline.update(10D, 0.5D);
+    baseline.update(20D, 0.5D);
+    assertEquals(15D, baseline.getMean(), 1e-9);
+    assertEquals(25D, baseline.getVariance(), 1e-9);
+    assertEquals(5D, baseline.getDeviation(), 1e-9);
+    assertEquals(2L, baseline.getSamples());
+  }
+
+  @Test
+  void usesMinimumDeviation() {
+    final Baseline baseline = new Baseline(2D);
+    for (int i = 0; i < 10; i++) {
+      baseline.update(5D, 0.1D);
+    }
+    assertEquals(0D, baseline.getVariance());
+    assertEquals(2D, baseline.getDeviation());
+    assertEquals(3D, baseline.score(11D), 1e-9);
+    assertEquals(-1D, baseline.score(3D), 1e-9);
+  }
+
+  @Test
+  void forgetsEverythingOnReset() {
+    final Baseline baseline = new Baseline(1D);
+    baseline.update(10D, 0.5D);
+    baseline.update(30D, 0.5D);
+    baseline.reset();
+    assertEquals(0D, baseline.getMean());
+    assertEquals(0D, baseline.getVariance());
+    assertEquals(0L, baseline.getSamples());
+    baseline.update(4D, 0.5D);
+    assertEquals(4D, baseline.getMean());
+  }
+}
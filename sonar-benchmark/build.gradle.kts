@@ -0,0 +1,45 @@
+repositories {
+  maven(url = "https://jitpack.io/") // simple-yaml
+}
+
+dependencies {
+  implementation(project(":api"))
+  implementation(project(":common"))
+  implementation(project(":tools"))
+
+  implementation(rootProject.libs.simpleyaml)
+  implementation(rootProject.libs.adventure.minimessage)
+  implementation(rootProject.libs.adventure.serializer)
+  implementation(rootProject.libs.ormlite)
+  implementation(rootProject.libs.caffeine)
+  implementation(rootProject.libs.libby.core)
+  implementation(rootProject.libs.h2)
+  compileOnly(rootProject.libs.annotations)
+}
+
+tasks {
+  shadowJar {
+    manifest {
+      attributes["Main-Class"] = "xyz.jonesdev.sonar.benchmark.SonarBenchmark"
+    }
+
+    // Database drivers are loaded using reflection
+    minimize {
+      exclude(dependency("com.h2database:h2:.*"))
+      exclude(dependency("com.j256.ormlite:.*:.*"))
+    }
+  }
+
+  // Usage: ./gradlew benchmark:benchmark -PbenchmarkArgs="--sizes=100000,1000000 --types=H2,FILE"
+  register<JavaExec>("benchmark") {
+    dependsOn(shadowJar)
+    classpath = files(shadowJar.flatMap { it.archiveFile })
+    mainClass.set("xyz.jonesdev.sonar.benchmark.SonarBenchmark")
+    maxHeapSize = "8g"
+    workingDir = layout.buildDirectory.get().asFile
+    args = (findProperty("benchmarkArgs") as String?)?.split(" ") ?: emptyList()
+  }
+}
+
+java.sourceCompatibility = JavaVersion.VERSION_11
+java.targetCompatibility = JavaVersion.VERSION_11
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.benchmark;
+
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Results of a single benchmark run; written as a report, so they can be compared across releases
+ */
+@RequiredArgsConstructor
+@SuppressWarnings("unused")
+final class BenchmarkResult {
+  private final String type;
+  private final int players;
+  private final Throughput populate;
+  private final Load load;
+  private final Heap heap;
+  private final Latency lookupHit;
+  private final Latency lookupMiss;
+  private final Throughput reverification;
+  private final Expiry expiry;
+
+  @RequiredArgsConstructor
+  static final class Throughput {
+    private final long operations;
+    private final long millis;
+    private final long perSecond;
+
+    static @NotNull Throughput of(final long operations, final long startNanos) {
+      final long nanos = Math.max(1L, System.nanoTime() - startNanos);
+      return new Throughput(operations, nanos / 1000000L, operations * 1000000000L / nanos);
+    }
+  }
+
+  @RequiredArgsConstructor
+  static final class Load {
+    private final long millis;
+    private final int addresses;
+    private final int entries;
+  }
+
+  @RequiredArgsConstructor
+  static final class Heap {
+    private final long retainedBytes;
+    private final long indexBytes;
+    private final double bytesPerEntry;
+  }
+
+  @RequiredArgsConstructor
+  static final class Expiry {
+    private final long removed;
+    private final long batches;
+    private final double millis;
+  }
+
+  static final class Latency {
+    private final int threads;
+    private final long operations;
+    private final long perSecond;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    /**
+     * @param samples    Latency of every single operation
+     * @param totalNanos Wall-clock time it took all threads to finish
+     */
+    Latency(final int threads, final long @NotNull [] samples, final long totalNanos) {
+      Arrays.sort(samples);
+      this.threads = threads;
+      this.operations = samples.length;
+      this.perSecond = samples.length * 1000000000L / Math.max(1L, totalNanos);
+      this.p50Nanos = percentile(samples, 0.5);
+      this.p99Nanos = percentile(samples, 0.99);
+      this.p999Nanos = percentile(samples, 0.999);
+      this.maxNanos = samples.length == 0 ? 0L : samples[samples.length - 1];
+    }
+
+    private static long percentile(final long @NotNull [] sorted, final double percentile) {
+      return sorted.length == 0 ? 0L : sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * percentile))];
+    }
+  }
+}
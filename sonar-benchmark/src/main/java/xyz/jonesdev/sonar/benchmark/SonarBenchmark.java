@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.j256.ormlite.logger.Level;
+import com.j256.ormlite.logger.Logger;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.SonarSupplier;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.controller.LatencyMetric;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerController;
+import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+import xyz.jonesdev.sonar.tools.HeadlessSonar;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the verified player store with realistic amounts of data.
+ * <br>
+ * For every database type and size, the benchmark fills a fresh database with synthetic players,
+ * restarts the controller and measures how long it takes to load everything,
+ * how much memory the cache retains, how fast players can be looked up from
+ * multiple threads, how fast re-verified players can be written, and how long
+ * it takes to remove outdated players.
+ * <br>
+ * Arguments: --sizes=100000,1000000,10000000 --types=H2,FILE --threads=4 --output=benchmark-results.json
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SonarBenchmark {
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+  // Every 10th player is older than the maximum age and should be removed on startup
+  private static final int EXPIRED_RATIO = 10;
+  private static final int LOOKUP_SAMPLES = 100000;
+  private static final int LOOKUP_OPERATIONS = 1000000;
+  private static final int REVERIFICATIONS = 1000000;
+  // Make sure we don't queue more writes than the database can handle
+  private static final int WRITES_PER_FLUSH = 50000;
+
+  public static void main(final String @NotNull [] args) throws Exception {
+    final Map<String, String> arguments = HeadlessSonar.parseArguments(args);
+
+    final int threads = Integer.parseInt(arguments.getOrDefault("threads", "4"));
+    final File output = new File(arguments.getOrDefault("output", "benchmark-results.json"));
+    final File dataDirectory = Files.createTempDirectory("sonar-benchmark").toFile();
+
+    final HeadlessSonar sonar = new HeadlessSonar(dataDirectory);
+    SonarSupplier.set(sonar);
+    sonar.reload();
+    // Hide unnecessary debug information
+    Logger.setGlobalLogLevel(Level.WARNING);
+
+    final List<BenchmarkResult> results = new ArrayList<>();
+    for (final String type : arguments.getOrDefault("types", "H2,FILE").split(",")) {
+      for (final String size : arguments.getOrDefault("sizes", "100000,1000000,10000000").split(",")) {
+        final SonarConfiguration.Database.Type databaseType = SonarConfiguration.Database.Type.valueOf(type.toUpperCase());
+        final File directory = new File(dataDirectory, databaseType.name().toLowerCase() + "-" + size);
+        results.add(run(sonar, databaseType, Integer.parseInt(size), threads, directory));
+
+        // Write the results after every run, so we don't lose anything if a run fails
+        HeadlessSonar.writeReport(results, output);
+      }
+    }
+
+    Sonar.get().getLogger().info("Results have been written to {}", output.getAbsolutePath());
+    // The database threads would otherwise keep the JVM alive
+    System.exit(0);
+  }
+
+  private static @NotNull BenchmarkResult run(final @NotNull HeadlessSonar sonar,
+                                              final @NotNull SonarConfiguration.Database.Type type,
+                                              final int players,
+                                              final int threads,
+                                              final @NotNull File directory) throws Exception {
+    Sonar.get().getLogger().info("Benchmarking {} with {} players...", type.getDisplayName(), players);
+
+    // Every run uses a fresh database
+    if (!directory.mkdirs()) {
+      throw new IllegalStateException("Could not create " + directory);
+    }
+    sonar.getConfig().getGeneralConfig().set("database.type", type.name());
+    // The file name is relative to the plugin folder
+    sonar.getConfig().getGeneralConfig().set("database.filename", directory.getName() + "/verified_players");
+    sonar.getConfig().getGeneralConfig().set("database.cache-size", Math.max(players, 1000));
+    sonar.getConfig().getGeneralConfig().set("database.sync-interval", 0);
+    sonar.getConfig().loadValues();
+    // The driver is already on the classpath
+    if (type.getDatabaseDriver() != null) {
+      type.setLoaded(true);
+    }
+    final int maximumAge = sonar.getConfig().getDatabase().getMaximumAge();
+
+    // Fill the database
+    final long now = System.currentTimeMillis();
+    final Random random = new Random(players);
+    // The library manager is never used since all drivers are already loaded
+    final VerifiedPlayerController initialController = new VerifiedPlayerController(null);
+    awaitLoaded(initialController);
+    long start = System.nanoTime();
+    for (int i = 0; i < players; i++) {
+      final long age = i % EXPIRED_RATIO == 0
+        ? TimeUnit.DAYS.toMillis(maximumAge + 1L)
+        : (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(maximumAge - 1L));
+      initialController.add(new VerifiedPlayer(address(i), uuid(i), now - age));
+      if (i % WRITES_PER_FLUSH == 0) {
+        initialController.flush().join();
+      }
+    }
+    initialController.flush().join();
+    final BenchmarkResult.Throughput populate = BenchmarkResult.Throughput.of(players, start);
+    initialController.close();
+
+    // Load everything from the database again
+    final long heapBefore = usedMemory();
+    start = System.nanoTime();
+    final VerifiedPlayerController controller = new VerifiedPlayerController(null);
+    sonar.setVerifiedPlayerController(controller);
+    awaitLoaded(controller);
+    // The file store removes outdated entries after loading the file
+    while (controller.getMetrics().getExpiry().getCount() == 0L) {
+      Thread.sleep(1L);
+    }
+    final long loadNanos = System.nanoTime() - start;
+    final BenchmarkResult.Load load = new BenchmarkResult.Load(TimeUnit.NANOSECONDS.toMillis(loadNanos),
+      controller.estimatedSize(), controller.exactSize());
+    final long retained = usedMemory() - heapBefore;
+    final long indexMemory = controller.getIndex().getMemoryUsage();
+    final BenchmarkResult.Heap heap = new BenchmarkResult.Heap(retained, indexMemory,
+      Math.round(retained * 10D / Math.max(1, controller.exactSize())) / 10D);
+
+    final LatencyMetric expiryMetric = controller.getMetrics().getExpiry();
+    final BenchmarkResult.Expiry expiry = new BenchmarkResult.Expiry(players - controller.exactSize(),
+      expiryMetric.getCount(), expiryMetric.getCount() * expiryMetric.getAverageMillis());
+
+    // Look up existing players and unknown IP addresses from multiple threads
+    final InetAddress[] addresses = new InetAddress[LOOKUP_SAMPLES], unknownAddresses = new InetAddress[LOOKUP_SAMPLES];
+    final UUID[] uuids = new UUID[LOOKUP_SAMPLES];
+    for (int i = 0; i < LOOKUP_SAMPLES; i++) {
+      int player = random.nextInt(players);
+      // Make sure we only look up players that haven't been removed
+      if (player % EXPIRED_RATIO == 0) {
+        player = player + 1 < players ? player + 1 : player - 1;
+      }
+      addresses[i] = InetAddress.getByName(address(player));
+      unknownAddresses[i] = InetAddress.getByName(address(players + i));
+      uuids[i] = uuid(player);
+    }
+    final BenchmarkResult.Latency lookupHit = measureLatency(threads,
+      i -> controller.has(addresses[i], uuids[i]));
+    final BenchmarkResult.Latency lookupMiss = measureLatency(threads,
+      i -> controller.has(unknownAddresses[i], uuids[i]));
+
+    // Simulate a storm of players who are verified again
+    final int reverifications = Math.min(players, REVERIFICATIONS);
+    start = System.nanoTime();
+    runConcurrently(threads, thread -> {
+      for (int i = thread; i < reverifications; i += threads) {
+        controller.add(new VerifiedPlayer(address(i), uuid(i), System.currentTimeMillis()));
+        if (i % WRITES_PER_FLUSH == thread) {
+          controller.flush().join();
+        }
+      }
+    });
+    controller.flush().join();
+    final BenchmarkResult.Throughput reverification = BenchmarkResult.Throughput.of(reverifications, start);
+    controller.close();
+
+    final BenchmarkResult result = new BenchmarkResult(type.name(), players,
+      populate, load, heap, lookupHit, lookupMiss, reverification, expiry);
+    Sonar.get().getLogger().info(GSON.toJson(result));
+    return result;
+  }
+
+  private static @NotNull BenchmarkResult.Latency measureLatency(final int threads,
+                                                                 final @NotNull Lookup lookup) throws InterruptedException {
+    final long[][] samples = new long[threads][LOOKUP_OPERATIONS / threads];
+    // Make sure the lookup has been compiled before measuring it
+    runConcurrently(threads, thread -> {
+      for (int i = 0; i < samples[thread].length; i++) {
+        lookup.run((i * 31 + thread) % LOOKUP_SAMPLES);
+      }
+    });
+    final long start = System.nanoTime();
+    runConcurrently(threads, thread -> {
+      final long[] threadSamples = samples[thread];
+      for (int i = 0; i < threadSamples.length; i++) {
+        final long operationStart = System.nanoTime();
+        lookup.run((i * 31 + thread) % LOOKUP_SAMPLES);
+        threadSamples[i] = System.nanoTime() - operationStart;
+      }
+    });
+    final long totalNanos = System.nanoTime() - start;
+    return new BenchmarkResult.Latency(threads,
+      Arrays.stream(samples).flatMapToLong(Arrays::stream).toArray(), totalNanos);
+  }
+
+  private static void runConcurrently(final int threads, final @NotNull Task task) throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      final int thread = i;
+      new Thread(() -> {
+        try {
+          task.run(thread);
+        } finally {
+          latch.countDown();
+        }
+      }, "sonar-benchmark-" + thread).start();
+    }
+    latch.await();
+  }
+
+  private static void awaitLoaded(final @NotNull VerifiedPlayerController controller) throws InterruptedException {
+    while (!controller.isWarmedUp()) {
+      Thread.sleep(1L);
+    }
+  }
+
+  private static long usedMemory() throws InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100L);
+    }
+    return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+  }
+
+  private static @NotNull String address(final int player) {
+    // Spread the players across 10.0.0.0/8 and 11.0.0.0/8
+    final int address = 0x0A000000 + player;
+    return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+  }
+
+  private static @NotNull UUID uuid(final int player) {
+    return new UUID(0x5E0A5E0A5E0A5E0AL, player);
+  }
+
+  @FunctionalInterface
+  private interface Lookup {
+    boolean run(final int sample);
+  }
+
+  @FunctionalInterface
+  private interface Task {
+    void run(final int thread);
+  }
+}
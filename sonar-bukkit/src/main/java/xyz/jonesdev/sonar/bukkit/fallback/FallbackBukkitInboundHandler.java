@@ -18,6 +18,7 @@
 package xyz.jonesdev.sonar.bukkit.fallback;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.DecoderException;
@@ -131,16 +132,21 @@ public void channelRead(final @NotNull ChannelHandlerContext ctx, final @NotNull
         final InetSocketAddress socketAddress = (InetSocketAddress) ctx.channel().remoteAddress();
         // We've done our job - deject this pipeline
         ctx.pipeline().remove(this);
+        // Sonar might process the login packet later (e.g. after a database lookup),
+        // so make sure to only release it once the connection has been closed
+        final ChannelFutureListener releaseListener = future -> byteBuf.release();
+        ctx.channel().closeFuture().addListener(releaseListener);
         // Let Sonar process the login packet
         handleLogin(ctx.channel(), ctx, () -> {
+          // The server takes care of releasing the login packet now
+          ctx.channel().closeFuture().removeListener(releaseListener);
           byteBuf.readerIndex(originalReaderIndex);
-          ctx.fireChannelRead(byteBuf.retain());
+          ctx.fireChannelRead(byteBuf);
           final ChannelHandler inboundHandler = ctx.pipeline().remove(FALLBACK_INBOUND_HANDLER);
           if (inboundHandler != null) {
             channelRemovalListener.accept(ctx.pipeline(), FALLBACK_INBOUND_HANDLER, inboundHandler);
           }
         }, loginStart.getUsername(), socketAddress);
-        byteBuf.release();
         return;
       }
 
@@ -19,6 +19,7 @@
 
 import com.alessiodp.libby.LibraryManager;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.Ticker;
 import com.j256.ormlite.logger.Level;
 import com.j256.ormlite.logger.Logger;
@@ -36,17 +37,24 @@
 import xyz.jonesdev.sonar.api.notification.ChatNotificationHandler;
 import xyz.jonesdev.sonar.api.statistics.SonarStatistics;
 import xyz.jonesdev.sonar.api.timer.SystemTimer;
+import xyz.jonesdev.sonar.common.capture.TrafficCapture;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPreparer;
 import xyz.jonesdev.sonar.common.fallback.ratelimit.CaffeineCacheRatelimiter;
 import xyz.jonesdev.sonar.common.fallback.ratelimit.NoopCacheRatelimiter;
+import xyz.jonesdev.sonar.common.firewall.BlacklistFirewallExporter;
+import xyz.jonesdev.sonar.common.logging.VerificationLogger;
+import xyz.jonesdev.sonar.common.metrics.ManagementBeans;
+import xyz.jonesdev.sonar.common.metrics.MetricsExporter;
 import xyz.jonesdev.sonar.common.service.SonarServiceManager;
 import xyz.jonesdev.sonar.common.statistics.GlobalSonarStatistics;
+import xyz.jonesdev.sonar.common.statistics.StatisticsHistory;
 import xyz.jonesdev.sonar.common.subcommand.*;
 import xyz.jonesdev.sonar.common.update.UpdateChecker;
 import xyz.jonesdev.sonar.common.util.ProtocolUtil;
 
 import java.io.File;
 import java.time.Duration;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 @Getter
@@ -119,9 +127,14 @@ public final void initialize() {
       // Run the per-platform initialization method
       enable();
 
+      // Continue recording the statistics history of the last run
+      StatisticsHistory.INSTANCE.open();
+
       // Start threads
       getLogger().info("Starting all managed threads...");
       SonarServiceManager.start();
+      // Expose all statistics over JMX
+      ManagementBeans.register();
 
       // Done
       getLogger().info("Done ({}s)!", launchTimer);
@@ -143,6 +156,8 @@ public final void initialize() {
   public final void reload() {
     // Load the configuration
     getConfig().load();
+    // Compile the log templates of the new messages
+    VerificationLogger.INSTANCE.reload();
 
     // Warn player if they reloaded and changed the database type
     if (verifiedPlayerController != null
@@ -169,7 +184,20 @@ public final void reload() {
       getFallback().setBlacklist(Caffeine.newBuilder()
         .expireAfterWrite(Duration.ofMillis(getConfig().getVerification().getBlacklistTime()))
         .ticker(Ticker.systemTicker())
+        .removalListener((String hostAddress, Integer score, RemovalCause cause) -> {
+          // Replaced entries are still part of the blacklist
+          if (cause != RemovalCause.REPLACED) {
+            getFallback().getBlacklistFilter().remove();
+          }
+          // Expired entries are removed by the firewall itself using the timeout
+          if (cause == RemovalCause.EXPLICIT && hostAddress != null && score != null
+            && score >= getConfig().getVerification().getBlacklistThreshold()) {
+            BlacklistFirewallExporter.INSTANCE.remove(hostAddress);
+          }
+        })
         .build());
+      // Make sure the filter doesn't contain any entries of the old blacklist
+      getFallback().getBlacklistFilter().rebuild(Collections.emptyList());
       // Store the new blacklist time, so we don't have to reset the blacklist every reload
       getFallback().setBlacklistTime(blacklistTime);
       // Warn the user about changing the expiry of the blacklist values
@@ -184,6 +212,11 @@ public final void reload() {
       verifiedPlayerController.close();
     }
     verifiedPlayerController = new VerifiedPlayerController(libraryManager);
+
+    // Restart the metrics server in case the address has changed
+    MetricsExporter.INSTANCE.start();
+    // Reopen the traffic capture in case it has been enabled or resized
+    TrafficCapture.INSTANCE.open();
   }
 
   public final void shutdown() {
@@ -191,6 +224,13 @@ public final void shutdown() {
     getLogger().info("Starting shutdown process...");
     // Interrupt threads
     SonarServiceManager.stop();
+    // Make sure the statistics history is written to the disk
+    StatisticsHistory.INSTANCE.close();
+    // Make sure all captured verifications are written to the disk
+    TrafficCapture.INSTANCE.close();
+    // Stop serving metrics
+    MetricsExporter.INSTANCE.stop();
+    ManagementBeans.unregister();
     // Close database connection if present
     if (verifiedPlayerController != null) {
       verifiedPlayerController.close();
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.capture;
+
+import io.netty.buffer.ByteBuf;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Raw inbound data of a single verification and the time it has been received.
+ * <br>
+ * Every chunk of data is stored exactly as it has been read from the socket:
+ * the delay since the previous chunk in microseconds (VarLong), the length (VarInt) and the data.
+ * <br>
+ * Record layout: record size (4 bytes), epoch millis (8 bytes), seed of the prepared packets (8 bytes),
+ * seed of the verification (8 bytes), protocol version (4 bytes), flags (1 byte),
+ * username length (1 byte), username, number of chunks (4 bytes), size of the chunks (4 bytes), chunks
+ */
+@Getter
+public final class CapturedSession {
+  // Make sure a single verification never takes up too much memory
+  public static final int MAX_SIZE = 64 * 1024;
+  private static final int FLAG_GEYSER = 1, FLAG_TRUNCATED = 2;
+
+  private final long timestamp;
+  private final long preparerSeed;
+  private final long seed;
+  private final int protocol;
+  private final boolean geyser;
+  private final String username;
+  @Getter(AccessLevel.NONE)
+  private byte[] data;
+  private int size, chunks;
+  private boolean truncated;
+
+  public CapturedSession(final long timestamp,
+                         final long preparerSeed,
+                         final long seed,
+                         final int protocol,
+                         final boolean geyser,
+                         final @NotNull String username) {
+    this.timestamp = timestamp;
+    this.preparerSeed = preparerSeed;
+    this.seed = seed;
+    this.protocol = protocol;
+    this.geyser = geyser;
+    this.username = username;
+    this.data = new byte[256];
+  }
+
+  /**
+   * @param delayMicros Time since the previous chunk in microseconds
+   * @param buffer      Data that has been read
+   * @return False if the session is too large and the data has been discarded
+   */
+  public boolean append(final long delayMicros, final @NotNull ByteBuf buffer) {
+    final int length = buffer.readableBytes();
+    // VarLong and VarInt take up at most 10 and 5 bytes
+    final int required = size + 15 + length;
+    if (truncated || required > MAX_SIZE) {
+      truncated = true;
+      return false;
+    }
+    if (required > data.length) {
+      data = Arrays.copyOf(data, Math.min(MAX_SIZE, Math.max(required, data.length * 2)));
+    }
+    size = writeVarLong(data, size, delayMicros);
+    size = writeVarLong(data, size, length);
+    buffer.getBytes(buffer.readerIndex(), data, size, length);
+    size += length;
+    chunks++;
+    return true;
+  }
+
+  public @NotNull List<Chunk> decodeChunks() {
+    final List<Chunk> decoded = new ArrayList<>(chunks);
+    final ByteBuffer buffer = ByteBuffer.wrap(data, 0, size);
+    for (int i = 0; i < chunks; i++) {
+      final long delayMicros = readVarLong(buffer);
+      final byte[] chunk = new byte[(int) readVarLong(buffer)];
+      buffer.get(chunk);
+      decoded.add(new Chunk(delayMicros, chunk));
+    }
+    return decoded;
+  }
+
+  @Getter
+  @RequiredArgsConstructor
+  public static final class Chunk {
+    private final long delayMicros;
+    private final byte[] data;
+  }
+
+  int getEncodedSize() {
+    return 42 + username.getBytes(StandardCharsets.UTF_8).length + size;
+  }
+
+  void writeTo(final @NotNull ByteBuffer buffer) {
+    final byte[] name = username.getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(getEncodedSize());
+    buffer.putLong(timestamp);
+    buffer.putLong(preparerSeed);
+    buffer.putLong(seed);
+    buffer.putInt(protocol);
+    buffer.put((byte) ((geyser ? FLAG_GEYSER : 0) | (truncated ? FLAG_TRUNCATED : 0)));
+    buffer.put((byte) name.length);
+    buffer.put(name);
+    buffer.putInt(chunks);
+    buffer.putInt(size);
+    buffer.put(data, 0, size);
+  }
+
+  static @NotNull CapturedSession readFrom(final @NotNull ByteBuffer buffer) {
+    buffer.getInt(); // Record size
+    final long timestamp = buffer.getLong();
+    final long preparerSeed = buffer.getLong();
+    final long seed = buffer.getLong();
+    final int protocol = buffer.getInt();
+    final int flags = buffer.get();
+    final byte[] name = new byte[buffer.get() & 0xFF];
+    buffer.get(name);
+    final CapturedSession session = new CapturedSession(timestamp, preparerSeed, seed, protocol,
+      (flags & FLAG_GEYSER) != 0, new String(name, StandardCharsets.UTF_8));
+    session.truncated = (flags & FLAG_TRUNCATED) != 0;
+    session.chunks = buffer.getInt();
+    session.size = buffer.getInt();
+    session.data = new byte[session.size];
+    buffer.get(session.data);
+    return session;
+  }
+
+  private static int writeVarLong(final byte @NotNull [] array, int offset, long value) {
+    while ((value & ~0x7FL) != 0L) {
+      array[offset++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    array[offset++] = (byte) value;
+    return offset;
+  }
+
+  private static long readVarLong(final @NotNull ByteBuffer buffer) {
+    long value = 0L;
+    int shift = 0;
+    byte read;
+    do {
+      read = buffer.get();
+      value |= (long) (read & 0x7F) << shift;
+      shift += 7;
+    } while ((read & 0x80) != 0);
+    return value;
+  }
+}
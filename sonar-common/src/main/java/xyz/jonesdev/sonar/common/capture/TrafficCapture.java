@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.capture;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Captures the raw inbound data of a sample of all verifications in a ring file,
+ * so attacks can be replayed against a test server using the replay module.
+ * <br>
+ * The file is split into segments of 1 MiB. Sessions are always appended to the newest segment;
+ * once it is full, the oldest segment is overwritten. Sessions are captured by the event loops
+ * and written by the capture thread. If the capture thread can't keep up, sessions are discarded.
+ * <br>
+ * Header layout: magic (4 bytes), version (4 bytes), segment size (4 bytes), number of segments (4 bytes)
+ * <br>
+ * Segment layout: sequence number (8 bytes), used bytes including the header (4 bytes),
+ * reserved (4 bytes), sessions (see {@link CapturedSession})
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TrafficCapture {
+  public static final TrafficCapture INSTANCE = new TrafficCapture();
+
+  private static final int MAGIC = 0x534F4E43; // SONC
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int SEGMENT_SIZE = 1 << 20;
+  private static final int SEGMENT_HEADER_SIZE = 16;
+  // Limit the memory used by sessions that haven't been written yet
+  private static final long MAX_PENDING_BYTES = 16L << 20;
+
+  private final Queue<CapturedSession> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicLong pendingBytes = new AtomicLong();
+  // Percentage of all verifications that are captured; 0 if capturing is disabled
+  private volatile int sampleRate;
+  private FileChannel channel;
+  private int segments, segment, position;
+  private long sequence;
+
+  /**
+   * Opens the capture file (and creates it if necessary) if capturing is enabled
+   */
+  public synchronized void open() {
+    close();
+
+    final SonarConfiguration.Capture config = Sonar.get().getConfig().getCapture();
+    if (!config.isEnabled()) {
+      return;
+    }
+
+    final File file = new File(Sonar.get().getConfig().getPluginFolder(), "capture.bin");
+    segments = config.getMaxSize();
+    try {
+      channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      if (channel.size() == segmentOffset(segments) && channel.read(header, 0L) == HEADER_SIZE
+        && header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+        && header.getInt(8) == SEGMENT_SIZE && header.getInt(12) == segments) {
+        // Continue after the newest segment
+        final ByteBuffer segmentHeader = ByteBuffer.allocate(8);
+        segment = 0;
+        sequence = 0L;
+        for (int i = 0; i < segments; i++) {
+          segmentHeader.clear();
+          channel.read(segmentHeader, segmentOffset(i));
+          if (segmentHeader.getLong(0) > sequence) {
+            sequence = segmentHeader.getLong(0);
+            segment = i;
+          }
+        }
+      } else {
+        // Make sure to start new (or outdated) files with empty segments;
+        // the file is filled with zeros when it is extended
+        channel.truncate(0L);
+        header.clear();
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, SEGMENT_SIZE).putInt(12, segments);
+        write(header, 0L);
+        write(ByteBuffer.allocate(1), segmentOffset(segments) - 1L);
+        segment = segments - 1;
+        sequence = 0L;
+      }
+      nextSegment();
+      sampleRate = config.getSampleRate();
+    } catch (IOException exception) {
+      closeChannel();
+      Sonar.get().getLogger().error("Error opening traffic capture: {}", exception);
+    }
+  }
+
+  public synchronized void close() {
+    sampleRate = 0;
+    flush();
+    closeChannel();
+  }
+
+  private void closeChannel() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException exception) {
+        Sonar.get().getLogger().error("Error closing traffic capture: {}", exception);
+      }
+      channel = null;
+    }
+  }
+
+  /**
+   * @return True if the next verification should be captured
+   */
+  public boolean shouldCapture() {
+    final int sampleRate = this.sampleRate;
+    return sampleRate > 0 && ThreadLocalRandom.current().nextInt(100) < sampleRate;
+  }
+
+  /**
+   * Queues a captured session, so it is written by the capture thread
+   */
+  public void submit(final @NotNull CapturedSession session) {
+    if (sampleRate == 0) {
+      return;
+    }
+    final int size = session.getEncodedSize();
+    if (pendingBytes.addAndGet(size) > MAX_PENDING_BYTES) {
+      pendingBytes.addAndGet(-size);
+      return;
+    }
+    pending.offer(session);
+  }
+
+  /**
+   * Writes all queued sessions to the capture file
+   */
+  public synchronized void flush() {
+    CapturedSession session;
+    while ((session = pending.poll()) != null) {
+      final int size = session.getEncodedSize();
+      pendingBytes.addAndGet(-size);
+      if (channel == null) continue;
+
+      try {
+        if (position + size > SEGMENT_SIZE) {
+          nextSegment();
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        session.writeTo(buffer);
+        buffer.flip();
+        write(buffer, segmentOffset(segment) + position);
+        position += size;
+        // Only publish the session once it has been written completely
+        writeSegmentHeader();
+      } catch (IOException exception) {
+        closeChannel();
+        Sonar.get().getLogger().error("Error writing traffic capture: {}", exception);
+      }
+    }
+  }
+
+  private void nextSegment() throws IOException {
+    segment = (segment + 1) % segments;
+    sequence++;
+    position = SEGMENT_HEADER_SIZE;
+    writeSegmentHeader();
+  }
+
+  private void writeSegmentHeader() throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+    header.putLong(0, sequence).putInt(8, position).putInt(12, 0);
+    write(header, segmentOffset(segment));
+  }
+
+  private void write(final @NotNull ByteBuffer buffer, long offset) throws IOException {
+    while (buffer.hasRemaining()) {
+      offset += channel.write(buffer, offset);
+    }
+  }
+
+  private static long segmentOffset(final int segment) {
+    return HEADER_SIZE + (long) segment * SEGMENT_SIZE;
+  }
+
+  /**
+   * Passes all sessions of a capture file to the consumer, from oldest to newest segment
+   *
+   * @param file Capture file
+   * @throws IOException If the file cannot be read or is not a capture file
+   */
+  public static void read(final @NotNull File file, final @NotNull Consumer<CapturedSession> consumer) throws IOException {
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      if (channel.read(header, 0L) != HEADER_SIZE
+        || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+        throw new IOException("Not a traffic capture: " + file);
+      }
+      final int segmentSize = header.getInt(8);
+      final int segments = header.getInt(12);
+
+      // Segments that have never been written have the sequence number 0
+      final List<long[]> order = new ArrayList<>(segments);
+      final ByteBuffer segmentHeader = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+      for (int i = 0; i < segments; i++) {
+        segmentHeader.clear();
+        final long offset = HEADER_SIZE + (long) i * segmentSize;
+        if (channel.read(segmentHeader, offset) != SEGMENT_HEADER_SIZE) break;
+        final long sequence = segmentHeader.getLong(0);
+        final int used = segmentHeader.getInt(8);
+        if (sequence > 0L && used > SEGMENT_HEADER_SIZE && used <= segmentSize) {
+          order.add(new long[]{sequence, offset, used});
+        }
+      }
+      order.sort(Comparator.comparingLong(entry -> entry[0]));
+
+      for (final long[] entry : order) {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) entry[2]);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, entry[1] + buffer.position()) < 0) break;
+        }
+        buffer.position(SEGMENT_HEADER_SIZE);
+        while (buffer.remaining() >= 4) {
+          consumer.accept(CapturedSession.readFrom(buffer));
+        }
+      }
+    }
+  }
+}
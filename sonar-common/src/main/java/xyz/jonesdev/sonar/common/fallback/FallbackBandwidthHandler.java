@@ -19,20 +19,46 @@
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelDuplexHandler;
-import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
-import lombok.AccessLevel;
-import lombok.NoArgsConstructor;
 import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
+import xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion;
+import xyz.jonesdev.sonar.common.statistics.TrafficStatistics;
 
 import static xyz.jonesdev.sonar.common.statistics.BandwidthStatistics.INCOMING;
 import static xyz.jonesdev.sonar.common.statistics.BandwidthStatistics.OUTGOING;
 
-@ChannelHandler.Sharable
-@NoArgsConstructor(access = AccessLevel.PRIVATE)
+/**
+ * Counts the traffic of a single connection.
+ * <br>
+ * While the player is being verified, the traffic is also counted per verification stage.
+ * All fields are only accessed from the event loop of the channel, so no synchronization is needed.
+ */
 public final class FallbackBandwidthHandler extends ChannelDuplexHandler {
-  public static final ChannelHandler INSTANCE = new FallbackBandwidthHandler();
+  private static final int STAGES = FallbackStage.values().length;
+
+  // Only set if the player is being verified
+  private ProtocolVersion protocolVersion;
+  private int stage = -1, reachedStages;
+  private long[] incoming, outgoing;
+
+  /**
+   * Starts counting the traffic of the given verification stage
+   *
+   * @param protocolVersion Protocol version of the player
+   * @param stage           Current verification stage
+   */
+  public void setStage(final @NotNull ProtocolVersion protocolVersion, final @NotNull FallbackStage stage) {
+    // Most players are already verified, so only allocate the counters when needed
+    if (incoming == null) {
+      this.protocolVersion = protocolVersion;
+      incoming = new long[STAGES];
+      outgoing = new long[STAGES];
+    }
+    this.stage = stage.ordinal();
+    reachedStages |= 1 << this.stage;
+  }
 
   @Override
   public void channelRead(final @NotNull ChannelHandlerContext ctx,
@@ -40,7 +66,11 @@ public void channelRead(final @NotNull ChannelHandlerContext ctx,
     // We can only get the size of a message if it's a ByteBuf
     if (msg instanceof ByteBuf) {
       // Increment the incoming traffic by the number of readable bytes
-      INCOMING.increment(((ByteBuf) msg).readableBytes());
+      final int bytes = ((ByteBuf) msg).readableBytes();
+      INCOMING.increment(bytes);
+      if (stage != -1) {
+        incoming[stage] += bytes;
+      }
     }
     // Make sure to let the server handle the rest
     ctx.fireChannelRead(msg);
@@ -53,9 +83,23 @@ public void write(final @NotNull ChannelHandlerContext ctx,
     // We can only get the size of a message if it's a ByteBuf
     if (msg instanceof ByteBuf) {
       // Increment the outgoing traffic by the number of readable bytes
-      OUTGOING.increment(((ByteBuf) msg).readableBytes());
+      final int bytes = ((ByteBuf) msg).readableBytes();
+      OUTGOING.increment(bytes);
+      if (stage != -1) {
+        outgoing[stage] += bytes;
+      }
     }
     // Make sure to let the server handle the rest
     ctx.write(msg, promise);
   }
+
+  @Override
+  public void channelInactive(final @NotNull ChannelHandlerContext ctx) throws Exception {
+    // Record the traffic of the verification once the connection has been closed
+    if (stage != -1) {
+      TrafficStatistics.record(protocolVersion, reachedStages, incoming, outgoing);
+      stage = -1;
+    }
+    ctx.fireChannelInactive();
+  }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.fallback;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.common.capture.CapturedSession;
+import xyz.jonesdev.sonar.common.capture.TrafficCapture;
+
+/**
+ * Captures the raw inbound data of a single verification.
+ * <br>
+ * This handler is added in front of all other handlers, so the data is captured
+ * exactly as it has been received, including the way it has been split into reads.
+ * All fields are only accessed from the event loop of the channel, so no synchronization is needed.
+ */
+@RequiredArgsConstructor
+public final class FallbackCaptureHandler extends ChannelInboundHandlerAdapter {
+  private final CapturedSession session;
+  private long lastRead = System.nanoTime();
+  private boolean submitted;
+
+  @Override
+  public void channelRead(final @NotNull ChannelHandlerContext ctx,
+                          final @NotNull Object msg) throws Exception {
+    // We can only capture the data if it's a ByteBuf
+    if (msg instanceof ByteBuf && !session.isTruncated()) {
+      final long now = System.nanoTime();
+      session.append((now - lastRead) / 1000L, (ByteBuf) msg);
+      lastRead = now;
+    }
+    // Make sure to let the server handle the rest
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelInactive(final @NotNull ChannelHandlerContext ctx) throws Exception {
+    // Submit the session once the connection has been closed
+    if (!submitted) {
+      submitted = true;
+      TrafficCapture.INSTANCE.submit(session);
+    }
+    ctx.fireChannelInactive();
+  }
+}
@@ -23,10 +23,13 @@
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerController;
 import xyz.jonesdev.sonar.api.fallback.FallbackUser;
 import xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacket;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacketEncoder;
+import xyz.jonesdev.sonar.common.statistics.EventLoopLag;
 import xyz.jonesdev.sonar.common.statistics.GlobalSonarStatistics;
 import xyz.jonesdev.sonar.common.util.GeyserUtil;
 import xyz.jonesdev.sonar.common.util.exception.QuietDecoderException;
@@ -63,6 +66,15 @@ protected final void handleHandshake(final @NotNull Channel channel,
     if (hostname.isEmpty()) {
       throw QuietDecoderException.INSTANCE;
     }
+    // Count the hostname and protocol version for the heavy hitters
+    // before rejecting anything, so rejected hostnames show up as well
+    GlobalSonarStatistics.countHandshake(hostname, protocol);
+    // Check if the hostname is allowed to be used
+    final SonarConfiguration.HostnameAllowlist allowlist = Sonar.get().getConfig().getHostnameAllowlist();
+    if (allowlist.isEnabled() && !allowlist.getTrie().matches(hostname)) {
+      GlobalSonarStatistics.HOSTNAME_REJECTIONS.increment();
+      throw QuietDecoderException.INSTANCE;
+    }
     // Check if the player has already sent a handshake packet
     if (protocolVersion != null) {
       throw QuietDecoderException.INSTANCE;
@@ -70,14 +82,16 @@ protected final void handleHandshake(final @NotNull Channel channel,
     // Store the protocol version
     protocolVersion = ProtocolVersion.fromId(protocol);
     // Hook the traffic listener
-    channel.pipeline().addFirst(FALLBACK_BANDWIDTH, FallbackBandwidthHandler.INSTANCE);
+    channel.pipeline().addFirst(FALLBACK_BANDWIDTH, new FallbackBandwidthHandler());
+    // Make sure the lag of this event loop is measured
+    EventLoopLag.register(channel.eventLoop());
   }
 
   /**
    * Validates and handles incoming login packets
    *
    * @param channel       Forwarded client channel
-   * @param loginPacket   Login packet sent by the client
+   * @param loginPacket   Login packet sent by the client (might be processed later)
    * @param username      Username sent by the client
    * @param socketAddress Socket address of the client
    */
@@ -98,11 +112,11 @@ protected final void handleLogin(final @NotNull Channel channel,
     }
     // Increase joins per second for the action bar verbose
     GlobalSonarStatistics.countLogin();
+    GlobalSonarStatistics.countLoginSource(socketAddress.getAddress());
     // Store the username and IP address
     this.username = username;
     final FallbackInboundHandler inboundHandler = channel.pipeline().get(FallbackInboundHandler.class);
     Objects.requireNonNull(inboundHandler).setInetAddress(socketAddress.getAddress());
-    final String hostAddress = socketAddress.getAddress().getHostAddress();
 
     // Check if Fallback is already verifying a player with the same IP address
     if (Sonar.get().getFallback().getConnected().containsKey(inboundHandler.getInetAddress())) {
@@ -118,11 +132,15 @@ protected final void handleLogin(final @NotNull Channel channel,
     }
 
     // Check if the player failed the verification too many times
-    final int score = Sonar.get().getFallback().getBlacklist().asMap().getOrDefault(hostAddress, 0);
-    final int limit = Sonar.get().getConfig().getVerification().getBlacklistThreshold();
-    if (score >= limit) {
-      customDisconnect(channel, protocolVersion, blacklisted);
-      return;
+    // The filter allows us to skip the lookup for IP addresses that have never been blacklisted
+    if (Sonar.get().getFallback().getBlacklistFilter().mightContain(inboundHandler.getInetAddress())) {
+      final String hostAddress = inboundHandler.getInetAddress().getHostAddress();
+      final int score = Sonar.get().getFallback().getBlacklist().asMap().getOrDefault(hostAddress, 0);
+      final int limit = Sonar.get().getConfig().getVerification().getBlacklistThreshold();
+      if (score >= limit) {
+        customDisconnect(channel, protocolVersion, blacklisted);
+        return;
+      }
     }
 
     // Don't continue the verification process if the verification is disabled
@@ -138,16 +156,80 @@ protected final void handleLogin(final @NotNull Channel channel,
       return;
     }
 
+    // Most players are verified already, so we check their fingerprint
+    // before computing the offline UUID (MD5) of the player
+    final VerifiedPlayerController verifiedPlayerController = Sonar.get().getVerifiedPlayerController();
+    if (verifiedPlayerController.has(inboundHandler.getInetAddress(), username)) {
+      initialLogin(ctx, inboundHandler.getInetAddress(), loginPacket);
+      return;
+    }
+
     // Make sure we actually have to verify the player
+    final long epoch = verifiedPlayerController.getEpoch();
     final String offlineUuidString = "OfflinePlayer:" + username;
     final UUID offlineUuid = UUID.nameUUIDFromBytes(offlineUuidString.getBytes(StandardCharsets.UTF_8));
-    if (Sonar.get().getVerifiedPlayerController().has(hostAddress, offlineUuid)) {
+    if (verifiedPlayerController.has(inboundHandler.getInetAddress(), offlineUuid)) {
+      verifiedPlayerController.remember(inboundHandler.getInetAddress(), username, epoch);
       initialLogin(ctx, inboundHandler.getInetAddress(), loginPacket);
       return;
     }
 
+    // The player might still be in the database if not all verified players are cached
+    if (verifiedPlayerController.mightBeUncached(inboundHandler.getInetAddress())) {
+      // Make sure we don't read any other packets while we're waiting for the database
+      channel.config().setAutoRead(false);
+      verifiedPlayerController.lookup(inboundHandler.getInetAddress(), offlineUuid)
+        .whenComplete((verified, throwable) -> channel.eventLoop().execute(() -> {
+          // The player might have disconnected in the meantime
+          if (!channel.isActive()) {
+            return;
+          }
+          channel.config().setAutoRead(true);
+          try {
+            // The database didn't respond in time, so the player simply has to verify again
+            if (throwable == null && verified) {
+              verifiedPlayerController.remember(inboundHandler.getInetAddress(), username, epoch);
+              initialLogin(ctx, inboundHandler.getInetAddress(), loginPacket);
+            } else {
+              handleUnverifiedLogin(channel, ctx, username, inboundHandler.getInetAddress(), offlineUuid, geyser);
+            }
+          } catch (Exception exception) {
+            Sonar.get().getLogger().error("Could not handle login of {}: {}", username, exception);
+            channel.close();
+          }
+        }));
+      return;
+    }
+
+    handleUnverifiedLogin(channel, ctx, username, inboundHandler.getInetAddress(), offlineUuid, geyser);
+  }
+
+  /**
+   * Queues a player who is not verified yet for the verification
+   *
+   * @param channel     Forwarded client channel
+   * @param username    Username sent by the client
+   * @param inetAddress Resolved client IP address
+   * @param offlineUuid Offline mode UUID of the player
+   * @param geyser      Whether the player is connecting via Geyser
+   */
+  private void handleUnverifiedLogin(final @NotNull Channel channel,
+                                     final @NotNull ChannelHandlerContext ctx,
+                                     final @NotNull String username,
+                                     final @NotNull InetAddress inetAddress,
+                                     final @NotNull UUID offlineUuid,
+                                     final boolean geyser) {
+    // Check if the username is part of a burst of similar usernames
+    if (Sonar.get().getConfig().getVerification().getUsernamePatterns().isEnabled()
+      && FallbackUsernameTracker.INSTANCE.isSuspicious(username)
+      && Sonar.get().getConfig().getVerification().getUsernamePatterns().getAction()
+      == SonarConfiguration.Verification.UsernamePatterns.Action.THROTTLE) {
+      customDisconnect(channel, protocolVersion, reconnectedTooFast);
+      return;
+    }
+
     // Check if the IP address is currently being rate-limited
-    if (!Sonar.get().getFallback().getRatelimiter().attempt(inboundHandler.getInetAddress())) {
+    if (!Sonar.get().getFallback().getRatelimiter().attempt(inetAddress)) {
       customDisconnect(channel, protocolVersion, reconnectedTooFast);
       return;
     }
@@ -156,7 +238,7 @@ protected final void handleLogin(final @NotNull Channel channel,
     rewriteProtocol(ctx, channelRemovalListener);
 
     // Queue the connection for further processing
-    Sonar.get().getFallback().getQueue().getPlayers().compute(inboundHandler.getInetAddress(), (inetAddress, runnable) -> {
+    Sonar.get().getFallback().getQueue().getPlayers().compute(inetAddress, (k, runnable) -> {
       // Check if the player is already queued since we don't want bots to flood the queue
       if (runnable != null) {
         customDisconnect(channel, protocolVersion, alreadyQueued);
@@ -175,7 +257,7 @@ protected final void handleLogin(final @NotNull Channel channel,
 
         // Create an instance for the Fallback connection
         final FallbackUser user = new FallbackUserWrapper(
-          channel, inboundHandler.getInetAddress(), protocolVersion, offlineUuid, geyser);
+          channel, inetAddress, protocolVersion, offlineUuid, geyser);
         // Let the verification handler take over the channel
         user.hijack(username, offlineUuid);
       };
@@ -200,8 +282,10 @@ private static void rewriteProtocol(final @NotNull ChannelHandlerContext ctx,
       removalListener.accept(ctx.pipeline(), entry.getKey(), entry.getValue());
     }
     // Add our read/write timeout handler
+    final int readTimeout = Sonar.get().getConfig().getVerification().getReadTimeout()
+      * Sonar.get().getAttackTracker().getAdjustments().getReadTimeout() / 100;
     ctx.pipeline().addFirst(FALLBACK_TIMEOUT, new FallbackTimeoutHandler(
-      Sonar.get().getConfig().getVerification().getReadTimeout(),
+      readTimeout,
       Sonar.get().getConfig().getVerification().getWriteTimeout(),
       TimeUnit.MILLISECONDS));
   }
@@ -20,6 +20,7 @@
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelPipeline;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -29,9 +30,13 @@
 import xyz.jonesdev.sonar.api.event.impl.UserBlacklistedEvent;
 import xyz.jonesdev.sonar.api.event.impl.UserVerifyFailedEvent;
 import xyz.jonesdev.sonar.api.event.impl.UserVerifyJoinEvent;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
 import xyz.jonesdev.sonar.api.fallback.FallbackUser;
 import xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion;
 import xyz.jonesdev.sonar.api.timer.SystemTimer;
+import xyz.jonesdev.sonar.common.capture.CapturedSession;
+import xyz.jonesdev.sonar.common.capture.TrafficCapture;
 import xyz.jonesdev.sonar.common.fallback.netty.FallbackTailExceptionsHandler;
 import xyz.jonesdev.sonar.common.fallback.netty.FallbackVarInt21FrameDecoder;
 import xyz.jonesdev.sonar.common.fallback.netty.FallbackVarIntLengthEncoder;
@@ -40,11 +45,17 @@
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPreparer;
 import xyz.jonesdev.sonar.common.fallback.protocol.packets.play.DisconnectPacket;
 import xyz.jonesdev.sonar.common.fallback.session.FallbackLoginSessionHandler;
+import xyz.jonesdev.sonar.common.firewall.BlacklistFirewallExporter;
+import xyz.jonesdev.sonar.common.logging.VerificationLogger;
+import xyz.jonesdev.sonar.common.statistics.FailureStatistics;
 import xyz.jonesdev.sonar.common.statistics.GlobalSonarStatistics;
+import xyz.jonesdev.sonar.common.statistics.StageStatistics;
 import xyz.jonesdev.sonar.common.util.exception.QuietDecoderException;
 
 import java.net.InetAddress;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import static xyz.jonesdev.sonar.api.fallback.FallbackPipelines.*;
@@ -60,24 +71,62 @@ public final class FallbackUserWrapper implements FallbackUser {
   private final InetAddress inetAddress;
   private final ProtocolVersion protocolVersion;
   private final UUID offlineUuid;
+  // Seed of the random values, so captured verifications can be replayed
+  private final long seed;
+  private final Random random;
   @Setter
   private boolean receivedClientSettings;
   @Setter
   private boolean receivedPluginMessage;
   private final boolean geyser;
   private final SystemTimer loginTimer = new SystemTimer();
+  private FallbackStage stage = FallbackStage.LOGIN;
+  @Getter(AccessLevel.NONE)
+  private long stageStart;
 
   public FallbackUserWrapper(final @NotNull Channel channel,
                              final @NotNull InetAddress inetAddress,
                              final @NotNull ProtocolVersion protocolVersion,
                              final @NotNull UUID offlineUuid,
                              final boolean geyser) {
+    this(channel, inetAddress, protocolVersion, offlineUuid, geyser, ThreadLocalRandom.current().nextLong());
+  }
+
+  public FallbackUserWrapper(final @NotNull Channel channel,
+                             final @NotNull InetAddress inetAddress,
+                             final @NotNull ProtocolVersion protocolVersion,
+                             final @NotNull UUID offlineUuid,
+                             final boolean geyser,
+                             final long seed) {
     this.channel = channel;
     this.pipeline = channel.pipeline();
     this.inetAddress = inetAddress;
     this.protocolVersion = protocolVersion;
     this.offlineUuid = offlineUuid;
     this.geyser = geyser;
+    this.seed = seed;
+    this.random = new Random(seed);
+  }
+
+  @Override
+  public void setStage(final @NotNull FallbackStage stage) {
+    // The player has passed the previous stage
+    if (stageStart != 0L) {
+      completeStage();
+    }
+    this.stage = stage;
+    stageStart = System.nanoTime();
+    StageStatistics.reach(stage);
+    // Make sure the traffic is counted for the new stage
+    final FallbackBandwidthHandler bandwidthHandler = pipeline.get(FallbackBandwidthHandler.class);
+    if (bandwidthHandler != null) {
+      bandwidthHandler.setStage(protocolVersion, stage);
+    }
+  }
+
+  @Override
+  public void completeStage() {
+    StageStatistics.pass(stage, System.nanoTime() - stageStart);
   }
 
   @Override
@@ -89,16 +138,12 @@ public void disconnect(final @NotNull Component reason) {
 
   @Override
   public void hijack(final @NotNull String username, final @NotNull UUID offlineUuid) {
-    GlobalSonarStatistics.totalAttemptedVerifications++;
+    GlobalSonarStatistics.ATTEMPTED_VERIFICATIONS.increment();
 
     if (Sonar.get().getConfig().getVerification().isLogConnections()
       && (Sonar.get().getAttackTracker().getCurrentAttack() == null
       || Sonar.get().getConfig().getVerification().isLogDuringAttack())) {
-      Sonar.get().getLogger().info(
-        Sonar.get().getConfig().getMessagesConfig().getString("verification.logs.connection")
-          .replace("<username>", username)
-          .replace("<ip>", Sonar.get().getConfig().formatAddress(inetAddress))
-          .replace("<protocol>", String.valueOf(protocolVersion.getProtocol())));
+      VerificationLogger.INSTANCE.connection(username, inetAddress, protocolVersion);
     }
 
     // Call the VerifyJoinEvent for external API usage
@@ -119,6 +164,9 @@ public void hijack(final @NotNull String username, final @NotNull UUID offlineUu
       pipeline.addFirst(FALLBACK_FRAME_ENCODER, FallbackVarIntLengthEncoder.INSTANCE);
       pipeline.addLast(FALLBACK_PACKET_ENCODER, newEncoder);
 
+      // Start counting the traffic of the verification
+      setStage(FallbackStage.LOGIN);
+
       // Send LoginSuccess packet to make the client think they are joining the server
       write(FallbackPreparer.loginSuccess);
 
@@ -128,6 +176,11 @@ public void hijack(final @NotNull String username, final @NotNull UUID offlineUu
       // Replace normal decoder to allow custom packets
       final FallbackPacketDecoder fallbackPacketDecoder = new FallbackPacketDecoder(protocolVersion);
       pipeline.addFirst(FALLBACK_FRAME_DECODER, new FallbackVarInt21FrameDecoder());
+      // Capture the raw inbound data of a sample of all verifications
+      if (TrafficCapture.INSTANCE.shouldCapture()) {
+        pipeline.addFirst(FALLBACK_CAPTURE, new FallbackCaptureHandler(new CapturedSession(
+          System.currentTimeMillis(), FallbackPreparer.SEED, seed, protocolVersion.getProtocol(), geyser, username)));
+      }
       pipeline.addLast(FALLBACK_PACKET_DECODER, fallbackPacketDecoder);
       // Listen for all incoming packets by setting the packet listener
       fallbackPacketDecoder.setListener(new FallbackLoginSessionHandler(this, username));
@@ -138,8 +191,9 @@ public void hijack(final @NotNull String username, final @NotNull UUID offlineUu
   }
 
   @Override
-  public void fail(final @NotNull String reason) {
-    GlobalSonarStatistics.totalFailedVerifications++;
+  public void fail(final @NotNull FailureReason reason, final Object @NotNull ... arguments) {
+    GlobalSonarStatistics.FAILED_VERIFICATIONS.increment();
+    FailureStatistics.increment(reason);
 
     disconnect(Sonar.get().getConfig().getVerification().getVerificationFailed());
 
@@ -147,15 +201,11 @@ public void fail(final @NotNull String reason) {
       || Sonar.get().getConfig().getVerification().isLogDuringAttack();
 
     if (shouldLog) {
-      Sonar.get().getLogger().info(
-        Sonar.get().getConfig().getMessagesConfig().getString("verification.logs.failed")
-          .replace("<ip>", Sonar.get().getConfig().formatAddress(getInetAddress()))
-          .replace("<protocol>", String.valueOf(getProtocolVersion().getProtocol()))
-          .replace("<reason>", reason));
+      VerificationLogger.INSTANCE.failed(inetAddress, protocolVersion, reason, arguments);
     }
 
     // Call the VerifyFailedEvent for external API usage
-    Sonar.get().getEventManager().publish(new UserVerifyFailedEvent(this, reason));
+    Sonar.get().getEventManager().publish(new UserVerifyFailedEvent(this, reason, arguments));
 
     // Use a label, so we can easily add more code beneath this method in the future
     blacklist: {
@@ -169,20 +219,24 @@ public void fail(final @NotNull String reason) {
       final int newScore = score + 1;
 
       Sonar.get().getFallback().getBlacklist().put(hostAddress, newScore);
+      // Make sure the blacklist filter knows about the new entry
+      if (score == 0) {
+        Sonar.get().getFallback().getBlacklistFilter().add(inetAddress);
+      }
 
       // The player hasn't been blacklisted yet, so skip this iteration
       if (newScore < limit) break blacklist;
 
-      GlobalSonarStatistics.totalBlacklistedPlayers++;
+      GlobalSonarStatistics.BLACKLISTED_PLAYERS.increment();
+
+      // Mirror the blacklisted IP address into the kernel firewall (if enabled)
+      BlacklistFirewallExporter.INSTANCE.add(hostAddress);
 
       // Call the BotBlacklistedEvent for external API usage
       Sonar.get().getEventManager().publish(new UserBlacklistedEvent(this));
 
       if (shouldLog) {
-        Sonar.get().getLogger().info(
-          Sonar.get().getConfig().getMessagesConfig().getString("verification.logs.blacklisted")
-            .replace("<ip>", Sonar.get().getConfig().formatAddress(getInetAddress()))
-            .replace("<protocol>", String.valueOf(getProtocolVersion().getProtocol())));
+        VerificationLogger.INSTANCE.blacklisted(inetAddress, protocolVersion);
       }
     }
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.fallback;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.filter.SlidingCountMinSketch;
+
+/**
+ * Detects bursts of logins using usernames that share the same shape
+ * (e.g. "Bot_1234" and "Bot_5678"), composition or prefix.
+ * <br>
+ * Each username is reduced to a few pattern hashes without allocating anything,
+ * and the patterns are counted using a sliding count-min sketch.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class FallbackUsernameTracker {
+  public static final FallbackUsernameTracker INSTANCE = new FallbackUsernameTracker();
+
+  private static final int SKETCH_SLOTS = 6;
+  private static final int SKETCH_WIDTH = 1024;
+  private static final int PREFIX_LENGTH = 3;
+  private static final long LOG_COOLDOWN = 5000L;
+
+  private volatile SlidingCountMinSketch sketch;
+  private long sketchWindow;
+  private volatile long lastLogTimestamp;
+
+  /**
+   * Counts the patterns of the given username
+   *
+   * @return Whether the username is part of a suspicious burst of similar usernames
+   */
+  public boolean isSuspicious(final @NotNull String username) {
+    final SonarConfiguration.Verification.UsernamePatterns config =
+      Sonar.get().getConfig().getVerification().getUsernamePatterns();
+    final SlidingCountMinSketch sketch = getSketch(config.getWindow());
+
+    sketch.count();
+    final int shape = sketch.addAndEstimate(shapeHash(username));
+    final int composition = sketch.addAndEstimate(compositionHash(username));
+    final int prefix = username.length() > PREFIX_LENGTH ? sketch.addAndEstimate(prefixHash(username)) : 0;
+    final int frequency = Math.max(shape, Math.max(composition, prefix));
+
+    // Make sure the pattern is both frequent and makes up a large share of all logins
+    if (frequency < config.getThreshold()
+      || frequency * 100L < sketch.getTotal() * config.getMinPercentage()) {
+      return false;
+    }
+
+    final long timestamp = System.currentTimeMillis();
+    if (timestamp - lastLogTimestamp > LOG_COOLDOWN) {
+      lastLogTimestamp = timestamp;
+      Sonar.get().getLogger().warn("Detected a burst of {} logins with usernames similar to {}",
+        frequency, username);
+    }
+    return true;
+  }
+
+  private @NotNull SlidingCountMinSketch getSketch(final long window) {
+    SlidingCountMinSketch sketch = this.sketch;
+    if (sketch == null || sketchWindow != window) {
+      synchronized (this) {
+        if (this.sketch == null || sketchWindow != window) {
+          this.sketch = new SlidingCountMinSketch(window, SKETCH_SLOTS, SKETCH_WIDTH);
+          sketchWindow = window;
+        }
+        sketch = this.sketch;
+      }
+    }
+    return sketch;
+  }
+
+  /**
+   * Hashes the sequence of character classes and their run lengths,
+   * so "Bot_1234" results in the same hash as "Abc_9876".
+   */
+  private static long shapeHash(final @NotNull String username) {
+    long hash = 0x84222325CBF29CE4L;
+    int previous = -1, run = 0;
+    for (int i = 0; i < username.length(); i++) {
+      final int current = characterClass(username.charAt(i));
+      if (current != previous && run > 0) {
+        hash = (hash ^ (previous << 8 | run)) * 0x100000001B3L;
+        run = 0;
+      }
+      previous = current;
+      run++;
+    }
+    return (hash ^ (previous << 8 | run)) * 0x100000001B3L;
+  }
+
+  /**
+   * Hashes the length and the set of character classes used,
+   * which catches random strings that do not share a shape.
+   */
+  private static long compositionHash(final @NotNull String username) {
+    int classes = 0;
+    for (int i = 0; i < username.length(); i++) {
+      classes |= 1 << characterClass(username.charAt(i));
+    }
+    return ((long) username.length() << 32 | classes) * 0xC2B2AE3D27D4EB4FL + 1L;
+  }
+
+  /**
+   * Hashes the first few characters of the username (case-insensitive)
+   */
+  private static long prefixHash(final @NotNull String username) {
+    long hash = 0x27D4EB2F165667C5L;
+    for (int i = 0; i < PREFIX_LENGTH; i++) {
+      hash = (hash ^ Character.toLowerCase(username.charAt(i))) * 0x100000001B3L;
+    }
+    return hash;
+  }
+
+  private static int characterClass(final char c) {
+    if (c >= 'a' && c <= 'z') return 0;
+    if (c >= 'A' && c <= 'Z') return 1;
+    if (c >= '0' && c <= '9') return 2;
+    if (c == '_') return 3;
+    return 4;
+  }
+}
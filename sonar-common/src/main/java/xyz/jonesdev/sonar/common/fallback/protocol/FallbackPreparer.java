@@ -39,7 +39,9 @@
 
 @UtilityClass
 public class FallbackPreparer {
-  private final Random RANDOM = new Random();
+  // Can be set using a system property to replay captured verifications with the same values
+  public final long SEED = Long.getLong("sonar.fallback.seed", new Random().nextLong());
+  private final Random RANDOM = new Random(SEED);
   // LoginSuccess
   public FallbackPacket loginSuccess;
   // Abilities
@@ -19,6 +19,7 @@
 
 import org.jetbrains.annotations.NotNull;
 import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
 import xyz.jonesdev.sonar.api.fallback.FallbackUser;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacket;
 import xyz.jonesdev.sonar.common.fallback.protocol.captcha.CaptchaPreparer;
@@ -27,6 +28,7 @@
 import xyz.jonesdev.sonar.common.fallback.protocol.packets.play.*;
 import xyz.jonesdev.sonar.common.util.exception.QuietDecoderException;
 
+import static xyz.jonesdev.sonar.api.fallback.FailureReason.*;
 import static xyz.jonesdev.sonar.common.fallback.protocol.FallbackPreparer.*;
 
 /**
@@ -47,6 +49,7 @@ public final class FallbackCAPTCHASessionHandler extends FallbackSessionHandler
   public FallbackCAPTCHASessionHandler(final @NotNull FallbackUser user,
                                        final @NotNull String username) {
     super(user, username);
+    user.setStage(FallbackStage.CAPTCHA);
 
     // Disconnect the player if there is no CAPTCHA available at the moment
     if (!CaptchaPreparer.isCaptchaAvailable()) {
@@ -80,8 +83,9 @@ public FallbackCAPTCHASessionHandler(final @NotNull FallbackUser user,
   @Override
   public void handle(final @NotNull FallbackPacket packet) {
     // Check if the player took too long to enter the CAPTCHA
-    final int maxDuration = Sonar.get().getConfig().getVerification().getMap().getMaxDuration();
-    checkState(!user.getLoginTimer().elapsed(maxDuration), "took too long to enter CAPTCHA");
+    final int maxDuration = Sonar.get().getConfig().getVerification().getMap().getMaxDuration()
+      * Sonar.get().getAttackTracker().getAdjustments().getCaptchaDuration() / 100;
+    checkState(!user.getLoginTimer().elapsed(maxDuration), CAPTCHA_TIMEOUT);
 
     if (packet instanceof SystemChatPacket) {
       final SystemChatPacket chat = (SystemChatPacket) packet;
@@ -91,7 +95,7 @@ public void handle(final @NotNull FallbackPacket packet) {
         return;
       }
       // Decrement the number of tries left
-      checkState(tries-- > 0, "failed CAPTCHA too often");
+      checkState(tries-- > 0, CAPTCHA_TRIES);
       // Send the player a chat message to let them know that the code they entered is incorrect
       user.write(incorrectCaptcha);
     } else if (packet instanceof SetPlayerPositionPacket
@@ -19,12 +19,14 @@
 
 import org.jetbrains.annotations.NotNull;
 import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
 import xyz.jonesdev.sonar.api.fallback.FallbackUser;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacket;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacketDecoder;
 import xyz.jonesdev.sonar.common.fallback.protocol.packets.play.*;
 
 import static xyz.jonesdev.sonar.api.config.SonarConfiguration.Verification.Gamemode.CREATIVE;
+import static xyz.jonesdev.sonar.api.fallback.FailureReason.*;
 import static xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion.*;
 import static xyz.jonesdev.sonar.common.fallback.protocol.FallbackPreparer.*;
 
@@ -33,6 +35,7 @@ public final class FallbackGravitySessionHandler extends FallbackSessionHandler
   public FallbackGravitySessionHandler(final @NotNull FallbackUser user,
                                        final @NotNull String username) {
     super(user, username);
+    user.setStage(FallbackStage.GRAVITY);
 
     // We don't want to check Geyser players for valid gravity, as this might cause issues because of the protocol
     this.enableGravityCheck = !user.isGeyser() && Sonar.get().getConfig().getVerification().getGravity().isEnabled();
@@ -87,10 +90,10 @@ private void markSuccess(final boolean forceCAPTCHA) {
     teleported = false;
 
     // Check if the player sent all necessary packets
-    checkState(user.isReceivedClientSettings(), "didn't send client settings");
+    checkState(user.isReceivedClientSettings(), NO_CLIENT_SETTINGS);
     // Don't check Geyser players for plugin messages
     if (!user.isGeyser()) {
-      checkState(user.isReceivedPluginMessage(), "didn't send plugin message");
+      checkState(user.isReceivedPluginMessage(), NO_PLUGIN_MESSAGE);
     }
 
     // Send the player to the protocol check
@@ -116,11 +119,10 @@ public void handle(final @NotNull FallbackPacket packet) {
       final ConfirmTeleportationPacket teleportConfirm = (ConfirmTeleportationPacket) packet;
 
       // Only expect this packet to be sent once
-      checkState(!teleported, "duplicate teleport confirm");
+      checkState(!teleported, DUPLICATE_TELEPORT_CONFIRM);
       // Check if the teleport ID matches the expected ID
       final int teleportId = teleportConfirm.getTeleportId();
-      checkState(teleportId == TELEPORT_ID,
-        "expected TP ID " + TELEPORT_ID + ", but got " + teleportId);
+      checkState(teleportId == TELEPORT_ID, TELEPORT_CONFIRM_ID, TELEPORT_ID, teleportId);
 
       markTeleported();
     }
@@ -168,8 +170,8 @@ private void handleMovement(final double x, final double y, final double z, fina
 
     // The player is not allowed to move away from the collision platform.
     // This should not happen unless the max movement tick is configured to a high number.
-    checkState(Math.abs(x - BLOCKS_PER_ROW) < BLOCKS_PER_ROW, "moved too far (x)");
-    checkState(Math.abs(z - BLOCKS_PER_ROW) < BLOCKS_PER_ROW, "moved too far (z)");
+    checkState(Math.abs(x - BLOCKS_PER_ROW) < BLOCKS_PER_ROW, MOVED_TOO_FAR_X);
+    checkState(Math.abs(z - BLOCKS_PER_ROW) < BLOCKS_PER_ROW, MOVED_TOO_FAR_Z);
 
     if (!isOnGround) {
       // The deltaY is 0 whenever the player sends their first position packet.
@@ -185,8 +187,9 @@ private void handleMovement(final double x, final double y, final double z, fina
 
       if (enableGravityCheck) {
         // Ensure that the player is above the collision platform
-        checkState(y > DEFAULT_Y_COLLIDE_POSITION,
-          "fell through blocks; y: " + y + " deltaY: " + deltaY + " tick: " + movementTick);
+        if (!(y > DEFAULT_Y_COLLIDE_POSITION)) {
+          user.fail(FELL_THROUGH_BLOCKS, y, deltaY, movementTick);
+        }
 
         // Predict the player's current motion based on the last motion
         // https://minecraft.wiki/w/Entity#Motion_of_entities
@@ -201,7 +204,7 @@ private void handleMovement(final double x, final double y, final double z, fina
             markSuccess(true);
             return;
           }
-          user.fail("incorrect gravity; predicted: " + predicted + " deltaY: " + deltaY + " y: " + y);
+          user.fail(INCORRECT_GRAVITY, predicted, deltaY, y);
         }
 
         // The player is obeying gravity, go on to the next stage if the collision check is disabled.
@@ -217,7 +220,7 @@ private void handleMovement(final double x, final double y, final double z, fina
           markSuccess(true);
           return;
         }
-        user.fail("illegal collision tick; tick: " + movementTick);
+        user.fail(ILLEGAL_COLLISION_TICK, movementTick);
       }
       // Calculate the difference between the player's Y coordinate and the expected Y coordinate
       double collisionOffsetY = (DEFAULT_Y_COLLIDE_POSITION + blockType.getBlockHeight()) - y;
@@ -233,7 +236,7 @@ private void handleMovement(final double x, final double y, final double z, fina
           markSuccess(true);
           return;
         }
-        user.fail("illegal collision; offset: " + collisionOffsetY + " tick: " + movementTick + " y: " + y);
+        user.fail(ILLEGAL_COLLISION, collisionOffsetY, movementTick, y);
       }
       // The player has collided with the blocks, go on to the next stage
       markSuccess(false);
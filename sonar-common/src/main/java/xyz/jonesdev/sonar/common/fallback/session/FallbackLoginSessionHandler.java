@@ -18,6 +18,7 @@
 package xyz.jonesdev.sonar.common.fallback.session;
 
 import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
 import xyz.jonesdev.sonar.api.fallback.FallbackUser;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacket;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacketDecoder;
@@ -31,6 +32,7 @@
 
 import java.util.concurrent.TimeUnit;
 
+import static xyz.jonesdev.sonar.api.fallback.FailureReason.*;
 import static xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion.*;
 import static xyz.jonesdev.sonar.common.fallback.protocol.FallbackPreparer.*;
 
@@ -85,7 +87,7 @@ public FallbackLoginSessionHandler(final @NotNull FallbackUser user,
    */
   private void initialize18() {
     // Send a KeepAlive packet with a random ID
-    expectedKeepAliveId = RANDOM.nextInt();
+    expectedKeepAliveId = user.getRandom().nextInt();
     user.write(new KeepAlivePacket(expectedKeepAliveId));
   }
 
@@ -100,6 +102,7 @@ private void markSuccess() {
 
   private void markAcknowledged() {
     acknowledgedLogin = true;
+    user.setStage(FallbackStage.CONFIGURATION);
 
     synchronizeClientRegistry();
     // Write the FinishConfiguration packet to the buffer
@@ -118,8 +121,7 @@ public void handle(final @NotNull FallbackPacket packet) {
 
       // Check if the KeepAlive ID matches the expected ID
       final long keepAliveId = keepAlive.getId();
-      checkState(keepAliveId == expectedKeepAliveId,
-        "expected K ID " + expectedKeepAliveId + " but got " + keepAliveId);
+      checkState(keepAliveId == expectedKeepAliveId, KEEP_ALIVE_ID, expectedKeepAliveId, keepAliveId);
 
       // 1.8 clients send KeepAlive packets with the ID 0 every second
       // while the player is in the "Downloading terrain" screen.
@@ -132,7 +134,7 @@ public void handle(final @NotNull FallbackPacket packet) {
       }
     } else if (packet instanceof LoginAcknowledgedPacket) {
       // Prevent users from sending multiple LoginAcknowledged packets
-      checkState(!acknowledgedLogin, "sent duplicate login ack");
+      checkState(!acknowledgedLogin, DUPLICATE_LOGIN_ACK);
       markAcknowledged();
     } else if (packet instanceof FinishConfigurationPacket) {
       markSuccess();
@@ -19,18 +19,22 @@
 
 import org.jetbrains.annotations.NotNull;
 import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
 import xyz.jonesdev.sonar.api.fallback.FallbackUser;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacket;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacketDecoder;
 import xyz.jonesdev.sonar.common.fallback.protocol.packets.play.SetHeldItemPacket;
 import xyz.jonesdev.sonar.common.fallback.protocol.packets.play.TransactionPacket;
 
+import static xyz.jonesdev.sonar.api.fallback.FailureReason.*;
+
 public final class FallbackProtocolSessionHandler extends FallbackSessionHandler {
 
   public FallbackProtocolSessionHandler(final @NotNull FallbackUser user,
                                         final @NotNull String username,
                                         final boolean forceCAPTCHA) {
     super(user, username);
+    user.setStage(FallbackStage.PROTOCOL);
 
     this.forceCAPTCHA = forceCAPTCHA;
 
@@ -50,7 +54,7 @@ public FallbackProtocolSessionHandler(final @NotNull FallbackUser user,
    */
   private void sendTransaction() {
     // Send a Transaction (Ping) packet with a random ID
-    expectedTransactionId = (short) -(RANDOM.nextInt(Short.MAX_VALUE));
+    expectedTransactionId = (short) -(user.getRandom().nextInt(Short.MAX_VALUE));
     user.write(new TransactionPacket(0, expectedTransactionId, false));
   }
 
@@ -93,14 +97,13 @@ public void handle(final @NotNull FallbackPacket packet) {
       final TransactionPacket transaction = (TransactionPacket) packet;
 
       // Make sure random transactions aren't counted
-      checkState(expectedTransactionId <= 0, "unexpected transaction");
+      checkState(expectedTransactionId <= 0, UNEXPECTED_TRANSACTION);
       // Make sure the transaction was accepted
       // This must - by vanilla protocol - always be accepted
-      checkState(transaction.isAccepted(), "didn't accept transaction");
+      checkState(transaction.isAccepted(), TRANSACTION_NOT_ACCEPTED);
       // Also check if the transaction ID matches the expected ID
       final long transactionId = transaction.getTransactionId();
-      checkState(transactionId == expectedTransactionId,
-        "expected T ID " + expectedTransactionId + ", but got " + transactionId);
+      checkState(transactionId == expectedTransactionId, TRANSACTION_ID, expectedTransactionId, transactionId);
 
       // Only perform the SetHeldItem check on Java players since the Bedrock protocol breaks this check.
       // I don't really know why this doesn't work on Bedrock,
@@ -116,9 +119,9 @@ public void handle(final @NotNull FallbackPacket packet) {
 
       final int slotId = heldItemPacket.getSlot();
       // Also check if the player sent an invalid slot which is impossible by vanilla protocol
-      checkState(slotId >= 0 && slotId <= 8, "slot out of range: " + slotId);
+      checkState(slotId >= 0 && slotId <= 8, SLOT_OUT_OF_RANGE, slotId);
       // Check if the player sent a duplicate slot packet which is impossible by vanilla protocol
-      checkState(slotId != currentClientSlotId, "invalid slot: " + slotId);
+      checkState(slotId != currentClientSlotId, INVALID_SLOT, slotId);
 
       // Only continue checking if we're actually expecting a SetHeldItem packet
       // The player can send a SetHeldItem packet by themselves -> exempt
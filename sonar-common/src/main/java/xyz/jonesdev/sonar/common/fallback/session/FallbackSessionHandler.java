@@ -22,18 +22,20 @@
 import xyz.jonesdev.sonar.api.Sonar;
 import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
 import xyz.jonesdev.sonar.api.event.impl.UserVerifySuccessEvent;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
 import xyz.jonesdev.sonar.api.fallback.FallbackUser;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacketDecoder;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacketEncoder;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacketListener;
 import xyz.jonesdev.sonar.common.fallback.protocol.packets.play.ClientInformationPacket;
 import xyz.jonesdev.sonar.common.fallback.protocol.packets.play.PluginMessagePacket;
+import xyz.jonesdev.sonar.common.logging.VerificationLogger;
 import xyz.jonesdev.sonar.common.statistics.GlobalSonarStatistics;
 
 import java.nio.charset.StandardCharsets;
-import java.util.Random;
 import java.util.regex.Pattern;
 
+import static xyz.jonesdev.sonar.api.fallback.FailureReason.*;
 import static xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion.*;
 import static xyz.jonesdev.sonar.common.fallback.FallbackUserWrapper.closeWith;
 import static xyz.jonesdev.sonar.common.fallback.protocol.FallbackPreparer.transferToOrigin;
@@ -45,21 +47,44 @@ public abstract class FallbackSessionHandler implements FallbackPacketListener {
   protected final FallbackUser user;
   protected final String username;
 
-  protected static final Random RANDOM = new Random();
-
-  protected void checkState(final boolean state, final String failReason) {
+  protected void checkState(final boolean state, final @NotNull FailureReason reason) {
     // Fails the verification if the condition is not met
     if (!state) {
-      user.fail(failReason);
+      user.fail(reason);
+    }
+  }
+
+  protected final void checkState(final boolean state, final @NotNull FailureReason reason, final long argument) {
+    // The argument is only boxed if the condition is not met
+    if (!state) {
+      user.fail(reason, argument);
+    }
+  }
+
+  protected final void checkState(final boolean state, final @NotNull FailureReason reason,
+                                  final long first, final long second) {
+    // The arguments are only boxed if the condition is not met
+    if (!state) {
+      user.fail(reason, first, second);
+    }
+  }
+
+  protected final void checkState(final boolean state, final @NotNull FailureReason reason,
+                                  final @NotNull Object argument) {
+    if (!state) {
+      user.fail(reason, argument);
     }
   }
 
   protected final void finishVerification() {
-    GlobalSonarStatistics.totalSuccessfulVerifications++;
+    GlobalSonarStatistics.SUCCESSFUL_VERIFICATIONS.increment();
+    user.completeStage();
 
     // Add verified player to the database
+    final long epoch = Sonar.get().getVerifiedPlayerController().getEpoch();
     Sonar.get().getVerifiedPlayerController().add(new VerifiedPlayer(
       user.getInetAddress(), user.getOfflineUuid(), user.getLoginTimer().getStart()));
+    Sonar.get().getVerifiedPlayerController().remember(user.getInetAddress(), username, epoch);
 
     // Call the VerifySuccessEvent for external API usage
     Sonar.get().getEventManager().publish(new UserVerifySuccessEvent(
@@ -83,17 +108,14 @@ protected final void finishVerification() {
       user.disconnect(Sonar.get().getConfig().getVerification().getVerificationSuccess());
     }
 
-    Sonar.get().getLogger().info(
-      Sonar.get().getConfig().getMessagesConfig().getString("verification.logs.successful")
-        .replace("<username>", username)
-        .replace("<time-taken>", user.getLoginTimer().toString()));
+    VerificationLogger.INSTANCE.successful(username, user.getInetAddress(), user.getLoginTimer().delay());
   }
 
   protected final void checkClientInformation(final @NotNull ClientInformationPacket clientSettings) {
     // Ensure that the client locale is correct
     validateClientLocale(clientSettings.getLocale());
     // Check if the player sent an unused bit flag in the skin section
-    checkState((clientSettings.getSkinParts() & 0x80) == 0, "sent unused bit flag");
+    checkState((clientSettings.getSkinParts() & 0x80) == 0, UNUSED_SKIN_BIT);
 
     // Mark the ClientSettings packet as received
     user.setReceivedClientSettings(true);
@@ -109,12 +131,12 @@ protected final void checkPluginMessage(final @NotNull PluginMessagePacket plugi
     }
 
     // Make sure the player isn't sending the client brand multiple times
-    checkState(!user.isReceivedPluginMessage(), "sent duplicate plugin message");
+    checkState(!user.isReceivedPluginMessage(), DUPLICATE_PLUGIN_MESSAGE);
     // Check if the channel is correct - 1.13 uses the new namespace
     // system ('minecraft:' + channel) and anything below 1.13 uses
     // the legacy namespace system ('MC|' + channel).
     final boolean v1_13 = user.getProtocolVersion().compareTo(MINECRAFT_1_13) >= 0;
-    checkState(usingLegacyChannel || v1_13, "invalid brand channel");
+    checkState(usingLegacyChannel || v1_13, INVALID_BRAND_CHANNEL);
 
     // Validate the client branding using a regex to filter unwanted characters.
     if (Sonar.get().getConfig().getVerification().getBrand().isEnabled()) {
@@ -127,10 +149,10 @@ protected final void checkPluginMessage(final @NotNull PluginMessagePacket plugi
 
   protected final void validateClientBrand(final byte @NotNull [] data) {
     // Check if the client brand is too short. It has to have at least 2 bytes.
-    checkState(data.length > 1, "client brand is too short");
+    checkState(data.length > 1, BRAND_TOO_SHORT);
     // Check if the decoded client brand string is too long
     checkState(data.length < Sonar.get().getConfig().getVerification().getBrand().getMaxLength(),
-      "client brand contains too much data: " + data.length);
+      BRAND_TOO_LONG, data.length);
     // https://discord.com/channels/923308209769426994/1116066363887321199/1256929441053933608
     String brand = new String(data, StandardCharsets.UTF_8);
     // Remove the invalid character at the beginning of the client brand
@@ -138,16 +160,16 @@ protected final void validateClientBrand(final byte @NotNull [] data) {
       brand = brand.substring(1);
     }
     // Check for illegal client brands
-    checkState(!brand.equals("Vanilla"), "illegal client brand: " + brand);
+    checkState(!brand.equals("Vanilla"), ILLEGAL_BRAND, brand);
     // Regex pattern for validating client brands
     final Pattern pattern = Sonar.get().getConfig().getVerification().getBrand().getValidRegex();
-    checkState(pattern.matcher(brand).matches(), "client brand does not match pattern: " + brand);
+    checkState(pattern.matcher(brand).matches(), BRAND_PATTERN, brand);
   }
 
   protected final void validateClientLocale(final @NotNull String locale) {
     // Check the client locale by performing a simple regex check
     // that disallows non-ascii characters by default.
     final Pattern pattern = Sonar.get().getConfig().getVerification().getValidLocaleRegex();
-    checkState(pattern.matcher(locale).matches(), "client locale does not match pattern: " + locale);
+    checkState(pattern.matcher(locale).matches(), LOCALE_PATTERN, locale);
   }
 }
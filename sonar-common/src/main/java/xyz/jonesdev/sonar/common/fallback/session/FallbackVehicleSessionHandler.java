@@ -19,11 +19,13 @@
 
 import org.jetbrains.annotations.NotNull;
 import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
 import xyz.jonesdev.sonar.api.fallback.FallbackUser;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacket;
 import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPacketDecoder;
 import xyz.jonesdev.sonar.common.fallback.protocol.packets.play.*;
 
+import static xyz.jonesdev.sonar.api.fallback.FailureReason.*;
 import static xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion.MINECRAFT_1_8;
 import static xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion.MINECRAFT_1_9;
 import static xyz.jonesdev.sonar.common.fallback.protocol.FallbackPreparer.*;
@@ -56,6 +58,7 @@ public FallbackVehicleSessionHandler(final @NotNull FallbackUser user,
                                        final @NotNull String username,
                                        final boolean forceCAPTCHA) {
     super(user, username);
+    user.setStage(FallbackStage.VEHICLE);
 
     this.forceCAPTCHA = forceCAPTCHA;
 
@@ -88,7 +91,7 @@ private void handleMovement(double y) {
       y -= 1.62f; // Account for 1.7 bounding box
     }
     // Check the Y position of the player
-    checkState(y <= IN_AIR_Y_POSITION, "invalid y position");
+    checkState(y <= IN_AIR_Y_POSITION, INVALID_Y_POSITION);
     // Mark this check as successful if the player sent a few position packets
     if (positionPackets++ > Sonar.get().getConfig().getVerification().getVehicle().getMinimumPackets()) {
       markSuccess();
@@ -136,8 +139,12 @@ public void handle(final @NotNull FallbackPacket packet) {
       final float forward = Math.abs(playerInput.getForward());
       final float sideways = Math.abs(playerInput.getSideways());
       final float maxVehicleSpeed = user.isGeyser() ? 1 : 0.98f;
-      checkState(forward <= maxVehicleSpeed, "illegal speed (f): " + forward);
-      checkState(sideways <= maxVehicleSpeed, "illegal speed (s): " + sideways);
+      if (!(forward <= maxVehicleSpeed)) {
+        user.fail(ILLEGAL_SPEED_FORWARD, forward);
+      }
+      if (!(sideways <= maxVehicleSpeed)) {
+        user.fail(ILLEGAL_SPEED_SIDEWAYS, sideways);
+      }
 
       // Only mark this packet as correct if the player is not moving the vehicle
       if (playerInput.isJump() || playerInput.isUnmount()) {
@@ -149,8 +156,7 @@ public void handle(final @NotNull FallbackPacket packet) {
       if (user.isGeyser()) {
         handleRotation();
       } else {
-        checkState(rotationPackets >= inputPackets,
-          "illegal packet order; r/i " + rotationPackets + "/" + inputPackets);
+        checkState(rotationPackets >= inputPackets, ROTATION_ORDER, rotationPackets, inputPackets);
       }
 
       // 1.8 and below do not have PaddleBoat packets,
@@ -158,8 +164,7 @@ public void handle(final @NotNull FallbackPacket packet) {
       if (user.getProtocolVersion().compareTo(MINECRAFT_1_9) < 0) {
         paddlePackets++;
       } else {
-        checkState(paddlePackets >= inputPackets,
-          "illegal packet order; i/p " + inputPackets + "/" + paddlePackets);
+        checkState(paddlePackets >= inputPackets, PADDLE_ORDER, inputPackets, paddlePackets);
       }
       inputPackets++;
     }
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.firewall;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mirrors the blacklist into a kernel firewall set, so blacklisted
+ * IP addresses are dropped before they even reach the server.
+ * <br>
+ * Changes are collected and coalesced in memory and only written out
+ * once the configured delay has passed (or the batch is full),
+ * so a flood of blacklistings results in a single firewall invocation.
+ * <br>
+ * The command receives the changes, while the output file always contains
+ * the entire blacklist and is replaced atomically, so it never grows
+ * and can be loaded at any time to restore the sets. Writing the entire
+ * blacklist is expensive during a flood, so the file is only replaced
+ * by a separate, slower task if anything has changed in the meantime.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class BlacklistFirewallExporter {
+  public static final BlacklistFirewallExporter INSTANCE = new BlacklistFirewallExporter();
+
+  // true = add to the set, false = remove from the set
+  private final Map<String, Boolean> pending = new LinkedHashMap<>(64);
+  private long firstPendingTimestamp;
+  // Whether changes have been written since the last snapshot
+  private final AtomicBoolean snapshotOutdated = new AtomicBoolean();
+
+  public void add(final @NotNull String hostAddress) {
+    queue(hostAddress, true);
+  }
+
+  public void remove(final @NotNull String hostAddress) {
+    queue(hostAddress, false);
+  }
+
+  private void queue(final @NotNull String hostAddress, final boolean add) {
+    if (!Sonar.get().getConfig().getFirewall().isEnabled()) {
+      return;
+    }
+    synchronized (pending) {
+      if (pending.isEmpty()) {
+        firstPendingTimestamp = System.currentTimeMillis();
+      }
+      // Only the latest change for each IP address is relevant
+      pending.remove(hostAddress);
+      pending.put(hostAddress, add);
+    }
+  }
+
+  /**
+   * @return Number of changes that haven't been written yet
+   */
+  public int getPendingChanges() {
+    synchronized (pending) {
+      return pending.size();
+    }
+  }
+
+  /**
+   * Writes all pending changes if the debounce delay has passed or the batch is full
+   */
+  public void flush() {
+    flush(false);
+  }
+
+  public void flush(final boolean force) {
+    final SonarConfiguration.Firewall firewall = Sonar.get().getConfig().getFirewall();
+    final Map<String, Boolean> batch;
+
+    synchronized (pending) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      // Discard all changes if the exporter has been disabled in the meantime
+      if (!firewall.isEnabled()) {
+        pending.clear();
+        return;
+      }
+      final boolean delayPassed = System.currentTimeMillis() - firstPendingTimestamp >= firewall.getFlushDelay();
+      if (!force && !delayPassed && pending.size() < firewall.getMaxBatchSize()) {
+        return;
+      }
+
+      // Take at most one batch; the rest will be written during the next flush
+      batch = new LinkedHashMap<>(Math.min(pending.size(), firewall.getMaxBatchSize()));
+      final Iterator<Map.Entry<String, Boolean>> iterator = pending.entrySet().iterator();
+      while (iterator.hasNext() && (force || batch.size() < firewall.getMaxBatchSize())) {
+        final Map.Entry<String, Boolean> entry = iterator.next();
+        batch.put(entry.getKey(), entry.getValue());
+        iterator.remove();
+      }
+      firstPendingTimestamp = System.currentTimeMillis();
+    }
+
+    snapshotOutdated.set(true);
+    if (!firewall.getCommand().isEmpty()) {
+      executeCommand(firewall.getCommand(), generateScript(firewall, batch).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Replaces the output file with all currently blacklisted IP addresses
+   * if any changes have been written since the last snapshot
+   */
+  public synchronized void snapshot() {
+    final SonarConfiguration.Firewall firewall = Sonar.get().getConfig().getFirewall();
+    if (!firewall.isEnabled() || firewall.getOutputFile().isEmpty()) {
+      return;
+    }
+    if (snapshotOutdated.compareAndSet(true, false)) {
+      writeToFile(firewall.getOutputFile(), generateSnapshot(firewall).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Generates a script that replaces the contents of the sets with all currently blacklisted IP addresses
+   */
+  private static @NotNull String generateSnapshot(final @NotNull SonarConfiguration.Firewall firewall) {
+    final Cache<String, Integer> blacklist = Sonar.get().getFallback().getBlacklist();
+    final int threshold = Sonar.get().getConfig().getVerification().getBlacklistThreshold();
+    final long blacklistTime = Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(Sonar.get().getFallback().getBlacklistTime()));
+    final Optional<Policy.FixedExpiration<String, Integer>> expiration = blacklist.policy().expireAfterWrite();
+    final StringBuilder script = new StringBuilder(64 + (int) Math.min(blacklist.estimatedSize(), 1 << 20) * 48);
+
+    final boolean ipset = firewall.getType() == SonarConfiguration.Firewall.Type.IPSET;
+    for (final String set : new String[]{firewall.getIpv4Set(), firewall.getIpv6Set()}) {
+      script.append(ipset ? "flush " + set : "flush set " + firewall.getTable() + " " + set).append('\n');
+    }
+    for (final Map.Entry<String, Integer> entry : blacklist.asMap().entrySet()) {
+      if (entry.getValue() < threshold) continue;
+      // Only keep the IP address in the set for as long as it is blacklisted
+      final long age = expiration.map(policy -> policy.ageOf(entry.getKey(), TimeUnit.SECONDS).orElse(0L)).orElse(0L);
+      final long timeout = blacklistTime - age;
+      if (timeout <= 0L) continue;
+      final String set = getSetName(firewall, entry.getKey());
+      if (ipset) {
+        script.append("add ").append(set).append(' ').append(entry.getKey())
+          .append(" timeout ").append(timeout).append('\n');
+      } else {
+        script.append("add element ").append(firewall.getTable()).append(' ').append(set)
+          .append(" { ").append(entry.getKey()).append(" timeout ").append(timeout).append("s }\n");
+      }
+    }
+    return script.toString();
+  }
+
+  private static @NotNull String generateScript(final @NotNull SonarConfiguration.Firewall firewall,
+                                                final @NotNull Map<String, Boolean> batch) {
+    final long timeout = Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(Sonar.get().getFallback().getBlacklistTime()));
+    final StringBuilder script = new StringBuilder(batch.size() * 48);
+
+    if (firewall.getType() == SonarConfiguration.Firewall.Type.IPSET) {
+      // ipset restore format; the command should use -exist to ignore duplicates
+      for (final Map.Entry<String, Boolean> entry : batch.entrySet()) {
+        final String set = getSetName(firewall, entry.getKey());
+        if (entry.getValue()) {
+          script.append("add ").append(set).append(' ').append(entry.getKey())
+            .append(" timeout ").append(timeout).append('\n');
+        } else {
+          script.append("del ").append(set).append(' ').append(entry.getKey()).append('\n');
+        }
+      }
+      return script.toString();
+    }
+
+    // nftables aborts the entire transaction if an element cannot be deleted,
+    // so we add every element before deleting it to make sure it exists.
+    final List<String> additions = new ArrayList<>(batch.size());
+    final List<String> deletions = new ArrayList<>(batch.size());
+    for (final Map.Entry<String, Boolean> entry : batch.entrySet()) {
+      (entry.getValue() ? additions : deletions).add(entry.getKey());
+    }
+    for (final boolean ipv6 : new boolean[]{false, true}) {
+      final String set = ipv6 ? firewall.getIpv6Set() : firewall.getIpv4Set();
+      appendElements(script, "add", firewall.getTable(), set, additions, ipv6, " timeout " + timeout + "s");
+      appendElements(script, "add", firewall.getTable(), set, deletions, ipv6, " timeout 1s");
+      appendElements(script, "delete", firewall.getTable(), set, deletions, ipv6, "");
+    }
+    return script.toString();
+  }
+
+  private static void appendElements(final @NotNull StringBuilder script,
+                                     final @NotNull String operation,
+                                     final @NotNull String table,
+                                     final @NotNull String set,
+                                     final @NotNull List<String> elements,
+                                     final boolean ipv6,
+                                     final @NotNull String suffix) {
+    boolean first = true;
+    for (final String element : elements) {
+      if (isIPv6(element) != ipv6) continue;
+      script.append(first ? operation + " element " + table + " " + set + " { " : ", ");
+      script.append(element).append(suffix);
+      first = false;
+    }
+    if (!first) {
+      script.append(" }\n");
+    }
+  }
+
+  private static @NotNull String getSetName(final @NotNull SonarConfiguration.Firewall firewall,
+                                            final @NotNull String hostAddress) {
+    return isIPv6(hostAddress) ? firewall.getIpv6Set() : firewall.getIpv4Set();
+  }
+
+  private static boolean isIPv6(final @NotNull String hostAddress) {
+    return hostAddress.indexOf(':') != -1;
+  }
+
+  private static void writeToFile(final @NotNull String path, final byte[] script) {
+    final File file = new File(path).isAbsolute() ? new File(path)
+      : new File(Sonar.get().getConfig().getPluginFolder(), path);
+    final Path temporary = file.toPath().resolveSibling(file.getName() + ".tmp");
+    try {
+      // Write to a temporary file first, so the firewall never reads a partially written file
+      Files.write(temporary, script);
+      try {
+        Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException exception) {
+        Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException exception) {
+      Sonar.get().getLogger().error("Error writing firewall sets: {}", exception);
+    }
+  }
+
+  private static void executeCommand(final @NotNull String command, final byte[] script) {
+    try {
+      // Let the shell parse the command, so quotes, pipes and multiple spaces work as expected
+      final Process process = new ProcessBuilder("sh", "-c", command)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .start();
+      // Pass the generated script to the command via stdin
+      try (final OutputStream outputStream = process.getOutputStream()) {
+        outputStream.write(script);
+      }
+      if (!process.waitFor(10L, TimeUnit.SECONDS)) {
+        process.destroyForcibly();
+        Sonar.get().getLogger().warn("Firewall command timed out: {}", command);
+      } else if (process.exitValue() != 0) {
+        Sonar.get().getLogger().warn("Firewall command exited with code {}: {}", process.exitValue(), command);
+      }
+    } catch (IOException exception) {
+      Sonar.get().getLogger().error("Error executing firewall command: {}", exception);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.logging;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message template that has been split into its literal parts and placeholders once,
+ * so formatting a message doesn't have to search the template for every placeholder again.
+ */
+final class LogTemplate {
+  private final String[] literals;
+  // Index of the value that follows each literal or -1 after the last literal
+  private final int[] values;
+  private final int length;
+
+  private LogTemplate(final String @NotNull [] literals, final int @NotNull [] values) {
+    this.literals = literals;
+    this.values = values;
+    int length = 0;
+    for (final String literal : literals) {
+      length += literal.length();
+    }
+    this.length = length;
+  }
+
+  /**
+   * @param template     Message containing placeholders, e.g. {@code <ip>}
+   * @param placeholders Placeholders in the order of the values passed to {@link #format}
+   */
+  static @NotNull LogTemplate compile(final @NotNull String template, final String @NotNull ... placeholders) {
+    final List<String> literals = new ArrayList<>();
+    final List<Integer> values = new ArrayList<>();
+    int start = 0;
+    while (true) {
+      // Find the next placeholder after the current position
+      int nextIndex = -1, nextValue = -1;
+      for (int i = 0; i < placeholders.length; i++) {
+        final int index = template.indexOf(placeholders[i], start);
+        if (index != -1 && (nextIndex == -1 || index < nextIndex)) {
+          nextIndex = index;
+          nextValue = i;
+        }
+      }
+      if (nextIndex == -1) {
+        literals.add(template.substring(start));
+        values.add(-1);
+        break;
+      }
+      literals.add(template.substring(start, nextIndex));
+      values.add(nextValue);
+      start = nextIndex + placeholders[nextValue].length();
+    }
+    return new LogTemplate(literals.toArray(new String[0]), values.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  @NotNull String format(final String @NotNull ... arguments) {
+    final StringBuilder builder = new StringBuilder(length + 16 * arguments.length);
+    for (int i = 0; i < literals.length; i++) {
+      builder.append(literals[i]);
+      if (values[i] != -1) {
+        builder.append(arguments[values[i]]);
+      }
+    }
+    return builder.toString();
+  }
+}
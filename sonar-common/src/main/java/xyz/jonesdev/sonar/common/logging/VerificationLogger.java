@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.logging;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
+import xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion;
+
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the verification logs on the logging thread instead of the event loops.
+ * <br>
+ * Logs are put on a bounded ring buffer and discarded if the logging thread can't keep up.
+ * Once identical logs happen more often than the configured threshold per second,
+ * they are aggregated and only a summary is logged at the end of every interval.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class VerificationLogger {
+  public static final VerificationLogger INSTANCE = new VerificationLogger();
+
+  private static final int CAPACITY = 8192;
+
+  private final LogRingBuffer<Entry> buffer = new LogRingBuffer<>(CAPACITY);
+  private final AtomicLong dropped = new AtomicLong();
+  // Only accessed by the logging thread
+  private final Map<Object, Aggregate> aggregates = new HashMap<>();
+  private long lastDropReport;
+
+  private volatile Templates templates;
+
+  /**
+   * Compiles the log templates of the current messages configuration
+   */
+  public void reload() {
+    templates = new Templates();
+  }
+
+  public void connection(final @NotNull String username,
+                         final @NotNull InetAddress inetAddress,
+                         final @NotNull ProtocolVersion protocolVersion) {
+    offer(new Entry(Type.CONNECTION, inetAddress, protocolVersion.getProtocol(), username, null, null, 0L));
+  }
+
+  public void failed(final @NotNull InetAddress inetAddress,
+                     final @NotNull ProtocolVersion protocolVersion,
+                     final @NotNull FailureReason reason,
+                     final Object @NotNull [] arguments) {
+    offer(new Entry(Type.FAILED, inetAddress, protocolVersion.getProtocol(), null, reason, arguments, 0L));
+  }
+
+  public void blacklisted(final @NotNull InetAddress inetAddress,
+                          final @NotNull ProtocolVersion protocolVersion) {
+    offer(new Entry(Type.BLACKLISTED, inetAddress, protocolVersion.getProtocol(), null, null, null, 0L));
+  }
+
+  public void successful(final @NotNull String username,
+                         final @NotNull InetAddress inetAddress,
+                         final long timeTaken) {
+    offer(new Entry(Type.SUCCESSFUL, inetAddress, -1, username, null, null, timeTaken));
+  }
+
+  private void offer(final @NotNull Entry entry) {
+    if (!buffer.offer(entry)) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * Writes all queued logs and the summaries of all aggregations whose interval has passed
+   */
+  public synchronized void drain() {
+    final Templates templates = this.templates;
+    if (templates == null) {
+      return;
+    }
+    final long now = System.currentTimeMillis();
+    final int threshold = Sonar.get().getConfig().getVerification().getLogAggregationThreshold();
+
+    Entry entry;
+    while ((entry = buffer.poll()) != null) {
+      if (threshold > 0) {
+        final Aggregate aggregate = aggregates.computeIfAbsent(entry.key(), Aggregate::new);
+        if (aggregate.aggregate(entry, now, threshold)) {
+          continue;
+        }
+      }
+      Sonar.get().getLogger().info(templates.format(entry));
+    }
+
+    summarize(templates, now, threshold, false);
+  }
+
+  /**
+   * Writes all queued logs and the summaries of all aggregations
+   */
+  public synchronized void flush() {
+    drain();
+    final Templates templates = this.templates;
+    if (templates != null) {
+      summarize(templates, System.currentTimeMillis(), 0, true);
+    }
+  }
+
+  private void summarize(final @NotNull Templates templates, final long now,
+                         final int threshold, final boolean force) {
+    final long interval = Sonar.get().getConfig().getVerification().getLogAggregationInterval() * 1000L;
+    for (final Aggregate aggregate : aggregates.values()) {
+      if (aggregate.summaryStart != 0L && (force || now - aggregate.summaryStart >= interval)) {
+        final long seconds = Math.max(1L, (now - aggregate.summaryStart) / 1000L);
+        if (aggregate.count > 0) {
+          Sonar.get().getLogger().info(templates.summary(aggregate, seconds));
+        }
+        // Stop aggregating once the logs have calmed down again
+        aggregate.summaryStart = !force && aggregate.count / seconds > threshold ? now : 0L;
+        aggregate.count = 0;
+        aggregate.subnets.clear();
+      }
+    }
+
+    if (now - lastDropReport >= 1000L || force) {
+      final long count = dropped.getAndSet(0L);
+      if (count > 0) {
+        Sonar.get().getLogger().warn(templates.dropped.format(Sonar.DECIMAL_FORMAT.format(count)));
+      }
+      lastDropReport = now;
+    }
+  }
+
+  private enum Type {
+    CONNECTION,
+    FAILED,
+    BLACKLISTED,
+    SUCCESSFUL
+  }
+
+  @RequiredArgsConstructor
+  private static final class Entry {
+    private final Type type;
+    private final InetAddress inetAddress;
+    private final int protocol;
+    private final @Nullable String username;
+    private final @Nullable FailureReason reason;
+    private final Object @Nullable [] arguments;
+    private final long timeTaken;
+
+    private @NotNull Object key() {
+      // Failures are only identical if they have the same reason
+      return reason != null ? reason : type;
+    }
+  }
+
+  private static final class Aggregate {
+    private final Type type;
+    private final @Nullable FailureReason reason;
+    // /24 subnets for IPv4 and /48 subnets for IPv6 addresses
+    private final Set<Long> subnets = new HashSet<>();
+    private long windowStart, summaryStart;
+    private int windowCount;
+    private long count;
+
+    Aggregate(final @NotNull Object key) {
+      this.type = key instanceof FailureReason ? Type.FAILED : (Type) key;
+      this.reason = key instanceof FailureReason ? (FailureReason) key : null;
+    }
+
+    /**
+     * @return True if the entry has been aggregated and shouldn't be logged
+     */
+    private boolean aggregate(final @NotNull Entry entry, final long now, final int threshold) {
+      if (now - windowStart >= 1000L) {
+        windowStart = now;
+        windowCount = 0;
+      }
+      if (++windowCount > threshold && summaryStart == 0L) {
+        summaryStart = now;
+      }
+      if (summaryStart == 0L) {
+        return false;
+      }
+      count++;
+      subnets.add(subnet(entry.inetAddress));
+      return true;
+    }
+
+    private static long subnet(final @NotNull InetAddress inetAddress) {
+      final byte[] address = inetAddress.getAddress();
+      long subnet = 0L;
+      for (int i = 0; i < (address.length == 4 ? 3 : 6); i++) {
+        subnet = subnet << 8 | address[i] & 0xFF;
+      }
+      // Make sure IPv4 and IPv6 subnets never collide
+      return address.length == 4 ? subnet : subnet | 1L << 48;
+    }
+  }
+
+  private static final class Templates {
+    private final LogTemplate connection, failed, blacklisted, successful;
+    private final LogTemplate aggregatedConnection, aggregatedFailed, aggregatedBlacklisted, aggregatedSuccessful;
+    private final LogTemplate dropped;
+
+    Templates() {
+      connection = compile("connection", "<username>", "<ip>", "<protocol>");
+      failed = compile("failed", "<ip>", "<protocol>", "<reason>");
+      blacklisted = compile("blacklisted", "<ip>", "<protocol>");
+      successful = compile("successful", "<username>", "<time-taken>");
+      aggregatedConnection = compile("aggregated-connection", "<count>", "<subnets>", "<seconds>");
+      aggregatedFailed = compile("aggregated-failed", "<count>", "<subnets>", "<seconds>", "<reason>");
+      aggregatedBlacklisted = compile("aggregated-blacklisted", "<count>", "<subnets>", "<seconds>");
+      aggregatedSuccessful = compile("aggregated-successful", "<count>", "<subnets>", "<seconds>");
+      dropped = compile("dropped", "<count>");
+    }
+
+    private static @NotNull LogTemplate compile(final @NotNull String key, final String @NotNull ... placeholders) {
+      return LogTemplate.compile(Sonar.get().getConfig().getMessagesConfig()
+        .getString("verification.logs." + key), placeholders);
+    }
+
+    @NotNull String format(final @NotNull Entry entry) {
+      final String address = Sonar.get().getConfig().formatAddress(entry.inetAddress);
+      switch (entry.type) {
+        case CONNECTION:
+          return connection.format(entry.username, address, String.valueOf(entry.protocol));
+        case FAILED:
+          return failed.format(address, String.valueOf(entry.protocol), entry.reason.format(entry.arguments));
+        case BLACKLISTED:
+          return blacklisted.format(address, String.valueOf(entry.protocol));
+        default:
+          return successful.format(entry.username, String.format("%.3f", entry.timeTaken / 1000D));
+      }
+    }
+
+    @NotNull String summary(final @NotNull Aggregate aggregate, final long seconds) {
+      final String count = Sonar.DECIMAL_FORMAT.format(aggregate.count);
+      final String subnets = Sonar.DECIMAL_FORMAT.format(aggregate.subnets.size());
+      switch (aggregate.type) {
+        case CONNECTION:
+          return aggregatedConnection.format(count, subnets, String.valueOf(seconds));
+        case FAILED:
+          return aggregatedFailed.format(count, subnets, String.valueOf(seconds),
+            aggregate.reason.name().toLowerCase().replace('_', ' '));
+        case BLACKLISTED:
+          return aggregatedBlacklisted.format(count, subnets, String.valueOf(seconds));
+        default:
+          return aggregatedSuccessful.format(count, subnets, String.valueOf(seconds));
+      }
+    }
+  }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.metrics;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerController;
+import xyz.jonesdev.sonar.api.tracker.AttackTracker;
+import xyz.jonesdev.sonar.common.fallback.ratelimit.CaffeineCacheRatelimiter;
+import xyz.jonesdev.sonar.common.fallback.ratelimit.NoopCacheRatelimiter;
+import xyz.jonesdev.sonar.common.firewall.BlacklistFirewallExporter;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Exposes the statistics of Sonar as MXBeans, so they can be collected by any JMX monitoring tool.
+ * <br>
+ * Next to the read-only counters and gauges, some operations allow tuning Sonar during an attack
+ * without having to use commands or reload the configuration.
+ * Changed configuration values are reverted once the configuration is reloaded.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ManagementBeans {
+  private static final String DOMAIN = "xyz.jonesdev.sonar";
+  // Maximum time in seconds to wait for pending writes to be flushed
+  private static final long FLUSH_TIMEOUT = 10L;
+
+  public interface StatisticsMXBean {
+    long getConnectionsPerSecond();
+
+    long getLoginsPerSecond();
+
+    long getTotalPlayersJoined();
+
+    long getTotalAttemptedVerifications();
+
+    long getTotalSuccessfulVerifications();
+
+    long getTotalFailedVerifications();
+
+    long getTotalHostnameRejections();
+
+    long getIncomingBytesPerSecond();
+
+    long getOutgoingBytesPerSecond();
+
+    long getTotalIncomingBytes();
+
+    long getTotalOutgoingBytes();
+
+    int getVerifyingPlayers();
+
+    void resetHeavyHitters();
+  }
+
+  public interface AttackTrackerMXBean {
+    boolean isUnderAttack();
+
+    long getAttackDurationMillis();
+
+    long getPeakConnectionsPerSecond();
+
+    long getPeakLoginsPerSecond();
+
+    String getEscalationLevel();
+  }
+
+  public interface QueueMXBean {
+    int getQueuedPlayers();
+
+    boolean isPaused();
+
+    void pause();
+
+    void resume();
+
+    int getMaxQueuePolls();
+
+    void setMaxQueuePolls(final int maxQueuePolls);
+
+    int getReconnectDelay();
+
+    void setReconnectDelay(final int reconnectDelay);
+  }
+
+  public interface BlacklistMXBean {
+    long getSize();
+
+    long getTotalBlacklisted();
+
+    int getPendingFirewallChanges();
+
+    boolean remove(final String hostAddress);
+
+    void clear();
+  }
+
+  public interface VerifiedPlayersMXBean {
+    int getVerifiedPlayers();
+
+    boolean isFullyCached();
+
+    int getPendingWrites();
+
+    int getQueuedUpdates();
+
+    int getQueuedLookups();
+
+    double getAverageLookupMillis();
+
+    double getAverageWriteMillis();
+
+    String flush();
+  }
+
+  public static void register() {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      register(server, "Statistics", new Statistics(), StatisticsMXBean.class);
+      register(server, "AttackTracker", new AttackTrackerBean(), AttackTrackerMXBean.class);
+      register(server, "Queue", new Queue(), QueueMXBean.class);
+      register(server, "Blacklist", new Blacklist(), BlacklistMXBean.class);
+      register(server, "VerifiedPlayers", new VerifiedPlayers(), VerifiedPlayersMXBean.class);
+    } catch (JMException exception) {
+      Sonar.get().getLogger().error("Error registering MBeans: {}", exception);
+    }
+  }
+
+  private static <T> void register(final @NotNull MBeanServer server,
+                                   final @NotNull String type,
+                                   final @NotNull T implementation,
+                                   final @NotNull Class<T> mxBeanInterface) throws JMException {
+    final ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+    // Make sure to replace the beans of a previous instance (e.g. after a plugin reload)
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+    server.registerMBean(new StandardMBean(implementation, mxBeanInterface, true), name);
+  }
+
+  public static void unregister() {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      for (final ObjectName name : server.queryNames(new ObjectName(DOMAIN + ":*"), null)) {
+        server.unregisterMBean(name);
+      }
+    } catch (JMException exception) {
+      Sonar.get().getLogger().error("Error unregistering MBeans: {}", exception);
+    }
+  }
+
+  private static final class Statistics implements StatisticsMXBean {
+
+    @Override
+    public long getConnectionsPerSecond() {
+      return Sonar.get().getStatistics().getConnectionsPerSecond();
+    }
+
+    @Override
+    public long getLoginsPerSecond() {
+      return Sonar.get().getStatistics().getLoginsPerSecond();
+    }
+
+    @Override
+    public long getTotalPlayersJoined() {
+      return Sonar.get().getStatistics().getTotalPlayersJoined();
+    }
+
+    @Override
+    public long getTotalAttemptedVerifications() {
+      return Sonar.get().getStatistics().getTotalAttemptedVerifications();
+    }
+
+    @Override
+    public long getTotalSuccessfulVerifications() {
+      return Sonar.get().getStatistics().getTotalSuccessfulVerifications();
+    }
+
+    @Override
+    public long getTotalFailedVerifications() {
+      return Sonar.get().getStatistics().getTotalFailedVerifications();
+    }
+
+    @Override
+    public long getTotalHostnameRejections() {
+      return Sonar.get().getStatistics().getTotalHostnameRejections();
+    }
+
+    @Override
+    public long getIncomingBytesPerSecond() {
+      return Sonar.get().getStatistics().getCurrentIncomingBandwidth();
+    }
+
+    @Override
+    public long getOutgoingBytesPerSecond() {
+      return Sonar.get().getStatistics().getCurrentOutgoingBandwidth();
+    }
+
+    @Override
+    public long getTotalIncomingBytes() {
+      return Sonar.get().getStatistics().getTotalIncomingBandwidth();
+    }
+
+    @Override
+    public long getTotalOutgoingBytes() {
+      return Sonar.get().getStatistics().getTotalOutgoingBandwidth();
+    }
+
+    @Override
+    public int getVerifyingPlayers() {
+      return Sonar.get().getFallback().getConnected().size();
+    }
+
+    @Override
+    public void resetHeavyHitters() {
+      Sonar.get().getStatistics().resetHeavyHitters();
+    }
+  }
+
+  private static final class AttackTrackerBean implements AttackTrackerMXBean {
+
+    @Override
+    public boolean isUnderAttack() {
+      return Sonar.get().getAttackTracker().getCurrentAttack() != null;
+    }
+
+    @Override
+    public long getAttackDurationMillis() {
+      final AttackTracker.AttackStatistics attack = Sonar.get().getAttackTracker().getCurrentAttack();
+      return attack == null ? 0L : attack.getDuration().delay();
+    }
+
+    @Override
+    public long getPeakConnectionsPerSecond() {
+      final AttackTracker.AttackStatistics attack = Sonar.get().getAttackTracker().getCurrentAttack();
+      return attack == null ? 0L : attack.getPeakConnectionsPerSecond();
+    }
+
+    @Override
+    public long getPeakLoginsPerSecond() {
+      final AttackTracker.AttackStatistics attack = Sonar.get().getAttackTracker().getCurrentAttack();
+      return attack == null ? 0L : attack.getPeakJoinsPerSecond();
+    }
+
+    @Override
+    public String getEscalationLevel() {
+      return Sonar.get().getAttackTracker().getLevel().name();
+    }
+  }
+
+  private static final class Queue implements QueueMXBean {
+
+    @Override
+    public int getQueuedPlayers() {
+      return Sonar.get().getFallback().getQueue().getPlayers().size();
+    }
+
+    @Override
+    public boolean isPaused() {
+      return Sonar.get().getFallback().getQueue().isPaused();
+    }
+
+    @Override
+    public void pause() {
+      Sonar.get().getFallback().getQueue().setPaused(true);
+    }
+
+    @Override
+    public void resume() {
+      Sonar.get().getFallback().getQueue().setPaused(false);
+    }
+
+    @Override
+    public int getMaxQueuePolls() {
+      return Sonar.get().getConfig().getQueue().getMaxQueuePolls();
+    }
+
+    @Override
+    public void setMaxQueuePolls(final int maxQueuePolls) {
+      // Use the same limits as the configuration
+      Sonar.get().getConfig().getQueue().setMaxQueuePolls(Math.max(1, Math.min(1000, maxQueuePolls)));
+    }
+
+    @Override
+    public int getReconnectDelay() {
+      return Sonar.get().getConfig().getVerification().getReconnectDelay();
+    }
+
+    @Override
+    public void setReconnectDelay(final int reconnectDelay) {
+      // Use the same limits as the configuration
+      final int delay = Math.max(0, Math.min(100000, reconnectDelay));
+      Sonar.get().getConfig().getVerification().setReconnectDelay(delay);
+      Sonar.get().getFallback().setRatelimiter(delay > 0
+        ? new CaffeineCacheRatelimiter(delay, TimeUnit.MILLISECONDS)
+        : NoopCacheRatelimiter.INSTANCE);
+    }
+  }
+
+  private static final class Blacklist implements BlacklistMXBean {
+
+    @Override
+    public long getSize() {
+      return Sonar.get().getFallback().getBlacklist().estimatedSize();
+    }
+
+    @Override
+    public long getTotalBlacklisted() {
+      return Sonar.get().getStatistics().getTotalBlacklistSize();
+    }
+
+    @Override
+    public int getPendingFirewallChanges() {
+      return BlacklistFirewallExporter.INSTANCE.getPendingChanges();
+    }
+
+    @Override
+    public boolean remove(final String hostAddress) {
+      // The removal listener takes care of the filter and the firewall
+      return Sonar.get().getFallback().getBlacklist().asMap().remove(hostAddress) != null;
+    }
+
+    @Override
+    public void clear() {
+      Sonar.get().getFallback().getBlacklist().invalidateAll();
+    }
+  }
+
+  private static final class VerifiedPlayers implements VerifiedPlayersMXBean {
+
+    @Override
+    public int getVerifiedPlayers() {
+      return Sonar.get().getVerifiedPlayerController().estimatedSize();
+    }
+
+    @Override
+    public boolean isFullyCached() {
+      return Sonar.get().getVerifiedPlayerController().isFullyCached();
+    }
+
+    @Override
+    public int getPendingWrites() {
+      return Sonar.get().getVerifiedPlayerController().getPendingWrites();
+    }
+
+    @Override
+    public int getQueuedUpdates() {
+      return Sonar.get().getVerifiedPlayerController().getQueuedUpdates();
+    }
+
+    @Override
+    public int getQueuedLookups() {
+      return Sonar.get().getVerifiedPlayerController().getQueuedLookups();
+    }
+
+    @Override
+    public double getAverageLookupMillis() {
+      return Sonar.get().getVerifiedPlayerController().getMetrics().getLookup().getAverageMillis();
+    }
+
+    @Override
+    public double getAverageWriteMillis() {
+      return Sonar.get().getVerifiedPlayerController().getMetrics().getWrite().getAverageMillis();
+    }
+
+    @Override
+    public @NotNull String flush() {
+      final VerifiedPlayerController controller = Sonar.get().getVerifiedPlayerController();
+      final int pending = controller.getPendingWrites();
+      try {
+        // Don't block the JMX connection forever if the database doesn't respond
+        controller.flush().get(FLUSH_TIMEOUT, TimeUnit.SECONDS);
+      } catch (RejectedExecutionException exception) {
+        // The controller has already been closed (e.g. during a reload)
+        return "The database has been closed";
+      } catch (TimeoutException exception) {
+        Sonar.get().getLogger().warn("Flushing {} pending writes took longer than {}s", pending, FLUSH_TIMEOUT);
+        return "Timed out after " + FLUSH_TIMEOUT + "s; the pending writes are still being written";
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        return "Interrupted while waiting for the pending writes";
+      } catch (ExecutionException exception) {
+        Sonar.get().getLogger().error("Error flushing pending writes: {}", exception.getCause());
+        return "Error flushing pending writes: " + exception.getCause();
+      }
+      // Failed writes are kept, so they are still pending after the flush
+      final int remaining = controller.getPendingWrites();
+      if (remaining > 0) {
+        return "Could not write " + remaining + " pending writes; see the console for details";
+      }
+      Sonar.get().getLogger().info("Flushed {} pending writes.", pending);
+      return "Wrote " + pending + " pending writes";
+    }
+  }
+}
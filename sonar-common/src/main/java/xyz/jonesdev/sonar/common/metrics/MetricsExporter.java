@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.controller.LatencyMetric;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerController;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
+import xyz.jonesdev.sonar.api.statistics.LatencyHistogram;
+import xyz.jonesdev.sonar.api.statistics.SonarStatistics;
+import xyz.jonesdev.sonar.api.statistics.VerificationTraffic;
+import xyz.jonesdev.sonar.api.tracker.AttackTracker;
+import xyz.jonesdev.sonar.common.firewall.BlacklistFirewallExporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static xyz.jonesdev.sonar.api.profiler.SimpleProcessProfiler.getProcessCPUUsage;
+import static xyz.jonesdev.sonar.api.profiler.SimpleProcessProfiler.getUsedMemory;
+
+/**
+ * Serves all statistics in the OpenMetrics text format, so they can be scraped by Prometheus.
+ * <br>
+ * The response is rendered once per second by the statistics thread and only copied
+ * to the socket when a scrape arrives, so scraping never computes anything,
+ * no matter how often the endpoint is polled during an attack.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class MetricsExporter {
+  public static final MetricsExporter INSTANCE = new MetricsExporter();
+
+  private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+  private volatile HttpServer server;
+  private volatile byte[] snapshot = "# EOF\n".getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * (Re)starts the HTTP server using the current configuration
+   */
+  public synchronized void start() {
+    stop();
+
+    final SonarConfiguration.Metrics config = Sonar.get().getConfig().getMetrics();
+    if (!config.isEnabled()) {
+      return;
+    }
+
+    try {
+      server = HttpServer.create(new InetSocketAddress(config.getAddress(), config.getPort()), 16);
+      server.createContext("/metrics", this::handle);
+      // Requests are handled by the dispatcher thread, since they only copy the snapshot
+      server.setExecutor(null);
+      server.start();
+      // Make sure the first scrape already has data
+      update();
+      Sonar.get().getLogger().info("Serving metrics on {}:{}/metrics", config.getAddress(), config.getPort());
+    } catch (IOException exception) {
+      server = null;
+      Sonar.get().getLogger().error("Error starting metrics server: {}", exception);
+    }
+  }
+
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+
+  private void handle(final @NotNull HttpExchange exchange) throws IOException {
+    try {
+      final String method = exchange.getRequestMethod();
+      if (!method.equals("GET") && !method.equals("HEAD")) {
+        exchange.sendResponseHeaders(405, -1L);
+        return;
+      }
+      final byte[] body = snapshot;
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      if (method.equals("HEAD")) {
+        exchange.sendResponseHeaders(200, -1L);
+        return;
+      }
+      exchange.sendResponseHeaders(200, body.length);
+      try (final OutputStream outputStream = exchange.getResponseBody()) {
+        outputStream.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Renders a new snapshot of all metrics if the HTTP server is running
+   */
+  public void update() {
+    if (server == null) {
+      return;
+    }
+
+    final SonarStatistics statistics = Sonar.get().getStatistics();
+    final MetricsWriter writer = new MetricsWriter();
+
+    writer.counter("sonar_connections", "Connection establishments", statistics.getTotalPlayersJoined());
+    writer.gauge("sonar_connections_per_second", "Connection establishments during the last second",
+      statistics.getConnectionsPerSecond());
+    writer.gauge("sonar_logins_per_second", "Logins during the last second", statistics.getLoginsPerSecond());
+    writer.counter("sonar_verifications_attempted", "Players who tried to verify",
+      statistics.getTotalAttemptedVerifications());
+    writer.counter("sonar_verifications_successful", "Players who passed the verification",
+      statistics.getTotalSuccessfulVerifications());
+    writer.counter("sonar_verifications_failed", "Players who failed the verification",
+      statistics.getTotalFailedVerifications());
+    writer.counter("sonar_blacklistings", "Players who have been blacklisted", statistics.getTotalBlacklistSize());
+    writer.counter("sonar_hostname_rejections", "Connections rejected because of their hostname",
+      statistics.getTotalHostnameRejections());
+
+    writer.counter("sonar_incoming_bytes", "Received bytes", statistics.getTotalIncomingBandwidth());
+    writer.counter("sonar_outgoing_bytes", "Sent bytes", statistics.getTotalOutgoingBandwidth());
+    writer.gauge("sonar_incoming_bytes_per_second", "Received bytes during the last second",
+      statistics.getCurrentIncomingBandwidth());
+    writer.gauge("sonar_outgoing_bytes_per_second", "Sent bytes during the last second",
+      statistics.getCurrentOutgoingBandwidth());
+
+    writer.gauge("sonar_verifying_players", "Players who are currently being verified",
+      Sonar.get().getFallback().getConnected().size());
+    writer.gauge("sonar_queued_players", "Players who are waiting in the queue",
+      Sonar.get().getFallback().getQueue().getPlayers().size());
+    writer.gauge("sonar_blacklist_size", "Blacklisted IP addresses", statistics.getCurrentBlacklistSize());
+    writer.gauge("sonar_firewall_pending_changes", "Blacklist changes that haven't been exported yet",
+      BlacklistFirewallExporter.INSTANCE.getPendingChanges());
+
+    final AttackTracker.AttackStatistics attack = Sonar.get().getAttackTracker().getCurrentAttack();
+    writer.gauge("sonar_attack_active", "Whether the server is currently under attack", attack == null ? 0 : 1);
+    writer.gauge("sonar_attack_duration_seconds", "Duration of the current attack",
+      attack == null ? 0D : attack.getDuration().delay() / 1000D);
+    writer.gauge("sonar_attack_peak_connections_per_second", "Peak connections per second of the current attack",
+      attack == null ? 0L : attack.getPeakConnectionsPerSecond());
+    writer.gauge("sonar_attack_peak_logins_per_second", "Peak logins per second of the current attack",
+      attack == null ? 0L : attack.getPeakJoinsPerSecond());
+    writer.gauge("sonar_escalation_level", "Current escalation level of the attack tracker",
+      Sonar.get().getAttackTracker().getLevel().ordinal());
+    writer.header("sonar_attack_signal_score", "gauge", "Standard deviations of a signal above its learned baseline");
+    Sonar.get().getAttackTracker().getScores().forEach((signal, score) -> writer.sample("sonar_attack_signal_score",
+      "signal=\"" + signal.name().toLowerCase() + "\"", score));
+    writer.gauge("sonar_event_loop_lag_seconds", "Highest delay of tasks submitted to the event loops",
+      statistics.getEventLoopLag() / 1000D);
+
+    final VerifiedPlayerController controller = Sonar.get().getVerifiedPlayerController();
+    writer.gauge("sonar_verified_players", "Verified players", controller.estimatedSize());
+    writer.gauge("sonar_database_pending_writes", "Changes that haven't been written to the database yet",
+      controller.getPendingWrites());
+    writer.header("sonar_database_queued_tasks", "gauge", "Tasks waiting for a database worker");
+    writer.sample("sonar_database_queued_tasks", "executor=\"update\"", controller.getQueuedUpdates());
+    writer.sample("sonar_database_queued_tasks", "executor=\"lookup\"", controller.getQueuedLookups());
+    final VerifiedPlayerController.Metrics databaseMetrics = controller.getMetrics();
+    writer.header("sonar_database_operation_seconds", "summary", "Duration of database operations");
+    writer.latency("connection_wait", databaseMetrics.getConnectionWait());
+    writer.latency("lookup", databaseMetrics.getLookup());
+    writer.latency("write", databaseMetrics.getWrite());
+    writer.latency("expiry", databaseMetrics.getExpiry());
+    writer.latency("sync", databaseMetrics.getSync());
+
+    writer.header("sonar_stage_reached", "counter", "Connections that have reached a verification stage");
+    for (final FallbackStage stage : FallbackStage.values()) {
+      writer.sample("sonar_stage_reached_total", stageLabel(stage), statistics.getReachedStage(stage));
+    }
+    writer.header("sonar_stage_duration_seconds", "summary", "Time spent in a verification stage");
+    for (final FallbackStage stage : FallbackStage.values()) {
+      writer.histogram(stage, statistics.getStageLatency(stage));
+    }
+    final VerificationTraffic traffic = statistics.getTotalVerificationTraffic();
+    writer.header("sonar_stage_traffic_bytes", "counter", "Traffic of finished verifications per stage");
+    for (final FallbackStage stage : FallbackStage.values()) {
+      writer.sample("sonar_stage_traffic_bytes_total", stageLabel(stage) + ",direction=\"in\"",
+        traffic.getIncomingBytes(stage));
+      writer.sample("sonar_stage_traffic_bytes_total", stageLabel(stage) + ",direction=\"out\"",
+        traffic.getOutgoingBytes(stage));
+    }
+    writer.header("sonar_verification_failures", "counter", "Failed verifications per failure reason");
+    for (final FailureReason reason : FailureReason.values()) {
+      writer.sample("sonar_verification_failures_total",
+        "reason=\"" + reason.name().toLowerCase() + "\"", statistics.getFailures(reason));
+    }
+
+    writer.gauge("sonar_process_cpu_usage", "CPU usage of the process in percent", getProcessCPUUsage());
+    writer.gauge("sonar_process_used_memory_bytes", "Used memory of the process", getUsedMemory());
+
+    snapshot = writer.finish();
+  }
+
+  private static @NotNull String stageLabel(final @NotNull FallbackStage stage) {
+    return "stage=\"" + stage.name().toLowerCase() + "\"";
+  }
+
+  private static final class MetricsWriter {
+    private final StringBuilder builder = new StringBuilder(8192);
+
+    void header(final @NotNull String name, final @NotNull String type, final @NotNull String help) {
+      builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+      builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    void sample(final @NotNull String name, final @NotNull String labels, final double value) {
+      builder.append(name);
+      if (!labels.isEmpty()) {
+        builder.append('{').append(labels).append('}');
+      }
+      builder.append(' ');
+      // Don't print a decimal point for whole numbers
+      if (value == (long) value) {
+        builder.append((long) value);
+      } else {
+        builder.append(value);
+      }
+      builder.append('\n');
+    }
+
+    void counter(final @NotNull String name, final @NotNull String help, final double value) {
+      header(name, "counter", help);
+      sample(name + "_total", "", value);
+    }
+
+    void gauge(final @NotNull String name, final @NotNull String help, final double value) {
+      header(name, "gauge", help);
+      sample(name, "", value);
+    }
+
+    void latency(final @NotNull String operation, final @NotNull LatencyMetric metric) {
+      final String labels = "operation=\"" + operation + "\"";
+      final long count = metric.getCount();
+      sample("sonar_database_operation_seconds_count", labels, count);
+      sample("sonar_database_operation_seconds_sum", labels, metric.getAverageMillis() * count / 1000D);
+    }
+
+    void histogram(final @NotNull FallbackStage stage, final @NotNull LatencyHistogram histogram) {
+      final String labels = stageLabel(stage);
+      sample("sonar_stage_duration_seconds", labels + ",quantile=\"0.5\"", histogram.getPercentileMillis(0.5) / 1000D);
+      sample("sonar_stage_duration_seconds", labels + ",quantile=\"0.9\"", histogram.getPercentileMillis(0.9) / 1000D);
+      sample("sonar_stage_duration_seconds", labels + ",quantile=\"0.99\"", histogram.getPercentileMillis(0.99) / 1000D);
+      final long count = histogram.getCount();
+      sample("sonar_stage_duration_seconds_count", labels, count);
+      sample("sonar_stage_duration_seconds_sum", labels, histogram.getAverageMillis() * count / 1000D);
+    }
+
+    byte @NotNull [] finish() {
+      return builder.append("# EOF\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+  }
+}
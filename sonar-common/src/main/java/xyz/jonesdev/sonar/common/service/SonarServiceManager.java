@@ -20,7 +20,14 @@
 import lombok.experimental.UtilityClass;
 import org.jetbrains.annotations.NotNull;
 import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.statistics.RateCounter;
+import xyz.jonesdev.sonar.common.capture.TrafficCapture;
+import xyz.jonesdev.sonar.common.firewall.BlacklistFirewallExporter;
+import xyz.jonesdev.sonar.common.logging.VerificationLogger;
+import xyz.jonesdev.sonar.common.metrics.MetricsExporter;
 import xyz.jonesdev.sonar.common.statistics.BandwidthStatistics;
+import xyz.jonesdev.sonar.common.statistics.EventLoopLag;
+import xyz.jonesdev.sonar.common.statistics.StatisticsHistory;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -31,6 +38,9 @@ public final class SonarServiceManager {
   private final ScheduledExecutorService VERBOSE = createScheduledExecutor("sonar-verbose-thread");
   private final ScheduledExecutorService FALLBACK_QUEUE = createScheduledExecutor("sonar-queue-thread");
   private final ScheduledExecutorService STATISTICS = createScheduledExecutor("sonar-statistics-thread");
+  private final ScheduledExecutorService FIREWALL = createScheduledExecutor("sonar-firewall-thread");
+  private final ScheduledExecutorService LOGGING = createScheduledExecutor("sonar-logging-thread");
+  private final ScheduledExecutorService CAPTURE = createScheduledExecutor("sonar-capture-thread");
 
   private @NotNull ScheduledExecutorService createScheduledExecutor(final String threadName) {
     return Executors.newSingleThreadScheduledExecutor(runnable -> {
@@ -43,10 +53,14 @@ public final class SonarServiceManager {
 
   public void start() {
     VERBOSE.scheduleAtFixedRate(() -> {
-      // Make sure to clean up the cached statistics since we don't want to display wrong values
-      Sonar.get().getStatistics().cleanUpCache();
       Sonar.get().getFallback().getBlacklist().cleanUp();
-      // Update the attack tracker
+      // Rebuild the blacklist filter if too many entries have expired
+      if (Sonar.get().getFallback().getBlacklistFilter().shouldRebuild()) {
+        Sonar.get().getFallback().getBlacklistFilter().rebuild(
+          Sonar.get().getFallback().getBlacklist().asMap().keySet());
+      }
+      // Measure the event loop lag and update the attack tracker
+      EventLoopLag.probe();
       Sonar.get().getAttackTracker().checkIfUnderAttack();
       // Publish the action bar notifications
       Sonar.get().getActionBarNotificationHandler().handleNotification();
@@ -55,13 +69,58 @@ public void start() {
     FALLBACK_QUEUE.scheduleAtFixedRate(() -> Sonar.get().getFallback().getQueue().poll(),
       1L, 1L, TimeUnit.SECONDS);
 
-    STATISTICS.scheduleAtFixedRate(BandwidthStatistics::reset,
-      0L, 1L, TimeUnit.SECONDS);
+    STATISTICS.scheduleAtFixedRate(() -> {
+      // Every step is guarded separately, so the rate counters keep moving
+      // even if the history or the metrics can't be updated
+      guard("tick the rate counters", () -> {
+        // Move all rate counters to the next second
+        RateCounter.tickAll();
+        BandwidthStatistics.reset();
+      });
+      guard("record the statistics history", StatisticsHistory.INSTANCE::record);
+      // Render the metrics once, so scrapes don't have to compute anything
+      guard("update the metrics", MetricsExporter.INSTANCE::update);
+    }, 0L, 1L, TimeUnit.SECONDS);
+
+    FIREWALL.scheduleWithFixedDelay(() -> guard("update the firewall",
+      BlacklistFirewallExporter.INSTANCE::flush), 100L, 100L, TimeUnit.MILLISECONDS);
+    // Replacing the entire file is expensive, so it's only done once per minute
+    FIREWALL.scheduleWithFixedDelay(() -> guard("write the firewall snapshot",
+      BlacklistFirewallExporter.INSTANCE::snapshot), 1L, 1L, TimeUnit.MINUTES);
+
+    LOGGING.scheduleWithFixedDelay(() -> guard("write the verification log",
+      VerificationLogger.INSTANCE::drain), 50L, 50L, TimeUnit.MILLISECONDS);
+
+    CAPTURE.scheduleWithFixedDelay(() -> guard("write the traffic capture",
+      TrafficCapture.INSTANCE::flush), 1L, 1L, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Runs a step of a periodic task and logs its failure.
+   * An exception thrown by a periodic task would cancel all of its future executions.
+   *
+   * @param description Description of the step used in the error message
+   * @param step        Step of the periodic task
+   */
+  private void guard(final @NotNull String description, final @NotNull Runnable step) {
+    try {
+      step.run();
+    } catch (RuntimeException exception) {
+      Sonar.get().getLogger().error("Could not {}: {}", description, exception);
+    }
   }
 
   public void stop() {
     VERBOSE.shutdown();
     FALLBACK_QUEUE.shutdown();
     STATISTICS.shutdown();
+    FIREWALL.shutdown();
+    LOGGING.shutdown();
+    CAPTURE.shutdown();
+    // Make sure all remaining firewall changes are written
+    BlacklistFirewallExporter.INSTANCE.flush(true);
+    BlacklistFirewallExporter.INSTANCE.snapshot();
+    // Make sure all remaining verification logs are written
+    VerificationLogger.INSTANCE.flush();
   }
 }
@@ -17,9 +17,10 @@
 
 package xyz.jonesdev.sonar.common.statistics;
 
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 import xyz.jonesdev.sonar.api.profiler.SimpleProcessProfiler;
+import xyz.jonesdev.sonar.api.statistics.RateCounter;
 
 /**
  * This counts all incoming and outgoing traffic.
@@ -29,9 +30,11 @@ public enum BandwidthStatistics {
   INCOMING,
   OUTGOING;
 
-  @Setter
-  private long ttl, curr;
-  private String cachedSecond = "-", cachedTtl = "-";
+  // All event loops increment the same value, so we need a thread-safe counter
+  @Getter(AccessLevel.NONE)
+  private final RateCounter counter = new RateCounter();
+  private volatile long ttl, curr;
+  private volatile String cachedSecond = "-", cachedTtl = "-";
 
   /**
    * Increments the current (per-second) value.
@@ -39,23 +42,22 @@ public enum BandwidthStatistics {
    * @param b Bytes sent
    */
   public void increment(final long b) {
-    curr += b;
+    counter.add(b);
   }
 
   /**
-   * Increments the total value by the current
-   * (per-second) value and resets the current value.
-   * This method is called every second.
+   * Caches the value of the last second and the total value.
+   * This method is called every second, right after the counters have been advanced.
    */
   public static void reset() {
-    INCOMING.cacheAndReset();
-    OUTGOING.cacheAndReset();
+    INCOMING.cache();
+    OUTGOING.cache();
   }
 
-  private void cacheAndReset() {
-    ttl += curr; // increment total
+  private void cache() {
+    curr = counter.getLastSecond();
+    ttl = counter.getTotal();
     cachedSecond = SimpleProcessProfiler.formatMemory(curr);
     cachedTtl = SimpleProcessProfiler.formatMemory(ttl);
-    curr = 0L; // reset current
   }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.statistics;
+
+import io.netty.channel.EventLoop;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long tasks have to wait before the event loops run them.
+ * <br>
+ * Every probe submits an empty task to each event loop that has handled a connection.
+ * A new task is only submitted once the previous one has run, so the delay of a task
+ * that still hasn't run is counted as well.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class EventLoopLag {
+  // Submission time of the pending task per event loop or 0 if no task is pending
+  private static final Map<EventLoop, AtomicLong> PENDING = new ConcurrentHashMap<>();
+  private static final AtomicLong MAXIMUM = new AtomicLong();
+
+  private static volatile long lagMillis;
+
+  public static void register(final @NotNull EventLoop eventLoop) {
+    // Avoid allocating a new counter for every connection
+    if (!PENDING.containsKey(eventLoop)) {
+      PENDING.putIfAbsent(eventLoop, new AtomicLong());
+    }
+  }
+
+  /**
+   * Publishes the highest delay since the last probe and submits new tasks
+   */
+  public static void probe() {
+    final long now = System.nanoTime();
+    long maximum = MAXIMUM.getAndSet(0L);
+    for (final Map.Entry<EventLoop, AtomicLong> entry : PENDING.entrySet()) {
+      final EventLoop eventLoop = entry.getKey();
+      if (eventLoop.isShuttingDown()) {
+        PENDING.remove(eventLoop);
+        continue;
+      }
+      final AtomicLong pending = entry.getValue();
+      final long submitted = pending.get();
+      if (submitted != 0L) {
+        // The previous task hasn't run yet
+        maximum = Math.max(maximum, now - submitted);
+        continue;
+      }
+      pending.set(now);
+      eventLoop.execute(() -> {
+        final long delay = System.nanoTime() - now;
+        MAXIMUM.accumulateAndGet(delay, Math::max);
+        pending.set(0L);
+      });
+    }
+    lagMillis = maximum / 1_000_000L;
+  }
+
+  /**
+   * @return Highest delay of the event loops in milliseconds during the last probe
+   */
+  public static long getLagMillis() {
+    return lagMillis;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.statistics;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Number of failed verifications per failure reason
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class FailureStatistics {
+  private static final AtomicLongArray FAILURES = new AtomicLongArray(FailureReason.values().length);
+
+  @ApiStatus.Internal
+  public static void increment(final @NotNull FailureReason reason) {
+    FAILURES.getAndIncrement(reason.ordinal());
+  }
+
+  public static long get(final @NotNull FailureReason reason) {
+    return FAILURES.get(reason.ordinal());
+  }
+}
@@ -17,25 +17,41 @@
 
 package xyz.jonesdev.sonar.common.statistics;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
 import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
+import xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion;
+import xyz.jonesdev.sonar.api.filter.HostnameTrie;
+import xyz.jonesdev.sonar.api.statistics.HeavyHitters;
+import xyz.jonesdev.sonar.api.statistics.LatencyHistogram;
+import xyz.jonesdev.sonar.api.statistics.RateCounter;
 import xyz.jonesdev.sonar.api.statistics.SonarStatistics;
+import xyz.jonesdev.sonar.api.statistics.VerificationTraffic;
 
-import java.time.Duration;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
 
 public final class GlobalSonarStatistics implements SonarStatistics {
-  private static final Cache<Integer, Byte> LOGINS_PER_SECOND = Caffeine.newBuilder()
-    .expireAfterWrite(Duration.ofSeconds(1))
-    .build();
-
-  private static final Cache<Integer, Byte> CONNECTIONS_PER_SECOND = Caffeine.newBuilder()
-    .expireAfterWrite(Duration.ofSeconds(1))
-    .build();
+  // Cache all per-session statistics
+  public static final RateCounter CONNECTIONS = new RateCounter();
+  public static final RateCounter LOGINS = new RateCounter();
+  public static final RateCounter SUCCESSFUL_VERIFICATIONS = new RateCounter();
+  public static final RateCounter FAILED_VERIFICATIONS = new RateCounter();
+  public static final RateCounter ATTEMPTED_VERIFICATIONS = new RateCounter();
+  public static final RateCounter BLACKLISTED_PLAYERS = new RateCounter();
+  public static final RateCounter HOSTNAME_REJECTIONS = new RateCounter();
 
-  private static final AtomicInteger ACTION_COUNTER = new AtomicInteger(Integer.MIN_VALUE);
+  // Heavy hitters of the current (or last) attack
+  private static final int HEAVY_HITTERS_CAPACITY = 64;
+  private static final HeavyHitters SUBNETS = new HeavyHitters(HEAVY_HITTERS_CAPACITY, GlobalSonarStatistics::formatSubnet);
+  private static final HeavyHitters PROTOCOLS = new HeavyHitters(HEAVY_HITTERS_CAPACITY,
+    (key, label) -> ProtocolVersion.fromId((int) key).name() + "/" + key);
+  private static final HeavyHitters HOSTNAMES = new HeavyHitters(HEAVY_HITTERS_CAPACITY,
+    (key, label) -> stripHostname(String.valueOf(label)));
 
   /**
    * Helper methods that make it easier to count new statistics
@@ -43,39 +59,139 @@ public final class GlobalSonarStatistics implements SonarStatistics {
 
   @ApiStatus.Internal
   public static void countConnection() {
-    CONNECTIONS_PER_SECOND.put(ACTION_COUNTER.getAndIncrement(), (byte) 0);
+    CONNECTIONS.increment();
+  }
+
+  @ApiStatus.Internal
+  public static void countHandshake(final @NotNull String hostname, final int protocol) {
+    PROTOCOLS.offer(protocol, null);
+    HOSTNAMES.offer(hashHostname(hostname), hostname);
+  }
+
+  @ApiStatus.Internal
+  public static void countLoginSource(final @NotNull InetAddress inetAddress) {
+    final long subnet;
+    if (inetAddress instanceof Inet4Address) {
+      // The hash code of an IPv4 address is the address itself
+      subnet = 4L << 56 | (inetAddress.hashCode() & 0xFFFFFF00L);
+    } else {
+      final byte[] address = inetAddress.getAddress();
+      long prefix = 0L;
+      for (int i = 0; i < 6; i++) {
+        prefix = prefix << 8 | (address[i] & 0xFFL);
+      }
+      subnet = 6L << 56 | prefix;
+    }
+    SUBNETS.offer(subnet, null);
+  }
+
+  private static @NotNull String formatSubnet(final long key, final Object label) {
+    if (key >>> 56 == 4L) {
+      return ((key >>> 24) & 0xFF) + "." + ((key >>> 16) & 0xFF) + "." + ((key >>> 8) & 0xFF) + ".0/24";
+    }
+    return Long.toHexString((key >>> 32) & 0xFFFF) + ":"
+      + Long.toHexString((key >>> 16) & 0xFFFF) + ":"
+      + Long.toHexString(key & 0xFFFF) + "::/48";
+  }
+
+  private static long hashHostname(final @NotNull String hostname) {
+    long hash = 0xCBF29CE484222325L;
+    final int length = HostnameTrie.hostnameLength(hostname);
+    for (int i = 0; i < length; i++) {
+      hash = (hash ^ Character.toLowerCase(hostname.charAt(i))) * 0x100000001B3L;
+    }
+    return hash;
+  }
+
+  private static @NotNull String stripHostname(final @NotNull String hostname) {
+    return hostname.substring(0, HostnameTrie.hostnameLength(hostname)).toLowerCase();
   }
 
   @ApiStatus.Internal
   public static void countLogin() {
-    LOGINS_PER_SECOND.put(ACTION_COUNTER.getAndIncrement(), (byte) 0);
-    totalJoinedPlayers++;
+    LOGINS.increment();
   }
 
-  // Cache all per-session statistics
-  private static int totalJoinedPlayers;
-  public static int totalSuccessfulVerifications;
-  public static int totalFailedVerifications;
-  public static int totalAttemptedVerifications;
-  public static long totalBlacklistedPlayers;
+  @Override
+  public List<HeavyHitters.Entry> getTopSubnets(final int limit) {
+    return SUBNETS.getTop(limit);
+  }
+
+  @Override
+  public List<HeavyHitters.Entry> getTopProtocols(final int limit) {
+    return PROTOCOLS.getTop(limit);
+  }
+
+  @Override
+  public List<HeavyHitters.Entry> getTopHostnames(final int limit) {
+    return HOSTNAMES.getTop(limit);
+  }
+
+  @Override
+  public Map<ProtocolVersion, VerificationTraffic> getVerificationTraffic() {
+    return TrafficStatistics.snapshot();
+  }
+
+  @Override
+  public VerificationTraffic getTotalVerificationTraffic() {
+    return TrafficStatistics.total();
+  }
+
+  @Override
+  public long getReachedStage(final @NotNull FallbackStage stage) {
+    return StageStatistics.getReached(stage);
+  }
+
+  @Override
+  public LatencyHistogram getStageLatency(final @NotNull FallbackStage stage) {
+    return StageStatistics.getLatency(stage);
+  }
 
-  /**
-   * Called every time the action bar updates to ensure fresh values
-   */
   @Override
-  public void cleanUpCache() {
-    LOGINS_PER_SECOND.cleanUp();
-    CONNECTIONS_PER_SECOND.cleanUp();
+  public long getFailures(final @NotNull FailureReason reason) {
+    return FailureStatistics.get(reason);
+  }
+
+  @Override
+  public long getAttemptedVerificationsPerSecond() {
+    return ATTEMPTED_VERIFICATIONS.getLastSecond();
+  }
+
+  @Override
+  public long getFailedVerificationsPerSecond() {
+    return FAILED_VERIFICATIONS.getLastSecond();
+  }
+
+  @Override
+  public long getEventLoopLag() {
+    return EventLoopLag.getLagMillis();
+  }
+
+  @Override
+  public void resetHeavyHitters() {
+    SUBNETS.reset();
+    PROTOCOLS.reset();
+    HOSTNAMES.reset();
   }
 
   @Override
   public long getConnectionsPerSecond() {
-    return CONNECTIONS_PER_SECOND.estimatedSize();
+    return CONNECTIONS.getLastSecond();
   }
 
   @Override
   public long getLoginsPerSecond() {
-    return LOGINS_PER_SECOND.estimatedSize();
+    return LOGINS.getLastSecond();
+  }
+
+  @Override
+  public double getAverageConnectionsPerSecond(final int seconds) {
+    return CONNECTIONS.getAverage(seconds);
+  }
+
+  @Override
+  public double getAverageLoginsPerSecond(final int seconds) {
+    return LOGINS.getAverage(seconds);
   }
 
   @Override
@@ -120,7 +236,7 @@ public String getTotalOutgoingBandwidthFormatted() {
 
   @Override
   public int getTotalPlayersJoined() {
-    return totalJoinedPlayers;
+    return (int) LOGINS.getTotal();
   }
 
   @Override
@@ -130,12 +246,12 @@ public int getTotalPlayersVerified() {
 
   @Override
   public int getTotalSuccessfulVerifications() {
-    return totalSuccessfulVerifications;
+    return (int) SUCCESSFUL_VERIFICATIONS.getTotal();
   }
 
   @Override
   public int getTotalFailedVerifications() {
-    return totalFailedVerifications;
+    return (int) FAILED_VERIFICATIONS.getTotal();
   }
 
   @Override
@@ -145,7 +261,7 @@ public long getCurrentAttemptedVerifications() {
 
   @Override
   public int getTotalAttemptedVerifications() {
-    return totalAttemptedVerifications;
+    return (int) ATTEMPTED_VERIFICATIONS.getTotal();
   }
 
   @Override
@@ -155,6 +271,11 @@ public long getCurrentBlacklistSize() {
 
   @Override
   public long getTotalBlacklistSize() {
-    return totalBlacklistedPlayers;
+    return BLACKLISTED_PLAYERS.getTotal();
+  }
+
+  @Override
+  public long getTotalHostnameRejections() {
+    return HOSTNAME_REJECTIONS.getTotal();
   }
 }
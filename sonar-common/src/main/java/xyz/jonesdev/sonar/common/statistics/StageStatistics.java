@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.statistics;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
+import xyz.jonesdev.sonar.api.statistics.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Verification funnel and time spent in every verification stage.
+ * <br>
+ * A stage is only timed if the player has passed it,
+ * so the latencies describe what real players experience.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class StageStatistics {
+  private static final AtomicLongArray REACHED = new AtomicLongArray(FallbackStage.values().length);
+  private static final LatencyHistogram[] LATENCIES = new LatencyHistogram[FallbackStage.values().length];
+
+  static {
+    for (int i = 0; i < LATENCIES.length; i++) {
+      LATENCIES[i] = new LatencyHistogram();
+    }
+  }
+
+  @ApiStatus.Internal
+  public static void reach(final @NotNull FallbackStage stage) {
+    REACHED.getAndIncrement(stage.ordinal());
+  }
+
+  /**
+   * @param stage Stage the player has passed
+   * @param nanos Time the player has spent in the stage
+   */
+  @ApiStatus.Internal
+  public static void pass(final @NotNull FallbackStage stage, final long nanos) {
+    LATENCIES[stage.ordinal()].record(nanos);
+  }
+
+  /**
+   * @return Number of connections that have reached the given stage
+   */
+  public static long getReached(final @NotNull FallbackStage stage) {
+    return REACHED.get(stage.ordinal());
+  }
+
+  /**
+   * @return Time spent in the given stage by all players who have passed it
+   */
+  public static @NotNull LatencyHistogram getLatency(final @NotNull FallbackStage stage) {
+    return LATENCIES[stage.ordinal()];
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.statistics;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static xyz.jonesdev.sonar.api.profiler.SimpleProcessProfiler.*;
+
+/**
+ * Fixed-size ring of per-second statistics stored in a memory-mapped file.
+ * <br>
+ * One record is written every second by the statistics thread, so the shape of
+ * an attack can still be analyzed after it has ended (or after a restart).
+ * Writing a record only copies a few numbers into the mapped memory;
+ * the operating system takes care of writing the pages to the disk.
+ * <br>
+ * Header layout: magic (4 bytes), version (4 bytes), record size (4 bytes),
+ * capacity (4 bytes), number of written records (8 bytes), hash of the failure reasons (4 bytes)
+ * <br>
+ * Record layout: epoch second (8 bytes), connections, logins, verifying, queued,
+ * attempted, successful, failed and blacklisted (4 bytes each), incoming and outgoing bytes (8 bytes each),
+ * used memory in MiB (4 bytes), process and system CPU usage in tenths of a percent (2 bytes each),
+ * failed verifications per failure reason in the order of {@link FailureReason} (2 bytes each, unsigned)
+ * <br>
+ * The history is reset if the failure reasons have changed,
+ * so the counts of a record can never be attributed to the wrong reason.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class StatisticsHistory {
+  public static final StatisticsHistory INSTANCE = new StatisticsHistory();
+
+  private static final int MAGIC = 0x534F4E48; // SONH
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 32;
+  private static final FailureReason[] FAILURE_REASONS = FailureReason.values();
+  private static final int FAILURES_OFFSET = 64;
+  private static final int RECORD_SIZE = FAILURES_OFFSET + FAILURE_REASONS.length * 2;
+  // Keep the last 24 hours
+  public static final int CAPACITY = 24 * 60 * 60;
+  private static final int WRITTEN_OFFSET = 16;
+  private static final int REASONS_OFFSET = 24;
+  private static final int REASONS_HASH = Arrays.stream(FAILURE_REASONS)
+    .map(FailureReason::name)
+    .collect(Collectors.joining(","))
+    .hashCode();
+
+  private MappedByteBuffer buffer;
+  private volatile long written;
+  // Total number of failures per reason at the time of the last record
+  private final long[] lastFailures = new long[FAILURE_REASONS.length];
+
+  /**
+   * Maps the history file into memory and creates it if necessary
+   */
+  public synchronized void open() {
+    final File file = new File(Sonar.get().getConfig().getPluginFolder(), "history.bin");
+    final long size = HEADER_SIZE + (long) CAPACITY * RECORD_SIZE;
+    try (final FileChannel channel = FileChannel.open(file.toPath(),
+      StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // Only the failures after opening the history belong to the next record
+      for (int i = 0; i < FAILURE_REASONS.length; i++) {
+        lastFailures[i] = FailureStatistics.get(FAILURE_REASONS[i]);
+      }
+      if (channel.size() == size) {
+        // The mapping stays valid after the channel has been closed
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+          && buffer.getInt(8) == RECORD_SIZE && buffer.getInt(12) == CAPACITY
+          && buffer.getInt(REASONS_OFFSET) == REASONS_HASH) {
+          written = buffer.getLong(WRITTEN_OFFSET);
+          return;
+        }
+      }
+      // Make sure to start new (or outdated) files with an empty ring;
+      // the file is filled with zeros when it is mapped again
+      channel.truncate(0L);
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+      buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE).putInt(12, CAPACITY);
+      buffer.putLong(WRITTEN_OFFSET, 0L).putInt(REASONS_OFFSET, REASONS_HASH);
+      written = 0L;
+    } catch (IOException exception) {
+      buffer = null;
+      Sonar.get().getLogger().error("Error opening statistics history: {}", exception);
+    }
+  }
+
+  public synchronized void close() {
+    if (buffer != null) {
+      buffer.force();
+      buffer = null;
+    }
+  }
+
+  /**
+   * Records the statistics of the last second
+   */
+  public synchronized void record() {
+    if (buffer == null) {
+      return;
+    }
+
+    final int offset = HEADER_SIZE + (int) (written % CAPACITY) * RECORD_SIZE;
+    buffer.putLong(offset, System.currentTimeMillis() / 1000L);
+    buffer.putInt(offset + 8, (int) GlobalSonarStatistics.CONNECTIONS.getLastSecond());
+    buffer.putInt(offset + 12, (int) GlobalSonarStatistics.LOGINS.getLastSecond());
+    buffer.putInt(offset + 16, Sonar.get().getFallback().getConnected().size());
+    buffer.putInt(offset + 20, Sonar.get().getFallback().getQueue().getPlayers().size());
+    buffer.putInt(offset + 24, (int) GlobalSonarStatistics.ATTEMPTED_VERIFICATIONS.getLastSecond());
+    buffer.putInt(offset + 28, (int) GlobalSonarStatistics.SUCCESSFUL_VERIFICATIONS.getLastSecond());
+    buffer.putInt(offset + 32, (int) GlobalSonarStatistics.FAILED_VERIFICATIONS.getLastSecond());
+    buffer.putInt(offset + 36, (int) GlobalSonarStatistics.BLACKLISTED_PLAYERS.getLastSecond());
+    buffer.putLong(offset + 40, BandwidthStatistics.INCOMING.getCurr());
+    buffer.putLong(offset + 48, BandwidthStatistics.OUTGOING.getCurr());
+    buffer.putInt(offset + 56, (int) (getUsedMemory() >> 20));
+    buffer.putShort(offset + 60, toTenths(getProcessCPUUsage()));
+    buffer.putShort(offset + 62, toTenths(getSystemCPUUsage()));
+    for (int i = 0; i < FAILURE_REASONS.length; i++) {
+      final long total = FailureStatistics.get(FAILURE_REASONS[i]);
+      // Make sure huge bursts don't overflow into a small number
+      buffer.putChar(offset + FAILURES_OFFSET + i * 2, (char) Math.min(Character.MAX_VALUE, total - lastFailures[i]));
+      lastFailures[i] = total;
+    }
+    // Only publish the record once it has been written completely
+    buffer.putLong(WRITTEN_OFFSET, ++written);
+  }
+
+  private static short toTenths(final double percent) {
+    return (short) Math.max(0L, Math.min(Short.MAX_VALUE, Math.round(percent * 10D)));
+  }
+
+  /**
+   * Passes all recorded samples since the given time to the consumer, from oldest to newest
+   *
+   * @param since Epoch second of the oldest sample
+   * @return Number of samples
+   */
+  public long forEach(final long since, final @NotNull Consumer<Sample> consumer) {
+    final ByteBuffer buffer;
+    final long written;
+    synchronized (this) {
+      if (this.buffer == null) {
+        return 0L;
+      }
+      buffer = this.buffer.duplicate();
+      written = this.written;
+    }
+
+    long count = 0L;
+    for (long index = Math.max(0L, written - CAPACITY); index < written; index++) {
+      final int offset = HEADER_SIZE + (int) (index % CAPACITY) * RECORD_SIZE;
+      final long timestamp = buffer.getLong(offset);
+      // Skip all samples outside the requested window
+      if (timestamp < since) continue;
+      final int[] failures = new int[FAILURE_REASONS.length];
+      for (int i = 0; i < failures.length; i++) {
+        failures[i] = buffer.getChar(offset + FAILURES_OFFSET + i * 2);
+      }
+      consumer.accept(new Sample(timestamp,
+        buffer.getInt(offset + 8), buffer.getInt(offset + 12),
+        buffer.getInt(offset + 16), buffer.getInt(offset + 20),
+        buffer.getInt(offset + 24), buffer.getInt(offset + 28),
+        buffer.getInt(offset + 32), buffer.getInt(offset + 36),
+        buffer.getLong(offset + 40), buffer.getLong(offset + 48),
+        buffer.getInt(offset + 56),
+        buffer.getShort(offset + 60) / 10D, buffer.getShort(offset + 62) / 10D, failures));
+      count++;
+    }
+    return count;
+  }
+
+  @Getter
+  @RequiredArgsConstructor
+  public static final class Sample {
+    public static final String CSV_HEADER = "timestamp,connections,logins,verifying,queued,attempted,"
+      + "successful,failed,blacklisted,incoming_bytes,outgoing_bytes,used_memory_mib,process_cpu,system_cpu"
+      + Arrays.stream(FAILURE_REASONS)
+      .map(reason -> ",failed_" + reason.name().toLowerCase(Locale.ROOT))
+      .collect(Collectors.joining());
+
+    private final long timestamp;
+    private final int connections, logins, verifying, queued;
+    private final int attempted, successful, failed, blacklisted;
+    private final long incomingBytes, outgoingBytes;
+    private final int usedMemory;
+    private final double processCPU, systemCPU;
+    // Failed verifications per failure reason, indexed by the ordinal of the reason
+    @Getter(AccessLevel.NONE)
+    private final int[] failures;
+
+    /**
+     * @param reason Failure reason
+     * @return Number of failed verifications with this reason during this second
+     */
+    public int getFailures(final @NotNull FailureReason reason) {
+      return failures[reason.ordinal()];
+    }
+
+    public @NotNull String toCsv() {
+      final StringBuilder csv = new StringBuilder(128 + failures.length * 2);
+      csv.append(timestamp).append(',').append(connections).append(',').append(logins).append(',')
+        .append(verifying).append(',').append(queued).append(',').append(attempted).append(',')
+        .append(successful).append(',').append(failed).append(',').append(blacklisted).append(',')
+        .append(incomingBytes).append(',').append(outgoingBytes).append(',').append(usedMemory).append(',')
+        .append(processCPU).append(',').append(systemCPU);
+      for (final int count : failures) {
+        csv.append(',').append(count);
+      }
+      return csv.toString();
+    }
+  }
+}
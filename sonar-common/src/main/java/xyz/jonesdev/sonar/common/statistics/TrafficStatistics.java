@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.statistics;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
+import xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion;
+import xyz.jonesdev.sonar.api.statistics.VerificationTraffic;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static xyz.jonesdev.sonar.api.statistics.VerificationTraffic.HISTOGRAM_BUCKETS;
+
+/**
+ * Aggregates the traffic of all verifications per protocol version.
+ * <br>
+ * Every connection counts its own traffic without any synchronization
+ * and only records the totals once the connection has been closed.
+ * Recorders are striped per thread, so event loops never contend on the same memory.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TrafficStatistics {
+  private static final ProtocolVersion[] PROTOCOL_VERSIONS = ProtocolVersion.values();
+  private static final int STAGES = FallbackStage.values().length;
+  private static final int STRIPES = Math.min(16,
+    Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+  // Layout of a single stripe
+  private static final int CONNECTIONS = 0;
+  private static final int REACHED = CONNECTIONS + 1;
+  private static final int INCOMING = REACHED + STAGES;
+  private static final int OUTGOING = INCOMING + STAGES;
+  private static final int HISTOGRAM = OUTGOING + STAGES;
+  // Make sure stripes never share a cache line
+  private static final int STRIDE = HISTOGRAM + HISTOGRAM_BUCKETS + 8;
+
+  // Recorders are only created for protocol versions that have actually been seen
+  private static final AtomicReferenceArray<AtomicLongArray> RECORDERS =
+    new AtomicReferenceArray<>(PROTOCOL_VERSIONS.length);
+
+  /**
+   * Records the traffic of a single verification
+   *
+   * @param protocolVersion Protocol version of the player
+   * @param reachedStages   Bit mask of all stages the player has reached
+   * @param incoming        Number of received bytes per stage
+   * @param outgoing        Number of sent bytes per stage
+   */
+  @ApiStatus.Internal
+  public static void record(final @NotNull ProtocolVersion protocolVersion,
+                            final int reachedStages,
+                            final long @NotNull [] incoming,
+                            final long @NotNull [] outgoing) {
+    final AtomicLongArray recorder = getRecorder(protocolVersion);
+    final int offset = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE;
+    long total = 0L;
+    recorder.getAndIncrement(offset + CONNECTIONS);
+    for (int stage = 0; stage < STAGES; stage++) {
+      if ((reachedStages & (1 << stage)) == 0) continue;
+      recorder.getAndIncrement(offset + REACHED + stage);
+      recorder.getAndAdd(offset + INCOMING + stage, incoming[stage]);
+      recorder.getAndAdd(offset + OUTGOING + stage, outgoing[stage]);
+      total += incoming[stage] + outgoing[stage];
+    }
+    // The bucket is the number of bits needed to represent the total
+    final int bucket = Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(total));
+    recorder.getAndIncrement(offset + HISTOGRAM + bucket);
+  }
+
+  private static @NotNull AtomicLongArray getRecorder(final @NotNull ProtocolVersion protocolVersion) {
+    final int index = protocolVersion.ordinal();
+    final AtomicLongArray recorder = RECORDERS.get(index);
+    if (recorder != null) {
+      return recorder;
+    }
+    // Only the first recorder that has been set will be used
+    RECORDERS.compareAndSet(index, null, new AtomicLongArray(STRIPES * STRIDE));
+    return RECORDERS.get(index);
+  }
+
+  /**
+   * @return Snapshot of the traffic of all verifications per protocol version
+   */
+  public static @NotNull Map<ProtocolVersion, VerificationTraffic> snapshot() {
+    final Map<ProtocolVersion, VerificationTraffic> snapshot = new EnumMap<>(ProtocolVersion.class);
+    for (int i = 0; i < PROTOCOL_VERSIONS.length; i++) {
+      final AtomicLongArray recorder = RECORDERS.get(i);
+      if (recorder != null) {
+        snapshot.put(PROTOCOL_VERSIONS[i], snapshot(recorder));
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return Snapshot of the traffic of all verifications of all protocol versions
+   */
+  public static @NotNull VerificationTraffic total() {
+    VerificationTraffic total = VerificationTraffic.empty();
+    for (final VerificationTraffic traffic : snapshot().values()) {
+      total = total.merge(traffic);
+    }
+    return total;
+  }
+
+  private static @NotNull VerificationTraffic snapshot(final @NotNull AtomicLongArray recorder) {
+    long connections = 0L;
+    final long[] reached = new long[STAGES], incoming = new long[STAGES], outgoing = new long[STAGES];
+    final long[] histogram = new long[HISTOGRAM_BUCKETS];
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      final int offset = stripe * STRIDE;
+      connections += recorder.get(offset + CONNECTIONS);
+      for (int stage = 0; stage < STAGES; stage++) {
+        reached[stage] += recorder.get(offset + REACHED + stage);
+        incoming[stage] += recorder.get(offset + INCOMING + stage);
+        outgoing[stage] += recorder.get(offset + OUTGOING + stage);
+      }
+      for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+        histogram[bucket] += recorder.get(offset + HISTOGRAM + bucket);
+      }
+    }
+    return new VerificationTraffic(connections, reached, incoming, outgoing, histogram);
+  }
+}
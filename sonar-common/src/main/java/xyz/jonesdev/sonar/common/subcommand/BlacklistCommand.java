@@ -24,10 +24,18 @@
 import xyz.jonesdev.sonar.api.command.CommandInvocation;
 import xyz.jonesdev.sonar.api.command.subcommand.Subcommand;
 import xyz.jonesdev.sonar.api.command.subcommand.SubcommandInfo;
+import xyz.jonesdev.sonar.common.firewall.BlacklistFirewallExporter;
+import xyz.jonesdev.sonar.common.transfer.BulkTransfer;
+import xyz.jonesdev.sonar.common.transfer.TransferDataset;
+import xyz.jonesdev.sonar.common.transfer.TransferRecord;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
 
 @SubcommandInfo(
   name = "blacklist",
-  arguments = {"add", "remove", "clear", "size"}
+  arguments = {"add", "remove", "clear", "size", "import", "export", "prune"}
 )
 public final class BlacklistCommand extends Subcommand {
 
@@ -63,6 +71,8 @@ protected void execute(final @NotNull CommandInvocation invocation) {
 
         // Blacklist the given IP address
         Sonar.get().getFallback().getBlacklist().put(rawAddress, 1337 /* arbitrarily high number */);
+        Sonar.get().getFallback().getBlacklistFilter().add(rawAddress);
+        BlacklistFirewallExporter.INSTANCE.add(rawAddress);
         invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
           Sonar.get().getConfig().getMessagesConfig().getString("commands.blacklist.add"),
           Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
@@ -126,6 +136,94 @@ protected void execute(final @NotNull CommandInvocation invocation) {
         break;
       }
 
+      case "import": {
+        if (invocation.getRawArguments().length <= 2) {
+          incorrectUsage(invocation.getSource(), "blacklist import <file>");
+          return;
+        }
+
+        BulkTransferCommands.importFile(invocation.getSource(), invocation.getRawArguments()[2],
+          TransferDataset.BLACKLIST, batch -> {
+            final int threshold = Sonar.get().getConfig().getVerification().getBlacklistThreshold();
+            for (final TransferRecord record : batch) {
+              final int score = (int) Math.min(Integer.MAX_VALUE, Math.max(1L, record.getValue()));
+              final Integer previousScore = Sonar.get().getFallback().getBlacklist().asMap()
+                .put(record.getHostAddress(), score);
+              // Make sure the blacklist filter knows about the new entry
+              if (previousScore == null) {
+                Sonar.get().getFallback().getBlacklistFilter().add(record.getHostAddress());
+              }
+              if (threshold > 0 && score >= threshold) {
+                BlacklistFirewallExporter.INSTANCE.add(record.getHostAddress());
+              }
+            }
+          });
+        break;
+      }
+
+      case "export": {
+        if (invocation.getRawArguments().length <= 2) {
+          incorrectUsage(invocation.getSource(), "blacklist export <file>");
+          return;
+        }
+
+        BulkTransferCommands.exportFile(invocation.getSource(), invocation.getRawArguments()[2],
+          TransferDataset.BLACKLIST, consumer -> {
+            for (final Map.Entry<String, Integer> entry : Sonar.get().getFallback().getBlacklist().asMap().entrySet()) {
+              consumer.accept(new TransferRecord(entry.getKey(), null, entry.getValue()));
+            }
+          });
+        break;
+      }
+
+      case "prune": {
+        int threshold = Sonar.get().getConfig().getVerification().getBlacklistThreshold();
+        if (invocation.getRawArguments().length > 2) {
+          try {
+            threshold = Integer.parseInt(invocation.getRawArguments()[2]);
+          } catch (NumberFormatException exception) {
+            threshold = -1;
+          }
+        }
+        // Make sure the given threshold is valid
+        if (threshold < 0) {
+          invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+            Sonar.get().getConfig().getMessagesConfig().getString("commands.invalid-number"),
+            Placeholder.component("prefix", Sonar.get().getConfig().getPrefix())));
+          return;
+        }
+
+        // Iterating over a large blacklist might take a while, so we don't want to block the command
+        final int minimumScore = threshold;
+        final CompletableFuture<Long> future = BulkTransfer.submit(() -> {
+          final ConcurrentMap<String, Integer> blacklist = Sonar.get().getFallback().getBlacklist().asMap();
+          long removed = 0L;
+          for (final Map.Entry<String, Integer> entry : blacklist.entrySet()) {
+            if (entry.getValue() < minimumScore && blacklist.remove(entry.getKey(), entry.getValue())) {
+              removed++;
+            }
+          }
+          return removed;
+        });
+        if (future == null) {
+          BulkTransferCommands.sendRunning(invocation.getSource());
+          return;
+        }
+
+        future.whenComplete((amount, throwable) -> {
+          if (throwable != null) {
+            Sonar.get().getLogger().error("Error pruning the blacklist: {}", throwable);
+            return;
+          }
+          invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+            Sonar.get().getConfig().getMessagesConfig().getString("commands.blacklist.prune"),
+            Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+            Placeholder.unparsed("threshold", Integer.toString(minimumScore)),
+            Placeholder.unparsed("amount", Sonar.DECIMAL_FORMAT.format(amount))));
+        });
+        break;
+      }
+
       default: {
         incorrectUsage(invocation.getSource());
         break;
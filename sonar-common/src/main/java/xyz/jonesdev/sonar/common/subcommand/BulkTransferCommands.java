@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.subcommand;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.command.InvocationSource;
+import xyz.jonesdev.sonar.common.statistics.StatisticsHistory;
+import xyz.jonesdev.sonar.common.transfer.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shared implementation of all import and export subcommands
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class BulkTransferCommands {
+
+  static void importFile(final @NotNull InvocationSource source,
+                         final @NotNull String path,
+                         final @NotNull TransferDataset dataset,
+                         final @NotNull BulkTransfer.Sink sink) {
+    final File file = BulkTransfer.resolve(path);
+    final TransferFormat format = TransferFormat.fromFile(file);
+    if (format == null) {
+      send(source, "commands.transfer.invalid-format", file);
+      return;
+    }
+    if (!file.isFile()) {
+      send(source, "commands.transfer.file-not-found", file);
+      return;
+    }
+
+    final CompletableFuture<Long> future = BulkTransfer.transfer(consumer -> {
+      try (final TransferReader reader = format.openReader(file, dataset)) {
+        TransferRecord record;
+        while ((record = reader.read()) != null) {
+          consumer.accept(record);
+        }
+      }
+    }, sink, amount -> sendProgress(source, amount));
+    if (future == null) {
+      send(source, "commands.transfer.running", file);
+      return;
+    }
+
+    send(source, "commands.transfer.import-start", file);
+    future.whenComplete((amount, throwable) -> {
+      if (throwable != null) {
+        Sonar.get().getLogger().error("Error importing entries from {}: {}", file, throwable);
+        send(source, "commands.transfer.failed", file);
+        return;
+      }
+      sendDone(source, "commands.transfer.import", file, amount);
+    });
+  }
+
+  static void exportFile(final @NotNull InvocationSource source,
+                         final @NotNull String path,
+                         final @NotNull TransferDataset dataset,
+                         final @NotNull BulkTransfer.Source entries) {
+    final File file = BulkTransfer.resolve(path);
+    final TransferFormat format = TransferFormat.fromFile(file);
+    if (format == null) {
+      send(source, "commands.transfer.invalid-format", file);
+      return;
+    }
+    // Make sure we never overwrite an existing file by accident
+    if (file.exists()) {
+      send(source, "commands.transfer.file-exists", file);
+      return;
+    }
+
+    final TransferWriter writer;
+    try {
+      writer = format.openWriter(file, dataset);
+    } catch (IOException exception) {
+      Sonar.get().getLogger().error("Error exporting entries to {}: {}", file, exception);
+      send(source, "commands.transfer.failed", file);
+      return;
+    }
+
+    final CompletableFuture<Long> future = BulkTransfer.transfer(entries, new BulkTransfer.Sink() {
+      @Override
+      public void accept(final @NotNull List<TransferRecord> batch) throws IOException {
+        for (final TransferRecord record : batch) {
+          writer.write(record);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        writer.close();
+      }
+    }, amount -> sendProgress(source, amount));
+    if (future == null) {
+      closeAndDelete(writer, file);
+      send(source, "commands.transfer.running", file);
+      return;
+    }
+
+    send(source, "commands.transfer.export-start", file);
+    future.whenComplete((amount, throwable) -> {
+      if (throwable != null) {
+        Sonar.get().getLogger().error("Error exporting entries to {}: {}", file, throwable);
+        // Make sure an incomplete file can't be imported later on
+        closeAndDelete(writer, file);
+        send(source, "commands.transfer.failed", file);
+        return;
+      }
+      sendDone(source, "commands.transfer.export", file, amount);
+    });
+  }
+
+  static void exportHistory(final @NotNull InvocationSource source,
+                            final @NotNull String path,
+                            final long since) {
+    final File file = BulkTransfer.resolve(path);
+    // Make sure we never overwrite an existing file by accident
+    if (file.exists()) {
+      send(source, "commands.transfer.file-exists", file);
+      return;
+    }
+
+    final CompletableFuture<Long> future = BulkTransfer.submit(() -> {
+      try (final BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+        writer.write(StatisticsHistory.Sample.CSV_HEADER);
+        writer.newLine();
+        final long[] exported = new long[1];
+        StatisticsHistory.INSTANCE.forEach(since, sample -> {
+          try {
+            writer.write(sample.toCsv());
+            writer.newLine();
+            exported[0]++;
+          } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+          }
+        });
+        return exported[0];
+      }
+    });
+    if (future == null) {
+      send(source, "commands.transfer.running", file);
+      return;
+    }
+
+    send(source, "commands.transfer.export-start", file);
+    future.whenComplete((amount, throwable) -> {
+      if (throwable != null) {
+        Sonar.get().getLogger().error("Error exporting statistics history to {}: {}", file, throwable);
+        try {
+          Files.deleteIfExists(file.toPath());
+        } catch (IOException exception) {
+          Sonar.get().getLogger().error("Error deleting incomplete file {}: {}", file, exception);
+        }
+        send(source, "commands.transfer.failed", file);
+        return;
+      }
+      sendDone(source, "commands.transfer.export", file, amount);
+    });
+  }
+
+  private static void closeAndDelete(final @NotNull TransferWriter writer, final @NotNull File file) {
+    try {
+      writer.close();
+    } catch (IOException ignored) {
+      // The file is deleted anyway
+    }
+    try {
+      Files.deleteIfExists(file.toPath());
+    } catch (IOException exception) {
+      Sonar.get().getLogger().error("Error deleting incomplete file {}: {}", file, exception);
+    }
+  }
+
+  static void sendRunning(final @NotNull InvocationSource source) {
+    source.sendMessage(MiniMessage.miniMessage().deserialize(
+      Sonar.get().getConfig().getMessagesConfig().getString("commands.transfer.running"),
+      Placeholder.component("prefix", Sonar.get().getConfig().getPrefix())));
+  }
+
+  private static void sendProgress(final @NotNull InvocationSource source, final long amount) {
+    source.sendMessage(MiniMessage.miniMessage().deserialize(
+      Sonar.get().getConfig().getMessagesConfig().getString("commands.transfer.progress"),
+      Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+      Placeholder.unparsed("amount", Sonar.DECIMAL_FORMAT.format(amount))));
+  }
+
+  private static void sendDone(final @NotNull InvocationSource source, final @NotNull String key,
+                               final @NotNull File file, final long amount) {
+    source.sendMessage(MiniMessage.miniMessage().deserialize(
+      Sonar.get().getConfig().getMessagesConfig().getString(key),
+      Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+      Placeholder.unparsed("file", file.getPath()),
+      Placeholder.unparsed("amount", Sonar.DECIMAL_FORMAT.format(amount))));
+  }
+
+  private static void send(final @NotNull InvocationSource source, final @NotNull String key, final @NotNull File file) {
+    source.sendMessage(MiniMessage.miniMessage().deserialize(
+      Sonar.get().getConfig().getMessagesConfig().getString(key),
+      Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+      Placeholder.unparsed("file", file.getPath())));
+  }
+}
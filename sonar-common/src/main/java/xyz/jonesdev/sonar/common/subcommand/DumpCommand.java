@@ -26,6 +26,11 @@
 import xyz.jonesdev.sonar.api.command.CommandInvocation;
 import xyz.jonesdev.sonar.api.command.subcommand.Subcommand;
 import xyz.jonesdev.sonar.api.command.subcommand.SubcommandInfo;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.controller.LatencyMetric;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerController;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerIndex;
+import xyz.jonesdev.sonar.api.filter.InetAddressFilter;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
@@ -72,6 +77,22 @@ protected void execute(final @NotNull CommandInvocation invocation) {
       formatMemory(getFreeMemory()),
       formatMemory(getUsedMemory())
     ));
+    mappings.put("filters", new Dump.Filters(
+      new Dump.Filter(Sonar.get().getFallback().getBlacklistFilter()),
+      new Dump.Filter(Sonar.get().getVerifiedPlayerController().getFilter())
+    ));
+    mappings.put("verifiedIndex", new Dump.Index(Sonar.get().getVerifiedPlayerController().getIndex()));
+    final VerifiedPlayerController.Metrics databaseMetrics = Sonar.get().getVerifiedPlayerController().getMetrics();
+    mappings.put("database", new Dump.Database(
+      Sonar.get().getVerifiedPlayerController().getCachedDatabaseType(),
+      Sonar.get().getVerifiedPlayerController().isFullyCached(),
+      Sonar.get().getVerifiedPlayerController().getPendingWrites(),
+      new Dump.Latency(databaseMetrics.getConnectionWait()),
+      new Dump.Latency(databaseMetrics.getLookup()),
+      new Dump.Latency(databaseMetrics.getWrite()),
+      new Dump.Latency(databaseMetrics.getExpiry()),
+      new Dump.Latency(databaseMetrics.getSync())
+    ));
     Sonar.get().getLogger().info(Sonar.get().getConfig().getMessagesConfig().getString("commands.dump.log")
       .replace("<dumped-json-data>", GSON.toJson(mappings)));
   }
@@ -104,6 +125,61 @@ private static final class Memory {
       private final String used;
     }
 
+    @RequiredArgsConstructor
+    private static final class Filters {
+      private final Filter blacklist;
+      private final Filter verified;
+    }
+
+    private static final class Filter {
+      private final String memory;
+      private final double falsePositiveRate;
+
+      Filter(final @NotNull InetAddressFilter filter) {
+        this.memory = formatMemory(filter.getMemoryUsage());
+        this.falsePositiveRate = filter.estimateFalsePositiveRate();
+      }
+    }
+
+    private static final class Index {
+      private final int addresses;
+      private final int entries;
+      private final String memory;
+      private final double bytesPerEntry;
+
+      Index(final @NotNull VerifiedPlayerIndex index) {
+        this.addresses = index.size();
+        this.entries = index.entries();
+        final long memoryUsage = index.getMemoryUsage();
+        this.memory = formatMemory(memoryUsage);
+        this.bytesPerEntry = entries == 0 ? 0D : Math.round(memoryUsage * 10D / entries) / 10D;
+      }
+    }
+
+    @RequiredArgsConstructor
+    private static final class Database {
+      private final SonarConfiguration.Database.Type type;
+      private final boolean fullyCached;
+      private final int pendingWrites;
+      private final Latency connectionWait;
+      private final Latency lookup;
+      private final Latency write;
+      private final Latency expiry;
+      private final Latency sync;
+    }
+
+    private static final class Latency {
+      private final long count;
+      private final double averageMillis;
+      private final double maximumMillis;
+
+      Latency(final @NotNull LatencyMetric metric) {
+        this.count = metric.getCount();
+        this.averageMillis = Math.round(metric.getAverageMillis() * 100D) / 100D;
+        this.maximumMillis = Math.round(metric.getMaximumMillis() * 100D) / 100D;
+      }
+    }
+
     @RequiredArgsConstructor
     private static final class OS {
       private final String name;
@@ -26,7 +26,16 @@
 import xyz.jonesdev.sonar.api.command.CommandInvocation;
 import xyz.jonesdev.sonar.api.command.subcommand.Subcommand;
 import xyz.jonesdev.sonar.api.command.subcommand.SubcommandInfo;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
+import xyz.jonesdev.sonar.api.statistics.HeavyHitters;
+import xyz.jonesdev.sonar.api.statistics.LatencyHistogram;
+import xyz.jonesdev.sonar.api.statistics.VerificationTraffic;
 import xyz.jonesdev.sonar.common.statistics.BandwidthStatistics;
+import xyz.jonesdev.sonar.common.statistics.StatisticsHistory;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 import static xyz.jonesdev.sonar.api.Sonar.DECIMAL_FORMAT;
 import static xyz.jonesdev.sonar.api.profiler.SimpleProcessProfiler.*;
@@ -34,10 +43,13 @@
 @SubcommandInfo(
   name = "statistics",
   aliases = {"stats"},
-  arguments = {"network", "memory", "cpu"},
+  arguments = {"network", "memory", "cpu", "sources", "traffic", "stages", "history"},
   argumentsRequired = false
 )
 public final class StatisticsCommand extends Subcommand {
+  private static final int HISTORY_ROWS = 10;
+  private static final DateTimeFormatter HISTORY_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss")
+    .withZone(ZoneId.systemDefault());
 
   @Override
   protected void execute(final @NotNull CommandInvocation invocation) {
@@ -54,11 +66,13 @@ protected void execute(final @NotNull CommandInvocation invocation) {
       }
     }
 
-    invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
-      Sonar.get().getConfig().getMessagesConfig().getString("commands.statistics.header"),
-      Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
-      Placeholder.unparsed("statistics-type", type)));
-    invocation.getSource().sendMessage(Component.empty());
+    // The history has its own arguments and is rendered row by row
+    if (type.equals("history")) {
+      history(invocation);
+      return;
+    }
+
+    sendHeader(invocation, type);
 
     TagResolver.@NotNull Single[] placeholders = null;
 
@@ -116,10 +130,134 @@ protected void execute(final @NotNull CommandInvocation invocation) {
         };
         break;
       }
+
+      case "sources": {
+        placeholders = new TagResolver.Single[]{
+          Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+          Placeholder.unparsed("top-subnets", HeavyHitters.format(Sonar.get().getStatistics().getTopSubnets(5), ", ")),
+          Placeholder.unparsed("top-protocols", HeavyHitters.format(Sonar.get().getStatistics().getTopProtocols(5), ", ")),
+          Placeholder.unparsed("top-hostnames", HeavyHitters.format(Sonar.get().getStatistics().getTopHostnames(5), ", ")),
+          Placeholder.unparsed("hostname-rejections", DECIMAL_FORMAT.format(Sonar.get().getStatistics().getTotalHostnameRejections()))
+        };
+        break;
+      }
+
+      case "traffic": {
+        final VerificationTraffic traffic = Sonar.get().getStatistics().getTotalVerificationTraffic();
+        final FallbackStage[] stages = FallbackStage.values();
+        placeholders = new TagResolver.Single[stages.length + 5];
+        placeholders[0] = Placeholder.component("prefix", Sonar.get().getConfig().getPrefix());
+        placeholders[1] = Placeholder.unparsed("verifications", DECIMAL_FORMAT.format(traffic.getConnections()));
+        placeholders[2] = Placeholder.unparsed("average-traffic", formatMemory(traffic.getAverageBytes()));
+        placeholders[3] = Placeholder.unparsed("median-traffic", formatMemory(traffic.getBytesPercentile(0.5)));
+        placeholders[4] = Placeholder.unparsed("p99-traffic", formatMemory(traffic.getBytesPercentile(0.99)));
+        // Every stage has its own placeholder, e.g. <login> or <captcha>
+        for (final FallbackStage stage : stages) {
+          placeholders[stage.ordinal() + 5] = Placeholder.unparsed(stage.name().toLowerCase(),
+            DECIMAL_FORMAT.format(traffic.getReached(stage))
+              + " (" + formatMemory(traffic.getIncomingBytes(stage))
+              + " in, " + formatMemory(traffic.getOutgoingBytes(stage)) + " out)");
+        }
+        break;
+      }
+
+      case "stages": {
+        final FallbackStage[] stages = FallbackStage.values();
+        placeholders = new TagResolver.Single[stages.length + 2];
+        placeholders[0] = Placeholder.component("prefix", Sonar.get().getConfig().getPrefix());
+        placeholders[1] = Placeholder.unparsed("verified", DECIMAL_FORMAT.format(Sonar.get().getStatistics().getTotalSuccessfulVerifications()));
+        // Every stage has its own placeholder, e.g. <login> or <captcha>
+        for (final FallbackStage stage : stages) {
+          final LatencyHistogram latency = Sonar.get().getStatistics().getStageLatency(stage);
+          placeholders[stage.ordinal() + 2] = Placeholder.unparsed(stage.name().toLowerCase(),
+            DECIMAL_FORMAT.format(Sonar.get().getStatistics().getReachedStage(stage))
+              + " (" + DECIMAL_FORMAT.format(latency.getPercentileMillis(0.5))
+              + "ms median, " + DECIMAL_FORMAT.format(latency.getPercentileMillis(0.99)) + "ms p99)");
+        }
+        break;
+      }
     }
 
     for (final String msg : Sonar.get().getConfig().getMessagesConfig().getStringList("commands.statistics." + type)) {
       invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(msg, placeholders));
     }
   }
+
+  private static void sendHeader(final @NotNull CommandInvocation invocation, final @NotNull String type) {
+    invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+      Sonar.get().getConfig().getMessagesConfig().getString("commands.statistics.header"),
+      Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+      Placeholder.unparsed("statistics-type", type)));
+    invocation.getSource().sendMessage(Component.empty());
+  }
+
+  private void history(final @NotNull CommandInvocation invocation) {
+    final String[] arguments = invocation.getRawArguments();
+    // /sonar statistics history export <file> [minutes]
+    final boolean export = arguments.length >= 3 && arguments[2].equalsIgnoreCase("export");
+    if (export && arguments.length < 4) {
+      incorrectUsage(invocation.getSource(), "statistics history export <file> [minutes]");
+      return;
+    }
+
+    final int minutesIndex = export ? 4 : 2;
+    int minutes = export ? StatisticsHistory.CAPACITY / 60 : HISTORY_ROWS;
+    if (arguments.length > minutesIndex) {
+      try {
+        minutes = Integer.parseInt(arguments[minutesIndex]);
+      } catch (NumberFormatException exception) {
+        minutes = -1;
+      }
+    }
+    // Make sure the window is within the recorded history
+    if (minutes <= 0 || minutes > StatisticsHistory.CAPACITY / 60) {
+      invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+        Sonar.get().getConfig().getMessagesConfig().getString("commands.invalid-number"),
+        Placeholder.component("prefix", Sonar.get().getConfig().getPrefix())));
+      return;
+    }
+
+    final long since = System.currentTimeMillis() / 1000L - minutes * 60L;
+    if (export) {
+      BulkTransferCommands.exportHistory(invocation.getSource(), arguments[3], since);
+      return;
+    }
+
+    // Every row shows the peak values (and the number of failed verifications) of a part of the window
+    final long rowSeconds = Math.max(1L, minutes * 60L / HISTORY_ROWS);
+    final long[][] rows = new long[HISTORY_ROWS][7];
+    final long samples = StatisticsHistory.INSTANCE.forEach(since, sample -> {
+      final long[] row = rows[(int) Math.min(HISTORY_ROWS - 1, (sample.getTimestamp() - since) / rowSeconds)];
+      row[0]++;
+      row[1] = Math.max(row[1], sample.getConnections());
+      row[2] = Math.max(row[2], sample.getLogins());
+      row[3] = Math.max(row[3], sample.getVerifying());
+      row[4] = Math.max(row[4], sample.getQueued());
+      row[5] += sample.getFailed();
+      row[6] = Math.max(row[6], sample.getIncomingBytes());
+    });
+    if (samples == 0L) {
+      invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+        Sonar.get().getConfig().getMessagesConfig().getString("commands.statistics.history-empty"),
+        Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+        Placeholder.unparsed("minutes", DECIMAL_FORMAT.format(minutes))));
+      return;
+    }
+
+    sendHeader(invocation, "history");
+    for (int i = 0; i < HISTORY_ROWS; i++) {
+      final long[] row = rows[i];
+      // Skip all parts of the window without any samples
+      if (row[0] == 0L) continue;
+      invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+        Sonar.get().getConfig().getMessagesConfig().getString("commands.statistics.history"),
+        Placeholder.unparsed("time", HISTORY_TIME_FORMAT.format(Instant.ofEpochSecond(since + i * rowSeconds))),
+        Placeholder.unparsed("connections", DECIMAL_FORMAT.format(row[1])),
+        Placeholder.unparsed("logins", DECIMAL_FORMAT.format(row[2])),
+        Placeholder.unparsed("verifying", DECIMAL_FORMAT.format(row[3])),
+        Placeholder.unparsed("queued", DECIMAL_FORMAT.format(row[4])),
+        Placeholder.unparsed("failed", DECIMAL_FORMAT.format(row[5])),
+        Placeholder.unparsed("incoming-traffic", formatMemory(row[6]))));
+    }
+  }
 }
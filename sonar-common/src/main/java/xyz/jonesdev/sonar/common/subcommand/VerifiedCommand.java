@@ -24,14 +24,21 @@
 import xyz.jonesdev.sonar.api.command.CommandInvocation;
 import xyz.jonesdev.sonar.api.command.subcommand.Subcommand;
 import xyz.jonesdev.sonar.api.command.subcommand.SubcommandInfo;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerController;
 import xyz.jonesdev.sonar.api.database.model.VerifiedPlayer;
+import xyz.jonesdev.sonar.common.transfer.TransferDataset;
+import xyz.jonesdev.sonar.common.transfer.TransferRecord;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @SubcommandInfo(
   name = "verified",
-  arguments = {"add", "remove", "clear", "size", "history"}
+  arguments = {"add", "remove", "clear", "size", "history", "migrate", "import", "export", "prune"}
 )
 public final class VerifiedCommand extends Subcommand {
 
@@ -161,6 +168,127 @@ protected void execute(final @NotNull CommandInvocation invocation) {
         break;
       }
 
+      case "migrate": {
+        if (invocation.getRawArguments().length <= 2) {
+          incorrectUsage(invocation.getSource(), "verified migrate <type>");
+          return;
+        }
+
+        // Make sure we only migrate from a different database
+        final SonarConfiguration.Database.Type currentType = Sonar.get().getVerifiedPlayerController().getCachedDatabaseType();
+        final SonarConfiguration.Database.Type source = Arrays.stream(SonarConfiguration.Database.Type.values())
+          .filter(type -> type.name().equalsIgnoreCase(invocation.getRawArguments()[2]))
+          .findFirst()
+          .orElse(null);
+        if (source == null || source == currentType
+          || source == SonarConfiguration.Database.Type.NONE
+          || currentType == SonarConfiguration.Database.Type.NONE) {
+          invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+            Sonar.get().getConfig().getMessagesConfig().getString("commands.verified.migrate-invalid"),
+            Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+            Placeholder.unparsed("types", Arrays.stream(SonarConfiguration.Database.Type.values())
+              .filter(type -> type != currentType && type != SonarConfiguration.Database.Type.NONE)
+              .map(Enum::name)
+              .collect(Collectors.joining(", ")))));
+          return;
+        }
+
+        invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+          Sonar.get().getConfig().getMessagesConfig().getString("commands.verified.migrate-start"),
+          Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+          Placeholder.unparsed("type", source.getDisplayName())));
+
+        // The migration might take a while, so we don't want to block the command
+        Sonar.get().getVerifiedPlayerController().migrate(source).whenComplete((amount, throwable) -> {
+          if (throwable != null) {
+            invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+              Sonar.get().getConfig().getMessagesConfig().getString("commands.verified.migrate-failed"),
+              Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+              Placeholder.unparsed("type", source.getDisplayName())));
+            return;
+          }
+          invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+            Sonar.get().getConfig().getMessagesConfig().getString("commands.verified.migrate"),
+            Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+            Placeholder.unparsed("type", source.getDisplayName()),
+            Placeholder.unparsed("amount", Sonar.DECIMAL_FORMAT.format(amount))));
+        });
+        break;
+      }
+
+      case "import": {
+        if (invocation.getRawArguments().length <= 2) {
+          incorrectUsage(invocation.getSource(), "verified import <file>");
+          return;
+        }
+
+        final VerifiedPlayerController controller = Sonar.get().getVerifiedPlayerController();
+        BulkTransferCommands.importFile(invocation.getSource(), invocation.getRawArguments()[2],
+          TransferDataset.VERIFIED, batch -> {
+            for (final TransferRecord record : batch) {
+              controller.add(new VerifiedPlayer(record.getHostAddress(),
+                Objects.requireNonNull(record.getUuid()), record.getValue()));
+            }
+            // Make sure we don't read the file faster than we can write to the database
+            controller.flush().join();
+          });
+        break;
+      }
+
+      case "export": {
+        if (invocation.getRawArguments().length <= 2) {
+          incorrectUsage(invocation.getSource(), "verified export <file>");
+          return;
+        }
+
+        final VerifiedPlayerController controller = Sonar.get().getVerifiedPlayerController();
+        BulkTransferCommands.exportFile(invocation.getSource(), invocation.getRawArguments()[2],
+          TransferDataset.VERIFIED, consumer -> controller.export(player -> consumer.accept(
+            new TransferRecord(player.getInetAddress(), player.getPlayerUuid(), player.getTimestamp().getTime()))));
+        break;
+      }
+
+      case "prune": {
+        if (invocation.getRawArguments().length <= 2) {
+          incorrectUsage(invocation.getSource(), "verified prune <days>");
+          return;
+        }
+
+        int days;
+        try {
+          days = Integer.parseInt(invocation.getRawArguments()[2]);
+        } catch (NumberFormatException exception) {
+          days = -1;
+        }
+        // Make sure the given number of days is valid
+        if (days < 0) {
+          invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+            Sonar.get().getConfig().getMessagesConfig().getString("commands.invalid-number"),
+            Placeholder.component("prefix", Sonar.get().getConfig().getPrefix())));
+          return;
+        }
+
+        invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+          Sonar.get().getConfig().getMessagesConfig().getString("commands.verified.prune-start"),
+          Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+          Placeholder.unparsed("days", Integer.toString(days))));
+
+        // Removing a lot of players might take a while, so we don't want to block the command
+        Sonar.get().getVerifiedPlayerController().prune(days).whenComplete((amount, throwable) -> {
+          if (throwable != null) {
+            invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+              Sonar.get().getConfig().getMessagesConfig().getString("commands.verified.prune-failed"),
+              Placeholder.component("prefix", Sonar.get().getConfig().getPrefix())));
+            return;
+          }
+          invocation.getSource().sendMessage(MiniMessage.miniMessage().deserialize(
+            Sonar.get().getConfig().getMessagesConfig().getString("commands.verified.prune"),
+            Placeholder.component("prefix", Sonar.get().getConfig().getPrefix()),
+            Placeholder.unparsed("amount", Sonar.DECIMAL_FORMAT.format(amount))));
+        });
+        break;
+      }
+
       default: {
         incorrectUsage(invocation.getSource());
         break;
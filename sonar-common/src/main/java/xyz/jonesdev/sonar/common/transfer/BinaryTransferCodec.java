@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.transfer;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.util.UUID;
+
+/**
+ * Compact binary format for large lists.
+ * <br>
+ * The file starts with a magic number, the format version and the dataset.
+ * Every entry consists of the length of the IP address, the raw IP address,
+ * the UUID (only for verified players) and the timestamp or score.
+ * The file ends with an IP address length of 0, so truncated files can be detected.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class BinaryTransferCodec {
+  private static final int MAGIC = 0x534F4E58; // SONX
+  private static final byte VERSION = 1;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  static final class Reader implements TransferReader {
+    private final DataInputStream inputStream;
+    private final TransferDataset dataset;
+    private final byte[] ipv4 = new byte[4], ipv6 = new byte[16];
+    private boolean finished;
+
+    Reader(final @NotNull InputStream inputStream, final @NotNull TransferDataset dataset) throws IOException {
+      this.inputStream = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+      this.dataset = dataset;
+      try {
+        if (this.inputStream.readInt() != MAGIC || this.inputStream.readByte() != VERSION) {
+          throw new IOException("Unsupported file format");
+        }
+        // Make sure we don't import a file into the wrong list
+        final TransferDataset fileDataset = TransferDataset.fromId(this.inputStream.readByte());
+        if (fileDataset != dataset) {
+          throw new IOException("File contains a different list: " + fileDataset);
+        }
+      } catch (IOException exception) {
+        this.inputStream.close();
+        throw exception;
+      }
+    }
+
+    @Override
+    public @Nullable TransferRecord read() throws IOException {
+      if (finished) {
+        return null;
+      }
+      final int addressLength = inputStream.readUnsignedByte();
+      if (addressLength == 0) {
+        finished = true;
+        return null;
+      }
+      final byte[] address;
+      if (addressLength == 4) {
+        address = ipv4;
+      } else if (addressLength == 16) {
+        address = ipv6;
+      } else {
+        throw new IOException("Invalid IP address length: " + addressLength);
+      }
+      inputStream.readFully(address);
+      final String hostAddress = InetAddress.getByAddress(address).getHostAddress();
+      final UUID uuid = dataset.isWithUuid() ? new UUID(inputStream.readLong(), inputStream.readLong()) : null;
+      return new TransferRecord(hostAddress, uuid, inputStream.readLong());
+    }
+
+    @Override
+    public void close() throws IOException {
+      inputStream.close();
+    }
+  }
+
+  static final class Writer implements TransferWriter {
+    private final DataOutputStream outputStream;
+
+    Writer(final @NotNull OutputStream outputStream, final @NotNull TransferDataset dataset) throws IOException {
+      this.outputStream = new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+      this.outputStream.writeInt(MAGIC);
+      this.outputStream.writeByte(VERSION);
+      this.outputStream.writeByte(dataset.getId());
+    }
+
+    @Override
+    public void write(final @NotNull TransferRecord record) throws IOException {
+      final byte[] address = TransferAddresses.parse(record.getHostAddress()).getAddress();
+      outputStream.writeByte(address.length);
+      outputStream.write(address);
+      if (record.getUuid() != null) {
+        outputStream.writeLong(record.getUuid().getMostSignificantBits());
+        outputStream.writeLong(record.getUuid().getLeastSignificantBits());
+      }
+      outputStream.writeLong(record.getValue());
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        // Mark the end of the file
+        outputStream.writeByte(0);
+      } finally {
+        outputStream.close();
+      }
+    }
+  }
+}
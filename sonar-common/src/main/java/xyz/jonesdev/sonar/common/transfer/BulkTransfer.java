@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.transfer;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.jonesdev.sonar.api.Sonar;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Streams entries from a source to a sink in the background.
+ * <br>
+ * The source and the sink run in separate threads and are connected by a bounded queue of batches,
+ * so neither the entire file nor the entire list ever has to be kept in memory,
+ * and a slow sink (e.g. the database) automatically slows down the source.
+ * Only one transfer can run at a time.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class BulkTransfer {
+  // One thread for the source and one thread for the sink
+  private static final ExecutorService TRANSFER_SERVICE = Executors.newFixedThreadPool(2);
+  private static final int BATCH_SIZE = 1000;
+  private static final int QUEUE_CAPACITY = 16;
+  // Progress is reported every 100,000 entries
+  private static final long PROGRESS_INTERVAL = 100000L;
+  private static final List<TransferRecord> END = Collections.emptyList();
+  private static final AtomicBoolean RUNNING = new AtomicBoolean();
+
+  public interface Source {
+    void produce(final @NotNull Consumer<TransferRecord> consumer) throws Exception;
+  }
+
+  public interface Sink extends AutoCloseable {
+    void accept(final @NotNull List<TransferRecord> batch) throws Exception;
+
+    @Override
+    default void close() throws Exception {
+    }
+  }
+
+  /**
+   * Resolves the path relative to the plugin folder unless it is absolute
+   */
+  public static @NotNull File resolve(final @NotNull String path) {
+    return new File(path).isAbsolute() ? new File(path)
+      : new File(Sonar.get().getConfig().getPluginFolder(), path);
+  }
+
+  /**
+   * Starts streaming all entries of the source to the sink.
+   * The sink is always closed once the transfer has finished or failed.
+   *
+   * @param source   Source of the entries
+   * @param sink     Sink of the entries
+   * @param progress Called with the number of transferred entries every once in a while
+   * @return Future completed with the number of transferred entries or null if another transfer is running
+   */
+  public static @Nullable CompletableFuture<Long> transfer(final @NotNull Source source,
+                                                           final @NotNull Sink sink,
+                                                           final @NotNull LongConsumer progress) {
+    if (!RUNNING.compareAndSet(false, true)) {
+      return null;
+    }
+
+    final CompletableFuture<Long> future = new CompletableFuture<>();
+    final BlockingQueue<List<TransferRecord>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    TRANSFER_SERVICE.execute(() -> {
+      final Producer producer = new Producer(queue, future);
+      try {
+        source.produce(producer);
+        producer.finish();
+      } catch (Throwable throwable) {
+        future.completeExceptionally(throwable);
+      }
+    });
+
+    TRANSFER_SERVICE.execute(() -> {
+      long transferred = 0L;
+      try (sink) {
+        while (!future.isDone()) {
+          final List<TransferRecord> batch = queue.poll(1L, TimeUnit.SECONDS);
+          if (batch == null) continue;
+          if (batch == END) break;
+
+          sink.accept(batch);
+          final long previous = transferred;
+          transferred += batch.size();
+          if (transferred / PROGRESS_INTERVAL != previous / PROGRESS_INTERVAL) {
+            progress.accept(transferred);
+          }
+        }
+      } catch (Throwable throwable) {
+        future.completeExceptionally(throwable);
+      }
+      // This does nothing if the source has failed
+      future.complete(transferred);
+    });
+
+    return future.whenComplete((amount, throwable) -> RUNNING.set(false));
+  }
+
+  /**
+   * Runs a long-running operation on the transfer thread,
+   * so it can't run at the same time as a transfer.
+   *
+   * @return Future completed with the result of the task or null if a transfer is running
+   */
+  public static @Nullable CompletableFuture<Long> submit(final @NotNull Callable<Long> task) {
+    if (!RUNNING.compareAndSet(false, true)) {
+      return null;
+    }
+
+    final CompletableFuture<Long> future = new CompletableFuture<>();
+    TRANSFER_SERVICE.execute(() -> {
+      try {
+        future.complete(task.call());
+      } catch (Throwable throwable) {
+        future.completeExceptionally(throwable);
+      }
+    });
+    return future.whenComplete((result, throwable) -> RUNNING.set(false));
+  }
+
+  /**
+   * Collects the entries of the source into batches and hands them over to the sink
+   */
+  private static final class Producer implements Consumer<TransferRecord> {
+    private final BlockingQueue<List<TransferRecord>> queue;
+    private final CompletableFuture<Long> future;
+    private List<TransferRecord> batch = new ArrayList<>(BATCH_SIZE);
+
+    Producer(final @NotNull BlockingQueue<List<TransferRecord>> queue,
+             final @NotNull CompletableFuture<Long> future) {
+      this.queue = queue;
+      this.future = future;
+    }
+
+    @Override
+    public void accept(final @NotNull TransferRecord record) {
+      batch.add(record);
+      if (batch.size() >= BATCH_SIZE) {
+        publish(batch);
+        batch = new ArrayList<>(BATCH_SIZE);
+      }
+    }
+
+    void finish() {
+      if (!batch.isEmpty()) {
+        publish(batch);
+      }
+      publish(END);
+    }
+
+    private void publish(final @NotNull List<TransferRecord> batch) {
+      try {
+        // Wait for the sink to catch up, unless the sink has failed
+        while (!queue.offer(batch, 1L, TimeUnit.SECONDS)) {
+          if (future.isDone()) {
+            throw new CancellationException("The transfer has been aborted");
+          }
+        }
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("The transfer has been interrupted");
+      }
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.transfer;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Plain CSV with a header line, so the files can easily be edited or generated by other tools
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class CsvTransferCodec {
+  static final class Reader implements TransferReader {
+    private final BufferedReader reader;
+    private final TransferDataset dataset;
+    private long line;
+
+    Reader(final @NotNull InputStream inputStream, final @NotNull TransferDataset dataset) throws IOException {
+      this.reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 1 << 16);
+      this.dataset = dataset;
+      final String header = reader.readLine();
+      line++;
+      // Make sure we don't import a file into the wrong list
+      if (header == null || !header.trim().equalsIgnoreCase(dataset.getCsvHeader())) {
+        reader.close();
+        throw new IOException("Expected CSV header: " + dataset.getCsvHeader());
+      }
+    }
+
+    @Override
+    public @Nullable TransferRecord read() throws IOException {
+      String raw;
+      do {
+        raw = reader.readLine();
+        line++;
+        if (raw == null) {
+          return null;
+        }
+        raw = raw.trim();
+      } while (raw.isEmpty());
+
+      final String[] columns = raw.split(",", -1);
+      if (columns.length != (dataset.isWithUuid() ? 3 : 2)) {
+        throw new IOException("Invalid number of columns in line " + line);
+      }
+      try {
+        final String hostAddress = TransferAddresses.parse(columns[0].trim()).getHostAddress();
+        if (dataset.isWithUuid()) {
+          return new TransferRecord(hostAddress, UUID.fromString(columns[1].trim()), Long.parseLong(columns[2].trim()));
+        }
+        return new TransferRecord(hostAddress, null, Long.parseLong(columns[1].trim()));
+      } catch (IllegalArgumentException | IOException exception) {
+        throw new IOException("Invalid entry in line " + line, exception);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  static final class Writer implements TransferWriter {
+    private final BufferedWriter writer;
+
+    Writer(final @NotNull OutputStream outputStream, final @NotNull TransferDataset dataset) throws IOException {
+      this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 1 << 16);
+      writer.write(dataset.getCsvHeader());
+      writer.newLine();
+    }
+
+    @Override
+    public void write(final @NotNull TransferRecord record) throws IOException {
+      writer.write(record.getHostAddress());
+      writer.write(',');
+      if (record.getUuid() != null) {
+        writer.write(record.getUuid().toString());
+        writer.write(',');
+      }
+      writer.write(Long.toString(record.getValue()));
+      writer.newLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.transfer;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class TransferAddresses {
+
+  /**
+   * Parses an IPv4 or IPv6 address without ever performing a DNS lookup
+   *
+   * @throws IOException if the string is not an IP address
+   */
+  static @NotNull InetAddress parse(final @NotNull String raw) throws IOException {
+    boolean colon = false, hex = false;
+    for (int i = 0; i < raw.length(); i++) {
+      final char c = raw.charAt(i);
+      if (c == ':') {
+        colon = true;
+      } else if ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) {
+        hex = true;
+      } else if ((c < '0' || c > '9') && c != '.') {
+        throw new IOException("Invalid IP address: " + raw);
+      }
+    }
+    // Make sure the JDK doesn't treat the string as a hostname
+    if (raw.isEmpty() || (hex && !colon)) {
+      throw new IOException("Invalid IP address: " + raw);
+    }
+    try {
+      return InetAddress.getByName(raw);
+    } catch (UnknownHostException exception) {
+      throw new IOException("Invalid IP address: " + raw, exception);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.transfer;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+@Getter
+@RequiredArgsConstructor
+public enum TransferDataset {
+  VERIFIED((byte) 1, "ip_address,player_uuid,timestamp", true),
+  BLACKLIST((byte) 2, "ip_address,score", false);
+
+  // Written to binary files, so we can't import a file into the wrong list
+  private final byte id;
+  private final @NotNull String csvHeader;
+  private final boolean withUuid;
+
+  public static @Nullable TransferDataset fromId(final byte id) {
+    for (final TransferDataset dataset : values()) {
+      if (dataset.id == id) {
+        return dataset;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.transfer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Locale;
+
+public enum TransferFormat {
+  CSV {
+    @Override
+    public @NotNull TransferReader openReader(final @NotNull File file,
+                                              final @NotNull TransferDataset dataset) throws IOException {
+      return new CsvTransferCodec.Reader(Files.newInputStream(file.toPath()), dataset);
+    }
+
+    @Override
+    public @NotNull TransferWriter openWriter(final @NotNull File file,
+                                              final @NotNull TransferDataset dataset) throws IOException {
+      return new CsvTransferCodec.Writer(Files.newOutputStream(file.toPath()), dataset);
+    }
+  },
+  BINARY {
+    @Override
+    public @NotNull TransferReader openReader(final @NotNull File file,
+                                              final @NotNull TransferDataset dataset) throws IOException {
+      return new BinaryTransferCodec.Reader(Files.newInputStream(file.toPath()), dataset);
+    }
+
+    @Override
+    public @NotNull TransferWriter openWriter(final @NotNull File file,
+                                              final @NotNull TransferDataset dataset) throws IOException {
+      return new BinaryTransferCodec.Writer(Files.newOutputStream(file.toPath()), dataset);
+    }
+  };
+
+  public abstract @NotNull TransferReader openReader(final @NotNull File file,
+                                                     final @NotNull TransferDataset dataset) throws IOException;
+
+  public abstract @NotNull TransferWriter openWriter(final @NotNull File file,
+                                                     final @NotNull TransferDataset dataset) throws IOException;
+
+  /**
+   * @return Format of the file based on its extension or null if the extension is unknown
+   */
+  public static @Nullable TransferFormat fromFile(final @NotNull File file) {
+    final String name = file.getName().toLowerCase(Locale.ROOT);
+    if (name.endsWith(".csv")) {
+      return CSV;
+    }
+    if (name.endsWith(".bin")) {
+      return BINARY;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.common.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogRingBufferTest {
+
+  @Test
+  void requiresPowerOfTwo() {
+    assertThrows(IllegalArgumentException.class, () -> new LogRingBuffer<String>(6));
+  }
+
+  @Test
+  void keepsOrderAcrossWraparounds() {
+    final LogRingBuffer<Integer> buffer = new LogRingBuffer<>(4);
+    int next = 0, expected = 0;
+    // Every round uses different slots, so the positions wrap around many times
+    for (int round = 0; round < 100; round++) {
+      for (int i = 0; i < 3; i++) {
+        assertTrue(buffer.offer(next++));
+      }
+      for (int i = 0; i < 3; i++) {
+        assertEquals(expected++, buffer.poll());
+      }
+      assertNull(buffer.poll());
+    }
+  }
+
+  @Test
+  void discardsElementsOnceFull() {
+    final LogRingBuffer<String> buffer = new LogRingBuffer<>(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer("element " + i));
+    }
+    assertFalse(buffer.offer("discarded"));
+
+    // Polling frees exactly one slot
+    assertEquals("element 0", buffer.poll());
+    assertTrue(buffer.offer("element 4"));
+    assertFalse(buffer.offer("discarded"));
+    for (int i = 1; i <= 4; i++) {
+      assertEquals("element " + i, buffer.poll());
+    }
+    assertNull(buffer.poll());
+  }
+
+  @Test
+  void deliversEveryAcceptedElementOfConcurrentProducers() throws Exception {
+    final LogRingBuffer<long[]> buffer = new LogRingBuffer<>(64);
+    final int producers = 4, elements = 100_000;
+    final AtomicLong accepted = new AtomicLong();
+    final Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      threads[p] = new Thread(() -> {
+        for (int i = 0; i < elements; i++) {
+          if (buffer.offer(new long[]{producer, i})) {
+            accepted.incrementAndGet();
+          }
+        }
+      });
+      threads[p].start();
+    }
+
+    // Elements of the same producer must be received in the order they have been offered
+    final long[] last = new long[producers];
+    Arrays.fill(last, -1L);
+    long received = 0L;
+    boolean running = true;
+    while (running) {
+      running = false;
+      for (final Thread thread : threads) {
+        running |= thread.isAlive();
+      }
+      long[] element;
+      while ((element = buffer.poll()) != null) {
+        assertTrue(element[1] > last[(int) element[0]]);
+        last[(int) element[0]] = element[1];
+        received++;
+      }
+    }
+    assertEquals(accepted.get(), received);
+    assertTrue(received > 0L);
+  }
+}
@@ -0,0 +1,39 @@
+repositories {
+  maven(url = "https://jitpack.io/") // simple-yaml
+}
+
+dependencies {
+  implementation(project(":api"))
+  implementation(project(":common"))
+  implementation(project(":tools"))
+
+  implementation(rootProject.libs.netty)
+  implementation(rootProject.libs.simpleyaml)
+  implementation(rootProject.libs.adventure.minimessage)
+  implementation(rootProject.libs.adventure.serializer)
+  implementation(rootProject.libs.adventure.nbt)
+  implementation(rootProject.libs.ormlite)
+  implementation(rootProject.libs.caffeine)
+  implementation(rootProject.libs.libby.core)
+  compileOnly(rootProject.libs.annotations)
+}
+
+tasks {
+  shadowJar {
+    manifest {
+      attributes["Main-Class"] = "xyz.jonesdev.sonar.replay.SonarReplay"
+    }
+  }
+
+  // Usage: ./gradlew replay:replay -PreplayArgs="--capture=/path/to/capture.bin --speed=1"
+  register<JavaExec>("replay") {
+    dependsOn(shadowJar)
+    classpath = files(shadowJar.flatMap { it.archiveFile })
+    mainClass.set("xyz.jonesdev.sonar.replay.SonarReplay")
+    workingDir = layout.buildDirectory.get().asFile
+    args = (findProperty("replayArgs") as String?)?.split(" ") ?: emptyList()
+  }
+}
+
+java.sourceCompatibility = JavaVersion.VERSION_11
+java.targetCompatibility = JavaVersion.VERSION_11
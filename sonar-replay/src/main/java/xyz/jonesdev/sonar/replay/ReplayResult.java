@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.replay;
+
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.fallback.FailureReason;
+import xyz.jonesdev.sonar.api.fallback.FallbackStage;
+import xyz.jonesdev.sonar.api.statistics.LatencyHistogram;
+import xyz.jonesdev.sonar.common.capture.CapturedSession;
+import xyz.jonesdev.sonar.common.statistics.FailureStatistics;
+import xyz.jonesdev.sonar.common.statistics.GlobalSonarStatistics;
+import xyz.jonesdev.sonar.common.statistics.StageStatistics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a single replay; written as a report, so they can be compared across releases
+ */
+@SuppressWarnings("unused")
+final class ReplayResult {
+  private final String capture;
+  private final long preparerSeed;
+  private final double speed;
+  private final int sessions;
+  private final int skippedSessions;
+  private final int truncatedSessions;
+  private final long chunks;
+  private final long bytes;
+  private final long errors;
+  private final long wallMillis;
+  private final long attempted = GlobalSonarStatistics.ATTEMPTED_VERIFICATIONS.getTotal();
+  private final long successful = GlobalSonarStatistics.SUCCESSFUL_VERIFICATIONS.getTotal();
+  private final long failed = GlobalSonarStatistics.FAILED_VERIFICATIONS.getTotal();
+  private final Map<FailureReason, Long> failures = new LinkedHashMap<>();
+  private final Map<FallbackStage, Stage> stages = new LinkedHashMap<>();
+
+  ReplayResult(final @NotNull String capture,
+               final long preparerSeed,
+               final double speed,
+               final @NotNull List<CapturedSession> sessions,
+               final int skippedSessions,
+               final long errors,
+               final long wallNanos) {
+    this.capture = capture;
+    this.preparerSeed = preparerSeed;
+    this.speed = speed;
+    this.sessions = sessions.size();
+    this.skippedSessions = skippedSessions;
+    this.truncatedSessions = (int) sessions.stream().filter(CapturedSession::isTruncated).count();
+    this.chunks = sessions.stream().mapToLong(CapturedSession::getChunks).sum();
+    this.bytes = sessions.stream().mapToLong(CapturedSession::getSize).sum();
+    this.errors = errors;
+    this.wallMillis = TimeUnit.NANOSECONDS.toMillis(wallNanos);
+
+    for (final FailureReason reason : FailureReason.values()) {
+      final long count = FailureStatistics.get(reason);
+      if (count > 0L) {
+        failures.put(reason, count);
+      }
+    }
+    for (final FallbackStage stage : FallbackStage.values()) {
+      final long reached = StageStatistics.getReached(stage);
+      if (reached > 0L) {
+        stages.put(stage, new Stage(reached, StageStatistics.getLatency(stage)));
+      }
+    }
+  }
+
+  @RequiredArgsConstructor
+  private static final class Stage {
+    private final long reached;
+    private final long passed;
+    private final double averageMillis;
+    private final double p99Millis;
+
+    Stage(final long reached, final @NotNull LatencyHistogram latency) {
+      this(reached, latency.getCount(),
+        Math.round(latency.getAverageMillis() * 100D) / 100D,
+        Math.round(latency.getPercentileMillis(0.99) * 100D) / 100D);
+    }
+  }
+}
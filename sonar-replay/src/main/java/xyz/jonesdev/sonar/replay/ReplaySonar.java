@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.replay;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerController;
+import xyz.jonesdev.sonar.common.fallback.protocol.FallbackPreparer;
+import xyz.jonesdev.sonar.common.fallback.ratelimit.NoopCacheRatelimiter;
+import xyz.jonesdev.sonar.common.logging.VerificationLogger;
+import xyz.jonesdev.sonar.tools.HeadlessSonar;
+
+import java.io.File;
+import java.time.Duration;
+
+/**
+ * Headless Sonar that also prepares everything the verification needs
+ */
+final class ReplaySonar extends HeadlessSonar {
+  ReplaySonar(final @NotNull File dataDirectory) {
+    super(dataDirectory);
+  }
+
+  @Override
+  public void reload() {
+    super.reload();
+    // Verified players of the replay should never be stored
+    getConfig().getGeneralConfig().set("database.type", SonarConfiguration.Database.Type.NONE.name());
+    getConfig().loadValues();
+    VerificationLogger.INSTANCE.reload();
+    setVerifiedPlayerController(new VerifiedPlayerController(null));
+
+    // Prepare the same packets as the captured server
+    FallbackPreparer.prepare();
+    // Every replayed session uses a different address, so the ratelimiter is not needed
+    getFallback().setRatelimiter(NoopCacheRatelimiter.INSTANCE);
+    getFallback().setBlacklist(Caffeine.newBuilder()
+      .expireAfterWrite(Duration.ofMillis(getConfig().getVerification().getBlacklistTime()))
+      .build());
+    getFallback().setBlacklistTime(getConfig().getVerification().getBlacklistTime());
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.replay;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.SonarSupplier;
+import xyz.jonesdev.sonar.api.fallback.protocol.ProtocolVersion;
+import xyz.jonesdev.sonar.common.capture.CapturedSession;
+import xyz.jonesdev.sonar.common.capture.TrafficCapture;
+import xyz.jonesdev.sonar.common.fallback.FallbackUserWrapper;
+import xyz.jonesdev.sonar.tools.HeadlessSonar;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a traffic capture against the verification of this build.
+ * <br>
+ * Every captured session is fed into an embedded channel with the same protocol version,
+ * the same seed and the same timings (scaled by the speed), so the result can be compared
+ * across releases. Sessions are only replayed deterministically if the packets are prepared
+ * using the same seed as the captured server; sessions with a different seed are skipped.
+ * A speed of 0 replays all sessions as fast as possible.
+ * <br>
+ * Arguments: --capture=capture.bin --speed=1 --seed=(newest seed) --config=(default config) --output=replay-results.json
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SonarReplay {
+  public static void main(final String @NotNull [] args) throws Exception {
+    final Map<String, String> arguments = HeadlessSonar.parseArguments(args);
+
+    final File capture = new File(arguments.getOrDefault("capture", "capture.bin"));
+    final double speed = Double.parseDouble(arguments.getOrDefault("speed", "1"));
+    final File output = new File(arguments.getOrDefault("output", "replay-results.json"));
+
+    final List<CapturedSession> captured = new ArrayList<>();
+    TrafficCapture.read(capture, captured::add);
+    if (captured.isEmpty()) {
+      throw new IllegalStateException("No sessions have been captured in " + capture);
+    }
+
+    // Use the seed of the newest session if no seed has been specified
+    final long preparerSeed = arguments.containsKey("seed") ? Long.parseLong(arguments.get("seed"))
+      : captured.stream().max(Comparator.comparingLong(CapturedSession::getTimestamp)).get().getPreparerSeed();
+    final List<CapturedSession> sessions = new ArrayList<>();
+    for (final CapturedSession session : captured) {
+      if (session.getPreparerSeed() == preparerSeed) {
+        sessions.add(session);
+      }
+    }
+    sessions.sort(Comparator.comparingLong(CapturedSession::getTimestamp));
+
+    // The seed has to be set before the packets are prepared
+    System.setProperty("sonar.fallback.seed", String.valueOf(preparerSeed));
+    final File dataDirectory = arguments.containsKey("config") ? new File(arguments.get("config"))
+      : Files.createTempDirectory("sonar-replay").toFile();
+    final ReplaySonar sonar = new ReplaySonar(dataDirectory);
+    SonarSupplier.set(sonar);
+    sonar.reload();
+
+    Sonar.get().getLogger().info("Replaying {} of {} sessions with seed {}...",
+      sessions.size(), captured.size(), preparerSeed);
+
+    // Embedded channels are not thread-safe, so all sessions are replayed by the same thread
+    final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+      thread.setName("sonar-replay-thread");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final CountDownLatch latch = new CountDownLatch(sessions.size());
+    final AtomicLong errors = new AtomicLong();
+    final long firstTimestamp = sessions.get(0).getTimestamp();
+    final long start = System.nanoTime();
+    for (int i = 0; i < sessions.size(); i++) {
+      final CapturedSession session = sessions.get(i);
+      final InetAddress inetAddress = address(i);
+      executor.schedule(() -> new ReplayedSession(session, inetAddress, speed, executor, errors, latch).start(),
+        scale(TimeUnit.MILLISECONDS.toMicros(session.getTimestamp() - firstTimestamp), speed), TimeUnit.MICROSECONDS);
+    }
+    latch.await();
+    final long wallNanos = System.nanoTime() - start;
+
+    final ReplayResult result = new ReplayResult(capture.getAbsolutePath(), preparerSeed, speed,
+      sessions, captured.size() - sessions.size(), errors.get(), wallNanos);
+    Sonar.get().getLogger().info(HeadlessSonar.writeReport(result, output));
+    Sonar.get().getLogger().info("Results have been written to {}", output.getAbsolutePath());
+    // The database and logging threads would otherwise keep the JVM alive
+    System.exit(0);
+  }
+
+  private static long scale(final long micros, final double speed) {
+    return speed <= 0D ? 0L : (long) (micros / speed);
+  }
+
+  private static @NotNull InetAddress address(final int session) throws Exception {
+    // Every session gets its own address in 10.0.0.0/8, so sessions never affect each other
+    final int address = 0x0A000000 + session;
+    return InetAddress.getByAddress(new byte[]{
+      (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address});
+  }
+
+  private static final class ReplayedSession {
+    private final CapturedSession session;
+    private final InetAddress inetAddress;
+    private final double speed;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong errors;
+    private final CountDownLatch latch;
+    private final List<CapturedSession.Chunk> chunks;
+    private final EmbeddedChannel channel = new EmbeddedChannel();
+    private int next;
+
+    ReplayedSession(final @NotNull CapturedSession session,
+                    final @NotNull InetAddress inetAddress,
+                    final double speed,
+                    final @NotNull ScheduledExecutorService executor,
+                    final @NotNull AtomicLong errors,
+                    final @NotNull CountDownLatch latch) {
+      this.session = session;
+      this.inetAddress = inetAddress;
+      this.speed = speed;
+      this.executor = executor;
+      this.errors = errors;
+      this.latch = latch;
+      this.chunks = session.decodeChunks();
+    }
+
+    void start() {
+      final UUID offlineUuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + session.getUsername())
+        .getBytes(StandardCharsets.UTF_8));
+      try {
+        new FallbackUserWrapper(channel, inetAddress, ProtocolVersion.fromId(session.getProtocol()),
+          offlineUuid, session.isGeyser(), session.getSeed()).hijack(session.getUsername(), offlineUuid);
+        runPendingTasks();
+      } catch (Throwable throwable) {
+        fail(throwable);
+        return;
+      }
+      scheduleNext();
+    }
+
+    private void scheduleNext() {
+      if (next >= chunks.size() || !channel.isOpen()) {
+        finish();
+        return;
+      }
+      final CapturedSession.Chunk chunk = chunks.get(next++);
+      executor.schedule(() -> {
+        try {
+          if (channel.isOpen()) {
+            channel.writeInbound(Unpooled.wrappedBuffer(chunk.getData()));
+            runPendingTasks();
+          }
+        } catch (Throwable throwable) {
+          fail(throwable);
+          return;
+        }
+        scheduleNext();
+      }, scale(chunk.getDelayMicros(), speed), TimeUnit.MICROSECONDS);
+    }
+
+    private void runPendingTasks() {
+      channel.runPendingTasks();
+      // We don't need to check what the verification has sent
+      channel.releaseOutbound();
+    }
+
+    private void fail(final @NotNull Throwable throwable) {
+      errors.incrementAndGet();
+      Sonar.get().getLogger().error("Error replaying session of {}: {}", session.getUsername(), throwable);
+      finish();
+    }
+
+    private void finish() {
+      // Closing the channel lets the verification clean up after itself
+      channel.close();
+      channel.runPendingTasks();
+      channel.releaseInbound();
+      channel.releaseOutbound();
+      latch.countDown();
+    }
+  }
+}
@@ -0,0 +1,15 @@
+repositories {
+  maven(url = "https://jitpack.io/") // simple-yaml
+}
+
+// Shared by the benchmark and the replay, which provide all other dependencies
+dependencies {
+  compileOnly(project(":api"))
+  compileOnly(project(":common"))
+
+  compileOnly(rootProject.libs.simpleyaml)
+  compileOnly(rootProject.libs.annotations)
+}
+
+java.sourceCompatibility = JavaVersion.VERSION_11
+java.targetCompatibility = JavaVersion.VERSION_11
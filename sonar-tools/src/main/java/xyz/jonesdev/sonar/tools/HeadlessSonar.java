@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2024 Sonar Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package xyz.jonesdev.sonar.tools;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.Getter;
+import lombok.Setter;
+import net.kyori.adventure.audience.Audience;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.jonesdev.sonar.api.Sonar;
+import xyz.jonesdev.sonar.api.SonarPlatform;
+import xyz.jonesdev.sonar.api.command.subcommand.SubcommandRegistry;
+import xyz.jonesdev.sonar.api.config.SonarConfiguration;
+import xyz.jonesdev.sonar.api.database.controller.VerifiedPlayerController;
+import xyz.jonesdev.sonar.api.logger.LoggerWrapper;
+import xyz.jonesdev.sonar.api.notification.ActionBarNotificationHandler;
+import xyz.jonesdev.sonar.api.notification.ChatNotificationHandler;
+import xyz.jonesdev.sonar.api.statistics.SonarStatistics;
+import xyz.jonesdev.sonar.api.timer.SystemTimer;
+import xyz.jonesdev.sonar.common.statistics.GlobalSonarStatistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Minimal Sonar implementation without a server, used by the benchmark and the replay.
+ * <br>
+ * Only the configuration, the logger and the statistics are provided;
+ * the verified player controller has to be set up by the tool itself.
+ */
+@Getter
+public class HeadlessSonar implements Sonar {
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+  private final SonarConfiguration config;
+  private final SubcommandRegistry subcommandRegistry = new SubcommandRegistry();
+  private final SystemTimer launchTimer = new SystemTimer();
+  private final SonarStatistics statistics = new GlobalSonarStatistics();
+  @Setter
+  private @Nullable VerifiedPlayerController verifiedPlayerController;
+  private final LoggerWrapper logger = new LoggerWrapper() {
+
+    @Override
+    public void info(final String message, final Object... args) {
+      System.out.println("[INFO] " + buildFullMessage(message, args));
+    }
+
+    @Override
+    public void warn(final String message, final Object... args) {
+      System.out.println("[WARN] " + buildFullMessage(message, args));
+    }
+
+    @Override
+    public void error(final String message, final Object... args) {
+      System.err.println("[ERROR] " + buildFullMessage(message, args));
+    }
+  };
+
+  public HeadlessSonar(final @NotNull File dataDirectory) {
+    this.config = new SonarConfiguration(dataDirectory);
+  }
+
+  /**
+   * Parses arguments in the format --name=value
+   *
+   * @param args Command line arguments
+   * @return Values of all arguments by their name
+   */
+  public static @NotNull Map<String, String> parseArguments(final String @NotNull [] args) {
+    final Map<String, String> arguments = new HashMap<>();
+    for (final String argument : args) {
+      final int separator = argument.indexOf('=');
+      if (argument.startsWith("--") && separator != -1) {
+        arguments.put(argument.substring(2, separator), argument.substring(separator + 1));
+      }
+    }
+    return arguments;
+  }
+
+  /**
+   * Writes the results as JSON together with the version of Sonar and the environment,
+   * so results of different releases and machines can be compared
+   *
+   * @param results Results of the tool
+   * @param output  File the report is written to
+   * @return Report as JSON
+   */
+  public static @NotNull String writeReport(final @NotNull Object results,
+                                            final @NotNull File output) throws IOException {
+    final String json = GSON.toJson(new Report(results));
+    try (final Writer writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+      writer.write(json);
+    }
+    return json;
+  }
+
+  @Override
+  public @Nullable Audience audience(final @Nullable UUID uniqueId) {
+    return null;
+  }
+
+  @Override
+  public @NotNull Audience sender(final @NotNull Object object) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public @NotNull SonarPlatform getPlatform() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public @NotNull ActionBarNotificationHandler getActionBarNotificationHandler() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public @NotNull ChatNotificationHandler getChatNotificationHandler() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setActionBarNotificationHandler(final @NotNull ActionBarNotificationHandler notificationHandler) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setChatNotificationHandler(final @NotNull ChatNotificationHandler notificationHandler) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void reload() {
+    config.load();
+  }
+
+  @SuppressWarnings("unused")
+  private static final class Report {
+    private final String version = Sonar.get().getVersion().getFormatted();
+    private final String javaVersion = System.getProperty("java.version");
+    private final int availableProcessors = Runtime.getRuntime().availableProcessors();
+    private final long maxMemory = Runtime.getRuntime().maxMemory();
+    private final Object results;
+
+    Report(final @NotNull Object results) {
+      this.results = results;
+    }
+  }
+}